@@ -0,0 +1,203 @@
+package us.dtaylor.filewatcher.infrastructure;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Paces Kafka sends so a large file cannot saturate a shared cluster. Sends are spaced evenly at
+ * the current rate, and at most a window of them may wait for their ack at once.
+ *
+ * <p>The rate follows the send-to-ack latency with AIMD. It is judged once per
+ * {@code adjustInterval}: if any send failed, or the mean ack latency exceeded
+ * {@code targetLatency}, the rate is multiplied by {@code backoffRatio}. Otherwise, if publishing
+ * was held back by the rate or window, it grows by {@code rateStep}. The rate stays between
+ * {@code minRate} and the {@code maxRate} ceiling. The window is derived from the rate: by
+ * Little's law {@code rate * targetLatency} sends are in flight when acks arrive on target, and
+ * the window allows twice that.
+ */
+public class AdaptivePublishRateController {
+
+    private final Settings settings;
+    private final LongSupplier clock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition windowOpen = lock.newCondition();
+
+    private volatile double rate;
+    private volatile int window;
+    private volatile int inFlight;
+    private long nextSendNanos;
+
+    private long intervalStartNanos;
+    private int acks;
+    private int errors;
+    private long latencySumNanos;
+    private boolean throttled;
+
+    public AdaptivePublishRateController(Settings settings) {
+        this(settings, System::nanoTime);
+    }
+
+    AdaptivePublishRateController(Settings settings, LongSupplier clock) {
+        this.settings = settings;
+        this.clock = clock;
+        this.rate = Math.min(settings.initialRate(), settings.maxRate());
+        this.window = windowFor(rate);
+        this.intervalStartNanos = clock.getAsLong();
+    }
+
+    /**
+     * Blocks until the window has room and the next send slot has come, then returns the permit
+     * to complete once the send is acknowledged or has failed.
+     */
+    public Permit acquire() throws InterruptedException {
+        long wait = reserve();
+        long deadline = clock.getAsLong() + wait;
+        while (wait > 0) {
+            LockSupport.parkNanos(this, wait);
+            if (Thread.interrupted()) {
+                release(0, false, false);
+                throw new InterruptedException();
+            }
+            wait = deadline - clock.getAsLong();
+        }
+        return permit();
+    }
+
+    /**
+     * Takes a place in the window, waiting for one if needed, and books the next send slot.
+     *
+     * @return nanoseconds until that slot
+     */
+    long reserve() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (inFlight >= window) {
+                throttled = true;
+                windowOpen.await();
+            }
+            inFlight++;
+            long now = clock.getAsLong();
+            // An idle spell does not bank a burst of slots
+            long slot = Math.max(now, nextSendNanos);
+            nextSendNanos = slot + (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+            if (slot > now) {
+                throttled = true;
+            }
+            return slot - now;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Starts timing a send whose place was {@link #reserve() reserved}.
+     */
+    Permit permit() {
+        return new Permit(clock.getAsLong());
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    private void release(long latencyNanos, boolean failed, boolean sample) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (sample) {
+                acks++;
+                latencySumNanos += latencyNanos;
+                if (failed) {
+                    errors++;
+                }
+                long now = clock.getAsLong();
+                if (now - intervalStartNanos >= settings.adjustInterval().toNanos()) {
+                    adjust(now);
+                }
+            }
+            windowOpen.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void adjust(long now) {
+        double newRate = rate;
+        if (errors > 0 || latencySumNanos / acks > settings.targetLatency().toNanos()) {
+            newRate = rate * settings.backoffRatio();
+        } else if (throttled) {
+            newRate = rate + settings.rateStep();
+        }
+        rate = Math.max(settings.minRate(), Math.min(settings.maxRate(), newRate));
+        window = windowFor(rate);
+        intervalStartNanos = now;
+        acks = 0;
+        errors = 0;
+        latencySumNanos = 0;
+        throttled = false;
+    }
+
+    private int windowFor(double rate) {
+        double atTarget = rate * settings.targetLatency().toNanos() / TimeUnit.SECONDS.toNanos(1);
+        return (int) Math.max(settings.minWindow(), Math.min(settings.maxWindow(), Math.ceil(2 * atTarget)));
+    }
+
+    public class Permit {
+
+        private final long sentNanos;
+        private boolean completed;
+
+        private Permit(long sentNanos) {
+            this.sentNanos = sentNanos;
+        }
+
+        /**
+         * Reports the ack, or the failure when {@code error} is not {@code null}. Only the first
+         * call counts.
+         */
+        public void complete(Throwable error) {
+            synchronized (this) {
+                if (completed) {
+                    return;
+                }
+                completed = true;
+            }
+            release(clock.getAsLong() - sentNanos, error != null, true);
+        }
+    }
+
+    /**
+     * @param initialRate    messages per second before the first adjustment
+     * @param minRate        floor the rate never backs off below
+     * @param maxRate        ceiling in messages per second
+     * @param rateStep       messages per second added per interval while latency is on target
+     * @param backoffRatio   factor applied to the rate when latency is over target or sends fail
+     * @param targetLatency  send-to-ack latency to hold
+     * @param adjustInterval how often the rate is re-evaluated
+     * @param minWindow      fewest sends that may await their ack at once
+     * @param maxWindow      most sends that may await their ack at once
+     */
+    public record Settings(double initialRate,
+                           double minRate,
+                           double maxRate,
+                           double rateStep,
+                           double backoffRatio,
+                           Duration targetLatency,
+                           Duration adjustInterval,
+                           int minWindow,
+                           int maxWindow) {
+    }
+}
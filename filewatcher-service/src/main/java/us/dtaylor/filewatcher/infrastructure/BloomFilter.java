@@ -0,0 +1,77 @@
+package us.dtaylor.filewatcher.infrastructure;
+
+import java.util.UUID;
+
+/**
+ * Fixed-size Bloom filter of UUIDs: {@link #mightContain} never misses an id that was
+ * {@link #put}, and wrongly reports an absent one at about the false positive rate it was
+ * sized for. The bit positions come from double hashing two mixes of the id's 128 bits.
+ * Built once and then only read, so it is safe to share once published.
+ */
+final class BloomFilter {
+
+    private final long[] words;
+    private final long bitCount;
+    private final int hashCount;
+
+    private BloomFilter(long bitCount, int hashCount) {
+        this.words = new long[(int) ((bitCount + 63) / 64)];
+        this.bitCount = words.length * 64L;
+        this.hashCount = hashCount;
+    }
+
+    /**
+     * Sizes a filter for {@code expectedIds} entries at {@code falsePositiveRate}, using the
+     * optimal m = -n ln p / (ln 2)^2 bits and k = m / n ln 2 hashes.
+     */
+    static BloomFilter create(long expectedIds, double falsePositiveRate) {
+        long n = Math.max(1, expectedIds);
+        long bits = Math.max(64, (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+        if (bits > Integer.MAX_VALUE * 64L) {
+            throw new IllegalArgumentException("Bloom filter for " + expectedIds + " ids is too large");
+        }
+        int hashes = Math.max(1, (int) Math.round((double) bits / n * Math.log(2)));
+        return new BloomFilter(bits, hashes);
+    }
+
+    void put(UUID id) {
+        long h1 = mix(id.getMostSignificantBits() ^ mix(id.getLeastSignificantBits()));
+        long h2 = mix(h1 ^ id.getLeastSignificantBits()) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    boolean mightContain(UUID id) {
+        long h1 = mix(id.getMostSignificantBits() ^ mix(id.getLeastSignificantBits()));
+        long h2 = mix(h1 ^ id.getLeastSignificantBits()) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long bitCount() {
+        return bitCount;
+    }
+
+    int hashCount() {
+        return hashCount;
+    }
+
+    /**
+     * MurmurHash3's 64-bit finalizer.
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb3f9fe1a85c3L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
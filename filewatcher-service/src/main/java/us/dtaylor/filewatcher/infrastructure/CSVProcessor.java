@@ -1,16 +1,19 @@
 package us.dtaylor.filewatcher.infrastructure;
 
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.core.io.buffer.DataBuffer;
-import org.springframework.core.io.buffer.DataBufferUtils;
-import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
+import java.time.Instant;
 import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
@@ -21,40 +24,99 @@ public class CSVProcessor {
 
     private final TodoParser todoParser;
 
-    public CSVProcessor(KafkaPublisherAdapter kafkaPublisher, TodoParser todoParser) {
+    private final KnownUserIds knownUserIds;
+
+    private final RejectedLines rejectedLines;
+
+    private final ObservationRegistry observationRegistry;
+
+    public CSVProcessor(KafkaPublisherAdapter kafkaPublisher, TodoParser todoParser, KnownUserIds knownUserIds,
+                        RejectedLines rejectedLines, ObservationRegistry observationRegistry) {
         this.kafkaPublisher = kafkaPublisher;
         this.todoParser = todoParser;
+        this.knownUserIds = knownUserIds;
+        this.rejectedLines = rejectedLines;
+        this.observationRegistry = observationRegistry;
     }
 
     public void process(Path filePath) {
-        AtomicInteger lineNumber = new AtomicInteger(1);
-        getDataBufferFlux(filePath)
-                .flatMap(CSVProcessor::convertDataBufferToLineFlux)
-                .skip(1)
-                .flatMap(line -> parseLineOrEmpty(line, lineNumber.getAndIncrement()))
-                .subscribe(kafkaPublisher::publish);
+        process(filePath, Instant.now());
+    }
+
+    /**
+     * Publishes every record of the file under one "filewatcher.file" span, so each Kafka send (and
+     * everything downstream of it) joins the same trace, stamped with the time the file was detected.
+     * The format follows the file extension (see {@link RecordFormat}); for CSV and TSV the header
+     * is compiled once into the column mapping used for every line after it. Lines that do not
+     * parse, or whose user is not among the {@link KnownUserIds}, go to the {@link RejectedLines}
+     * instead of Kafka.
+     */
+    public void process(Path filePath, Instant detectedAt) {
+        RecordFormat format = RecordFormat.of(filePath);
+        Observation fileObservation = Observation.createNotStarted("filewatcher.file", observationRegistry)
+                .lowCardinalityKeyValue("file.format", format.name())
+                .highCardinalityKeyValue("file.name", String.valueOf(filePath.getFileName()))
+                .start();
+        Flux.using(() -> Files.newBufferedReader(filePath, StandardCharsets.UTF_8),
+                        reader -> Mono.fromCallable(() -> compileMapping(reader, format))
+                                .flatMapMany(mapping -> Flux.using(() -> rejectedLines.open(filePath, mapping.header()),
+                                        rejects -> parseLines(reader, mapping, rejects, format.hasHeader() ? 1 : 0),
+                                        RejectedLines.Sink::close)),
+                        CSVProcessor::closeQuietly)
+                .subscribeOn(Schedulers.boundedElastic())
+                .doOnError(fileObservation::error)
+                .doFinally(signal -> fileObservation.stop())
+                .subscribe(message -> fileObservation.scoped(() -> kafkaPublisher.publish(message, detectedAt)),
+                        error -> log.error("Skipping file {}: {}", filePath.getFileName(), error.getMessage()));
     }
 
-    private static Flux<DataBuffer> getDataBufferFlux(Path filePath) {
-        return DataBufferUtils.read(filePath, new DefaultDataBufferFactory(), 4096, StandardOpenOption.READ);
+    /**
+     * Reads and compiles the header, or returns {@code null} for an empty file.
+     */
+    private TodoParser.Mapping compileMapping(BufferedReader reader, RecordFormat format) throws IOException {
+        if (!format.hasHeader()) {
+            return todoParser.compile(format, null);
+        }
+        String header = reader.readLine();
+        return header == null ? null : todoParser.compile(format, header);
+    }
+
+    private Flux<byte[]> parseLines(BufferedReader reader, TodoParser.Mapping mapping, RejectedLines.Sink rejects,
+                                    int linesRead) {
+        AtomicInteger lineNumber = new AtomicInteger(linesRead);
+        return Flux.fromStream(reader.lines())
+                .flatMapSequential(line -> {
+                    int number = lineNumber.incrementAndGet();
+                    return line.isBlank() ? Mono.empty() : parseLineOrEmpty(mapping, rejects, line, number);
+                });
     }
 
-    private static Flux<String> convertDataBufferToLineFlux(DataBuffer dataBuffer) {
-        // convert DataBuffer to String
-        byte[] bytes = new byte[dataBuffer.readableByteCount()];
-        dataBuffer.read(bytes);
-        DataBufferUtils.release(dataBuffer); // Important to avoid memory leaks
-        String content = new String(bytes, StandardCharsets.UTF_8);
-        return Flux.fromArray(content.split("\n"));
+    private static void closeQuietly(BufferedReader reader) {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            log.warn("Could not close input file: {}", e.getMessage());
+        }
     }
 
-    private Mono<String> parseLineOrEmpty(String line, int lineNumber) {
+    private Mono<byte[]> parseLineOrEmpty(TodoParser.Mapping mapping, RejectedLines.Sink rejects, String line,
+                                          int lineNumber) {
+        TodoParser.ParsedTodo todo;
         try {
-            return Mono.just(todoParser.parseLine(line));
+            todo = mapping.map(line);
         } catch (Exception e) {
             log.error("Error processing line " + lineNumber + ": " + e.getMessage());
+            rejects.reject(line, lineNumber, RejectedLines.Reason.MALFORMED, e.getMessage());
             return Mono.empty();
         }
+        return knownUserIds.exists(todo.userId())
+                .flatMap(known -> {
+                    if (!known) {
+                        rejects.reject(line, lineNumber, RejectedLines.Reason.UNKNOWN_USER, "unknown user " + todo.userId());
+                        return Mono.empty();
+                    }
+                    return Mono.just(todo.json());
+                });
     }
 
 }
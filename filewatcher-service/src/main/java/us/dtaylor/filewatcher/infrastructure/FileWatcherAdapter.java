@@ -12,6 +12,7 @@ import java.nio.file.Paths;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
+import java.time.Instant;
 
 import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
 
@@ -50,6 +51,6 @@ public class FileWatcherAdapter implements FileWatcher {
                 .filter(event -> event.kind().equals(ENTRY_CREATE))
                 .map(event -> (Path) event.context())
                 .map(targetDir::resolve)
-                .subscribe(csvProcessor::process);
+                .subscribe(path -> csvProcessor.process(path, Instant.now()));
     }
 }
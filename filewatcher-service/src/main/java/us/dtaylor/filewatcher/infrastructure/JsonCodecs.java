@@ -0,0 +1,32 @@
+package us.dtaylor.filewatcher.infrastructure;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.stereotype.Component;
+
+/**
+ * JSON for the filewatcher, built once from the application {@link ObjectMapper} (which has the
+ * Blackbird module registered): the streaming factory NDJSON input is parsed with and the writer
+ * that turns each line into the UTF-8 bytes published to Kafka.
+ */
+@Component
+public class JsonCodecs {
+
+    private final JsonFactory jsonFactory;
+    private final ObjectWriter todoMessageWriter;
+
+    public JsonCodecs(ObjectMapper objectMapper) {
+        this.jsonFactory = objectMapper.getFactory();
+        this.todoMessageWriter = objectMapper.writerFor(TodoMessage.class);
+    }
+
+    public JsonFactory jsonFactory() {
+        return jsonFactory;
+    }
+
+    public byte[] write(TodoMessage message) throws JsonProcessingException {
+        return todoMessageWriter.writeValueAsBytes(message);
+    }
+}
@@ -1,31 +1,70 @@
 package us.dtaylor.filewatcher.infrastructure;
 
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+
 @Slf4j
 @Component
 public class KafkaPublisherAdapter {
 
-    private final KafkaTemplate<String, String> kafkaTemplate;
+    /** Epoch millis at which the source file was picked up, as ASCII digits. */
+    public static final String INGEST_TIMESTAMP_HEADER = "ingest-timestamp";
+
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+
+    private final AdaptivePublishRateController rateController;
 
     @Value("${kafka.topic.name}")
     private String topicName;
 
-    public KafkaPublisherAdapter(KafkaTemplate<String, String> kafkaTemplate) {
+    public KafkaPublisherAdapter(KafkaTemplate<String, byte[]> kafkaTemplate, AdaptivePublishRateController rateController) {
         this.kafkaTemplate = kafkaTemplate;
+        this.rateController = rateController;
+    }
+
+    public void publish(byte[] message) {
+        publish(message, Instant.now());
     }
 
-    public void publish(String message) {
-        kafkaTemplate.send(topicName, message)
+    /**
+     * Sends the message once the {@link AdaptivePublishRateController} allows it, blocking the
+     * caller until then, and reports the ack or failure back to the controller.
+     */
+    public void publish(byte[] message, Instant ingestedAt) {
+        ProducerRecord<String, byte[]> record = new ProducerRecord<>(topicName, message);
+        record.headers().add(INGEST_TIMESTAMP_HEADER,
+                Long.toString(ingestedAt.toEpochMilli()).getBytes(StandardCharsets.US_ASCII));
+        AdaptivePublishRateController.Permit permit;
+        try {
+            permit = rateController.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while waiting to publish a message to Kafka");
+            return;
+        }
+        CompletableFuture<SendResult<String, byte[]>> sent;
+        try {
+            sent = kafkaTemplate.send(record);
+        } catch (RuntimeException e) {
+            permit.complete(e);
+            throw e;
+        }
+        sent
                 .whenComplete(
                         (result, error) -> {
+                            permit.complete(error);
                             if (error != null) {
                                 log.error("Error publishing message to Kafka: {}", error.getMessage());
                             } else {
-                                log.info("Message published to Kafka: {}", message);
+                                log.debug("Message published to Kafka: {}", result.getRecordMetadata());
                             }
                         }
                 );
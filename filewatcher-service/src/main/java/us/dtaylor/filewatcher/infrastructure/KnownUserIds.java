@@ -0,0 +1,176 @@
+package us.dtaylor.filewatcher.infrastructure;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bloom filter of the user ids that exist in user-service, so lines for unknown users can be
+ * rejected before they are published. The filter is rebuilt every {@code refreshInterval} from
+ * user-service's binary id export and swapped in whole.
+ *
+ * <p>Until the first export has loaded, or when validation is disabled, every id passes and
+ * todo-service remains the only check. A false positive only lets a line through to that same
+ * check. A miss is not final, since the filter can be a whole refresh interval old and miss a
+ * user created since: {@link #exists(UUID)} confirms it with user-service first and keeps the
+ * answer until the next refresh, and an id user-service cannot answer for passes.
+ */
+@Slf4j
+@Component
+public class KnownUserIds {
+
+    static final String EXPORT_PATH = "/api/v1/users/ids";
+    static final String USER_PATH = "/api/v1/users/{id}";
+
+    /** Confirmations kept between refreshes, so a file naming many unknown users cannot grow them without bound. */
+    private static final int MAX_CONFIRMATIONS = 100_000;
+
+    private final boolean enabled;
+    private final WebClient webClient;
+    private final Duration refreshInterval;
+    private final double falsePositiveRate;
+    private final int maxExportBytes;
+    private final Duration lookupTimeout;
+    private final Counter refreshFailures;
+    private final Counter lookups;
+
+    private volatile BloomFilter filter;
+    private volatile Map<UUID, Mono<Boolean>> confirmations = new ConcurrentHashMap<>();
+    private volatile long size;
+    private Disposable refreshing;
+
+    public KnownUserIds(WebClient.Builder webClientBuilder,
+                        MeterRegistry meterRegistry,
+                        @Value("${filewatcher.user-validation.enabled:true}") boolean enabled,
+                        @Value("${user.service.url}") String userServiceUrl,
+                        @Value("${filewatcher.user-validation.refresh-interval-ms:60000}") long refreshIntervalMs,
+                        @Value("${filewatcher.user-validation.false-positive-rate:0.001}") double falsePositiveRate,
+                        @Value("${filewatcher.user-validation.max-export-bytes:67108864}") int maxExportBytes,
+                        @Value("${filewatcher.user-validation.lookup-timeout-ms:2000}") long lookupTimeoutMs) {
+        this.enabled = enabled;
+        this.webClient = webClientBuilder.baseUrl(userServiceUrl).build();
+        this.refreshInterval = Duration.ofMillis(refreshIntervalMs);
+        this.falsePositiveRate = falsePositiveRate;
+        this.maxExportBytes = maxExportBytes;
+        this.lookupTimeout = Duration.ofMillis(lookupTimeoutMs);
+        this.lookups = Counter.builder("filewatcher.known-users.lookups")
+                .description("Bloom filter misses confirmed with user-service")
+                .register(meterRegistry);
+        this.refreshFailures = Counter.builder("filewatcher.known-users.refresh.failures")
+                .description("Failed downloads of the user id export")
+                .register(meterRegistry);
+        Gauge.builder("filewatcher.known-users.size", this, known -> known.size)
+                .description("User ids in the current Bloom filter")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        refreshing = Flux.interval(Duration.ZERO, refreshInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> refresh()
+                        .onErrorResume(e -> {
+                            refreshFailures.increment();
+                            log.warn("Could not refresh known user ids, keeping the previous set: {}", e.getMessage());
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (refreshing != null) {
+            refreshing.dispose();
+        }
+    }
+
+    /**
+     * Whether {@code userId} may belong to a user; {@code false} means it certainly does not, as
+     * of the last refresh.
+     */
+    public boolean mightExist(UUID userId) {
+        BloomFilter current = filter;
+        return current == null || current.mightContain(userId);
+    }
+
+    /**
+     * Whether {@code userId} belongs to a user. A Bloom filter hit is taken as a yes; a miss is
+     * looked up in user-service, once per id until the next refresh.
+     */
+    public Mono<Boolean> exists(UUID userId) {
+        if (mightExist(userId)) {
+            return Mono.just(true);
+        }
+        Map<UUID, Mono<Boolean>> current = confirmations;
+        if (current.size() >= MAX_CONFIRMATIONS) {
+            current.clear();
+        }
+        Mono<Boolean> answer = current.computeIfAbsent(userId, id -> lookup(id).cache());
+        return answer.onErrorResume(e -> {
+            current.remove(userId, answer);
+            log.debug("Could not confirm user {} with user-service, letting it through: {}", userId, e.getMessage());
+            return Mono.just(true);
+        });
+    }
+
+    private Mono<Boolean> lookup(UUID userId) {
+        return Mono.defer(() -> {
+            lookups.increment();
+            return webClient.get().uri(USER_PATH, userId)
+                    .retrieve()
+                    .toBodilessEntity()
+                    .thenReturn(true)
+                    .onErrorResume(WebClientResponseException.NotFound.class, e -> Mono.just(false))
+                    .timeout(lookupTimeout);
+        });
+    }
+
+    /**
+     * Downloads the id export and swaps in a filter built from it.
+     */
+    Mono<Void> refresh() {
+        return DataBufferUtils.join(webClient.get().uri(EXPORT_PATH).retrieve().bodyToFlux(DataBuffer.class), maxExportBytes)
+                .map(export -> {
+                    byte[] ids = new byte[export.readableByteCount()];
+                    export.read(ids);
+                    DataBufferUtils.release(export);
+                    return ByteBuffer.wrap(ids);
+                })
+                .defaultIfEmpty(ByteBuffer.allocate(0))
+                .doOnNext(this::load)
+                .then();
+    }
+
+    void load(ByteBuffer ids) {
+        long count = ids.remaining() / 16;
+        BloomFilter next = BloomFilter.create(count, falsePositiveRate);
+        for (long i = 0; i < count; i++) {
+            next.put(new UUID(ids.getLong(), ids.getLong()));
+        }
+        filter = next;
+        confirmations = new ConcurrentHashMap<>();
+        size = count;
+        log.info("Loaded {} known user ids into a {} bit Bloom filter with {} hashes", count, next.bitCount(), next.hashCount());
+    }
+}
@@ -0,0 +1,53 @@
+package us.dtaylor.filewatcher.infrastructure;
+
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Layout of an input file, chosen from its extension. Delimited formats start with a header
+ * line naming the columns; NDJSON has one JSON object per line and no header.
+ */
+public enum RecordFormat {
+
+    CSV(',', true),
+    TSV('\t', false),
+    NDJSON((char) 0, false);
+
+    private final char delimiter;
+    private final boolean quoted;
+
+    RecordFormat(char delimiter, boolean quoted) {
+        this.delimiter = delimiter;
+        this.quoted = quoted;
+    }
+
+    /**
+     * Files ending in {@code .tsv} are TSV and {@code .ndjson} or {@code .jsonl} NDJSON; anything
+     * else, including the extensionless exports already in use, is read as CSV.
+     */
+    public static RecordFormat of(Path path) {
+        String name = String.valueOf(path.getFileName()).toLowerCase(Locale.ROOT);
+        if (name.endsWith(".tsv")) {
+            return TSV;
+        }
+        if (name.endsWith(".ndjson") || name.endsWith(".jsonl")) {
+            return NDJSON;
+        }
+        return CSV;
+    }
+
+    public boolean hasHeader() {
+        return this != NDJSON;
+    }
+
+    char delimiter() {
+        return delimiter;
+    }
+
+    /**
+     * Whether fields may be wrapped in double quotes, with {@code ""} for a literal quote.
+     */
+    boolean quoted() {
+        return quoted;
+    }
+}
@@ -0,0 +1,99 @@
+package us.dtaylor.filewatcher.infrastructure;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Where lines that must not be published end up. Each input file with rejects gets a file of the
+ * same name, prefixed with the time it was processed, in the reject directory. It holds the
+ * original header and the rejected lines unchanged, so once the cause is fixed it can be dropped
+ * back into the watched directory to be replayed.
+ */
+@Slf4j
+@Component
+public class RejectedLines {
+
+    public enum Reason {
+        MALFORMED, UNKNOWN_USER
+    }
+
+    private final Path directory;
+    private final MeterRegistry meterRegistry;
+
+    public RejectedLines(@Value("${filewatcher.rejects.path}") String directory, MeterRegistry meterRegistry) {
+        this.directory = Paths.get(directory);
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Opens the reject file for one input file. Nothing is written unless a line is rejected.
+     */
+    public Sink open(Path source, String header) {
+        return new Sink(source, header);
+    }
+
+    /**
+     * Collects the rejects of one input file. Lines are rejected from whichever thread checked
+     * them, so writes are synchronized.
+     */
+    public final class Sink implements AutoCloseable {
+
+        private final Path source;
+        private final String header;
+        private final Map<Reason, Integer> counts = new EnumMap<>(Reason.class);
+        private Path target;
+        private BufferedWriter writer;
+
+        private Sink(Path source, String header) {
+            this.source = source;
+            this.header = header;
+        }
+
+        public synchronized void reject(String line, int lineNumber, Reason reason, String detail) {
+            log.debug("Rejected line {} of {} ({}): {}", lineNumber, source.getFileName(), reason, detail);
+            meterRegistry.counter("filewatcher.lines.rejected", "reason", reason.name().toLowerCase()).increment();
+            counts.merge(reason, 1, Integer::sum);
+            try {
+                if (writer == null) {
+                    Files.createDirectories(directory);
+                    target = directory.resolve(Instant.now().toEpochMilli() + "-" + source.getFileName());
+                    writer = Files.newBufferedWriter(target, StandardCharsets.UTF_8);
+                    if (header != null) {
+                        writer.write(header);
+                        writer.newLine();
+                    }
+                }
+                writer.write(line);
+                writer.newLine();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write reject file for " + source.getFileName(), e);
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            if (writer == null) {
+                return;
+            }
+            try {
+                writer.close();
+            } catch (IOException e) {
+                log.warn("Could not close reject file {}: {}", target, e.getMessage());
+            }
+            log.warn("Rejected lines of {} {} to {}", source.getFileName(), counts, target);
+        }
+    }
+}
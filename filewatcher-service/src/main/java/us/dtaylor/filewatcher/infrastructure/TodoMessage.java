@@ -0,0 +1,12 @@
+package us.dtaylor.filewatcher.infrastructure;
+
+/**
+ * The JSON value published to the todo topic for each input line.
+ */
+public record TodoMessage(
+        String id,
+        String title,
+        String description,
+        boolean completed,
+        String userId
+) {}
@@ -1,44 +1,293 @@
 package us.dtaylor.filewatcher.infrastructure;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
 
+/**
+ * Turns the lines of an input file into the JSON todo messages published to Kafka. The header of
+ * a delimited file is read once and compiled into a {@link Mapping} that knows which column feeds
+ * which field, so columns may come in any order, extra columns are ignored, and each line is
+ * scanned once without looking anything up by name.
+ */
 @Component
 @Slf4j
 public class TodoParser {
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private static final int ID = 0;
+    private static final int TITLE = 1;
+    private static final int DESCRIPTION = 2;
+    private static final int COMPLETED = 3;
+    private static final int USER_ID = 4;
+    private static final int FIELDS = 5;
 
-    public String parseLine(String line) throws JsonProcessingException {
-        String[] tokens = getTokens(line);
-        log.debug("Parsed line into {} tokens", tokens.length);
+    private static final String[] FIELD_NAMES = {"id", "title", "description", "completed", "userId"};
 
-        if (tokens.length != 5) {
-            throw new IllegalArgumentException("Invalid number of tokens");
+    private final JsonCodecs jsonCodecs;
+
+    public TodoParser(JsonCodecs jsonCodecs) {
+        this.jsonCodecs = jsonCodecs;
+    }
+
+    /**
+     * Compiles the mapping for one file. {@code header} is the file's first line for delimited
+     * formats and is ignored for NDJSON.
+     *
+     * @throws IllegalArgumentException if the header lacks a required column or names one twice
+     */
+    public Mapping compile(RecordFormat format, String header) {
+        if (format == RecordFormat.NDJSON) {
+            return new NdjsonMapping();
+        }
+        List<String> columns = new ArrayList<>();
+        Fields fields = new Fields(header.startsWith("\uFEFF") ? header.substring(1) : header, format);
+        while (fields.hasNext()) {
+            columns.add(fields.next(true));
+        }
+
+        int[] slotByColumn = new int[columns.size()];
+        int[] columnBySlot = new int[FIELDS];
+        Arrays.fill(columnBySlot, -1);
+        int lastColumn = -1;
+        for (int column = 0; column < slotByColumn.length; column++) {
+            int slot = slotOf(columns.get(column));
+            slotByColumn[column] = slot;
+            if (slot < 0) {
+                continue;
+            }
+            if (columnBySlot[slot] >= 0) {
+                throw new IllegalArgumentException("Header names column '" + FIELD_NAMES[slot] + "' twice");
+            }
+            columnBySlot[slot] = column;
+            lastColumn = column;
+        }
+        for (int required : new int[]{TITLE, USER_ID}) {
+            if (columnBySlot[required] < 0) {
+                throw new IllegalArgumentException("Header has no '" + FIELD_NAMES[required] + "' column: " + columns);
+            }
+        }
+        log.debug("Compiled {} header {} to columns {}", format, columns, Arrays.toString(columnBySlot));
+        return new DelimitedMapping(format, header, slotByColumn, lastColumn);
+    }
+
+    /**
+     * Maps header and JSON names to fields, ignoring case, underscores and dashes so that
+     * {@code user_id} and {@code UserId} both mean {@code userId}; returns -1 for unknown names.
+     */
+    private static int slotOf(String name) {
+        return switch (name.trim().replace("_", "").replace("-", "").toLowerCase(Locale.ROOT)) {
+            case "id" -> ID;
+            case "title" -> TITLE;
+            case "description" -> DESCRIPTION;
+            case "completed" -> COMPLETED;
+            case "userid" -> USER_ID;
+            default -> -1;
+        };
+    }
+
+    /**
+     * The id is optional, but one that is given has to be a UUID like the userId, since
+     * todo-service stores todos under it; it is sent in canonical form.
+     */
+    private ParsedTodo toParsedTodo(String[] values) throws IOException {
+        if (values[USER_ID] == null || values[USER_ID].isEmpty()) {
+            throw new IllegalArgumentException("Missing userId");
+        }
+        UUID userId = UUID.fromString(values[USER_ID]);
+        String id = values[ID] == null || values[ID].isEmpty() ? null : parseId(values[ID]).toString();
+        byte[] json = jsonCodecs.write(new TodoMessage(id, values[TITLE], values[DESCRIPTION],
+                Boolean.parseBoolean(values[COMPLETED]), values[USER_ID]));
+        return new ParsedTodo(userId, json);
+    }
+
+    private static UUID parseId(String id) {
+        try {
+            return UUID.fromString(id);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("id is not a UUID: " + id);
         }
+    }
+
+    /**
+     * Converts the data lines of one file. A mapping is compiled per file and is not thread-safe.
+     */
+    public interface Mapping {
+
+        /**
+         * The header line the mapping was compiled from, or {@code null} for NDJSON.
+         */
+        String header();
+
+        /**
+         * @throws IllegalArgumentException if the line is malformed or its id or userId is not a UUID
+         */
+        ParsedTodo map(String line) throws IOException;
+    }
 
-        return objectMapper.writeValueAsString(getTodo(tokens));
+    /**
+     * A todo message encoded for publishing, with the user it belongs to for validation.
+     */
+    public record ParsedTodo(UUID userId, byte[] json) {
     }
 
-    private static Todo getTodo(String[] tokens) {
-        return new Todo(tokens[0], tokens[1], tokens[2], Boolean.parseBoolean(tokens[3]), tokens[4]);
+    private final class DelimitedMapping implements Mapping {
+
+        private final RecordFormat format;
+        private final String header;
+        private final int[] slotByColumn;
+        private final int lastColumn;
+
+        private DelimitedMapping(RecordFormat format, String header, int[] slotByColumn, int lastColumn) {
+            this.format = format;
+            this.header = header;
+            this.slotByColumn = slotByColumn;
+            this.lastColumn = lastColumn;
+        }
+
+        @Override
+        public String header() {
+            return header;
+        }
+
+        @Override
+        public ParsedTodo map(String line) throws IOException {
+            String[] values = new String[FIELDS];
+            Fields fields = new Fields(line, format);
+            int column = 0;
+            // Columns after the last mapped one are never scanned
+            while (column <= lastColumn && fields.hasNext()) {
+                int slot = slotByColumn[column++];
+                String value = fields.next(slot >= 0);
+                if (slot >= 0) {
+                    values[slot] = value;
+                }
+            }
+            if (column <= lastColumn) {
+                throw new IllegalArgumentException("Expected at least " + (lastColumn + 1) + " columns, found " + column);
+            }
+            return toParsedTodo(values);
+        }
     }
 
-    private static String[] getTokens(String line) {
-        return Arrays.stream(line.split(","))
-                .map(String::trim)
-                .toArray(String[]::new);
+    /**
+     * NDJSON objects are matched to fields by name. The key order of the first object is
+     * remembered, and later objects that list their keys in the same order, the usual case for
+     * generated files, resolve each key by position with a single comparison.
+     */
+    private final class NdjsonMapping implements Mapping {
+
+        private String[] keyOrder;
+        private int[] slotByPosition;
+
+        @Override
+        public String header() {
+            return null;
+        }
+
+        @Override
+        public ParsedTodo map(String line) throws IOException {
+            String[] values = new String[FIELDS];
+            List<String> keys = keyOrder == null ? new ArrayList<>() : null;
+            try (JsonParser parser = jsonCodecs.jsonFactory().createParser(line)) {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    throw new IllegalArgumentException("Expected a JSON object");
+                }
+                int position = 0;
+                String name;
+                while ((name = parser.nextFieldName()) != null) {
+                    int slot = keyOrder != null && position < keyOrder.length && keyOrder[position].equals(name)
+                            ? slotByPosition[position]
+                            : slotOf(name);
+                    JsonToken token = parser.nextToken();
+                    if (slot >= 0 && token.isScalarValue()) {
+                        values[slot] = parser.getValueAsString();
+                    } else {
+                        parser.skipChildren();
+                    }
+                    if (keys != null) {
+                        keys.add(name);
+                    }
+                    position++;
+                }
+            }
+            ParsedTodo todo = toParsedTodo(values);
+            if (keys != null) {
+                keyOrder = keys.toArray(String[]::new);
+                slotByPosition = keys.stream().mapToInt(TodoParser::slotOf).toArray();
+            }
+            return todo;
+        }
     }
 
-    private record Todo(
-            String id,
-            String title,
-            String description,
-            boolean completed,
-            String userId
-    ) {}
+    /**
+     * Walks the fields of one delimited line. In quoted formats a field wrapped in double quotes
+     * may contain the delimiter, and {@code ""} stands for a quote. Unquoted fields are trimmed.
+     */
+    private static final class Fields {
+
+        private final String line;
+        private final char delimiter;
+        private final boolean quoted;
+        private int position;
+        private boolean more = true;
+
+        private Fields(String line, RecordFormat format) {
+            this.line = line;
+            this.delimiter = format.delimiter();
+            this.quoted = format.quoted();
+        }
+
+        boolean hasNext() {
+            return more;
+        }
+
+        /**
+         * Moves past the next field, returning its value, or {@code null} when {@code keep} is false.
+         */
+        String next(boolean keep) {
+            int length = line.length();
+            String value;
+            if (quoted && position < length && line.charAt(position) == '"') {
+                StringBuilder builder = keep ? new StringBuilder() : null;
+                int i = position + 1;
+                while (true) {
+                    if (i >= length) {
+                        throw new IllegalArgumentException("Unterminated quoted field");
+                    }
+                    char c = line.charAt(i++);
+                    if (c == '"') {
+                        if (i < length && line.charAt(i) == '"') {
+                            i++;
+                        } else {
+                            break;
+                        }
+                    }
+                    if (builder != null) {
+                        builder.append(c);
+                    }
+                }
+                int end = line.indexOf(delimiter, i);
+                position = end < 0 ? length : end;
+                value = builder == null ? null : builder.toString();
+            } else {
+                int end = line.indexOf(delimiter, position);
+                if (end < 0) {
+                    end = length;
+                }
+                value = keep ? line.substring(position, end).trim() : null;
+                position = end;
+            }
+            more = position < length;
+            position++;
+            return value;
+        }
+    }
 }
@@ -0,0 +1,41 @@
+package us.dtaylor.filewatcher.infrastructure.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import us.dtaylor.filewatcher.infrastructure.AdaptivePublishRateController;
+
+import java.time.Duration;
+
+@Configuration
+public class PublishRateConfiguration {
+
+    @Bean
+    public AdaptivePublishRateController publishRateController(
+            MeterRegistry meterRegistry,
+            @Value("${filewatcher.publish.initial-rate:500}") double initialRate,
+            @Value("${filewatcher.publish.min-rate:50}") double minRate,
+            @Value("${filewatcher.publish.max-rate:5000}") double maxRate,
+            @Value("${filewatcher.publish.rate-step:50}") double rateStep,
+            @Value("${filewatcher.publish.backoff-ratio:0.7}") double backoffRatio,
+            @Value("${filewatcher.publish.target-ack-latency-ms:250}") long targetAckLatencyMs,
+            @Value("${filewatcher.publish.adjust-interval-ms:100}") long adjustIntervalMs,
+            @Value("${filewatcher.publish.min-window:8}") int minWindow,
+            @Value("${filewatcher.publish.max-window:2000}") int maxWindow) {
+        AdaptivePublishRateController controller = new AdaptivePublishRateController(new AdaptivePublishRateController.Settings(
+                initialRate, minRate, maxRate, rateStep, backoffRatio, Duration.ofMillis(targetAckLatencyMs),
+                Duration.ofMillis(adjustIntervalMs), minWindow, maxWindow));
+        Gauge.builder("filewatcher.publish.rate", controller, AdaptivePublishRateController::getRate)
+                .description("Current publish rate limit in messages per second")
+                .register(meterRegistry);
+        Gauge.builder("filewatcher.publish.window", controller, AdaptivePublishRateController::getWindow)
+                .description("Sends allowed to await their ack at once")
+                .register(meterRegistry);
+        Gauge.builder("filewatcher.publish.in-flight", controller, AdaptivePublishRateController::getInFlight)
+                .description("Sends awaiting their ack")
+                .register(meterRegistry);
+        return controller;
+    }
+}
@@ -0,0 +1,95 @@
+package us.dtaylor.filewatcher.infrastructure
+
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.TimeUnit
+
+class AdaptivePublishRateControllerSpec extends Specification {
+
+    static final long MS = TimeUnit.MILLISECONDS.toNanos(1)
+
+    long now = 0
+    AdaptivePublishRateController controller = controller(100, 1000)
+
+    AdaptivePublishRateController controller(double initialRate, double maxRate) {
+        new AdaptivePublishRateController(new AdaptivePublishRateController.Settings(
+                initialRate, 10, maxRate, 50, 0.5, Duration.ofMillis(100), Duration.ofMillis(100), 4, 1000), { now })
+    }
+
+    /** Sends one message that is acked after {@code latencyMs}, failing if asked to. */
+    void send(long latencyMs, boolean fail = false) {
+        now += controller.reserve()
+        def permit = controller.permit()
+        now += latencyMs * MS
+        permit.complete(fail ? new RuntimeException("broker down") : null)
+    }
+
+    def "sends are spaced evenly at the current rate"() {
+        expect:
+        controller.reserve() == 0
+        controller.reserve() == 10 * MS
+        controller.reserve() == 20 * MS
+    }
+
+    def "an idle spell does not bank slots for a burst"() {
+        given:
+        controller.reserve()
+
+        when:
+        now += 1000 * MS
+
+        then:
+        controller.reserve() == 0
+        controller.reserve() == 10 * MS
+    }
+
+    def "the window follows the rate by Little's law, with headroom"() {
+        expect:
+        controller.window == 20
+        controller(10, 1000).window == 4
+    }
+
+    def "the rate climbs by the step while acks are fast and publishing is held back"() {
+        when:
+        20.times { send(5) }
+
+        then:
+        controller.rate > 100
+    }
+
+    def "the rate backs off when acks are slower than the target"() {
+        when:
+        send(150)
+
+        then:
+        controller.rate == 50
+        controller.window == 10
+    }
+
+    def "the rate backs off when sends fail"() {
+        when:
+        send(150, true)
+        send(150, true)
+
+        then:
+        controller.rate == 25
+    }
+
+    def "the rate never exceeds the ceiling or drops below the floor"() {
+        given:
+        controller = controller(900, 950)
+
+        when:
+        200.times { send(1) }
+
+        then:
+        controller.rate == 950
+
+        when:
+        10.times { send(500, true) }
+
+        then:
+        controller.rate == 10
+    }
+}
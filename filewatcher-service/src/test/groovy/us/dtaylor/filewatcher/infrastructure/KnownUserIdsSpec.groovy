@@ -0,0 +1,128 @@
+package us.dtaylor.filewatcher.infrastructure
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.http.HttpStatus
+import org.springframework.web.reactive.function.client.ClientRequest
+import org.springframework.web.reactive.function.client.ClientResponse
+import org.springframework.web.reactive.function.client.ExchangeFunction
+import org.springframework.web.reactive.function.client.WebClient
+import reactor.core.publisher.Mono
+import spock.lang.Specification
+
+import java.nio.ByteBuffer
+
+class KnownUserIdsSpec extends Specification {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    KnownUserIds knownUserIds = new KnownUserIds(WebClient.builder(), meterRegistry, true, 'http://localhost:1',
+            60_000, 0.001, 1 << 20, 2_000)
+
+    Set<UUID> existing = []
+    List<URI> requested = []
+    HttpStatus failure = null
+
+    /** Answers user lookups from {@link #existing}, or with {@link #failure} when one is set. */
+    KnownUserIds withUserService() {
+        ExchangeFunction exchange = { ClientRequest request ->
+            requested << request.url()
+            def id = UUID.fromString(request.url().path.tokenize('/').last())
+            def status = failure ?: (id in existing ? HttpStatus.OK : HttpStatus.NOT_FOUND)
+            Mono.just(ClientResponse.create(status).build())
+        }
+        new KnownUserIds(WebClient.builder().exchangeFunction(exchange), meterRegistry, true, 'http://user-service',
+                60_000, 0.001, 1 << 20, 2_000)
+    }
+
+    static ByteBuffer export(List<UUID> ids) {
+        def buffer = ByteBuffer.allocate(ids.size() * 16)
+        ids.each { buffer.putLong(it.mostSignificantBits).putLong(it.leastSignificantBits) }
+        buffer.flip()
+    }
+
+    def "every id passes until the first export has loaded"() {
+        expect:
+        knownUserIds.mightExist(UUID.randomUUID())
+    }
+
+    def "every exported id is known and almost no other id is"() {
+        given:
+        def users = (1..10_000).collect { UUID.randomUUID() }
+
+        when:
+        knownUserIds.load(export(users))
+
+        then:
+        users.every { knownUserIds.mightExist(it) }
+        (1..10_000).count { knownUserIds.mightExist(UUID.randomUUID()) } < 50
+        meterRegistry.get('filewatcher.known-users.size').gauge().value() == 10_000
+    }
+
+    def "an empty export leaves no known users"() {
+        when:
+        knownUserIds.load(ByteBuffer.allocate(0))
+
+        then:
+        !knownUserIds.mightExist(UUID.randomUUID())
+    }
+
+    def "a failed refresh keeps the last set"() {
+        given:
+        def user = UUID.randomUUID()
+        knownUserIds.load(export([user]))
+
+        when:
+        knownUserIds.refresh().block()
+
+        then:
+        thrown(Exception)
+        knownUserIds.mightExist(user)
+        !knownUserIds.mightExist(UUID.randomUUID())
+    }
+
+    def "a miss is confirmed with user-service, once per id until the next refresh"() {
+        given:
+        def known = withUserService()
+        def created = UUID.randomUUID()
+        def unknown = UUID.randomUUID()
+        existing << created
+        known.load(export([]))
+
+        when:
+        def answers = [created, unknown, created, unknown].collect { known.exists(it).block() }
+
+        then:
+        answers == [true, false, true, false]
+        requested*.path == ["/api/v1/users/$created", "/api/v1/users/$unknown"]*.toString()
+
+        when: "a refresh forgets the answers"
+        known.load(export([]))
+        known.exists(unknown).block()
+
+        then:
+        requested.size() == 3
+    }
+
+    def "an id that user-service cannot answer for passes, and is asked about again"() {
+        given:
+        def known = withUserService()
+        def user = UUID.randomUUID()
+        failure = HttpStatus.SERVICE_UNAVAILABLE
+        known.load(export([]))
+
+        expect:
+        known.exists(user).block()
+        known.exists(user).block()
+        requested.size() == 2
+    }
+
+    def "a filter hit needs no lookup"() {
+        given:
+        def known = withUserService()
+        def user = UUID.randomUUID()
+        known.load(export([user]))
+
+        expect:
+        known.exists(user).block()
+        requested.isEmpty()
+    }
+}
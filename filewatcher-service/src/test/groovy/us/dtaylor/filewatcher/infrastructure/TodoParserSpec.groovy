@@ -0,0 +1,141 @@
+package us.dtaylor.filewatcher.infrastructure
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import spock.lang.Specification
+
+import java.nio.file.Path
+
+class TodoParserSpec extends Specification {
+
+    static final String USER_ID = 'e469436a-78c6-49cd-bda6-ed95071dc934'
+    static final String ID = '37a80d33-5d72-4923-ac58-200a51feadae'
+    static final String OTHER_ID = '9b2f64f1-0c3e-4a5a-9c57-2d1be1d6a0c4'
+
+    TodoParser parser = new TodoParser(new JsonCodecs(new ObjectMapper()))
+    ObjectMapper objectMapper = new ObjectMapper()
+
+    Map parse(TodoParser.Mapping mapping, String line) {
+        objectMapper.readValue(mapping.map(line).json(), Map)
+    }
+
+    def "columns are mapped by header name, in whatever order they come"() {
+        given:
+        def mapping = parser.compile(RecordFormat.CSV, 'userId,completed,title,id,description')
+
+        expect:
+        parse(mapping, "$USER_ID,True,Todo 1,37a80d33-5d72-4923-ac58-200a51feadae,Description") ==
+                [id: '37a80d33-5d72-4923-ac58-200a51feadae', title: 'Todo 1', description: 'Description',
+                 completed: true, userId: USER_ID]
+    }
+
+    def "quoted CSV fields may contain commas and escaped quotes"() {
+        given:
+        def mapping = parser.compile(RecordFormat.CSV, 'id,title,description,completed,userId')
+
+        when:
+        def todo = parse(mapping, "$ID,Todo 1,\"Our life is frittered away by detail... \"\"simplify\"\", simplify.\",False,$USER_ID")
+
+        then:
+        todo.description == 'Our life is frittered away by detail... "simplify", simplify.'
+        !todo.completed
+        todo.userId == USER_ID
+    }
+
+    def "unknown columns are skipped and optional ones may be missing"() {
+        given:
+        def mapping = parser.compile(RecordFormat.TSV, "\uFEFFTitle\tpriority\tuser_id\tnotes")
+
+        expect:
+        parse(mapping, "Todo 1\thigh\t$USER_ID\tanything") ==
+                [id: null, title: 'Todo 1', description: null, completed: false, userId: USER_ID]
+    }
+
+    def "a header without a required column is rejected"() {
+        when:
+        parser.compile(RecordFormat.CSV, header)
+
+        then:
+        def e = thrown(IllegalArgumentException)
+        e.message.contains(missing)
+
+        where:
+        header                     | missing
+        'id,description,userId'    | "'title'"
+        'id,title,completed'       | "'userId'"
+        'title,userId,title'       | 'twice'
+    }
+
+    def "a userId that is not a UUID is rejected"() {
+        given:
+        def mapping = parser.compile(RecordFormat.CSV, 'title,userId')
+
+        when:
+        mapping.map('Todo 1,not-a-user')
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "an id that is not a UUID is rejected, a missing or empty one is left out"() {
+        given:
+        def csv = parser.compile(RecordFormat.CSV, 'id,title,userId')
+        def ndjson = parser.compile(RecordFormat.NDJSON, null)
+
+        when:
+        csv.map("1,Todo 1,$USER_ID")
+
+        then:
+        def e = thrown(IllegalArgumentException)
+        e.message == 'id is not a UUID: 1'
+
+        when:
+        ndjson.map("""{"id":"todo-1","title":"Todo 1","userId":"$USER_ID"}""")
+
+        then:
+        thrown(IllegalArgumentException)
+
+        when:
+        def withoutId = parse(csv, ",Todo 1,$USER_ID")
+        def upperCase = parse(ndjson, """{"id":"${ID.toUpperCase()}","title":"Todo 1","userId":"$USER_ID"}""")
+
+        then:
+        withoutId.id == null
+        upperCase.id == ID
+    }
+
+    def "a line that ends before the last mapped column is rejected"() {
+        given:
+        def mapping = parser.compile(RecordFormat.CSV, 'id,title,description,completed,userId')
+
+        when:
+        mapping.map("$ID,Todo 1,Description")
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "NDJSON objects are mapped by key, whatever the key order"() {
+        given:
+        def mapping = parser.compile(RecordFormat.NDJSON, null)
+
+        expect:
+        parse(mapping, """{"id":"$ID","title":"First","completed":true,"userId":"$USER_ID","tags":["a"]}""") ==
+                [id: ID, title: 'First', description: null, completed: true, userId: USER_ID]
+        parse(mapping, """{"id":"$OTHER_ID","title":"Second","completed":"false","userId":"$USER_ID"}""").title == 'Second'
+        parse(mapping, """{"userId":"$USER_ID","description":"Reordered","title":"Third"}""") ==
+                [id: null, title: 'Third', description: 'Reordered', completed: false, userId: USER_ID]
+    }
+
+    def "the format follows the file extension"() {
+        expect:
+        RecordFormat.of(Path.of(name)) == format
+
+        where:
+        name                      | format
+        'todos.csv'               | RecordFormat.CSV
+        'todos-20231125-080932'   | RecordFormat.CSV
+        'todos.TSV'               | RecordFormat.TSV
+        'todos.ndjson'            | RecordFormat.NDJSON
+        'todos.jsonl'             | RecordFormat.NDJSON
+    }
+}
@@ -6,7 +6,7 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Profile;
 import us.dtaylor.todoservice.domain.Todo;
-import us.dtaylor.todoservice.infastructure.persistence.repository.MongoDbTodoRepository;
+import us.dtaylor.todoservice.domain.repository.TodoRepository;
 
 import java.util.UUID;
 
@@ -19,7 +19,7 @@ public class TodoServiceApplication {
 
     @Bean
     @Profile("db-seed")
-    public CommandLineRunner databaseSeeder(MongoDbTodoRepository todoRepository) {
+    public CommandLineRunner databaseSeeder(TodoRepository todoRepository) {
         return args -> {
             // Check if the database is empty
                 todoRepository.deleteAll().block();
@@ -0,0 +1,95 @@
+package us.dtaylor.todoservice.application.consumer;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over the ids of recently ingested todos. {@link #mightContain(UUID)} never misses
+ * an id added since the last two rotations, and is wrong about an unseen id with roughly the
+ * configured false-positive rate. Once {@code capacity} ids have been added the filter rotates:
+ * the current generation becomes the previous one and the oldest is dropped, so memory and the
+ * false-positive rate stay bounded however long the consumer runs.
+ */
+public class RecentIdFilter {
+
+    private final int capacity;
+    private final int bits;
+    private final int hashes;
+
+    private volatile Generation current;
+    private volatile Generation previous;
+
+    public RecentIdFilter(int capacity, double falsePositiveRate) {
+        if (capacity <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("capacity must be positive and falsePositiveRate in (0, 1)");
+        }
+        this.capacity = capacity;
+        double ln2 = Math.log(2);
+        this.bits = (int) Math.min(Integer.MAX_VALUE - 64, Math.ceil(-capacity * Math.log(falsePositiveRate) / (ln2 * ln2)));
+        this.hashes = Math.max(1, (int) Math.round((double) bits / capacity * ln2));
+        this.current = new Generation(bits);
+        this.previous = new Generation(bits);
+    }
+
+    public boolean mightContain(UUID id) {
+        long h1 = mix(id.getMostSignificantBits() ^ id.getLeastSignificantBits());
+        long h2 = mix(id.getLeastSignificantBits() + 0x9E3779B97F4A7C15L) | 1;
+        return current.contains(h1, h2, hashes, bits) || previous.contains(h1, h2, hashes, bits);
+    }
+
+    public void add(UUID id) {
+        long h1 = mix(id.getMostSignificantBits() ^ id.getLeastSignificantBits());
+        long h2 = mix(id.getLeastSignificantBits() + 0x9E3779B97F4A7C15L) | 1;
+        Generation generation = current;
+        generation.add(h1, h2, hashes, bits);
+        if (generation.count.incrementAndGet() == capacity) {
+            rotate(generation);
+        }
+    }
+
+    private synchronized void rotate(Generation full) {
+        if (current == full) {
+            previous = full;
+            current = new Generation(bits);
+        }
+    }
+
+    // SplitMix64 finalizer; UUIDs from the filewatcher are random but ids from other sources may not be
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static final class Generation {
+        private final AtomicLongArray words;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private Generation(int bits) {
+            this.words = new AtomicLongArray((bits + 63) >>> 6);
+        }
+
+        private boolean contains(long h1, long h2, int hashes, int bits) {
+            for (int i = 0; i < hashes; i++) {
+                int bit = (int) Math.floorMod(h1 + i * h2, (long) bits);
+                if ((words.get(bit >>> 6) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void add(long h1, long h2, int hashes, int bits) {
+            for (int i = 0; i < hashes; i++) {
+                int bit = (int) Math.floorMod(h1 + i * h2, (long) bits);
+                long mask = 1L << bit;
+                int word = bit >>> 6;
+                long value;
+                while (((value = words.get(word)) & mask) == 0 && !words.compareAndSet(word, value, value | mask)) {
+                    Thread.onSpinWait();
+                }
+            }
+        }
+    }
+}
@@ -1,45 +1,143 @@
 package us.dtaylor.todoservice.application.consumer;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 import us.dtaylor.todoservice.domain.Todo;
 import us.dtaylor.todoservice.domain.service.TodoService;
+import us.dtaylor.todoservice.infastructure.codec.JsonCodecs;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @Service
 public class TodoServiceKafkaConsumer {
 
+    /** Epoch millis at which the filewatcher picked up the source file, as ASCII digits. */
+    public static final String INGEST_TIMESTAMP_HEADER = "ingest-timestamp";
+
+    private static final String PROCESSING_TIMER = "todo.consumer.processing";
+    private static final String INGEST_LATENCY_TIMER = "todo.ingest.latency";
+    private static final String DUPLICATES_COUNTER = "todo.consumer.duplicates";
+
     private final TodoService todoService;
+    private final RecentIdFilter recentIds;
+    private final JsonCodecs jsonCodecs;
+    private final MeterRegistry meterRegistry;
+    private final ObservationRegistry observationRegistry;
+    private final Timer processedTimer;
+    private final Timer failedTimer;
+    private final Timer ingestLatency;
+    private final Counter duplicates;
 
-    public TodoServiceKafkaConsumer(TodoService todoService) {
+    public TodoServiceKafkaConsumer(TodoService todoService,
+                                    RecentIdFilter recentIds,
+                                    JsonCodecs jsonCodecs,
+                                    MeterRegistry meterRegistry,
+                                    ObservationRegistry observationRegistry) {
         this.todoService = todoService;
+        this.recentIds = recentIds;
+        this.jsonCodecs = jsonCodecs;
+        this.meterRegistry = meterRegistry;
+        this.observationRegistry = observationRegistry;
+        this.processedTimer = processingTimer("success", meterRegistry);
+        this.failedTimer = processingTimer("error", meterRegistry);
+        this.ingestLatency = Timer.builder(INGEST_LATENCY_TIMER)
+                .description("Time from a file being picked up by the filewatcher to its todo being saved")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.duplicates = Counter.builder(DUPLICATES_COUNTER)
+                .description("Redelivered todo messages dropped because the stored todo was already identical")
+                .register(meterRegistry);
     }
 
     @KafkaListener(topics = "todo-topic", groupId = "todo-group")
-    public void listen(String message) {
-        Mono.just(toDomain(message))
-                .flatMap(todoService::createTodo)
-                .subscribe();
+    public void listen(@Payload byte[] message,
+                       @Header(name = INGEST_TIMESTAMP_HEADER, required = false) byte[] ingestTimestamp) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        // the listener container's receive span; the save completes after listen returns
+        Observation receive = observationRegistry.getCurrentObservation();
+        // decoded inside the pipeline, so a malformed message is timed and logged as an error
+        Mono.fromCallable(() -> toDomain(message))
+                .flatMap(this::ingest)
+                .doOnSuccess(todo -> {
+                    sample.stop(processedTimer);
+                    recordIngestLatency(ingestTimestamp);
+                })
+                .doOnError(e -> sample.stop(failedTimer))
+                .contextWrite(context -> receive == null ? context : context.put(ObservationThreadLocalAccessor.KEY, receive))
+                .subscribe(todo -> {}, e -> log.error("Error processing todo message: {}", e.getMessage()));
+    }
+
+    /**
+     * Upserts the todo under its source id. Ids the filter has not seen are written straight
+     * away; for a possible repeat the stored todo is read first and the write skipped when
+     * nothing changed, so a false positive costs a read, never a lost todo.
+     */
+    private Mono<Todo> ingest(Todo todo) {
+        UUID id = todo.getId();
+        if (id == null || !recentIds.mightContain(id)) {
+            return save(todo);
+        }
+        return todoService.getTodoById(id)
+                .filter(todo::equals)
+                .doOnNext(existing -> duplicates.increment())
+                .switchIfEmpty(Mono.defer(() -> save(todo)));
+    }
+
+    private Mono<Todo> save(Todo todo) {
+        return todoService.ingestTodo(todo)
+                .doOnNext(saved -> recentIds.add(saved.getId()));
+    }
+
+    private void recordIngestLatency(byte[] ingestTimestamp) {
+        if (ingestTimestamp == null) {
+            return;
+        }
+        try {
+            long ingestedAt = Long.parseLong(new String(ingestTimestamp, StandardCharsets.US_ASCII));
+            ingestLatency.record(Math.max(0, System.currentTimeMillis() - ingestedAt), TimeUnit.MILLISECONDS);
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring malformed {} header", INGEST_TIMESTAMP_HEADER);
+        }
+    }
+
+    private static Timer processingTimer(String outcome, MeterRegistry meterRegistry) {
+        return Timer.builder(PROCESSING_TIMER)
+                .description("Time from receiving a todo message to the todo being saved")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
     }
 
-    private static Todo toDomain(String message) {
-        ObjectMapper objectMapper = new ObjectMapper();
+    /**
+     * Decodes the record bytes with the shared reader, without building a String first.
+     */
+    private Todo toDomain(byte[] message) {
         try {
-            TodoMessage todoMessage = objectMapper.readValue(message, TodoMessage.class);
+            TodoMessage todoMessage = jsonCodecs.readTodoMessage(message);
             return new Todo()
-                    .setId(UUID.fromString(todoMessage.id()))
+                    .setId(todoMessage.id() == null ? null : UUID.fromString(todoMessage.id()))
                     .setTitle(todoMessage.title())
                     .setDescription(todoMessage.description())
                     .setCompleted(todoMessage.completed())
                     .setUserId(UUID.fromString(todoMessage.userId()));
-        } catch (Exception e) {
+        } catch (IOException e) {
             log.error("Error parsing todo message", e);
-            throw new RuntimeException(e);
+            throw new UncheckedIOException(e);
         }
     }
 
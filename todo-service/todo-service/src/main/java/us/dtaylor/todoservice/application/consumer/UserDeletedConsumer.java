@@ -0,0 +1,83 @@
+package us.dtaylor.todoservice.application.consumer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.stereotype.Service;
+import us.dtaylor.todoservice.domain.service.TodoService;
+import us.dtaylor.todoservice.infastructure.codec.JsonCodecs;
+import us.dtaylor.todoservice.infastructure.replica.UserEvent;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Removes a user's todos once user-service reports the user deleted. The instances share one
+ * consumer group, so each deletion is cleaned up once.
+ *
+ * <p>The listener waits for the chunked delete to finish before the offset is committed, so a
+ * cleanup interrupted by a restart is redelivered and simply carries on with what is left. That
+ * holds the poll thread for the whole cascade, so records are polled one at a time and the poll
+ * interval is raised to fit the largest expected cascade (a user with a million todos is a
+ * thousand chunks of 1000, a few minutes at the default pause). A cascade that still overruns it
+ * is handed to another instance, which carries on just the same.
+ */
+@Slf4j
+@Service
+public class UserDeletedConsumer {
+
+    private final TodoService todoService;
+    private final JsonCodecs jsonCodecs;
+    private final int chunkSize;
+    private final Duration pause;
+    private final Counter deletedTodos;
+
+    public UserDeletedConsumer(TodoService todoService,
+                               JsonCodecs jsonCodecs,
+                               MeterRegistry meterRegistry,
+                               @Value("${todo.user-cleanup.chunk-size:1000}") int chunkSize,
+                               @Value("${todo.user-cleanup.pause-ms:100}") long pauseMs) {
+        this.todoService = todoService;
+        this.jsonCodecs = jsonCodecs;
+        this.chunkSize = chunkSize;
+        this.pause = Duration.ofMillis(pauseMs);
+        this.deletedTodos = Counter.builder("todo.user-cleanup.deleted")
+                .description("Todos deleted because their user was deleted")
+                .register(meterRegistry);
+    }
+
+    @KafkaListener(topics = "${user.events.topic:user-events}",
+            groupId = "${todo.user-cleanup.group-id:todo-user-cleanup}",
+            containerFactory = "userEventListenerContainerFactory",
+            autoStartup = "${todo.user-cleanup.enabled:true}",
+            properties = {
+                    "max.poll.records=1",
+                    "max.poll.interval.ms=${todo.user-cleanup.max-poll-interval-ms:1800000}"
+            })
+    public void listen(@Payload(required = false) byte[] message) {
+        UserEvent event = parse(message);
+        if (event == null || event.type() != UserEvent.Type.DELETED || event.id() == null) {
+            return;
+        }
+        Long deleted = todoService.deleteAllTodosByUserId(event.id(), chunkSize, pause).block();
+        if (deleted != null && deleted > 0) {
+            deletedTodos.increment(deleted);
+            log.info("Deleted {} todos of deleted user {}", deleted, event.id());
+        }
+    }
+
+    private UserEvent parse(byte[] message) {
+        if (message == null) {
+            return null;
+        }
+        try {
+            return jsonCodecs.readUserEvent(message);
+        } catch (IOException e) {
+            log.warn("Skipping malformed user event: {}", e.getMessage());
+            return null;
+        }
+    }
+}
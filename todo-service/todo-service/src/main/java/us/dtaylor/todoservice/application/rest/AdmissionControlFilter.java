@@ -0,0 +1,165 @@
+package us.dtaylor.todoservice.application.rest;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Sheds load before it reaches the handlers. Requests are classed as point reads, list scans or
+ * writes, then admitted in two steps:
+ * <ol>
+ *     <li>A global in-flight cap. Past {@code maxInFlight} everything is refused with 503; list
+ *     scans are refused once {@code scanAdmissionRatio} of the cap is in use, which keeps the
+ *     remaining headroom for cheap reads and writes.</li>
+ *     <li>A token bucket per principal: the JWT subject, or the client address for anonymous
+ *     calls. An empty bucket answers 429 with a {@code Retry-After}. A scan costs
+ *     {@code scanCost} tokens, anything else one.</li>
+ * </ol>
+ * Buckets of principals idle for {@code idleExpiry} are dropped.
+ */
+public class AdmissionControlFilter implements WebFilter, Ordered {
+
+    /** Runs after the security filter chain, so the authenticated principal is known. */
+    public static final int ORDER = 0;
+
+    enum RequestClass {
+        READ, SCAN, WRITE
+    }
+
+    private final Settings settings;
+    private final LongSupplier nanoTime;
+    private final List<PathPattern> scanPaths;
+    private final List<PathPattern> exemptPaths;
+    private final Cache<String, TokenBucket> buckets;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final int scanLimit;
+    private final MeterRegistry meterRegistry;
+
+    public AdmissionControlFilter(Settings settings, MeterRegistry meterRegistry) {
+        this(settings, meterRegistry, System::nanoTime);
+    }
+
+    AdmissionControlFilter(Settings settings, MeterRegistry meterRegistry, LongSupplier nanoTime) {
+        this.settings = settings;
+        this.nanoTime = nanoTime;
+        this.meterRegistry = meterRegistry;
+        this.scanPaths = settings.scanPaths().stream().map(PathPatternParser.defaultInstance::parse).toList();
+        this.exemptPaths = settings.exemptPaths().stream().map(PathPatternParser.defaultInstance::parse).toList();
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(settings.maxPrincipals())
+                .expireAfterAccess(settings.idleExpiry())
+                .build();
+        this.scanLimit = Math.max(1, (int) (settings.maxInFlight() * settings.scanAdmissionRatio()));
+        Gauge.builder("http.server.admission.in-flight", inFlight, AtomicInteger::get).register(meterRegistry);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        PathContainer path = request.getPath().pathWithinApplication();
+        if (matches(exemptPaths, path)) {
+            return chain.filter(exchange);
+        }
+        RequestClass requestClass = classify(request.getMethod(), path);
+        int admitted = inFlight.incrementAndGet();
+        if (admitted > (requestClass == RequestClass.SCAN ? scanLimit : settings.maxInFlight())) {
+            inFlight.decrementAndGet();
+            return reject(exchange, HttpStatus.SERVICE_UNAVAILABLE, requestClass, 1);
+        }
+        return exchange.getPrincipal()
+                .map(Principal::getName)
+                .defaultIfEmpty(clientAddress(request))
+                .flatMap(principal -> {
+                    long waitNanos = bucket(principal).tryAcquire(cost(requestClass), nanoTime.getAsLong());
+                    if (waitNanos > 0) {
+                        inFlight.decrementAndGet();
+                        return reject(exchange, HttpStatus.TOO_MANY_REQUESTS, requestClass,
+                                Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999)));
+                    }
+                    return chain.filter(exchange).doFinally(signal -> inFlight.decrementAndGet());
+                });
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    RequestClass classify(HttpMethod method, PathContainer path) {
+        if (!HttpMethod.GET.equals(method) && !HttpMethod.HEAD.equals(method)) {
+            return RequestClass.WRITE;
+        }
+        return matches(scanPaths, path) ? RequestClass.SCAN : RequestClass.READ;
+    }
+
+    private TokenBucket bucket(String principal) {
+        return buckets.get(principal, key -> new TokenBucket(settings.ratePerSecond(), settings.burst(), nanoTime.getAsLong()));
+    }
+
+    private double cost(RequestClass requestClass) {
+        return requestClass == RequestClass.SCAN ? settings.scanCost() : 1;
+    }
+
+    private Mono<Void> reject(ServerWebExchange exchange, HttpStatus status, RequestClass requestClass, long retryAfterSeconds) {
+        Counter.builder("http.server.admission.rejected")
+                .description("Requests shed by admission control")
+                .tag("reason", status == HttpStatus.TOO_MANY_REQUESTS ? "rate-limited" : "overloaded")
+                .tag("class", requestClass.name().toLowerCase())
+                .register(meterRegistry)
+                .increment();
+        exchange.getResponse().setStatusCode(status);
+        exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        return exchange.getResponse().setComplete();
+    }
+
+    private static boolean matches(List<PathPattern> patterns, PathContainer path) {
+        for (PathPattern pattern : patterns) {
+            if (pattern.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String clientAddress(ServerHttpRequest request) {
+        InetSocketAddress address = request.getRemoteAddress();
+        return address == null || address.getAddress() == null ? "anonymous" : address.getAddress().getHostAddress();
+    }
+
+    public record Settings(int maxInFlight,
+                           double scanAdmissionRatio,
+                           double ratePerSecond,
+                           double burst,
+                           double scanCost,
+                           List<String> scanPaths,
+                           List<String> exemptPaths,
+                           long maxPrincipals,
+                           Duration idleExpiry) {
+    }
+}
@@ -1,6 +1,7 @@
 package us.dtaylor.todoservice.application.rest;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -9,7 +10,10 @@ import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 import us.dtaylor.todoservice.domain.exceptions.ClientException;
 import us.dtaylor.todoservice.domain.exceptions.ClientTimeOutException;
+import us.dtaylor.todoservice.domain.exceptions.InvalidFieldsException;
+import us.dtaylor.todoservice.domain.exceptions.InvalidFilterException;
 import us.dtaylor.todoservice.domain.exceptions.UserNotFoundException;
+import us.dtaylor.todoservice.domain.exceptions.WriteBacklogException;
 
 @Slf4j
 @ControllerAdvice
@@ -35,6 +39,20 @@ public class GlobalExceptionHandler {
         return Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ErrorResponse(HttpStatus.INTERNAL_SERVER_ERROR.value(), HttpStatus.INTERNAL_SERVER_ERROR.getReasonPhrase(), ex.getMessage())));
     }
 
+    @ExceptionHandler(InvalidFilterException.class)
+    public Mono<ResponseEntity<ErrorResponse>> handleInvalidFilterException(InvalidFilterException ex, ServerWebExchange exchange) {
+        log.error("Invalid filter exception: {}", ex.getMessage());
+        HttpStatus status = HttpStatus.BAD_REQUEST;
+        return Mono.just(ResponseEntity.status(status).body(new ErrorResponse(status.value(), status.getReasonPhrase(), ex.getMessage())));
+    }
+
+    @ExceptionHandler(InvalidFieldsException.class)
+    public Mono<ResponseEntity<ErrorResponse>> handleInvalidFieldsException(InvalidFieldsException ex, ServerWebExchange exchange) {
+        log.error("Invalid fields exception: {}", ex.getMessage());
+        HttpStatus status = HttpStatus.BAD_REQUEST;
+        return Mono.just(ResponseEntity.status(status).body(new ErrorResponse(status.value(), status.getReasonPhrase(), ex.getMessage())));
+    }
+
     @ExceptionHandler(UserNotFoundException.class)
     public Mono<ResponseEntity<ErrorResponse>> handleNotFoundException(UserNotFoundException ex, ServerWebExchange exchange) {
         log.error("Not found exception: {}", ex.getMessage());
@@ -42,6 +60,14 @@ public class GlobalExceptionHandler {
                 .body(new ErrorResponse(HttpStatus.NOT_FOUND.value(), HttpStatus.NOT_FOUND.getReasonPhrase(), ex.getMessage())));
     }
 
+    @ExceptionHandler(WriteBacklogException.class)
+    public Mono<ResponseEntity<ErrorResponse>> handleWriteBacklogException(WriteBacklogException ex, ServerWebExchange exchange) {
+        log.warn("Write backlog exception: {}", ex.getMessage());
+        HttpStatus status = HttpStatus.SERVICE_UNAVAILABLE;
+        return Mono.just(ResponseEntity.status(status)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(new ErrorResponse(status.value(), status.getReasonPhrase(), ex.getMessage())));
+    }
 
     public record ErrorResponse(int statusCode, String reason, String message) {
     }
@@ -2,6 +2,7 @@ package us.dtaylor.todoservice.application.rest;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -11,13 +12,24 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import us.dtaylor.todoservice.application.rest.request.BulkDeleteTodosRequest;
+import us.dtaylor.todoservice.application.rest.request.BulkUpdateTodosRequest;
 import us.dtaylor.todoservice.application.rest.request.CreateTodoRequest;
+import us.dtaylor.todoservice.application.rest.request.TodoFilterRequest;
+import us.dtaylor.todoservice.application.rest.response.BulkOperationResponse;
 import us.dtaylor.todoservice.domain.Todo;
+import us.dtaylor.todoservice.domain.TodoField;
+import us.dtaylor.todoservice.domain.TodoFilter;
+import us.dtaylor.todoservice.domain.exceptions.InvalidFilterException;
 import us.dtaylor.todoservice.domain.service.TodoService;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 @CrossOrigin(origins = "http://localhost:4200")
@@ -38,23 +50,45 @@ public class TodoController {
                 .map(ResponseEntity::ok);
     }
 
+    /**
+     * @param fields comma-separated todo fields to return, such as {@code id,title,completed};
+     *               all of them when absent
+     */
     @PreAuthorize("hasRole('APP-ADMIN')")
     @GetMapping
-    public Mono<ResponseEntity<Flux<Todo>>> getAllTodos() {
-        Flux<Todo> todoFlux = todoService.getAllTodos();
+    public Mono<ResponseEntity<Flux<?>>> getAllTodos(@RequestParam(required = false) String fields) {
+        Set<TodoField> selected = TodoField.parse(fields);
+        Flux<?> todoFlux = sparse(todoService.getAllTodos(selected), selected);
         return Mono.just(ResponseEntity.ok().body(todoFlux));
     }
 
+    /**
+     * Tagged with the todo's version, so a request whose {@code If-None-Match} still matches is
+     * answered 304 without a body.
+     */
     @GetMapping("/{id}")
-    public Mono<ResponseEntity<Todo>> findById(@PathVariable String id) {
+    public Mono<ResponseEntity<Todo>> findById(@PathVariable String id, ServerHttpRequest request) {
         return todoService.getTodoById(UUID.fromString(id))
-                .map(ResponseEntity::ok);
+                .map(todo -> EntityTags.ok(EntityTags.of(todo.getVersion()), request).body(todo));
     }
 
+    /**
+     * Tagged with the user's change marker, which is read first and without querying the todos;
+     * on a matching {@code If-None-Match} the 304 goes out before the list is queried at all.
+     *
+     * @param fields comma-separated todo fields to return, such as {@code id,title,completed};
+     *               all of them when absent
+     */
     @GetMapping("/user/{userId}")
-    public Mono<ResponseEntity<Flux<Todo>>> getAllTodosByUserId(@PathVariable String userId) {
-        Flux<Todo> todoFlux = todoService.getAllTodosByUserId(UUID.fromString(userId));
-        return Mono.just(ResponseEntity.ok().body(todoFlux));
+    public Mono<ResponseEntity<Flux<?>>> getAllTodosByUserId(@PathVariable String userId,
+                                                             @RequestParam(required = false) String fields,
+                                                             ServerHttpRequest request) {
+        UUID owner = UUID.fromString(userId);
+        Set<TodoField> selected = TodoField.parse(fields);
+        Flux<?> todoFlux = sparse(todoService.getAllTodosByUserId(owner, selected), selected);
+        return todoService.getTodosVersion(owner)
+                .map(version -> EntityTags.ok(EntityTags.of(version, selected), request).<Flux<?>>body(todoFlux))
+                .defaultIfEmpty(ResponseEntity.ok().body(todoFlux));
     }
 
     @PutMapping("/{id}")
@@ -69,6 +103,60 @@ public class TodoController {
         return todoService.deleteTodo(UUID.fromString(id)).then(Mono.just(ResponseEntity.ok().build()));
     }
 
+    /**
+     * Completes or reopens every todo the filter selects in one update.
+     */
+    @PostMapping("/bulk-update")
+    public Mono<ResponseEntity<BulkOperationResponse>> bulkUpdate(@RequestBody BulkUpdateTodosRequest request) {
+        return Mono.fromSupplier(() -> {
+                    if (request.completed() == null) {
+                        throw new InvalidFilterException("A bulk update needs the completed value to set");
+                    }
+                    return getFilter(request.filter());
+                })
+                .flatMap(filter -> todoService.updateCompleted(filter, request.completed()))
+                .map(affected -> ResponseEntity.ok(new BulkOperationResponse(affected)));
+    }
+
+    /**
+     * Deletes every todo the filter selects in one delete.
+     */
+    @PostMapping("/bulk-delete")
+    public Mono<ResponseEntity<BulkOperationResponse>> bulkDelete(@RequestBody BulkDeleteTodosRequest request) {
+        return Mono.fromSupplier(() -> getFilter(request.filter()))
+                .flatMap(todoService::deleteTodos)
+                .map(affected -> ResponseEntity.ok(new BulkOperationResponse(affected)));
+    }
+
+    /**
+     * Renders only the selected fields, in their usual order, so unselected ones are left out of
+     * the JSON rather than sent as null.
+     */
+    private static Flux<?> sparse(Flux<Todo> todos, Set<TodoField> fields) {
+        if (fields.containsAll(TodoField.ALL)) {
+            return todos;
+        }
+        return todos.map(todo -> {
+            Map<String, Object> values = new LinkedHashMap<>();
+            fields.forEach(field -> values.put(field.property(), field.get(todo)));
+            return values;
+        });
+    }
+
+    private static TodoFilter getFilter(TodoFilterRequest request) {
+        if (request == null) {
+            throw new InvalidFilterException("A bulk operation needs a filter");
+        }
+        try {
+            return new TodoFilter(
+                    request.ids() == null ? null : request.ids().stream().map(UUID::fromString).toList(),
+                    request.userId() == null ? null : UUID.fromString(request.userId()),
+                    request.completed());
+        } catch (IllegalArgumentException e) {
+            throw new InvalidFilterException("Invalid id in filter: " + e.getMessage());
+        }
+    }
+
     private static Todo getTodo(CreateTodoRequest request) {
         return new Todo()
                 .setDescription(request.description())
@@ -0,0 +1,4 @@
+package us.dtaylor.todoservice.application.rest.request;
+
+public record BulkDeleteTodosRequest(TodoFilterRequest filter) {
+}
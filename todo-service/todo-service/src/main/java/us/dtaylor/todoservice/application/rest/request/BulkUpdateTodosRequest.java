@@ -0,0 +1,8 @@
+package us.dtaylor.todoservice.application.rest.request;
+
+/**
+ * @param completed boxed so that a request without it is rejected rather than read as
+ *                  {@code false}
+ */
+public record BulkUpdateTodosRequest(TodoFilterRequest filter, Boolean completed) {
+}
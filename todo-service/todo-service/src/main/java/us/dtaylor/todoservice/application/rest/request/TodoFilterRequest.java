@@ -0,0 +1,6 @@
+package us.dtaylor.todoservice.application.rest.request;
+
+import java.util.List;
+
+public record TodoFilterRequest(List<String> ids, String userId, Boolean completed) {
+}
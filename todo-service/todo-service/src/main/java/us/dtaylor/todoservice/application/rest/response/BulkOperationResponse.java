@@ -0,0 +1,4 @@
+package us.dtaylor.todoservice.application.rest.response;
+
+public record BulkOperationResponse(long affected) {
+}
@@ -1,5 +1,6 @@
 package us.dtaylor.todoservice.domain;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -23,5 +24,15 @@ public class Todo {
     private String description;
     private boolean completed;
     private UUID userId;
-}
+    /**
+     * Changes on every write of the stored todo; {@code null} if the store does not keep one.
+     * Sent as the ETag rather than in the body.
+     */
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    private Long version;
 
+    public Todo(UUID id, String title, String description, boolean completed, UUID userId) {
+        this(id, title, description, completed, userId, null);
+    }
+}
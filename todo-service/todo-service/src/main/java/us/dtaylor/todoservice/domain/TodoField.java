@@ -0,0 +1,63 @@
+package us.dtaylor.todoservice.domain;
+
+import us.dtaylor.todoservice.domain.exceptions.InvalidFieldsException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The fields of a {@link Todo} a reader can ask for, so that stores can leave the others, such as
+ * a long description, on disk.
+ */
+public enum TodoField {
+    ID("id", Todo::getId),
+    TITLE("title", Todo::getTitle),
+    DESCRIPTION("description", Todo::getDescription),
+    COMPLETED("completed", Todo::isCompleted),
+    USER_ID("userId", Todo::getUserId);
+
+    public static final Set<TodoField> ALL = Collections.unmodifiableSet(EnumSet.allOf(TodoField.class));
+
+    private final String property;
+    private final Function<Todo, Object> getter;
+
+    TodoField(String property, Function<Todo, Object> getter) {
+        this.property = property;
+        this.getter = getter;
+    }
+
+    /**
+     * The name of the field on {@link Todo} and in its JSON.
+     */
+    public String property() {
+        return property;
+    }
+
+    public Object get(Todo todo) {
+        return getter.apply(todo);
+    }
+
+    /**
+     * Parses a comma-separated list of property names such as {@code id,title,completed};
+     * {@code null} or blank selects every field.
+     *
+     * @throws InvalidFieldsException if a name is not a field of a todo
+     */
+    public static Set<TodoField> parse(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return ALL;
+        }
+        Set<TodoField> selected = EnumSet.noneOf(TodoField.class);
+        for (String name : fields.split(",")) {
+            String trimmed = name.trim();
+            selected.add(Arrays.stream(values())
+                    .filter(field -> field.property.equals(trimmed))
+                    .findFirst()
+                    .orElseThrow(() -> new InvalidFieldsException("Unknown todo field '" + trimmed + "'")));
+        }
+        return selected;
+    }
+}
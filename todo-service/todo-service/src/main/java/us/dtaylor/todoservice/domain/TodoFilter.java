@@ -0,0 +1,33 @@
+package us.dtaylor.todoservice.domain;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Selects todos for a bulk operation. Every criterion that is set must match; {@code ids} and
+ * {@code userId} narrow the candidates, {@code completed} only filters them.
+ */
+public record TodoFilter(List<UUID> ids, UUID userId, Boolean completed) {
+
+    public static TodoFilter byIds(List<UUID> ids) {
+        return new TodoFilter(ids, null, null);
+    }
+
+    public static TodoFilter byUser(UUID userId, Boolean completed) {
+        return new TodoFilter(null, userId, completed);
+    }
+
+    /**
+     * Whether the filter names ids or a user; a filter on {@code completed} alone would select
+     * todos across every user.
+     */
+    public boolean isTargeted() {
+        return (ids != null && !ids.isEmpty()) || userId != null;
+    }
+
+    public boolean matches(Todo todo) {
+        return (ids == null || ids.contains(todo.getId()))
+                && (userId == null || userId.equals(todo.getUserId()))
+                && (completed == null || completed == todo.isCompleted());
+    }
+}
@@ -0,0 +1,7 @@
+package us.dtaylor.todoservice.domain.exceptions;
+
+public class InvalidFieldsException extends RuntimeException {
+    public InvalidFieldsException(String message) {
+        super(message);
+    }
+}
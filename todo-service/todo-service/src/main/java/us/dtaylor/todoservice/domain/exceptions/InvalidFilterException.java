@@ -0,0 +1,7 @@
+package us.dtaylor.todoservice.domain.exceptions;
+
+public class InvalidFilterException extends RuntimeException {
+    public InvalidFilterException(String message) {
+        super(message);
+    }
+}
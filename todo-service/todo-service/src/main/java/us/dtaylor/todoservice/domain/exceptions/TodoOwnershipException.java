@@ -0,0 +1,9 @@
+package us.dtaylor.todoservice.domain.exceptions;
+
+import java.util.UUID;
+
+public class TodoOwnershipException extends RuntimeException {
+    public TodoOwnershipException(UUID todoId) {
+        super("Todo " + todoId + " belongs to another user");
+    }
+}
@@ -0,0 +1,11 @@
+package us.dtaylor.todoservice.domain.exceptions;
+
+/**
+ * Too many writes are waiting for the database; nothing was written and the write can be
+ * retried later.
+ */
+public class WriteBacklogException extends RuntimeException {
+    public WriteBacklogException(int pending) {
+        super(pending + " todos are waiting to be written, try again later");
+    }
+}
@@ -3,20 +3,104 @@ package us.dtaylor.todoservice.domain.repository;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import us.dtaylor.todoservice.domain.Todo;
+import us.dtaylor.todoservice.domain.TodoField;
+import us.dtaylor.todoservice.domain.TodoFilter;
+import us.dtaylor.todoservice.domain.exceptions.TodoOwnershipException;
 
+import java.util.Collection;
+import java.util.Set;
 import java.util.UUID;
 
 public interface TodoRepository {
 
     Flux<Todo> findAllByUserId(UUID userId);
 
+    /**
+     * Reads the user's todos for a caller that only needs {@code fields}; the others may be left
+     * unset. This default reads whole todos; stores that can project override it.
+     */
+    default Flux<Todo> findAllByUserId(UUID userId, Set<TodoField> fields) {
+        return findAllByUserId(userId);
+    }
+
     Mono<Void> deleteAll();
 
     Mono<Todo> save(Todo todo);
 
+    /**
+     * Saves the todo, which must have an id, unless that id is stored under another user; then
+     * nothing is written and it errors with {@link TodoOwnershipException}. This default reads
+     * before it writes; stores that can make the write itself conditional override it.
+     */
+    default Mono<Todo> saveForOwner(Todo todo) {
+        return findById(todo.getId())
+                .filter(existing -> !todo.getUserId().equals(existing.getUserId()))
+                .flatMap(existing -> Mono.<Todo>error(new TodoOwnershipException(todo.getId())))
+                .switchIfEmpty(Mono.defer(() -> save(todo)));
+    }
+
+    Flux<Todo> saveAll(Collection<Todo> todos);
+
     Flux<Todo> findAll();
 
+    /**
+     * Reads every todo for a caller that only needs {@code fields}; the others may be left unset.
+     * This default reads whole todos; stores that can project override it.
+     */
+    default Flux<Todo> findAll(Set<TodoField> fields) {
+        return findAll();
+    }
+
     Mono<Void> deleteById(UUID id);
 
+    /**
+     * Deletes up to {@code limit} of the user's todos and emits how many went; zero once the
+     * user has none left.
+     */
+    Mono<Long> deleteAllByUserId(UUID userId, int limit);
+
     Mono<Todo> findById(UUID id);
+
+    /**
+     * A value that changes whenever any of the user's todos is written or deleted, read without
+     * touching the todos themselves. Empty when this store does not keep one.
+     */
+    default Mono<Long> userVersion(UUID userId) {
+        return Mono.empty();
+    }
+
+    /**
+     * Sets {@code completed} on every todo the filter matches and emits how many changed. This
+     * default reads and saves each todo; stores that can update in place override it.
+     */
+    default Mono<Long> updateCompleted(TodoFilter filter, boolean completed) {
+        return candidates(filter)
+                .filter(todo -> filter.matches(todo) && todo.isCompleted() != completed)
+                .concatMap(todo -> save(todo.setCompleted(completed)))
+                .count();
+    }
+
+    /**
+     * Deletes every todo the filter matches and emits how many were deleted. This default
+     * deletes one by one; stores that can delete by query override it.
+     */
+    default Mono<Long> deleteMatching(TodoFilter filter) {
+        return candidates(filter)
+                .filter(filter::matches)
+                .concatMap(todo -> deleteById(todo.getId()).thenReturn(todo))
+                .count();
+    }
+
+    private Flux<Todo> candidates(TodoFilter filter) {
+        Flux<Todo> candidates;
+        if (filter.ids() != null) {
+            candidates = Flux.fromIterable(filter.ids()).distinct().concatMap(this::findById);
+        } else if (filter.userId() != null) {
+            candidates = findAllByUserId(filter.userId());
+        } else {
+            candidates = findAll();
+        }
+        // read everything first so the writes do not disturb the iteration
+        return candidates.collectList().flatMapMany(Flux::fromIterable);
+    }
 }
@@ -5,11 +5,16 @@ import org.springframework.data.crossstore.ChangeSetPersister;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import us.dtaylor.todoservice.domain.TodoField;
 import us.dtaylor.todoservice.domain.User;
+import us.dtaylor.todoservice.domain.TodoFilter;
+import us.dtaylor.todoservice.domain.exceptions.InvalidFilterException;
 import us.dtaylor.todoservice.domain.exceptions.UserNotFoundException;
 import us.dtaylor.todoservice.domain.repository.TodoRepository;
 import us.dtaylor.todoservice.domain.Todo;
 
+import java.time.Duration;
+import java.util.Set;
 import java.util.UUID;
 
 @Service
@@ -30,6 +35,21 @@ public class DomainTodoService implements TodoService {
                 .flatMap(user -> saveTodoWithUser(todo, user));
     }
 
+    /**
+     * Saves a todo from an external source under the id it arrived with, so a redelivered or
+     * re-imported todo overwrites itself instead of creating a duplicate. An id already used by
+     * another user's todo is rejected rather than taking that todo over.
+     */
+    @Override
+    public Mono<Todo> ingestTodo(Todo todo) {
+        if (todo.getId() == null) {
+            return createTodo(todo);
+        }
+        return userService.getUserById(todo.getUserId())
+                .switchIfEmpty(Mono.error(new UserNotFoundException("User not found")))
+                .flatMap(user -> repository.saveForOwner(todo.setUserId(user.getId())));
+    }
+
     private Mono<Todo> saveTodoWithUser(Todo todo, User user) {
         todo.setUserId(user.getId())
                 .setId(UUID.randomUUID());
@@ -42,11 +62,26 @@ public class DomainTodoService implements TodoService {
         return repository.findAllByUserId(userId);
     }
 
+    @Override
+    public Flux<Todo> getAllTodosByUserId(UUID userId, Set<TodoField> fields) {
+        return repository.findAllByUserId(userId, fields);
+    }
+
+    @Override
+    public Mono<Long> getTodosVersion(UUID userId) {
+        return repository.userVersion(userId);
+    }
+
     @Override
     public Flux<Todo> getAllTodos() {
         return repository.findAll();
     }
 
+    @Override
+    public Flux<Todo> getAllTodos(Set<TodoField> fields) {
+        return repository.findAll(fields);
+    }
+
     @Override
     public Mono<Todo> getTodoById(UUID id) {
         return repository.findById(id);
@@ -70,4 +105,34 @@ public class DomainTodoService implements TodoService {
         return repository.deleteById(id);
     }
 
+    @Override
+    public Mono<Long> updateCompleted(TodoFilter filter, boolean completed) {
+        return targeted(filter).flatMap(valid -> repository.updateCompleted(valid, completed));
+    }
+
+    @Override
+    public Mono<Long> deleteTodos(TodoFilter filter) {
+        return targeted(filter).flatMap(repository::deleteMatching);
+    }
+
+    private static Mono<TodoFilter> targeted(TodoFilter filter) {
+        return filter.isTargeted()
+                ? Mono.just(filter)
+                : Mono.error(new InvalidFilterException("A bulk operation needs a list of ids or a userId"));
+    }
+
+    /**
+     * Deletes the user's todos {@code chunkSize} at a time, pausing between chunks so a user
+     * with a very large number of todos does not saturate the store. Completes with the total
+     * deleted once a chunk comes back empty.
+     */
+    @Override
+    public Mono<Long> deleteAllTodosByUserId(UUID userId, int chunkSize, Duration pause) {
+        return repository.deleteAllByUserId(userId, chunkSize)
+                .expand(deleted -> deleted == 0
+                        ? Mono.empty()
+                        : Mono.delay(pause).then(repository.deleteAllByUserId(userId, chunkSize)))
+                .reduce(0L, Long::sum);
+    }
+
 }
@@ -3,14 +3,25 @@ package us.dtaylor.todoservice.domain.service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import us.dtaylor.todoservice.domain.Todo;
+import us.dtaylor.todoservice.domain.TodoField;
+import us.dtaylor.todoservice.domain.TodoFilter;
 
+import java.time.Duration;
+import java.util.Set;
 import java.util.UUID;
 
 public interface TodoService {
     Mono<Todo> createTodo(Todo todo);
+    Mono<Todo> ingestTodo(Todo todo);
     Flux<Todo> getAllTodosByUserId(UUID userId);
+    Flux<Todo> getAllTodosByUserId(UUID userId, Set<TodoField> fields);
+    Mono<Long> getTodosVersion(UUID userId);
     Flux<Todo> getAllTodos();
+    Flux<Todo> getAllTodos(Set<TodoField> fields);
     Mono<Todo> getTodoById(UUID id);
     Mono<Todo> updateTodo(UUID id, Todo todo);
     Mono<Void> deleteTodo(UUID id);
+    Mono<Long> deleteAllTodosByUserId(UUID userId, int chunkSize, Duration pause);
+    Mono<Long> updateCompleted(TodoFilter filter, boolean completed);
+    Mono<Long> deleteTodos(TodoFilter filter);
 }
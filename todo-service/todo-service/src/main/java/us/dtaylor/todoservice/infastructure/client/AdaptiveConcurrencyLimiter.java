@@ -0,0 +1,116 @@
+package us.dtaylor.todoservice.infastructure.client;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * AIMD concurrency limiter driven by round-trip time. The limit grows by one while calls complete
+ * close to the observed minimum RTT and the limit is actually in use, and shrinks multiplicatively
+ * when latency rises past {@code rttTolerance * minRtt} or a call is dropped (timeout, 5xx).
+ * The minimum RTT is re-probed periodically so the limiter follows capacity changes downstream.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double rttTolerance;
+    private final double backoffRatio;
+    private final int probeInterval;
+    private final LongSupplier clock;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double limit;
+    private long minRttNanos = Long.MAX_VALUE;
+    private int samplesSinceProbe;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double rttTolerance, double backoffRatio, int probeInterval) {
+        this(initialLimit, minLimit, maxLimit, rttTolerance, backoffRatio, probeInterval, System::nanoTime);
+    }
+
+    AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double rttTolerance, double backoffRatio, int probeInterval, LongSupplier clock) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.rttTolerance = rttTolerance;
+        this.backoffRatio = backoffRatio;
+        this.probeInterval = probeInterval;
+        this.clock = clock;
+    }
+
+    /**
+     * @return a permit for one call, or {@code null} when the current limit is exhausted
+     */
+    public Permit tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return null;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return new Permit(current + 1, clock.getAsLong());
+            }
+        }
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private synchronized void onSample(long rttNanos, int inFlightAtStart, boolean dropped) {
+        if (++samplesSinceProbe >= probeInterval) {
+            samplesSinceProbe = 0;
+            minRttNanos = rttNanos;
+        }
+        if (!dropped && rttNanos < minRttNanos) {
+            minRttNanos = rttNanos;
+        }
+
+        double newLimit = limit;
+        if (dropped || rttNanos > minRttNanos * rttTolerance) {
+            newLimit = limit * backoffRatio;
+        } else if (inFlightAtStart * 2 >= limit) {
+            newLimit = limit + 1;
+        }
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+
+    public class Permit {
+        private final int inFlightAtStart;
+        private final long startNanos;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(int inFlightAtStart, long startNanos) {
+            this.inFlightAtStart = inFlightAtStart;
+            this.startNanos = startNanos;
+        }
+
+        /** The call completed normally; its RTT is fed to the limit. */
+        public void success() {
+            release(true, false);
+        }
+
+        /** The call timed out or the downstream was overloaded. */
+        public void dropped() {
+            release(true, true);
+        }
+
+        /** The call ended without telling us anything about downstream capacity. */
+        public void ignore() {
+            release(false, false);
+        }
+
+        private void release(boolean sample, boolean dropped) {
+            if (released.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
+                if (sample) {
+                    onSample(clock.getAsLong() - startNanos, inFlightAtStart, dropped);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package us.dtaylor.todoservice.infastructure.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import us.dtaylor.todoservice.domain.User;
+import us.dtaylor.todoservice.domain.exceptions.ClientException;
+import us.dtaylor.todoservice.domain.exceptions.ClientTimeOutException;
+import us.dtaylor.todoservice.domain.exceptions.UserNotFoundException;
+import us.dtaylor.todoservice.domain.service.UserService;
+
+import java.util.UUID;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Bounds in-flight user-service calls with an {@link AdaptiveConcurrencyLimiter}. Calls over the
+ * limit are rejected immediately with a {@link ClientTimeOutException} rather than queued, so a
+ * user-service brownout sheds load instead of building a backlog of retries.
+ */
+public class ConcurrencyLimitedUserClient implements UserService {
+
+    private final UserService delegate;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final Counter rejected;
+
+    public ConcurrencyLimitedUserClient(UserService delegate, AdaptiveConcurrencyLimiter limiter, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.limiter = limiter;
+        this.rejected = meterRegistry.counter("user.client.limiter.rejected");
+        Gauge.builder("user.client.limiter.limit", limiter, AdaptiveConcurrencyLimiter::getLimit).register(meterRegistry);
+        Gauge.builder("user.client.limiter.in-flight", limiter, AdaptiveConcurrencyLimiter::getInFlight).register(meterRegistry);
+    }
+
+    @Override
+    public Mono<User> getUserById(UUID userId) {
+        return Mono.defer(() -> {
+            AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+            if (permit == null) {
+                return rejection();
+            }
+            return delegate.getUserById(userId)
+                    .doOnSuccess(user -> permit.success())
+                    .doOnError(ex -> release(permit, ex))
+                    .doOnCancel(permit::ignore);
+        });
+    }
+
+    @Override
+    public Flux<User> getAllUsers() {
+        return Flux.defer(() -> {
+            AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+            if (permit == null) {
+                return rejection();
+            }
+            return delegate.getAllUsers()
+                    .doOnComplete(permit::success)
+                    .doOnError(ex -> release(permit, ex))
+                    .doOnCancel(permit::ignore);
+        });
+    }
+
+    private <T> Mono<T> rejection() {
+        rejected.increment();
+        return Mono.error(new ClientTimeOutException("User service concurrency limit reached"));
+    }
+
+    private static void release(AdaptiveConcurrencyLimiter.Permit permit, Throwable ex) {
+        if (ex instanceof ClientTimeOutException || ex instanceof TimeoutException) {
+            permit.dropped();
+        } else if (ex instanceof ClientException || ex instanceof UserNotFoundException) {
+            permit.success();
+        } else {
+            permit.ignore();
+        }
+    }
+}
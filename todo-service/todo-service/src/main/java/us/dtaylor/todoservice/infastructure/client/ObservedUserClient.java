@@ -0,0 +1,37 @@
+package us.dtaylor.todoservice.infastructure.client;
+
+import io.micrometer.observation.ObservationRegistry;
+import reactor.core.observability.micrometer.Micrometer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import us.dtaylor.todoservice.domain.User;
+import us.dtaylor.todoservice.domain.service.UserService;
+
+import java.util.UUID;
+
+/**
+ * Records each user lookup as a {@code todo.user.lookup} observation, so an ingestion trace shows
+ * the time spent resolving the owner whether the replica or user-service answered.
+ */
+public class ObservedUserClient implements UserService {
+
+    private final UserService delegate;
+    private final ObservationRegistry observationRegistry;
+
+    public ObservedUserClient(UserService delegate, ObservationRegistry observationRegistry) {
+        this.delegate = delegate;
+        this.observationRegistry = observationRegistry;
+    }
+
+    @Override
+    public Mono<User> getUserById(UUID userId) {
+        return delegate.getUserById(userId)
+                .name("todo.user.lookup")
+                .tap(Micrometer.observation(observationRegistry));
+    }
+
+    @Override
+    public Flux<User> getAllUsers() {
+        return delegate.getAllUsers();
+    }
+}
@@ -0,0 +1,81 @@
+package us.dtaylor.todoservice.infastructure.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import us.dtaylor.todoservice.domain.User;
+import us.dtaylor.todoservice.domain.exceptions.UserNotFoundException;
+import us.dtaylor.todoservice.domain.service.UserService;
+import us.dtaylor.todoservice.infastructure.replica.UserReplica;
+
+import java.util.UUID;
+
+/**
+ * Answers user lookups from the local {@link UserReplica}. Only a user the replica has not seen
+ * yet, typically one created moments ago or looked up before the first replay finishes, costs a
+ * call to user-service.
+ *
+ * <p>A user the replica has not had confirmed for longer than its maximum age is checked with
+ * user-service again, which covers change events that were never published: the answer refreshes
+ * the copy, a 404 evicts it. If user-service cannot answer, the copy is used as it is.
+ */
+public class ReplicatedUserClient implements UserService {
+
+    private final UserReplica replica;
+    private final UserService delegate;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter revalidations;
+    private final Counter evictions;
+
+    public ReplicatedUserClient(UserReplica replica, UserService delegate, MeterRegistry meterRegistry) {
+        this.replica = replica;
+        this.delegate = delegate;
+        this.hits = meterRegistry.counter("user.replica.lookups", "result", "hit");
+        this.misses = meterRegistry.counter("user.replica.lookups", "result", "miss");
+        this.revalidations = meterRegistry.counter("user.replica.revalidations");
+        this.evictions = meterRegistry.counter("user.replica.evictions");
+        Gauge.builder("user.replica.size", replica, UserReplica::size).register(meterRegistry);
+    }
+
+    @Override
+    public Mono<User> getUserById(UUID userId) {
+        return Mono.defer(() -> {
+            User user = replica.get(userId);
+            if (user == null) {
+                misses.increment();
+                return delegate.getUserById(userId);
+            }
+            hits.increment();
+            return replica.isStale(userId) ? revalidate(user) : Mono.just(user);
+        });
+    }
+
+    private Mono<User> revalidate(User replicated) {
+        revalidations.increment();
+        UUID userId = replicated.getId();
+        return delegate.getUserById(userId)
+                .doOnNext(replica::confirm)
+                .switchIfEmpty(Mono.fromRunnable(() -> evict(userId)))
+                .onErrorResume(e -> {
+                    if (e instanceof UserNotFoundException) {
+                        evict(userId);
+                        return Mono.error(e);
+                    }
+                    return Mono.just(replicated);
+                });
+    }
+
+    private void evict(UUID userId) {
+        evictions.increment();
+        replica.evict(userId);
+    }
+
+    @Override
+    public Flux<User> getAllUsers() {
+        // a listing has to be complete, which the replica cannot promise while it catches up
+        return delegate.getAllUsers();
+    }
+}
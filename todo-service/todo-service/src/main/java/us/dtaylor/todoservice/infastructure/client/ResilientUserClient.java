@@ -0,0 +1,125 @@
+package us.dtaylor.todoservice.infastructure.client;
+
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+import us.dtaylor.todoservice.domain.User;
+import us.dtaylor.todoservice.domain.exceptions.ClientTimeOutException;
+import us.dtaylor.todoservice.domain.service.UserService;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Decorates a {@link UserService} client with per-attempt and overall deadlines, jittered retries,
+ * a circuit breaker and optional request hedging. Only idempotent lookups go through this client.
+ */
+@Slf4j
+public class ResilientUserClient implements UserService {
+
+    private static final String METRIC_PREFIX = "user.client.";
+
+    private final UserService delegate;
+    private final CircuitBreaker circuitBreaker;
+    private final Settings settings;
+
+    private final Counter retries;
+    private final Counter timeouts;
+    private final Counter hedges;
+    private final Counter rejected;
+
+    public ResilientUserClient(UserService delegate, CircuitBreaker circuitBreaker, Settings settings, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.circuitBreaker = circuitBreaker;
+        this.settings = settings;
+        this.retries = meterRegistry.counter(METRIC_PREFIX + "retries");
+        this.timeouts = meterRegistry.counter(METRIC_PREFIX + "timeouts");
+        this.hedges = meterRegistry.counter(METRIC_PREFIX + "hedges");
+        this.rejected = meterRegistry.counter(METRIC_PREFIX + "rejected");
+    }
+
+    @Override
+    public Mono<User> getUserById(UUID userId) {
+        return hedged(() -> delegate.getUserById(userId))
+                .timeout(settings.attemptTimeout())
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .retryWhen(retrySpec())
+                .timeout(settings.overallTimeout())
+                .onErrorMap(this::translate);
+    }
+
+    @Override
+    public Flux<User> getAllUsers() {
+        return Flux.defer(delegate::getAllUsers)
+                .timeout(settings.attemptTimeout())
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+                .retryWhen(retrySpec())
+                .timeout(settings.overallTimeout())
+                .onErrorMap(this::translate);
+    }
+
+    /**
+     * Fires a second, identical request if the first has not answered within the hedge delay and
+     * keeps whichever signals first. The loser is cancelled.
+     */
+    private Mono<User> hedged(Supplier<Mono<User>> call) {
+        Mono<User> primary = Mono.defer(call);
+        if (!settings.hedgeEnabled()) {
+            return primary;
+        }
+        Mono<User> hedge = Mono.delay(settings.hedgeDelay())
+                .doOnNext(tick -> hedges.increment())
+                .then(Mono.defer(call));
+        return Mono.firstWithSignal(primary, hedge);
+    }
+
+    private Retry retrySpec() {
+        return Retry.backoff(settings.maxRetries(), settings.retryBackoff())
+                .maxBackoff(settings.overallTimeout())
+                .jitter(0.5)
+                .filter(ResilientUserClient::isTransient)
+                .doBeforeRetry(signal -> {
+                    retries.increment();
+                    log.debug("Retrying user-service call, attempt {}: {}", signal.totalRetries() + 1, signal.failure().getMessage());
+                })
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+    }
+
+    private static boolean isTransient(Throwable ex) {
+        return ex instanceof ClientTimeOutException
+                || ex instanceof TimeoutException
+                || ex instanceof WebClientRequestException;
+    }
+
+    private Throwable translate(Throwable ex) {
+        if (ex instanceof CallNotPermittedException) {
+            rejected.increment();
+            return new ClientTimeOutException("User service unavailable: circuit open");
+        }
+        if (ex instanceof TimeoutException) {
+            timeouts.increment();
+            return new ClientTimeOutException("User service timed out");
+        }
+        if (ex instanceof WebClientRequestException) {
+            return new ClientTimeOutException("User service unreachable");
+        }
+        return ex;
+    }
+
+    public record Settings(Duration attemptTimeout,
+                           Duration overallTimeout,
+                           int maxRetries,
+                           Duration retryBackoff,
+                           boolean hedgeEnabled,
+                           Duration hedgeDelay) {
+    }
+}
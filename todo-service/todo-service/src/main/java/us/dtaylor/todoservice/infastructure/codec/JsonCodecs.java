@@ -0,0 +1,87 @@
+package us.dtaylor.todoservice.infastructure.codec;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.http.codec.CodecConfigurer;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import us.dtaylor.todoservice.application.consumer.TodoMessage;
+import us.dtaylor.todoservice.application.rest.request.CreateTodoRequest;
+import us.dtaylor.todoservice.domain.Todo;
+import us.dtaylor.todoservice.domain.User;
+import us.dtaylor.todoservice.infastructure.replica.UserEvent;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The one place JSON is configured. The Kafka listeners decode with the readers held here, and
+ * the WebFlux server and client codecs are built from the same {@link ObjectMapper}, which has
+ * the Blackbird module registered so properties are read and written through generated lambdas
+ * instead of reflection. Readers and writers are immutable and thread-safe; creating them up
+ * front also builds the (de)serializers for these types at startup instead of on the first
+ * message or request.
+ */
+public class JsonCodecs {
+
+    private final ObjectMapper objectMapper;
+    private final Map<Class<?>, ObjectReader> readers;
+    private final Map<Class<?>, ObjectWriter> writers;
+    private final ObjectReader todoMessageReader;
+    private final ObjectReader userEventReader;
+
+    public JsonCodecs(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.readers = Stream.of(TodoMessage.class, Todo.class, User.class, CreateTodoRequest.class, UserEvent.class)
+                .collect(Collectors.toUnmodifiableMap(Function.identity(), objectMapper::readerFor));
+        this.writers = Stream.of(TodoMessage.class, Todo.class, User.class, CreateTodoRequest.class)
+                .collect(Collectors.toUnmodifiableMap(Function.identity(), objectMapper::writerFor));
+        this.todoMessageReader = readers.get(TodoMessage.class);
+        this.userEventReader = readers.get(UserEvent.class);
+    }
+
+    public ObjectMapper objectMapper() {
+        return objectMapper;
+    }
+
+    public ObjectReader reader(Class<?> type) {
+        ObjectReader reader = readers.get(type);
+        return reader != null ? reader : objectMapper.readerFor(type);
+    }
+
+    public ObjectWriter writer(Class<?> type) {
+        ObjectWriter writer = writers.get(type);
+        return writer != null ? writer : objectMapper.writerFor(type);
+    }
+
+    /**
+     * Decodes a todo message straight from the record bytes. Filewatchers that predate raw JSON
+     * values sent the message as a JSON string holding the JSON; those are unwrapped once.
+     */
+    public TodoMessage readTodoMessage(byte[] json) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(json)) {
+            if (parser.nextToken() == JsonToken.VALUE_STRING) {
+                return todoMessageReader.readValue(parser.getText());
+            }
+            return todoMessageReader.readValue(parser);
+        }
+    }
+
+    public UserEvent readUserEvent(byte[] json) throws IOException {
+        return userEventReader.readValue(json);
+    }
+
+    /**
+     * Makes a WebFlux codec configurer, for a server or a {@code WebClient}, use this mapper.
+     */
+    public void applyTo(CodecConfigurer configurer) {
+        configurer.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(objectMapper));
+        configurer.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(objectMapper));
+    }
+}
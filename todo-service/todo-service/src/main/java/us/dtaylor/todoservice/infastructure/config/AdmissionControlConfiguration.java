@@ -0,0 +1,57 @@
+package us.dtaylor.todoservice.infastructure.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import us.dtaylor.todoservice.application.rest.AdmissionControlFilter;
+
+import java.time.Duration;
+import java.util.List;
+
+@Configuration
+@ConditionalOnProperty(name = "http.admission.enabled", havingValue = "true", matchIfMissing = true)
+public class AdmissionControlConfiguration {
+
+    @Value("${http.admission.max-in-flight:256}")
+    private int maxInFlight;
+
+    @Value("${http.admission.scan-admission-ratio:0.75}")
+    private double scanAdmissionRatio;
+
+    @Value("${http.admission.rate-per-second:50}")
+    private double ratePerSecond;
+
+    @Value("${http.admission.burst:100}")
+    private double burst;
+
+    @Value("${http.admission.scan-cost:10}")
+    private double scanCost;
+
+    @Value("${http.admission.scan-paths:/api/v1/todos,/api/v1/todos/user/*}")
+    private List<String> scanPaths;
+
+    @Value("${http.admission.exempt-paths:/actuator/**}")
+    private List<String> exemptPaths;
+
+    @Value("${http.admission.max-principals:100000}")
+    private long maxPrincipals;
+
+    @Value("${http.admission.idle-expiry-ms:600000}")
+    private long idleExpiryMs;
+
+    @Bean
+    public AdmissionControlFilter admissionControlFilter(MeterRegistry meterRegistry) {
+        return new AdmissionControlFilter(new AdmissionControlFilter.Settings(
+                maxInFlight,
+                scanAdmissionRatio,
+                ratePerSecond,
+                burst,
+                scanCost,
+                scanPaths,
+                exemptPaths,
+                maxPrincipals,
+                Duration.ofMillis(idleExpiryMs)), meterRegistry);
+    }
+}
@@ -1,5 +1,7 @@
 package us.dtaylor.todoservice.infastructure.config;
 
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
@@ -8,7 +10,10 @@ import us.dtaylor.todoservice.domain.service.DomainTodoService;
 import us.dtaylor.todoservice.domain.service.DomainUserService;
 import us.dtaylor.todoservice.domain.service.TodoService;
 import us.dtaylor.todoservice.domain.service.UserService;
-import us.dtaylor.todoservice.infastructure.client.DeclarativeReactiveUserClient;
+import us.dtaylor.todoservice.infastructure.client.ConcurrencyLimitedUserClient;
+import us.dtaylor.todoservice.infastructure.client.ObservedUserClient;
+import us.dtaylor.todoservice.infastructure.client.ReplicatedUserClient;
+import us.dtaylor.todoservice.infastructure.persistence.repository.WriteBehindTodoRepository;
 
 @Configuration
 @ComponentScan(basePackageClasses =  {
@@ -18,12 +23,18 @@ import us.dtaylor.todoservice.infastructure.client.DeclarativeReactiveUserClient
 public class BeanConfiguration {
 
     @Bean
-    TodoService todoService(final TodoRepository todoRepository, final UserService userService) {
-        return new DomainTodoService(todoRepository, userService);
+    TodoService todoService(final TodoRepository todoRepository,
+                            final ObjectProvider<WriteBehindTodoRepository> writeBehindTodoRepository,
+                            final UserService userService) {
+        TodoRepository writeBehind = writeBehindTodoRepository.getIfAvailable();
+        return new DomainTodoService(writeBehind != null ? writeBehind : todoRepository, userService);
     }
 
     @Bean
-    UserService userService(final DeclarativeReactiveUserClient userClient) {
-        return new DomainUserService(userClient);
+    UserService userService(final ConcurrencyLimitedUserClient concurrencyLimitedUserClient,
+                            final ObjectProvider<ReplicatedUserClient> replicatedUserClient,
+                            final ObservationRegistry observationRegistry) {
+        UserService replicated = replicatedUserClient.getIfAvailable();
+        return new DomainUserService(new ObservedUserClient(replicated != null ? replicated : concurrencyLimitedUserClient, observationRegistry));
     }
 }
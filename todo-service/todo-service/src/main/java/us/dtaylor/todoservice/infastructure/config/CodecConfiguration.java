@@ -0,0 +1,54 @@
+package us.dtaylor.todoservice.infastructure.config;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import us.dtaylor.todoservice.infastructure.codec.BinaryJacksonEncoders;
+import us.dtaylor.todoservice.infastructure.codec.JsonCodecs;
+
+@Configuration
+public class CodecConfiguration {
+
+    /**
+     * Registered by Spring Boot on the application {@link ObjectMapper}, which the WebFlux codecs
+     * already use.
+     */
+    @Bean
+    public Module blackbirdModule() {
+        return new BlackbirdModule();
+    }
+
+    @Bean
+    public JsonCodecs jsonCodecs(ObjectMapper objectMapper) {
+        return new JsonCodecs(objectMapper);
+    }
+
+    /**
+     * Serves Smile and CBOR to clients that ask for them in {@code Accept}; JSON stays the
+     * default. The mappers come from Boot's builder, so they share the JSON mapper's modules and
+     * settings. Spring puts custom codecs ahead of its defaults and answers {@code *}{@code /*}
+     * with the first that fits, so the JSON encoder is registered again before CBOR.
+     */
+    @Bean
+    public CodecCustomizer binaryJacksonCodecs(Jackson2ObjectMapperBuilder builder, ObjectMapper objectMapper) {
+        ObjectMapper smile = builder.factory(new SmileFactory()).build();
+        ObjectMapper cbor = builder.factory(new CBORFactory()).build();
+        return configurer -> {
+            configurer.defaultCodecs().jackson2SmileEncoder(BinaryJacksonEncoders.smile(smile));
+            configurer.defaultCodecs().jackson2SmileDecoder(new Jackson2SmileDecoder(smile, BinaryJacksonEncoders.APPLICATION_SMILE));
+            configurer.customCodecs().register(new Jackson2JsonEncoder(objectMapper));
+            configurer.customCodecs().register(BinaryJacksonEncoders.cbor(cbor));
+            configurer.customCodecs().register(new Jackson2CborDecoder(cbor, MediaType.APPLICATION_CBOR));
+        };
+    }
+}
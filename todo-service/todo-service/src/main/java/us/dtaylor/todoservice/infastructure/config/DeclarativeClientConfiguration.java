@@ -1,11 +1,18 @@
 package us.dtaylor.todoservice.infastructure.config;
 
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
 import io.netty.channel.ChannelOption;
 import io.netty.handler.timeout.ReadTimeoutHandler;
 import io.netty.handler.timeout.WriteTimeoutHandler;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
 import org.springframework.web.reactive.function.client.WebClient;
@@ -13,29 +20,128 @@ import org.springframework.web.reactive.function.client.support.WebClientAdapter
 import org.springframework.web.service.invoker.HttpServiceProxyFactory;
 import reactor.core.publisher.Mono;
 import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 import us.dtaylor.todoservice.domain.exceptions.ClientException;
 import us.dtaylor.todoservice.domain.exceptions.ClientTimeOutException;
+import us.dtaylor.todoservice.domain.exceptions.UserNotFoundException;
+import us.dtaylor.todoservice.infastructure.client.AdaptiveConcurrencyLimiter;
+import us.dtaylor.todoservice.infastructure.client.ConcurrencyLimitedUserClient;
 import us.dtaylor.todoservice.infastructure.client.DeclarativeReactiveUserClient;
+import us.dtaylor.todoservice.infastructure.client.ResilientUserClient;
+import us.dtaylor.todoservice.infastructure.codec.JsonCodecs;
 
+import java.time.Duration;
 import java.util.concurrent.TimeUnit;
 
 @Configuration
 public class DeclarativeClientConfiguration {
 
+    static final String SERVICE_NAME_HEADER = "X-Service-Name";
+
     @Value("${user.service.url}")
     private String userServiceUrl;
 
+    @Value("${user.service.client.service-name:todo-service}")
+    private String serviceName;
+
+    @Value("${user.service.client.max-connections:50}")
+    private int maxConnections;
+
+    @Value("${user.service.client.pending-acquire-max-count:200}")
+    private int pendingAcquireMaxCount;
+
+    @Value("${user.service.client.pending-acquire-timeout-ms:500}")
+    private long pendingAcquireTimeoutMs;
+
+    @Value("${user.service.client.max-idle-time-ms:30000}")
+    private long maxIdleTimeMs;
+
+    @Value("${user.service.client.connect-timeout-ms:300}")
+    private int connectTimeoutMs;
+
+    @Value("${user.service.client.response-timeout-ms:1000}")
+    private long responseTimeoutMs;
+
+    @Value("${user.service.client.attempt-timeout-ms:1000}")
+    private long attemptTimeoutMs;
+
+    @Value("${user.service.client.overall-timeout-ms:3000}")
+    private long overallTimeoutMs;
+
+    @Value("${user.service.client.retry.max-retries:2}")
+    private int maxRetries;
+
+    @Value("${user.service.client.retry.backoff-ms:50}")
+    private long retryBackoffMs;
+
+    @Value("${user.service.client.circuit-breaker.failure-rate-threshold:50}")
+    private float failureRateThreshold;
+
+    @Value("${user.service.client.circuit-breaker.slow-call-duration-ms:800}")
+    private long slowCallDurationMs;
+
+    @Value("${user.service.client.circuit-breaker.open-duration-ms:5000}")
+    private long openDurationMs;
+
+    @Value("${user.service.client.hedge.enabled:false}")
+    private boolean hedgeEnabled;
+
+    @Value("${user.service.client.hedge.delay-ms:200}")
+    private long hedgeDelayMs;
+
+    @Value("${user.service.client.limiter.initial-limit:20}")
+    private int initialLimit;
+
+    @Value("${user.service.client.limiter.min-limit:2}")
+    private int minLimit;
+
+    @Value("${user.service.client.limiter.max-limit:200}")
+    private int maxLimit;
+
+    @Value("${user.service.client.limiter.rtt-tolerance:2.0}")
+    private double rttTolerance;
+
+    @Value("${user.service.client.limiter.backoff-ratio:0.9}")
+    private double backoffRatio;
+
+    @Value("${user.service.client.limiter.probe-interval:1000}")
+    private int probeInterval;
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider userServiceConnectionProvider() {
+        return ConnectionProvider.builder("user-service")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMs))
+                .maxIdleTime(Duration.ofMillis(maxIdleTimeMs))
+                .evictInBackground(Duration.ofMillis(maxIdleTimeMs / 2))
+                .metrics(true)
+                .build();
+    }
+
     @Bean
-    public WebClientAdapter userWebClientAdapter() {
-        HttpClient httpClient = HttpClient.create()
-                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 300)
+    public ReactorClientHttpConnector userServiceHttpConnector(ConnectionProvider userServiceConnectionProvider) {
+        HttpClient httpClient = HttpClient.create(userServiceConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .responseTimeout(Duration.ofMillis(responseTimeoutMs))
+                .metrics(true, uri -> uri.replaceAll("/[0-9a-fA-F-]{36}", "/{id}"))
                 .doOnConnected(conn -> conn
-                        .addHandlerLast(new ReadTimeoutHandler(300, TimeUnit.SECONDS))
-                        .addHandlerLast(new WriteTimeoutHandler(300, TimeUnit.SECONDS)));
+                        .addHandlerLast(new ReadTimeoutHandler(responseTimeoutMs, TimeUnit.MILLISECONDS))
+                        .addHandlerLast(new WriteTimeoutHandler(responseTimeoutMs, TimeUnit.MILLISECONDS)));
+        return new ReactorClientHttpConnector(httpClient);
+    }
 
+    @Bean
+    public WebClientAdapter userWebClientAdapter(ReactorClientHttpConnector userServiceHttpConnector,
+                                                 ObservationRegistry observationRegistry,
+                                                 JsonCodecs jsonCodecs) {
         WebClient webClient = WebClient.builder()
                 .baseUrl(userServiceUrl)
-                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                // user-service gives a named service its own admission bucket instead of one per address
+                .defaultHeader(SERVICE_NAME_HEADER, serviceName)
+                .clientConnector(userServiceHttpConnector)
+                .codecs(jsonCodecs::applyTo)
+                .observationRegistry(observationRegistry)
                 .filter(timeoutExceptionFilter())
                 .filter(clientErrorExceptionFilter())
                 .build();
@@ -47,6 +153,7 @@ public class DeclarativeClientConfiguration {
         return ExchangeFilterFunction.ofResponseProcessor(clientResponse -> {
             if (clientResponse.statusCode().is5xxServerError()) {
                 return clientResponse.bodyToMono(String.class)
+                        .defaultIfEmpty("")
                         .flatMap(body -> Mono.error(new ClientTimeOutException("Service unavailable")));
             }
             return Mono.just(clientResponse);
@@ -55,8 +162,13 @@ public class DeclarativeClientConfiguration {
 
     private ExchangeFilterFunction clientErrorExceptionFilter() {
         return ExchangeFilterFunction.ofResponseProcessor(clientResponse -> {
+            if (clientResponse.statusCode().isSameCodeAs(HttpStatus.NOT_FOUND)) {
+                return clientResponse.releaseBody()
+                        .then(Mono.error(new UserNotFoundException("User not found")));
+            }
             if (clientResponse.statusCode().is4xxClientError()) {
                 return clientResponse.bodyToMono(String.class)
+                        .defaultIfEmpty("")
                         .flatMap(body -> Mono.error(new ClientException("Client error")));
             }
             return Mono.just(clientResponse);
@@ -70,4 +182,42 @@ public class DeclarativeClientConfiguration {
             .createClient(DeclarativeReactiveUserClient.class);
         }
 
+    @Bean
+    CircuitBreaker userServiceCircuitBreaker(MeterRegistry meterRegistry) {
+        CircuitBreakerConfig config = CircuitBreakerConfig.custom()
+                .failureRateThreshold(failureRateThreshold)
+                .slowCallRateThreshold(failureRateThreshold)
+                .slowCallDurationThreshold(Duration.ofMillis(slowCallDurationMs))
+                .waitDurationInOpenState(Duration.ofMillis(openDurationMs))
+                .slidingWindowSize(50)
+                .minimumNumberOfCalls(20)
+                .permittedNumberOfCallsInHalfOpenState(5)
+                .recordException(ex -> !(ex instanceof ClientException || ex instanceof UserNotFoundException) || ex instanceof ClientTimeOutException)
+                .build();
+        CircuitBreakerRegistry registry = CircuitBreakerRegistry.of(config);
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(registry).bindTo(meterRegistry);
+        return registry.circuitBreaker("user-service");
+    }
+
+    @Bean
+    ResilientUserClient resilientUserClient(DeclarativeReactiveUserClient userClient,
+                                            CircuitBreaker userServiceCircuitBreaker,
+                                            MeterRegistry meterRegistry) {
+        ResilientUserClient.Settings settings = new ResilientUserClient.Settings(
+                Duration.ofMillis(attemptTimeoutMs),
+                Duration.ofMillis(overallTimeoutMs),
+                maxRetries,
+                Duration.ofMillis(retryBackoffMs),
+                hedgeEnabled,
+                Duration.ofMillis(hedgeDelayMs));
+        return new ResilientUserClient(userClient, userServiceCircuitBreaker, settings, meterRegistry);
+    }
+
+    @Bean
+    ConcurrencyLimitedUserClient concurrencyLimitedUserClient(ResilientUserClient resilientUserClient, MeterRegistry meterRegistry) {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(
+                initialLimit, minLimit, maxLimit, rttTolerance, backoffRatio, probeInterval);
+        return new ConcurrencyLimitedUserClient(resilientUserClient, limiter, meterRegistry);
+    }
+
 }
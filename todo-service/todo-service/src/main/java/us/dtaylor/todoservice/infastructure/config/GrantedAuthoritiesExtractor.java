@@ -1,43 +1,60 @@
 package us.dtaylor.todoservice.infastructure.config;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import org.springframework.core.convert.converter.Converter;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.oauth2.jwt.Jwt;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 
 public class GrantedAuthoritiesExtractor implements Converter<Jwt, Collection<GrantedAuthority>> {
 
-    @SuppressWarnings("unchecked")
+    // Weak, identity-based keys: the caching decoder hands back the same Jwt instance for a reused token
+    private final Cache<Jwt, Collection<GrantedAuthority>> authorities = Caffeine.newBuilder()
+            .weakKeys()
+            .maximumSize(10_000)
+            .build();
+
     public Collection<GrantedAuthority> convert(Jwt jwt) {
+        return authorities.get(jwt, GrantedAuthoritiesExtractor::extract);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Collection<GrantedAuthority> extract(Jwt jwt) {
         Map<String, List<String>> realmAccess = (Map<String, List<String>>) jwt.getClaims().getOrDefault("realm_access", Collections.emptyMap());
-        Stream<String> rolesStream = realmAccess.getOrDefault("roles", Collections.emptyList())
-                .stream()
-                .map(this::transformRole);
-
-        Stream<String> scopesStream = Arrays.stream(
-                jwt.getClaims()
-                        .getOrDefault("scope", "")
-                        .toString()
-                        .split(" "))
-                .map(String::trim);
-
-        return Stream.concat(rolesStream, scopesStream)
-                .map(SimpleGrantedAuthority::new)
-                .collect(Collectors.toList());
+        List<String> roles = realmAccess.getOrDefault("roles", Collections.emptyList());
+        String scope = jwt.getClaims().getOrDefault("scope", "").toString();
+
+        List<GrantedAuthority> result = new ArrayList<>(roles.size() + 4);
+        for (String role : roles) {
+            result.add(new SimpleGrantedAuthority(transformRole(role)));
+        }
+        int start = 0;
+        int length = scope.length();
+        while (start < length) {
+            int end = scope.indexOf(' ', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start) {
+                result.add(new SimpleGrantedAuthority(scope.substring(start, end)));
+            }
+            start = end + 1;
+        }
+        return Collections.unmodifiableList(result);
     }
 
 
-    private String transformRole(String role) {
-        return "ROLE_" + role.toUpperCase();
+    private static String transformRole(String role) {
+        return "ROLE_" + role.toUpperCase(Locale.ROOT);
     }
 
 
@@ -0,0 +1,53 @@
+package us.dtaylor.todoservice.infastructure.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import us.dtaylor.todoservice.infastructure.persistence.repository.LogStructuredTodoRepository;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Configuration
+@Profile(LogStructuredTodoRepository.PROFILE)
+public class LogStructuredRepositoryConfiguration {
+
+    @Value("${todo.repository.log.directory:./data/todo-log}")
+    private String directory;
+
+    @Value("${todo.repository.log.segment-size-bytes:67108864}")
+    private int segmentSizeBytes;
+
+    @Value("${todo.repository.log.fsync-interval-ms:5}")
+    private long fsyncIntervalMs;
+
+    @Value("${todo.repository.log.fsync-batch-size:256}")
+    private int fsyncBatchSize;
+
+    @Value("${todo.repository.log.compaction-interval-ms:30000}")
+    private long compactionIntervalMs;
+
+    @Value("${todo.repository.log.compaction-garbage-ratio:0.5}")
+    private double compactionGarbageRatio;
+
+    @Bean(initMethod = "open", destroyMethod = "close")
+    @Primary
+    public LogStructuredTodoRepository logStructuredTodoRepository(MeterRegistry meterRegistry) {
+        LogStructuredTodoRepository repository = new LogStructuredTodoRepository(new LogStructuredTodoRepository.Settings(
+                Path.of(directory),
+                segmentSizeBytes,
+                Duration.ofMillis(fsyncIntervalMs),
+                fsyncBatchSize,
+                Duration.ofMillis(compactionIntervalMs),
+                compactionGarbageRatio));
+        Gauge.builder("todo.repository.log.segments", repository, LogStructuredTodoRepository::segmentCount)
+                .register(meterRegistry);
+        Gauge.builder("todo.repository.log.garbage-ratio", repository, LogStructuredTodoRepository::garbageRatio)
+                .register(meterRegistry);
+        return repository;
+    }
+}
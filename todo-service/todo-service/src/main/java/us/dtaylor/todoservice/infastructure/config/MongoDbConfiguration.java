@@ -4,15 +4,33 @@ import com.mongodb.ConnectionString;
 import com.mongodb.MongoClientSettings;
 import com.mongodb.reactivestreams.client.MongoClient;
 import com.mongodb.reactivestreams.client.MongoClients;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.mongodb.MongoMetricsCommandListener;
+import io.micrometer.core.instrument.binder.mongodb.MongoMetricsConnectionPoolListener;
 import lombok.NonNull;
 import org.bson.UuidRepresentation;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 import org.springframework.data.mongodb.config.AbstractReactiveMongoConfiguration;
 import org.springframework.data.mongodb.config.EnableMongoAuditing;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
 import org.springframework.data.mongodb.repository.config.EnableReactiveMongoRepositories;
+import us.dtaylor.todoservice.domain.Todo;
+import us.dtaylor.todoservice.infastructure.persistence.RequestCoalescer;
+import us.dtaylor.todoservice.infastructure.persistence.TodoDocument;
+import us.dtaylor.todoservice.infastructure.persistence.UuidMigration;
+import us.dtaylor.todoservice.infastructure.persistence.repository.InMemoryTodoRepository;
+import us.dtaylor.todoservice.infastructure.persistence.repository.LogStructuredTodoRepository;
 import us.dtaylor.todoservice.infastructure.persistence.repository.SpringDataMongoTodoRepository;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+@Configuration
+@Profile("!" + InMemoryTodoRepository.PROFILE + " & !" + LogStructuredTodoRepository.PROFILE)
 @EnableMongoAuditing
 @EnableReactiveMongoRepositories(basePackageClasses = SpringDataMongoTodoRepository.class)
 public class MongoDbConfiguration extends AbstractReactiveMongoConfiguration {
@@ -23,6 +41,21 @@ public class MongoDbConfiguration extends AbstractReactiveMongoConfiguration {
     @Value("${spring.data.mongodb.database}")
     private String database;
 
+    @Value("${mongo.uuid-migration.batch-size:500}")
+    private int uuidMigrationBatchSize;
+
+    @Value("${mongo.uuid-migration.pause-ms:50}")
+    private long uuidMigrationPauseMs;
+
+    @Value("${mongo.find-by-id.coalescing-ttl-ms:0}")
+    private long findByIdCoalescingTtlMs;
+
+    private final MeterRegistry meterRegistry;
+
+    public MongoDbConfiguration(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
     @Override
     @NonNull
     @Bean
@@ -31,6 +64,9 @@ public class MongoDbConfiguration extends AbstractReactiveMongoConfiguration {
         MongoClientSettings mongoClientSettings = MongoClientSettings.builder()
                 .uuidRepresentation(UuidRepresentation.STANDARD)
                 .applyConnectionString(connectionString)
+                .addCommandListener(new MongoMetricsCommandListener(meterRegistry))
+                .applyToConnectionPoolSettings(pool -> pool
+                        .addConnectionPoolListener(new MongoMetricsConnectionPoolListener(meterRegistry)))
                 .build();
         return MongoClients.create(mongoClientSettings);
     }
@@ -40,4 +76,23 @@ public class MongoDbConfiguration extends AbstractReactiveMongoConfiguration {
     protected String getDatabaseName() {
         return database;
     }
+
+    // creates the userId index behind findAllByUserId
+    @Override
+    protected boolean autoIndexCreation() {
+        return true;
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public UuidMigration todoUuidMigration(ReactiveMongoOperations reactiveMongoTemplate) {
+        return new UuidMigration(reactiveMongoTemplate, TodoDocument.COLLECTION, List.of("userId"),
+                uuidMigrationBatchSize, Duration.ofMillis(uuidMigrationPauseMs));
+    }
+
+    @Bean
+    public RequestCoalescer<UUID, Todo> todoReadCoalescer() {
+        return new RequestCoalescer<>(TodoDocument.COLLECTION, Duration.ofMillis(findByIdCoalescingTtlMs),
+                todo -> new Todo(todo.getId(), todo.getTitle(), todo.getDescription(), todo.isCompleted(), todo.getUserId(), todo.getVersion()),
+                meterRegistry);
+    }
 }
@@ -0,0 +1,134 @@
+package us.dtaylor.todoservice.infastructure.config;
+
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jwt.SignedJWT;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * JWK source that keeps the authorization server's key set in memory and refreshes it on a fixed
+ * interval in the background, so key lookups during token verification never wait on the network.
+ * A token signed with a key that has not been fetched yet triggers one shared refresh; concurrent
+ * requests for unknown keys wait on that same fetch rather than issuing their own. Such on-demand
+ * refreshes are at most one per {@code minOnDemandInterval}; in between, a token whose key is
+ * still unknown is rejected without a fetch, so tokens with made-up key ids cannot turn every
+ * request into a call to the authorization server.
+ */
+@Slf4j
+public class PrefetchingJwkSource implements Function<SignedJWT, Flux<JWK>> {
+
+    private final WebClient webClient;
+    private final String jwkSetUri;
+    private final Duration refreshInterval;
+    private final Duration minOnDemandInterval;
+    private final LongSupplier clock;
+
+    private volatile JWKSet jwkSet = new JWKSet();
+    private Mono<JWKSet> inFlightRefresh;
+    private Disposable scheduledRefresh;
+    private long lastOnDemandRefreshNanos;
+    private boolean refreshedOnDemand;
+
+    public PrefetchingJwkSource(WebClient webClient, String jwkSetUri, Duration refreshInterval, Duration minOnDemandInterval) {
+        this(webClient, jwkSetUri, refreshInterval, minOnDemandInterval, System::nanoTime);
+    }
+
+    PrefetchingJwkSource(WebClient webClient, String jwkSetUri, Duration refreshInterval, Duration minOnDemandInterval,
+                         LongSupplier clock) {
+        this.webClient = webClient;
+        this.jwkSetUri = jwkSetUri;
+        this.refreshInterval = refreshInterval;
+        this.minOnDemandInterval = minOnDemandInterval;
+        this.clock = clock;
+    }
+
+    public void start() {
+        scheduledRefresh = Flux.interval(Duration.ZERO, refreshInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> refresh()
+                        .onErrorResume(e -> {
+                            log.warn("Could not refresh JWK set from {}: {}", jwkSetUri, e.getMessage());
+                            return Mono.empty();
+                        }))
+                .subscribe();
+    }
+
+    public void stop() {
+        if (scheduledRefresh != null) {
+            scheduledRefresh.dispose();
+        }
+    }
+
+    @Override
+    public Flux<JWK> apply(SignedJWT jwt) {
+        JWKSelector selector = new JWKSelector(JWKMatcher.forJWSHeader(jwt.getHeader()));
+        List<JWK> keys = selector.select(jwkSet);
+        if (!keys.isEmpty()) {
+            return Flux.fromIterable(keys);
+        }
+        Mono<JWKSet> refresh = refreshOnDemand();
+        if (refresh == null) {
+            log.debug("Rejecting token with unknown key id {}; the JWK set was refreshed on demand less than {} ago",
+                    jwt.getHeader().getKeyID(), minOnDemandInterval);
+            return Flux.empty();
+        }
+        return refresh
+                .map(selector::select)
+                .flatMapMany(Flux::fromIterable);
+    }
+
+    /**
+     * Joins a refresh already in flight, or starts one unless the last on-demand refresh started
+     * less than {@code minOnDemandInterval} ago, in which case this returns {@code null}.
+     */
+    private synchronized Mono<JWKSet> refreshOnDemand() {
+        if (inFlightRefresh != null) {
+            return inFlightRefresh;
+        }
+        long now = clock.getAsLong();
+        if (refreshedOnDemand && now - lastOnDemandRefreshNanos < minOnDemandInterval.toNanos()) {
+            return null;
+        }
+        refreshedOnDemand = true;
+        lastOnDemandRefreshNanos = now;
+        return refresh();
+    }
+
+    public synchronized Mono<JWKSet> refresh() {
+        if (inFlightRefresh == null) {
+            inFlightRefresh = webClient.get()
+                    .uri(jwkSetUri)
+                    .retrieve()
+                    .bodyToMono(String.class)
+                    .map(PrefetchingJwkSource::parse)
+                    .doOnNext(keys -> jwkSet = keys)
+                    .doFinally(signal -> clearInFlightRefresh())
+                    .cache();
+        }
+        return inFlightRefresh;
+    }
+
+    private synchronized void clearInFlightRefresh() {
+        inFlightRefresh = null;
+    }
+
+    private static JWKSet parse(String body) {
+        try {
+            return JWKSet.parse(body);
+        } catch (ParseException e) {
+            throw new IllegalStateException("Invalid JWK set: " + e.getMessage(), e);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package us.dtaylor.todoservice.infastructure.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.convert.converter.Converter;
@@ -8,17 +9,42 @@ import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.method.configuration.EnableReactiveMethodSecurity;
 import org.springframework.security.config.annotation.web.reactive.EnableWebFluxSecurity;
 import org.springframework.security.config.web.server.ServerHttpSecurity;
+import org.springframework.security.oauth2.jose.jws.SignatureAlgorithm;
 import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtValidators;
+import org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder;
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
 import org.springframework.security.oauth2.server.resource.authentication.ReactiveJwtAuthenticationConverterAdapter;
 import org.springframework.security.web.server.SecurityWebFilterChain;
+import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+
 @Configuration
 @EnableWebFluxSecurity
 @EnableReactiveMethodSecurity
 public class SecurityConfig {
 
+    @Value("${spring.security.oauth2.resourceserver.jwt.jwk-set-uri}")
+    private String jwkSetUri;
+
+    @Value("${spring.security.oauth2.resourceserver.jwt.issuer-uri}")
+    private String issuerUri;
+
+    @Value("${security.jwt.jwk-set.refresh-interval-ms:300000}")
+    private long jwkSetRefreshIntervalMs;
+
+    @Value("${security.jwt.jwk-set.min-on-demand-refresh-interval-ms:30000}")
+    private long jwkSetMinOnDemandRefreshIntervalMs;
+
+    @Value("${security.jwt.cache.maximum-size:10000}")
+    private long jwtCacheMaximumSize;
+
+    @Value("${security.jwt.cache.maximum-ttl-ms:900000}")
+    private long jwtCacheMaximumTtlMs;
+
     @Bean
     SecurityWebFilterChain springWebFilterChain(ServerHttpSecurity http) {
         return http
@@ -32,6 +58,21 @@ public class SecurityConfig {
                 .build();
     }
 
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    PrefetchingJwkSource jwkSource() {
+        return new PrefetchingJwkSource(WebClient.create(), jwkSetUri, Duration.ofMillis(jwkSetRefreshIntervalMs),
+                Duration.ofMillis(jwkSetMinOnDemandRefreshIntervalMs));
+    }
+
+    @Bean
+    ReactiveJwtDecoder jwtDecoder(PrefetchingJwkSource jwkSource) {
+        NimbusReactiveJwtDecoder decoder = NimbusReactiveJwtDecoder.withJwkSource(jwkSource)
+                .jwsAlgorithm(SignatureAlgorithm.RS256)
+                .build();
+        decoder.setJwtValidator(JwtValidators.createDefaultWithIssuer(issuerUri));
+        return new CachingReactiveJwtDecoder(decoder, jwtCacheMaximumSize, Duration.ofMillis(jwtCacheMaximumTtlMs));
+    }
+
     private void configureJwtAuthenticationConverter(ServerHttpSecurity.OAuth2ResourceServerSpec oauth2) {
         oauth2.jwt(Customizer.withDefaults()).jwt(jwt -> jwt.jwtAuthenticationConverter(grantedAuthoritiesExtractor()));
     }
@@ -0,0 +1,50 @@
+package us.dtaylor.todoservice.infastructure.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import us.dtaylor.todoservice.infastructure.client.ConcurrencyLimitedUserClient;
+import us.dtaylor.todoservice.infastructure.client.ReplicatedUserClient;
+import us.dtaylor.todoservice.infastructure.codec.JsonCodecs;
+import us.dtaylor.todoservice.infastructure.replica.UserEventListener;
+import us.dtaylor.todoservice.infastructure.replica.UserReplica;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Configuration
+@ConditionalOnProperty(name = "user.replica.enabled", havingValue = "true", matchIfMissing = true)
+public class UserReplicaConfiguration {
+
+    @Value("${user.events.topic:user-events}")
+    private String topic;
+
+    @Value("${user.replica.snapshot-file:./data/user-replica.snapshot}")
+    private String snapshotFile;
+
+    @Value("${user.replica.snapshot-interval-ms:30000}")
+    private long snapshotIntervalMs;
+
+    @Value("${user.replica.max-age-ms:600000}")
+    private long maxAgeMs;
+
+    @Bean(initMethod = "open", destroyMethod = "close")
+    public UserReplica userReplica() {
+        return new UserReplica(new UserReplica.Settings(topic, Path.of(snapshotFile), Duration.ofMillis(snapshotIntervalMs),
+                Duration.ofMillis(maxAgeMs)));
+    }
+
+    @Bean
+    public UserEventListener userEventListener(UserReplica userReplica, JsonCodecs jsonCodecs) {
+        return new UserEventListener(userReplica, jsonCodecs);
+    }
+
+    @Bean
+    public ReplicatedUserClient replicatedUserClient(UserReplica userReplica,
+                                                     ConcurrencyLimitedUserClient concurrencyLimitedUserClient,
+                                                     MeterRegistry meterRegistry) {
+        return new ReplicatedUserClient(userReplica, concurrencyLimitedUserClient, meterRegistry);
+    }
+}
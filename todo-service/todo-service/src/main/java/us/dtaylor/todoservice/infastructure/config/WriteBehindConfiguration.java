@@ -0,0 +1,61 @@
+package us.dtaylor.todoservice.infastructure.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import us.dtaylor.todoservice.domain.repository.TodoRepository;
+import us.dtaylor.todoservice.infastructure.persistence.repository.WriteBehindTodoRepository;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Configuration
+@ConditionalOnProperty(name = "todo.write-behind.enabled", havingValue = "true")
+public class WriteBehindConfiguration {
+
+    @Value("${todo.write-behind.directory:./data/todo-wal}")
+    private String directory;
+
+    @Value("${todo.write-behind.segment-size-bytes:16777216}")
+    private int segmentSizeBytes;
+
+    @Value("${todo.write-behind.fsync-interval-ms:5}")
+    private long fsyncIntervalMs;
+
+    @Value("${todo.write-behind.fsync-batch-size:256}")
+    private int fsyncBatchSize;
+
+    @Value("${todo.write-behind.flush-interval-ms:100}")
+    private long flushIntervalMs;
+
+    @Value("${todo.write-behind.flush-batch-size:500}")
+    private int flushBatchSize;
+
+    @Value("${todo.write-behind.max-pending:50000}")
+    private int maxPending;
+
+    @Value("${todo.write-behind.flush-timeout-ms:10000}")
+    private long flushTimeoutMs;
+
+    @Value("${todo.write-behind.max-flush-attempts:5}")
+    private int maxFlushAttempts;
+
+    /**
+     * Wraps the primary repository; only the todo service is handed the write-behind view.
+     */
+    @Bean(initMethod = "open", destroyMethod = "close")
+    public WriteBehindTodoRepository writeBehindTodoRepository(TodoRepository todoRepository, MeterRegistry meterRegistry) {
+        return new WriteBehindTodoRepository(todoRepository, new WriteBehindTodoRepository.Settings(
+                Path.of(directory),
+                segmentSizeBytes,
+                Duration.ofMillis(fsyncIntervalMs),
+                fsyncBatchSize,
+                Duration.ofMillis(flushIntervalMs),
+                flushBatchSize,
+                maxPending,
+                Duration.ofMillis(flushTimeoutMs),
+                maxFlushAttempts), meterRegistry);
+    }
+}
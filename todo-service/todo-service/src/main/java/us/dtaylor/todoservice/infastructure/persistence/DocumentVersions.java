@@ -0,0 +1,18 @@
+package us.dtaylor.todoservice.infastructure.persistence;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Issues the version stored with every document write and with the per-user change markers.
+ * A version only has to differ from the earlier versions of the same document, which a random
+ * 64-bit value does across instances without coordination, where a clock or counter would not.
+ */
+public final class DocumentVersions {
+
+    private DocumentVersions() {
+    }
+
+    public static long next() {
+        return ThreadLocalRandom.current().nextLong();
+    }
+}
@@ -4,37 +4,77 @@ import lombok.Data;
 import lombok.experimental.Accessors;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import us.dtaylor.todoservice.domain.Todo;
+import us.dtaylor.todoservice.domain.TodoField;
 
 import java.util.Date;
+import java.util.Set;
 import java.util.UUID;
 
+/**
+ * Ids are stored as BSON binary subtype 4 (see {@code UuidRepresentation.STANDARD} in
+ * {@code MongoDbConfiguration}); {@link UuidMigration} rewrites documents still holding them as strings.
+ */
 @Data
 @Accessors(chain = true)
-@Document
+@Document(collection = TodoDocument.COLLECTION)
 public class TodoDocument {
+    public static final String COLLECTION = "todoDocument";
+
     @Id
-    private String id;
+    private UUID id;
     private String title;
     private String description;
     private boolean completed;
-    private String userId;
+    @Indexed
+    private UUID userId;
 
     @CreatedDate
     private Date createdDate;
 
+    /**
+     * Replaced on every write; absent on documents not written since versions were introduced.
+     */
+    private Long version;
+
     public static TodoDocument toDocument(Todo todo) {
         TodoDocument todoDocument = new TodoDocument();
-        todoDocument.id = todo.getId() != null ? todo.getId().toString() : UUID.randomUUID().toString();
+        todoDocument.id = todo.getId() != null ? todo.getId() : UUID.randomUUID();
         todoDocument.title = todo.getTitle();
         todoDocument.description = todo.getDescription();
         todoDocument.completed = todo.isCompleted();
-        todoDocument.userId = todo.getUserId().toString();
+        todoDocument.userId = todo.getUserId();
+        todoDocument.version = DocumentVersions.next();
         return todoDocument;
     }
 
     public Todo toDomain() {
-        return new Todo(UUID.fromString(id), title, description, completed, UUID.fromString(userId));
+        return new Todo(id, title, description, completed, userId, version);
+    }
+
+    /**
+     * For a document read with a projection on {@code fields}: copies only those, since Mongo
+     * returns {@code _id} whether it was asked for or not.
+     */
+    public Todo toDomain(Set<TodoField> fields) {
+        Todo todo = new Todo().setVersion(version);
+        if (fields.contains(TodoField.ID)) {
+            todo.setId(id);
+        }
+        if (fields.contains(TodoField.TITLE)) {
+            todo.setTitle(title);
+        }
+        if (fields.contains(TodoField.DESCRIPTION)) {
+            todo.setDescription(description);
+        }
+        if (fields.contains(TodoField.COMPLETED)) {
+            todo.setCompleted(completed);
+        }
+        if (fields.contains(TodoField.USER_ID)) {
+            todo.setUserId(userId);
+        }
+        return todo;
     }
 }
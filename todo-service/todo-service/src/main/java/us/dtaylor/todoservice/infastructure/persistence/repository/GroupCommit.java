@@ -0,0 +1,96 @@
+package us.dtaylor.todoservice.infastructure.persistence.repository;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batches fsyncs of {@link LogSegment}s. Writers append, then wait on {@link #await(LogSegment)};
+ * a single thread forces every segment with waiting writers each {@code interval}, or as soon as
+ * {@code batchSize} writers are waiting, and releases them together. A zero interval forces on
+ * every write.
+ */
+class GroupCommit {
+
+    private final Duration interval;
+    private final int batchSize;
+    private final ScheduledExecutorService executor;
+
+    private final Object lock = new Object();
+    private List<PendingSync> pending = new ArrayList<>();
+
+    GroupCommit(String threadName, Duration interval, int batchSize) {
+        this.interval = interval;
+        this.batchSize = batchSize;
+        this.executor = Executors.newSingleThreadScheduledExecutor(daemonThreads(threadName));
+        if (!interval.isZero()) {
+            long nanos = interval.toNanos();
+            executor.scheduleWithFixedDelay(this::sync, nanos, nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    Mono<Void> await(LogSegment segment) {
+        return Mono.create(sink -> {
+            int waiting;
+            synchronized (lock) {
+                pending.add(new PendingSync(segment, sink));
+                waiting = pending.size();
+            }
+            if (waiting >= batchSize || interval.isZero()) {
+                try {
+                    executor.execute(this::sync);
+                } catch (RejectedExecutionException e) {
+                    sync();
+                }
+            }
+        });
+    }
+
+    void close() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        sync();
+    }
+
+    private void sync() {
+        List<PendingSync> batch;
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new ArrayList<>();
+        }
+        Set<LogSegment> dirty = Collections.newSetFromMap(new IdentityHashMap<>());
+        batch.forEach(sync -> dirty.add(sync.segment()));
+        try {
+            dirty.forEach(LogSegment::force);
+        } catch (RuntimeException e) {
+            batch.forEach(sync -> sync.sink().error(e));
+            return;
+        }
+        batch.forEach(sync -> sync.sink().success());
+    }
+
+    static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private record PendingSync(LogSegment segment, MonoSink<Void> sink) {
+    }
+}
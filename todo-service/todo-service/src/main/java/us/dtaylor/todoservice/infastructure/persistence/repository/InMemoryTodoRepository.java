@@ -0,0 +1,148 @@
+package us.dtaylor.todoservice.infastructure.persistence.repository;
+
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import us.dtaylor.todoservice.domain.Todo;
+import us.dtaylor.todoservice.domain.exceptions.TodoOwnershipException;
+import us.dtaylor.todoservice.domain.repository.TodoRepository;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link TodoRepository} held entirely in memory, for load tests and single-node deployments
+ * that do not run Mongo. Todos are kept in a concurrent primary map with a per-user secondary
+ * index of todo ids, so {@code findAllByUserId} never scans the whole store. The index is updated
+ * inside the primary map's per-key {@code compute}, so concurrent writes of the same todo cannot
+ * leave it stored but unindexed. Stored and returned todos are copies, matching the detached
+ * objects the Mongo adapter hands out.
+ */
+@Component
+@Primary
+@Profile(InMemoryTodoRepository.PROFILE)
+public class InMemoryTodoRepository implements TodoRepository {
+
+    public static final String PROFILE = "in-memory";
+
+    private final Map<UUID, Todo> todos = new ConcurrentHashMap<>();
+    private final Map<UUID, Set<UUID>> todoIdsByUser = new ConcurrentHashMap<>();
+
+    @Override
+    public Flux<Todo> findAllByUserId(UUID userId) {
+        return Flux.defer(() -> Flux.fromIterable(todoIdsByUser.getOrDefault(userId, Set.of()))
+                .mapNotNull(todos::get)
+                .filter(todo -> userId.equals(todo.getUserId()))
+                .map(InMemoryTodoRepository::copy));
+    }
+
+    @Override
+    public Mono<Void> deleteAll() {
+        return Mono.fromRunnable(() -> {
+            todos.clear();
+            todoIdsByUser.clear();
+        });
+    }
+
+    @Override
+    public Mono<Todo> save(Todo todo) {
+        return Mono.fromSupplier(() -> {
+            Todo stored = copy(todo);
+            if (stored.getId() == null) {
+                stored.setId(UUID.randomUUID());
+            }
+            todos.compute(stored.getId(), (id, previous) -> {
+                if (previous != null && !Objects.equals(previous.getUserId(), stored.getUserId())) {
+                    unindex(previous);
+                }
+                todoIdsByUser.computeIfAbsent(stored.getUserId(), userId -> ConcurrentHashMap.newKeySet())
+                        .add(id);
+                return stored;
+            });
+            return copy(stored);
+        });
+    }
+
+    /**
+     * Checks the owner inside the same {@code compute} that writes, so the todo cannot change
+     * hands between the check and the write.
+     */
+    @Override
+    public Mono<Todo> saveForOwner(Todo todo) {
+        return Mono.fromSupplier(() -> {
+            Todo stored = copy(todo);
+            todos.compute(stored.getId(), (id, previous) -> {
+                if (previous != null && !Objects.equals(previous.getUserId(), stored.getUserId())) {
+                    throw new TodoOwnershipException(id);
+                }
+                todoIdsByUser.computeIfAbsent(stored.getUserId(), userId -> ConcurrentHashMap.newKeySet())
+                        .add(id);
+                return stored;
+            });
+            return copy(stored);
+        });
+    }
+
+    @Override
+    public Flux<Todo> saveAll(Collection<Todo> todos) {
+        return Flux.fromIterable(todos).concatMap(this::save);
+    }
+
+    @Override
+    public Flux<Todo> findAll() {
+        return Flux.defer(() -> Flux.fromIterable(todos.values()).map(InMemoryTodoRepository::copy));
+    }
+
+    @Override
+    public Mono<Void> deleteById(UUID id) {
+        return Mono.fromRunnable(() -> todos.computeIfPresent(id, (key, removed) -> {
+            unindex(removed);
+            return null;
+        }));
+    }
+
+    @Override
+    public Mono<Long> deleteAllByUserId(UUID userId, int limit) {
+        return Mono.fromSupplier(() -> {
+            long[] deleted = {0};
+            Set<UUID> owned = todoIdsByUser.getOrDefault(userId, Set.of());
+            Iterator<UUID> ids = owned.iterator();
+            while (deleted[0] < limit && ids.hasNext()) {
+                UUID id = ids.next();
+                todos.compute(id, (key, todo) -> {
+                    // an entry left over from a todo that moved or went away is dropped as well
+                    owned.remove(key);
+                    if (todo != null && userId.equals(todo.getUserId())) {
+                        deleted[0]++;
+                        return null;
+                    }
+                    return todo;
+                });
+            }
+            return deleted[0];
+        });
+    }
+
+    @Override
+    public Mono<Todo> findById(UUID id) {
+        return Mono.fromSupplier(() -> todos.get(id)).map(InMemoryTodoRepository::copy);
+    }
+
+    private void unindex(Todo todo) {
+        Set<UUID> ids = todoIdsByUser.get(todo.getUserId());
+        if (ids != null) {
+            ids.remove(todo.getId());
+        }
+    }
+
+    private static Todo copy(Todo todo) {
+        return new Todo(todo.getId(), todo.getTitle(), todo.getDescription(), todo.isCompleted(), todo.getUserId());
+    }
+}
@@ -0,0 +1,179 @@
+package us.dtaylor.todoservice.infastructure.persistence.repository;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32C;
+
+/**
+ * One fixed-size, memory-mapped file of the todo log. Records are appended back to back:
+ * <pre>
+ * int length | int crc32c | byte type | long idMsb | long idLsb | byte[length] payload
+ * </pre>
+ * The checksum covers everything after itself, so a record torn by a crash is detected on
+ * recovery. Unused space is zero-filled and a zero type byte marks the end of the log.
+ */
+class LogSegment {
+
+    static final byte PUT = 1;
+    static final byte DELETE = 2;
+    static final byte CLEAR = 3;
+
+    static final int HEADER_SIZE = 4 + 4 + 1 + 16;
+
+    private static final int CHECKSUMMED_FROM = 8;
+
+    private final long id;
+    private final Path path;
+    private final MappedByteBuffer buffer;
+
+    private volatile int writePosition;
+    private final AtomicLong liveBytes = new AtomicLong();
+
+    private LogSegment(long id, Path path, MappedByteBuffer buffer) {
+        this.id = id;
+        this.path = path;
+        this.buffer = buffer;
+    }
+
+    static LogSegment open(Path directory, long id, int size) throws IOException {
+        Path path = directory.resolve(fileName(id));
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            if (file.length() == 0) {
+                file.setLength(size);
+            }
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+            return new LogSegment(id, path, buffer);
+        }
+    }
+
+    static String fileName(long id) {
+        return String.format("%020d.log", id);
+    }
+
+    static Long idOf(Path path) {
+        String name = path.getFileName().toString();
+        if (!name.endsWith(".log")) {
+            return null;
+        }
+        try {
+            return Long.parseLong(name.substring(0, name.length() - 4));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    long id() {
+        return id;
+    }
+
+    int writePosition() {
+        return writePosition;
+    }
+
+    boolean hasRoomFor(int recordSize) {
+        return writePosition + recordSize <= buffer.capacity();
+    }
+
+    long liveBytes() {
+        return liveBytes.get();
+    }
+
+    void addLive(int recordSize) {
+        liveBytes.addAndGet(recordSize);
+    }
+
+    void removeLive(int recordSize) {
+        liveBytes.addAndGet(-recordSize);
+    }
+
+    /**
+     * Writes a record at the current end of the segment and returns its offset. Callers
+     * serialize appends and check {@link #hasRoomFor(int)} first.
+     */
+    int append(byte type, UUID key, byte[] payload) {
+        int offset = writePosition;
+        buffer.putInt(offset, payload.length);
+        buffer.put(offset + 8, type);
+        buffer.putLong(offset + 9, key.getMostSignificantBits());
+        buffer.putLong(offset + 17, key.getLeastSignificantBits());
+        buffer.put(offset + HEADER_SIZE, payload);
+        buffer.putInt(offset + 4, checksum(offset, payload.length));
+        writePosition = offset + HEADER_SIZE + payload.length;
+        return offset;
+    }
+
+    /**
+     * Reads the record header at {@code offset}, or returns {@code null} when the log ends there,
+     * either cleanly or with a torn record.
+     */
+    Record read(int offset) {
+        if (offset + HEADER_SIZE > buffer.capacity()) {
+            return null;
+        }
+        byte type = buffer.get(offset + 8);
+        int length = buffer.getInt(offset);
+        if (type < PUT || type > CLEAR || length < 0 || offset + HEADER_SIZE + length > buffer.capacity()) {
+            return null;
+        }
+        if (buffer.getInt(offset + 4) != checksum(offset, length)) {
+            return null;
+        }
+        UUID key = new UUID(buffer.getLong(offset + 9), buffer.getLong(offset + 17));
+        return new Record(type, key, offset, HEADER_SIZE + length);
+    }
+
+    byte[] payload(int offset, int recordSize) {
+        byte[] payload = new byte[recordSize - HEADER_SIZE];
+        buffer.get(offset + HEADER_SIZE, payload);
+        return payload;
+    }
+
+    /**
+     * Scans the segment from the start, returning the offset just past the last intact record.
+     * Anything beyond it is zeroed so a later append cannot be confused with leftover bytes.
+     */
+    int recover(RecordVisitor visitor) {
+        int offset = 0;
+        Record record;
+        while ((record = read(offset)) != null) {
+            visitor.visit(this, record);
+            offset += record.size();
+        }
+        writePosition = offset;
+        if (offset + HEADER_SIZE <= buffer.capacity()
+                && (buffer.getInt(offset) != 0 || buffer.get(offset + 8) != 0)) {
+            for (int i = offset; i < buffer.capacity(); i++) {
+                buffer.put(i, (byte) 0);
+            }
+            buffer.force();
+        }
+        return offset;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void delete() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    private int checksum(int offset, int payloadLength) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset + CHECKSUMMED_FROM, HEADER_SIZE - CHECKSUMMED_FROM + payloadLength));
+        return (int) crc.getValue();
+    }
+
+    record Record(byte type, UUID key, int offset, int size) {
+    }
+
+    interface RecordVisitor {
+        void visit(LogSegment segment, Record record);
+    }
+}
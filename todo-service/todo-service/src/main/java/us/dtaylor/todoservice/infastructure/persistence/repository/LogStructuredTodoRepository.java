@@ -0,0 +1,345 @@
+package us.dtaylor.todoservice.infastructure.persistence.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import us.dtaylor.todoservice.domain.Todo;
+import us.dtaylor.todoservice.domain.exceptions.TodoOwnershipException;
+import us.dtaylor.todoservice.domain.repository.TodoRepository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * {@link TodoRepository} stored in an append-only log of memory-mapped segment files, for
+ * single-node installs that should not need Mongo. Every save or delete appends a record; an
+ * in-memory index maps each todo id to the offset of its latest record and each user to their
+ * todo ids, so reads go straight to the mapped bytes.
+ *
+ * <p>Writes are acknowledged once they are on disk. Rather than forcing the file per write, a
+ * sync thread forces all dirty segments every {@code fsyncInterval}, or as soon as
+ * {@code fsyncBatchSize} writes are waiting, and releases the whole batch at once.
+ *
+ * <p>On {@link #open()} the segments are replayed in order to rebuild the index; a record torn by
+ * a crash fails its checksum and ends the log there. A background task compacts the oldest sealed
+ * segment whenever the share of superseded bytes in sealed segments exceeds
+ * {@code compactionGarbageRatio}: live records are re-appended to the head and the file deleted.
+ * Compacting oldest-first means a dropped tombstone can never uncover an older write.
+ */
+@Slf4j
+public class LogStructuredTodoRepository implements TodoRepository {
+
+    public static final String PROFILE = "embedded-log";
+
+    private static final UUID CLEAR_KEY = new UUID(0, 0);
+    private static final byte[] EMPTY = new byte[0];
+
+    private final Settings settings;
+
+    private final Map<UUID, Location> index = new ConcurrentHashMap<>();
+    private final Map<UUID, Set<UUID>> todoIdsByUser = new ConcurrentHashMap<>();
+    private final Deque<LogSegment> segments = new ConcurrentLinkedDeque<>();
+
+    private final Object appendLock = new Object();
+    private volatile LogSegment active;
+
+    private GroupCommit groupCommit;
+    private ScheduledExecutorService compactionExecutor;
+
+    public LogStructuredTodoRepository(Settings settings) {
+        this.settings = settings;
+    }
+
+    public void open() throws IOException {
+        Files.createDirectories(settings.directory());
+        List<Long> ids;
+        try (Stream<Path> files = Files.list(settings.directory())) {
+            ids = files.map(LogSegment::idOf).filter(Objects::nonNull).sorted().toList();
+        }
+        for (long id : ids) {
+            LogSegment segment = LogSegment.open(settings.directory(), id, settings.segmentSize());
+            segment.recover(this::replay);
+            segments.addLast(segment);
+        }
+        if (segments.isEmpty()) {
+            segments.addLast(LogSegment.open(settings.directory(), 1, settings.segmentSize()));
+        }
+        active = segments.peekLast();
+        log.info("Recovered {} todos from {} log segments in {}", index.size(), segments.size(), settings.directory());
+
+        groupCommit = new GroupCommit("todo-log-sync", settings.fsyncInterval(), settings.fsyncBatchSize());
+        compactionExecutor = Executors.newSingleThreadScheduledExecutor(GroupCommit.daemonThreads("todo-log-compaction"));
+        long compactionInterval = settings.compactionInterval().toNanos();
+        compactionExecutor.scheduleWithFixedDelay(this::compactQuietly, compactionInterval, compactionInterval, TimeUnit.NANOSECONDS);
+    }
+
+    public void close() throws InterruptedException {
+        compactionExecutor.shutdown();
+        compactionExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        groupCommit.close();
+        segments.forEach(LogSegment::force);
+    }
+
+    @Override
+    public Flux<Todo> findAllByUserId(UUID userId) {
+        return Flux.defer(() -> Flux.fromIterable(todoIdsByUser.getOrDefault(userId, Set.of())))
+                .mapNotNull(id -> {
+                    Location location = index.get(id);
+                    return location != null && userId.equals(location.userId()) ? read(id, location) : null;
+                });
+    }
+
+    @Override
+    public Mono<Void> deleteAll() {
+        return Mono.fromCallable(() -> append(LogSegment.CLEAR, CLEAR_KEY, EMPTY, null))
+                .flatMap(groupCommit::await);
+    }
+
+    @Override
+    public Mono<Todo> save(Todo todo) {
+        return Mono.defer(() -> {
+            Todo stored = TodoRecordCodec.copy(todo);
+            if (stored.getId() == null) {
+                stored.setId(UUID.randomUUID());
+            }
+            LogSegment segment = append(LogSegment.PUT, stored.getId(), TodoRecordCodec.encode(stored), stored.getUserId());
+            return groupCommit.await(segment).thenReturn(stored);
+        });
+    }
+
+    /**
+     * Checks the owner under the append lock, so the todo cannot change hands between the check
+     * and the append.
+     */
+    @Override
+    public Mono<Todo> saveForOwner(Todo todo) {
+        return Mono.defer(() -> {
+            Todo stored = TodoRecordCodec.copy(todo);
+            byte[] payload = TodoRecordCodec.encode(stored);
+            LogSegment segment;
+            synchronized (appendLock) {
+                Location current = index.get(stored.getId());
+                if (current != null && !Objects.equals(current.userId(), stored.getUserId())) {
+                    return Mono.error(new TodoOwnershipException(stored.getId()));
+                }
+                segment = appendLocked(LogSegment.PUT, stored.getId(), payload, stored.getUserId());
+            }
+            return groupCommit.await(segment).thenReturn(stored);
+        });
+    }
+
+    @Override
+    public Flux<Todo> saveAll(Collection<Todo> todos) {
+        // Appends happen in order; the fsync waits overlap and share a group commit
+        return Flux.fromIterable(todos).flatMapSequential(this::save);
+    }
+
+    @Override
+    public Flux<Todo> findAll() {
+        return Flux.defer(() -> Flux.fromIterable(index.entrySet()))
+                .map(entry -> read(entry.getKey(), entry.getValue()));
+    }
+
+    @Override
+    public Mono<Void> deleteById(UUID id) {
+        return Mono.fromCallable(() -> index.containsKey(id) ? append(LogSegment.DELETE, id, EMPTY, null) : null)
+                .flatMap(groupCommit::await);
+    }
+
+    @Override
+    public Mono<Long> deleteAllByUserId(UUID userId, int limit) {
+        return Mono.defer(() -> {
+            Set<LogSegment> written = Collections.newSetFromMap(new IdentityHashMap<>());
+            long deleted = 0;
+            for (UUID id : List.copyOf(todoIdsByUser.getOrDefault(userId, Set.of()))) {
+                if (deleted == limit) {
+                    break;
+                }
+                synchronized (appendLock) {
+                    Location location = index.get(id);
+                    if (location != null && userId.equals(location.userId())) {
+                        written.add(appendLocked(LogSegment.DELETE, id, EMPTY, null));
+                        deleted++;
+                    }
+                }
+            }
+            return Flux.fromIterable(written).flatMap(groupCommit::await).then(Mono.just(deleted));
+        });
+    }
+
+    @Override
+    public Mono<Todo> findById(UUID id) {
+        return Mono.fromSupplier(() -> {
+            Location location = index.get(id);
+            return location == null ? null : read(id, location);
+        });
+    }
+
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Share of the bytes in sealed segments that belong to superseded records.
+     */
+    public double garbageRatio() {
+        long written = 0;
+        long live = 0;
+        for (LogSegment segment : segments) {
+            if (segment != active) {
+                written += segment.writePosition();
+                live += segment.liveBytes();
+            }
+        }
+        return written == 0 ? 0 : 1 - (double) live / written;
+    }
+
+    /**
+     * Compacts oldest-first until the garbage in sealed segments is back under the threshold.
+     */
+    void compact() throws IOException {
+        while (garbageRatio() > settings.compactionGarbageRatio()) {
+            LogSegment oldest = segments.peekFirst();
+            if (oldest == null || oldest == active) {
+                return;
+            }
+            compact(oldest);
+        }
+    }
+
+    private void compact(LogSegment segment) throws IOException {
+        Set<LogSegment> written = Collections.newSetFromMap(new IdentityHashMap<>());
+        int offset = 0;
+        LogSegment.Record record;
+        while (offset < segment.writePosition() && (record = segment.read(offset)) != null) {
+            synchronized (appendLock) {
+                Location current = index.get(record.key());
+                if (current != null && current.segment() == segment && current.offset() == record.offset()) {
+                    byte[] payload = segment.payload(record.offset(), record.size());
+                    written.add(appendLocked(LogSegment.PUT, record.key(), payload, current.userId()));
+                }
+            }
+            offset += record.size();
+        }
+        written.forEach(LogSegment::force);
+        segments.remove(segment);
+        segment.delete();
+        log.debug("Compacted log segment {}", segment.id());
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Todo log compaction failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private LogSegment append(byte type, UUID key, byte[] payload, UUID userId) {
+        synchronized (appendLock) {
+            return appendLocked(type, key, payload, userId);
+        }
+    }
+
+    private LogSegment appendLocked(byte type, UUID key, byte[] payload, UUID userId) {
+        int size = LogSegment.HEADER_SIZE + payload.length;
+        if (size > settings.segmentSize()) {
+            throw new IllegalArgumentException("Record of " + size + " bytes does not fit in a log segment");
+        }
+        if (!active.hasRoomFor(size)) {
+            roll();
+        }
+        int offset = active.append(type, key, payload);
+        apply(active, type, key, offset, size, userId);
+        return active;
+    }
+
+    private void roll() {
+        try {
+            LogSegment next = LogSegment.open(settings.directory(), active.id() + 1, settings.segmentSize());
+            segments.addLast(next);
+            active = next;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void replay(LogSegment segment, LogSegment.Record record) {
+        UUID userId = null;
+        if (record.type() == LogSegment.PUT) {
+            userId = TodoRecordCodec.decode(record.key(), segment.payload(record.offset(), record.size())).getUserId();
+        }
+        apply(segment, record.type(), record.key(), record.offset(), record.size(), userId);
+    }
+
+    private void apply(LogSegment segment, byte type, UUID key, int offset, int size, UUID userId) {
+        switch (type) {
+            case LogSegment.PUT -> {
+                segment.addLive(size);
+                Location previous = index.put(key, new Location(segment, offset, size, userId));
+                if (previous != null) {
+                    previous.segment().removeLive(previous.size());
+                    if (!Objects.equals(previous.userId(), userId)) {
+                        unindex(key, previous);
+                    }
+                }
+                if (userId != null) {
+                    todoIdsByUser.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet()).add(key);
+                }
+            }
+            case LogSegment.DELETE -> {
+                Location previous = index.remove(key);
+                if (previous != null) {
+                    previous.segment().removeLive(previous.size());
+                    unindex(key, previous);
+                }
+            }
+            case LogSegment.CLEAR -> {
+                index.values().forEach(previous -> previous.segment().removeLive(previous.size()));
+                index.clear();
+                todoIdsByUser.clear();
+            }
+            default -> throw new IllegalStateException("Unknown record type " + type);
+        }
+    }
+
+    private void unindex(UUID key, Location location) {
+        Set<UUID> ids = location.userId() == null ? null : todoIdsByUser.get(location.userId());
+        if (ids != null) {
+            ids.remove(key);
+        }
+    }
+
+    private Todo read(UUID id, Location location) {
+        return TodoRecordCodec.decode(id, location.segment().payload(location.offset(), location.size()));
+    }
+
+    private record Location(LogSegment segment, int offset, int size, UUID userId) {
+    }
+
+    public record Settings(Path directory,
+                           int segmentSize,
+                           Duration fsyncInterval,
+                           int fsyncBatchSize,
+                           Duration compactionInterval,
+                           double compactionGarbageRatio) {
+    }
+}
@@ -1,38 +1,184 @@
 package us.dtaylor.todoservice.infastructure.persistence.repository;
 
+import io.micrometer.observation.ObservationRegistry;
 import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Component;
+import org.bson.Document;
+import reactor.core.observability.micrometer.Micrometer;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import us.dtaylor.todoservice.domain.Todo;
+import us.dtaylor.todoservice.domain.TodoField;
+import us.dtaylor.todoservice.domain.TodoFilter;
+import us.dtaylor.todoservice.domain.exceptions.TodoOwnershipException;
 import us.dtaylor.todoservice.domain.repository.TodoRepository;
+import us.dtaylor.todoservice.infastructure.persistence.DocumentVersions;
+import us.dtaylor.todoservice.infastructure.persistence.RequestCoalescer;
 import us.dtaylor.todoservice.infastructure.persistence.TodoDocument;
+import us.dtaylor.todoservice.infastructure.persistence.UuidMigration;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
 
 @Component
 @Primary
+@Profile("!" + InMemoryTodoRepository.PROFILE + " & !" + LogStructuredTodoRepository.PROFILE)
 public class MongoDbTodoRepository implements TodoRepository {
+    /**
+     * One document per user, {@code {_id: userId, version}}, with a new version after every
+     * write or delete of one of the user's todos.
+     */
+    public static final String USER_VERSIONS = "todoUserVersions";
+
     private final SpringDataMongoTodoRepository repository;
+    private final ReactiveMongoOperations mongoOperations;
+    private final UuidMigration uuidMigration;
+    private final RequestCoalescer<UUID, Todo> reads;
+    private final ObservationRegistry observationRegistry;
 
-    public MongoDbTodoRepository(SpringDataMongoTodoRepository repository) {
+    public MongoDbTodoRepository(SpringDataMongoTodoRepository repository,
+                                 ReactiveMongoOperations mongoOperations,
+                                 UuidMigration todoUuidMigration,
+                                 RequestCoalescer<UUID, Todo> todoReadCoalescer,
+                                 ObservationRegistry observationRegistry) {
         this.repository = repository;
+        this.mongoOperations = mongoOperations;
+        this.uuidMigration = todoUuidMigration;
+        this.reads = todoReadCoalescer;
+        this.observationRegistry = observationRegistry;
     }
+
     @Override
     public Flux<Todo> findAllByUserId(UUID userId) {
-        return repository.findAllByUserId(userId.toString())
-                .map(TodoDocument::toDomain);
+        return repository.findAllByUserId(userId)
+                .map(TodoDocument::toDomain)
+                .concatWith(Flux.defer(() -> uuidMigration.isComplete()
+                        ? Flux.empty()
+                        : mongoOperations.find(query(where("userId").is(userId.toString())), Document.class, TodoDocument.COLLECTION)
+                                .map(MongoDbTodoRepository::fromLegacy)));
+    }
+
+    /**
+     * Pushes the field selection down as a projection, so unrequested fields are neither read
+     * from disk nor sent by the server.
+     */
+    @Override
+    public Flux<Todo> findAllByUserId(UUID userId, Set<TodoField> fields) {
+        if (fields.containsAll(TodoField.ALL)) {
+            return findAllByUserId(userId);
+        }
+        return mongoOperations.find(projected(query(where("userId").is(userId)), fields), TodoDocument.class)
+                .map(document -> document.toDomain(fields))
+                .concatWith(Flux.defer(() -> uuidMigration.isComplete()
+                        ? Flux.empty()
+                        : mongoOperations.find(projected(query(where("userId").is(userId.toString())), fields), Document.class, TodoDocument.COLLECTION)
+                                .map(document -> fromLegacy(document, fields))));
     }
 
     @Override
     public Mono<Void> deleteAll() {
-        return repository.deleteAll();
+        return mongoOperations.findDistinct(new Query(), "userId", TodoDocument.COLLECTION, Object.class)
+                .collectList()
+                .flatMap(users -> repository.deleteAll().then(touch(users)))
+                .doOnSuccess(done -> reads.invalidateAll());
     }
 
+    /**
+     * Replaces the todo and reads back the one it replaced, so if the todo moved to another user
+     * the previous owner gets a new version marker too.
+     */
     @Override
     public Mono<Todo> save(Todo todo) {
-        return repository.save(TodoDocument.toDocument(todo))
-                .map(TodoDocument::toDomain);
+        return Mono.defer(() -> {
+            TodoDocument document = TodoDocument.toDocument(todo);
+            return mongoOperations.findAndReplace(query(where("_id").is(document.getId())), document, FindAndReplaceOptions.options().upsert())
+                    .map(previous -> Arrays.asList(previous.getUserId(), document.getUserId()))
+                    .defaultIfEmpty(Collections.singletonList(document.getUserId()))
+                    .flatMap(owners -> saved(document, owners));
+        })
+                .name("todo.repository.save")
+                .tap(Micrometer.observation(observationRegistry));
+    }
+
+    /**
+     * Makes the replace itself conditional on the owner: it matches {@code _id} and
+     * {@code userId}, so a todo stored under another user is not matched, the upsert then
+     * collides with it on {@code _id} and nothing is written.
+     */
+    @Override
+    public Mono<Todo> saveForOwner(Todo todo) {
+        return Mono.defer(() -> {
+            TodoDocument document = TodoDocument.toDocument(todo);
+            Query owned = query(where("_id").is(document.getId()).and("userId").is(document.getUserId()));
+            return mongoOperations.findAndReplace(owned, document, FindAndReplaceOptions.options().upsert())
+                    .onErrorMap(DuplicateKeyException.class, e -> new TodoOwnershipException(document.getId()))
+                    .then(Mono.defer(() -> saved(document, Collections.singletonList(document.getUserId()))));
+        })
+                .name("todo.repository.save")
+                .tap(Micrometer.observation(observationRegistry));
+    }
+
+    private Mono<Todo> saved(TodoDocument document, List<UUID> owners) {
+        return removeLegacy(List.of(document.getId()))
+                .then(touch(owners))
+                .then(Mono.fromSupplier(() -> {
+                    reads.invalidate(document.getId());
+                    return document.toDomain();
+                }));
+    }
+
+    /**
+     * Upserts all todos in one unordered bulk write instead of a round trip per document. The
+     * current owners are read first, so todos moving to another user also give the previous
+     * owner a new version marker.
+     */
+    @Override
+    public Flux<Todo> saveAll(Collection<Todo> todos) {
+        return Flux.defer(() -> {
+            if (todos.isEmpty()) {
+                return Flux.empty();
+            }
+            ReactiveBulkOperations bulk = mongoOperations.bulkOps(BulkOperations.BulkMode.UNORDERED, TodoDocument.class);
+            List<Todo> saved = new ArrayList<>(todos.size());
+            for (Todo todo : todos) {
+                TodoDocument document = TodoDocument.toDocument(todo);
+                bulk.replaceOne(query(where("_id").is(document.getId())), document, FindAndReplaceOptions.options().upsert());
+                saved.add(document.toDomain());
+            }
+            List<UUID> ids = saved.stream().map(Todo::getId).toList();
+            return previousOwners(ids)
+                    .flatMap(previous -> bulk.execute()
+                            .then(removeLegacy(ids))
+                            .then(touch(Stream.concat(previous.stream(), saved.stream().map(Todo::getUserId)).toList())))
+                    .doOnSuccess(done -> saved.forEach(todo -> reads.invalidate(todo.getId())))
+                    .name("todo.repository.save-all")
+                    .tap(Micrometer.observation(observationRegistry))
+                    .thenMany(Flux.fromIterable(saved));
+        });
+    }
+
+    private Mono<List<Object>> previousOwners(List<UUID> ids) {
+        return mongoOperations.findDistinct(query(where("_id").in(ids)), "userId", TodoDocument.COLLECTION, Object.class)
+                .collectList();
     }
 
     @Override
@@ -41,13 +187,227 @@ public class MongoDbTodoRepository implements TodoRepository {
                 .map(TodoDocument::toDomain);
     }
 
+    @Override
+    public Flux<Todo> findAll(Set<TodoField> fields) {
+        if (fields.containsAll(TodoField.ALL)) {
+            return findAll();
+        }
+        return mongoOperations.find(projected(new Query(), fields), TodoDocument.class)
+                .map(document -> document.toDomain(fields));
+    }
+
     @Override
     public Mono<Void> deleteById(UUID id) {
-        return repository.deleteById(id.toString());
+        return mongoOperations.findAndRemove(query(where("_id").is(id)), TodoDocument.class)
+                .flatMap(removed -> touch(List.of(removed.getUserId())))
+                .then(removeLegacy(List.of(id)))
+                .doOnSuccess(done -> reads.invalidate(id));
+    }
+
+    /**
+     * Reads one chunk of ids off the userId index and removes them with a single deleteMany, so
+     * a large cascade runs as a series of bounded deletes rather than one long one.
+     */
+    @Override
+    public Mono<Long> deleteAllByUserId(UUID userId, int limit) {
+        return Mono.defer(() -> {
+            Query owned = query(uuidMigration.isComplete()
+                    ? where("userId").is(userId)
+                    : where("userId").in(userId, userId.toString()))
+                    .limit(limit);
+            owned.fields().include("_id");
+            return mongoOperations.find(owned, Document.class, TodoDocument.COLLECTION)
+                    .map(document -> document.get("_id"))
+                    .collectList()
+                    .flatMap(ids -> ids.isEmpty()
+                            ? Mono.just(0L)
+                            : mongoOperations.remove(query(where("_id").in(ids)), TodoDocument.COLLECTION)
+                                    .doOnSuccess(result -> ids.forEach(this::invalidate))
+                                    .flatMap(result -> touch(List.of(userId)).thenReturn(result.getDeletedCount())));
+        });
+    }
+
+    /**
+     * One updateMany for everything the filter selects that is not already in that state.
+     */
+    @Override
+    public Mono<Long> updateCompleted(TodoFilter filter, boolean completed) {
+        if (filter.completed() != null && filter.completed() == completed) {
+            return Mono.just(0L);
+        }
+        return usersOf(filter)
+                .flatMap(users -> mongoOperations.updateMulti(
+                                query(criteria(filter).and("completed").ne(completed)),
+                                Update.update("completed", completed).set("version", DocumentVersions.next()),
+                                TodoDocument.COLLECTION)
+                        .doOnSuccess(result -> invalidate(filter))
+                        .flatMap(result -> touch(users).thenReturn(result.getModifiedCount())))
+                .name("todo.repository.update-many")
+                .tap(Micrometer.observation(observationRegistry));
     }
 
+    /**
+     * One deleteMany for everything the filter selects.
+     */
+    @Override
+    public Mono<Long> deleteMatching(TodoFilter filter) {
+        return usersOf(filter)
+                .flatMap(users -> {
+                    Criteria criteria = criteria(filter);
+                    if (filter.completed() != null) {
+                        criteria = criteria.and("completed").is(filter.completed());
+                    }
+                    return mongoOperations.remove(query(criteria), TodoDocument.COLLECTION)
+                            .doOnSuccess(result -> invalidate(filter))
+                            .flatMap(result -> touch(users).thenReturn(result.getDeletedCount()));
+                })
+                .name("todo.repository.delete-many")
+                .tap(Micrometer.observation(observationRegistry));
+    }
+
+    /**
+     * Concurrent lookups of the same id share one query; see {@link RequestCoalescer}.
+     */
     @Override
     public Mono<Todo> findById(UUID id) {
-        return repository.findById(id.toString()).map(TodoDocument::toDomain);
+        return reads.get(id, this::load);
+    }
+
+    private Mono<Todo> load(UUID id) {
+        return repository.findById(id)
+                .map(TodoDocument::toDomain)
+                .switchIfEmpty(Mono.defer(() -> uuidMigration.isComplete()
+                        ? Mono.empty()
+                        : mongoOperations.findOne(query(where("_id").is(id.toString())), Document.class, TodoDocument.COLLECTION)
+                                .map(MongoDbTodoRepository::fromLegacy)));
+    }
+
+    /**
+     * Reads the user's marker from {@link #USER_VERSIONS}; a user without one has had no write
+     * since markers were introduced. There is none while the UUID migration runs, as deleting a
+     * string-keyed todo does not know its user.
+     */
+    @Override
+    public Mono<Long> userVersion(UUID userId) {
+        if (!uuidMigration.isComplete()) {
+            return Mono.empty();
+        }
+        return mongoOperations.findById(userId, Document.class, USER_VERSIONS)
+                .map(marker -> marker.getLong("version"))
+                .defaultIfEmpty(0L);
+    }
+
+    /**
+     * Gives the users a new marker. Called after the write, so a reader can see the written todos
+     * under the old marker, which costs it one more full read, but never the new marker with
+     * the old todos.
+     */
+    private Mono<Void> touch(Collection<?> userIds) {
+        Set<Object> users = new LinkedHashSet<>(userIds);
+        users.remove(null);
+        if (users.isEmpty()) {
+            return Mono.empty();
+        }
+        Update update = Update.update("version", DocumentVersions.next());
+        if (users.size() == 1) {
+            return mongoOperations.upsert(query(where("_id").is(users.iterator().next())), update, USER_VERSIONS).then();
+        }
+        ReactiveBulkOperations bulk = mongoOperations.bulkOps(BulkOperations.BulkMode.UNORDERED, USER_VERSIONS);
+        users.forEach(user -> bulk.upsert(query(where("_id").is(user)), update));
+        return bulk.execute().then();
+    }
+
+    /**
+     * The users owning todos the filter selects, read before the write since a delete leaves
+     * nothing to read afterwards.
+     */
+    private Mono<List<Object>> usersOf(TodoFilter filter) {
+        if (filter.userId() != null) {
+            return Mono.just(List.of(filter.userId()));
+        }
+        return Mono.defer(() -> mongoOperations.findDistinct(query(criteria(filter)), "userId", TodoDocument.COLLECTION, Object.class)
+                .collectList());
+    }
+
+    /**
+     * Drops string-keyed copies of the given todos while the UUID migration is still running, so
+     * a write under the binary id is not shadowed or later overwritten by its old version.
+     */
+    private Mono<Void> removeLegacy(List<UUID> ids) {
+        if (uuidMigration.isComplete()) {
+            return Mono.empty();
+        }
+        List<String> legacyIds = ids.stream().map(UUID::toString).toList();
+        return mongoOperations.remove(query(where("_id").in(legacyIds)), TodoDocument.COLLECTION).then();
+    }
+
+    /**
+     * Translates the ids and user of a filter to criteria, matching string-keyed documents too
+     * while the UUID migration is still running. Callers add the condition on completed.
+     */
+    private Criteria criteria(TodoFilter filter) {
+        boolean legacy = !uuidMigration.isComplete();
+        Criteria criteria = new Criteria();
+        if (filter.ids() != null) {
+            List<Object> ids = new ArrayList<>(filter.ids());
+            if (legacy) {
+                filter.ids().forEach(id -> ids.add(id.toString()));
+            }
+            criteria = criteria.and("_id").in(ids);
+        }
+        if (filter.userId() != null) {
+            criteria = legacy
+                    ? criteria.and("userId").in(filter.userId(), filter.userId().toString())
+                    : criteria.and("userId").is(filter.userId());
+        }
+        return criteria;
+    }
+
+    private static Query projected(Query query, Set<TodoField> fields) {
+        fields.forEach(field -> query.fields().include(field == TodoField.ID ? "_id" : field.property()));
+        return query;
+    }
+
+    private void invalidate(TodoFilter filter) {
+        if (filter.ids() != null) {
+            filter.ids().forEach(reads::invalidate);
+        } else {
+            reads.invalidateAll();
+        }
+    }
+
+    private void invalidate(Object id) {
+        if (id instanceof UUID uuid) {
+            reads.invalidate(uuid);
+        } else if (id instanceof String legacyId) {
+            try {
+                reads.invalidate(UUID.fromString(legacyId));
+            } catch (IllegalArgumentException e) {
+                // not a UUID, so never served by findById
+            }
+        }
+    }
+
+    private static Todo fromLegacy(Document document, Set<TodoField> fields) {
+        Todo todo = new Todo();
+        for (TodoField field : fields) {
+            switch (field) {
+                case ID -> todo.setId(UUID.fromString(document.getString("_id")));
+                case TITLE -> todo.setTitle(document.getString("title"));
+                case DESCRIPTION -> todo.setDescription(document.getString("description"));
+                case COMPLETED -> todo.setCompleted(document.getBoolean("completed", false));
+                case USER_ID -> todo.setUserId(UUID.fromString(document.getString("userId")));
+            }
+        }
+        return todo;
+    }
+
+    private static Todo fromLegacy(Document document) {
+        return new Todo(
+                UUID.fromString(document.getString("_id")),
+                document.getString("title"),
+                document.getString("description"),
+                document.getBoolean("completed", false),
+                UUID.fromString(document.getString("userId")));
     }
 }
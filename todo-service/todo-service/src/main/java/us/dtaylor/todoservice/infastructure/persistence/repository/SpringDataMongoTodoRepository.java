@@ -5,7 +5,9 @@ import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
 import us.dtaylor.todoservice.infastructure.persistence.TodoDocument;
 
+import java.util.UUID;
+
 @Repository
-public interface SpringDataMongoTodoRepository extends ReactiveMongoRepository<TodoDocument, String> {
-    Flux<TodoDocument> findAllByUserId(String userId);
+public interface SpringDataMongoTodoRepository extends ReactiveMongoRepository<TodoDocument, UUID> {
+    Flux<TodoDocument> findAllByUserId(UUID userId);
 }
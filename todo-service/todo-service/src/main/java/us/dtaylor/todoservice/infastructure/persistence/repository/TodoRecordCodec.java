@@ -0,0 +1,81 @@
+package us.dtaylor.todoservice.infastructure.persistence.repository;
+
+import us.dtaylor.todoservice.domain.Todo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Binary form of a {@link Todo} in a {@link LogSegment} record. The id is the record key, so only
+ * the remaining fields are encoded here.
+ */
+final class TodoRecordCodec {
+
+    private TodoRecordCodec() {
+    }
+
+    static byte[] encode(Todo todo) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeBoolean(todo.isCompleted());
+            writeUuid(out, todo.getUserId());
+            writeString(out, todo.getTitle());
+            writeString(out, todo.getDescription());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static Todo decode(UUID id, byte[] payload) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            boolean completed = in.readBoolean();
+            UUID userId = readUuid(in);
+            String title = readString(in);
+            String description = readString(in);
+            return new Todo(id, title, description, completed, userId);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static Todo copy(Todo todo) {
+        return new Todo(todo.getId(), todo.getTitle(), todo.getDescription(), todo.isCompleted(), todo.getUserId());
+    }
+
+    private static void writeUuid(DataOutputStream out, UUID value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value.getMostSignificantBits());
+            out.writeLong(value.getLeastSignificantBits());
+        }
+    }
+
+    private static UUID readUuid(DataInputStream in) throws IOException {
+        return in.readBoolean() ? new UUID(in.readLong(), in.readLong()) : null;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        return new String(in.readNBytes(length), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,503 @@
+package us.dtaylor.todoservice.infastructure.persistence.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import us.dtaylor.todoservice.domain.Todo;
+import us.dtaylor.todoservice.domain.TodoField;
+import us.dtaylor.todoservice.domain.TodoFilter;
+import us.dtaylor.todoservice.domain.exceptions.WriteBacklogException;
+import us.dtaylor.todoservice.domain.repository.TodoRepository;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Write-behind decorator for another {@link TodoRepository}. A save is acknowledged once it is
+ * appended to a local write-ahead log and fsynced (with the same group commit as
+ * {@link LogStructuredTodoRepository}); a background thread then writes the queued todos to the
+ * delegate with {@link TodoRepository#saveAll(Collection)} in batches of at most
+ * {@code flushBatchSize}, every {@code flushInterval} or as soon as a full batch is waiting.
+ *
+ * <p>Reads see unflushed todos. Deletes first wait for everything queued before them to be
+ * flushed, so a queued save can never resurrect a deleted todo. After each flush the log
+ * position is recorded in a checkpoint file and fully flushed segments are deleted; on
+ * {@link #open()} anything after the checkpoint is queued again. The checkpoint is not fsynced,
+ * so after a host crash a few todos may be written twice, which is harmless for upserts.
+ *
+ * <p>Once {@code maxPending} todos are queued, a save waits up to {@code flushTimeout} for a
+ * flush to make room before anything is appended, and then fails with
+ * {@link WriteBacklogException}, so neither the queue nor the log grows without bound while the
+ * delegate is down.
+ *
+ * <p>A batch that fails {@code maxFlushAttempts} times in a row is written one todo at a time.
+ * Once one of them is written the delegate is known to be up, and each todo it then refuses on
+ * its own is parked: appended to a segment under {@code parked/} for an operator to inspect, and
+ * dropped from the queue so it no longer holds back the todos behind it. If the first two todos
+ * both fail, the delegate is taken to be down and the whole batch stays queued.
+ */
+@Slf4j
+public class WriteBehindTodoRepository implements TodoRepository {
+
+    private static final String METRIC_PREFIX = "todo.write-behind.";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final String PARKED_DIRECTORY = "parked";
+
+    private final TodoRepository delegate;
+    private final Settings settings;
+
+    private final Map<UUID, Entry> unflushed = new ConcurrentHashMap<>();
+    private final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Deque<LogSegment> segments = new ConcurrentLinkedDeque<>();
+
+    private final Object appendLock = new Object();
+    private LogSegment active;
+    private long lastSequence;
+
+    private volatile long flushedSequence;
+    private final Sinks.Many<Long> flushes = Sinks.many().multicast().directBestEffort();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+    private MappedByteBuffer checkpoint;
+    private GroupCommit groupCommit;
+    private ScheduledExecutorService flusher;
+
+    /** Used by the flusher thread only. */
+    private int failedAttempts;
+    private LogSegment parked;
+
+    private final Timer flushTimer;
+    private final Counter flushFailures;
+    private final Counter parkedTodos;
+
+    public WriteBehindTodoRepository(TodoRepository delegate, Settings settings, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.settings = settings;
+        this.flushTimer = meterRegistry.timer(METRIC_PREFIX + "flush");
+        this.flushFailures = meterRegistry.counter(METRIC_PREFIX + "flush.failures");
+        this.parkedTodos = Counter.builder(METRIC_PREFIX + "parked")
+                .description("Todos the delegate refused on their own, moved out of the queue into parked segments")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + "pending", queued, AtomicInteger::get)
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + "lag", this, WriteBehindTodoRepository::lagSeconds)
+                .baseUnit("seconds")
+                .description("Age of the oldest todo not yet written to the delegate repository")
+                .register(meterRegistry);
+    }
+
+    public void open() throws IOException {
+        Files.createDirectories(settings.directory());
+        checkpoint = mapCheckpoint(settings.directory().resolve(CHECKPOINT_FILE));
+        long checkpointSegment = checkpoint.getLong(0);
+        int checkpointOffset = checkpoint.getInt(8);
+
+        List<Long> ids;
+        try (Stream<Path> files = Files.list(settings.directory())) {
+            ids = files.map(LogSegment::idOf).filter(Objects::nonNull).sorted().toList();
+        }
+        for (long id : ids) {
+            if (id < checkpointSegment) {
+                Files.deleteIfExists(settings.directory().resolve(LogSegment.fileName(id)));
+                continue;
+            }
+            LogSegment segment = LogSegment.open(settings.directory(), id, settings.segmentSize());
+            segment.recover((replayed, record) -> {
+                if (record.type() == LogSegment.PUT && (id > checkpointSegment || record.offset() >= checkpointOffset)) {
+                    Todo todo = TodoRecordCodec.decode(record.key(), replayed.payload(record.offset(), record.size()));
+                    enqueue(todo, replayed, record.offset() + record.size());
+                }
+            });
+            segments.addLast(segment);
+        }
+        if (segments.isEmpty()) {
+            segments.addLast(LogSegment.open(settings.directory(), Math.max(checkpointSegment, 1), settings.segmentSize()));
+        }
+        active = segments.peekLast();
+
+        groupCommit = new GroupCommit("todo-wal-sync", settings.fsyncInterval(), settings.fsyncBatchSize());
+        flusher = Executors.newSingleThreadScheduledExecutor(GroupCommit.daemonThreads("todo-wal-flush"));
+        long interval = settings.flushInterval().toNanos();
+        flusher.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.NANOSECONDS);
+        if (queued.get() > 0) {
+            log.info("Replaying {} unflushed todos from the write-ahead log in {}", queued.get(), settings.directory());
+            requestFlush();
+        }
+    }
+
+    public void close() throws InterruptedException {
+        flusher.shutdown();
+        flusher.awaitTermination(settings.flushTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        flush();
+        groupCommit.close();
+        checkpoint.force();
+        if (parked != null) {
+            parked.force();
+        }
+        if (queued.get() > 0) {
+            log.warn("{} todos are still unflushed and will be replayed on the next start", queued.get());
+        }
+    }
+
+    @Override
+    public Mono<Todo> save(Todo todo) {
+        return awaitRoom().then(Mono.defer(() -> {
+            Todo stored = TodoRecordCodec.copy(todo);
+            if (stored.getId() == null) {
+                stored.setId(UUID.randomUUID());
+            }
+            Entry entry = append(stored);
+            return groupCommit.await(entry.segment()).thenReturn(TodoRecordCodec.copy(stored));
+        }));
+    }
+
+    @Override
+    public Flux<Todo> saveAll(Collection<Todo> todos) {
+        return Flux.fromIterable(todos).flatMapSequential(this::save);
+    }
+
+    @Override
+    public Mono<Todo> findById(UUID id) {
+        return Mono.defer(() -> {
+            Entry entry = unflushed.get(id);
+            return entry != null ? Mono.just(TodoRecordCodec.copy(entry.todo())) : delegate.findById(id);
+        });
+    }
+
+    @Override
+    public Flux<Todo> findAllByUserId(UUID userId) {
+        return merged(delegate.findAllByUserId(userId), todo -> userId.equals(todo.getUserId()));
+    }
+
+    /**
+     * Projects in the delegate, always including the id that lets an unflushed todo replace its
+     * stored version.
+     */
+    @Override
+    public Flux<Todo> findAllByUserId(UUID userId, Set<TodoField> fields) {
+        return merged(delegate.findAllByUserId(userId, withId(fields)), todo -> userId.equals(todo.getUserId()));
+    }
+
+    @Override
+    public Flux<Todo> findAll() {
+        return merged(delegate.findAll(), todo -> true);
+    }
+
+    @Override
+    public Flux<Todo> findAll(Set<TodoField> fields) {
+        return merged(delegate.findAll(withId(fields)), todo -> true);
+    }
+
+    /**
+     * The delegate's marker does not cover todos still waiting to be flushed, so there is none
+     * while any of the user's are.
+     */
+    @Override
+    public Mono<Long> userVersion(UUID userId) {
+        return Mono.defer(() -> unflushed.values().stream().anyMatch(entry -> userId.equals(entry.todo().getUserId()))
+                ? Mono.empty()
+                : delegate.userVersion(userId));
+    }
+
+    @Override
+    public Mono<Void> deleteById(UUID id) {
+        return flushBarrier().then(delegate.deleteById(id));
+    }
+
+    @Override
+    public Mono<Long> deleteAllByUserId(UUID userId, int limit) {
+        return flushBarrier().then(delegate.deleteAllByUserId(userId, limit));
+    }
+
+    @Override
+    public Mono<Long> updateCompleted(TodoFilter filter, boolean completed) {
+        return flushBarrier().then(delegate.updateCompleted(filter, completed));
+    }
+
+    @Override
+    public Mono<Long> deleteMatching(TodoFilter filter) {
+        return flushBarrier().then(delegate.deleteMatching(filter));
+    }
+
+    @Override
+    public Mono<Void> deleteAll() {
+        return flushBarrier().then(delegate.deleteAll());
+    }
+
+    /**
+     * Seconds since the oldest todo still waiting for the delegate was acknowledged.
+     */
+    public double lagSeconds() {
+        Entry oldest = queue.peek();
+        return oldest == null ? 0 : (System.nanoTime() - oldest.appendedAt()) / 1e9;
+    }
+
+    /**
+     * Unflushed todos replace whatever the delegate returns for the same id.
+     */
+    private static Set<TodoField> withId(Set<TodoField> fields) {
+        Set<TodoField> withId = EnumSet.copyOf(fields);
+        withId.add(TodoField.ID);
+        return withId;
+    }
+
+    private Flux<Todo> merged(Flux<Todo> stored, Predicate<Todo> filter) {
+        return Flux.defer(() -> {
+            Map<UUID, Todo> pending = new LinkedHashMap<>();
+            unflushed.forEach((id, entry) -> pending.put(id, TodoRecordCodec.copy(entry.todo())));
+            return stored.filter(todo -> !pending.containsKey(todo.getId()))
+                    .concatWith(Flux.fromIterable(pending.values()).filter(filter));
+        });
+    }
+
+    private Entry append(Todo todo) {
+        byte[] payload = TodoRecordCodec.encode(todo);
+        int size = LogSegment.HEADER_SIZE + payload.length;
+        if (size > settings.segmentSize()) {
+            throw new IllegalArgumentException("Record of " + size + " bytes does not fit in a log segment");
+        }
+        Entry entry;
+        synchronized (appendLock) {
+            if (!active.hasRoomFor(size)) {
+                roll();
+            }
+            int offset = active.append(LogSegment.PUT, todo.getId(), payload);
+            entry = enqueue(todo, active, offset + size);
+        }
+        if (queued.get() >= settings.flushBatchSize()) {
+            requestFlush();
+        }
+        return entry;
+    }
+
+    private Entry enqueue(Todo todo, LogSegment segment, int end) {
+        Entry entry = new Entry(++lastSequence, todo, segment, end, System.nanoTime());
+        unflushed.put(todo.getId(), entry);
+        queue.add(entry);
+        queued.incrementAndGet();
+        return entry;
+    }
+
+    private void roll() {
+        try {
+            LogSegment next = LogSegment.open(settings.directory(), active.id() + 1, settings.segmentSize());
+            segments.addLast(next);
+            active = next;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Mono<Void> flushBarrier() {
+        return Mono.defer(() -> {
+            long sequence;
+            synchronized (appendLock) {
+                sequence = lastSequence;
+            }
+            if (sequence > flushedSequence) {
+                requestFlush();
+            }
+            return awaitFlushed(sequence).timeout(settings.flushTimeout());
+        });
+    }
+
+    /**
+     * Completes once fewer than {@code maxPending} todos are queued. Concurrent saves may all be
+     * let in by the same flush, so the limit can be overshot by their number.
+     */
+    private Mono<Void> awaitRoom() {
+        return Mono.defer(() -> {
+            if (queued.get() < settings.maxPending()) {
+                return Mono.empty();
+            }
+            return Flux.merge(flushes.asFlux(), Mono.fromSupplier(() -> flushedSequence))
+                    .filter(flushed -> queued.get() < settings.maxPending())
+                    .next()
+                    .then()
+                    .timeout(settings.flushTimeout(), Mono.error(() -> new WriteBacklogException(queued.get())));
+        });
+    }
+
+    private Mono<Void> awaitFlushed(long sequence) {
+        // Subscribe to flush signals before reading the current position so none is missed
+        return Flux.merge(flushes.asFlux(), Mono.fromSupplier(() -> flushedSequence))
+                .filter(flushed -> flushed >= sequence)
+                .next()
+                .then();
+    }
+
+    private void requestFlush() {
+        if (flushRequested.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::flush);
+            } catch (RejectedExecutionException e) {
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * Drains the queue in batches. Runs on the flusher thread only; a failed batch stays queued
+     * and is retried on the next tick, or written todo by todo once it has failed
+     * {@code maxFlushAttempts} times.
+     */
+    void flush() {
+        flushRequested.set(false);
+        while (true) {
+            List<Entry> batch = new ArrayList<>(settings.flushBatchSize());
+            Iterator<Entry> iterator = queue.iterator();
+            while (iterator.hasNext() && batch.size() < settings.flushBatchSize()) {
+                batch.add(iterator.next());
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            // Later saves of the same todo in the batch supersede earlier ones
+            Map<UUID, Todo> latest = new LinkedHashMap<>();
+            batch.forEach(entry -> latest.put(entry.todo().getId(), entry.todo()));
+            try {
+                flushTimer.record(() -> delegate.saveAll(latest.values()).then().block(settings.flushTimeout()));
+                failedAttempts = 0;
+            } catch (RuntimeException e) {
+                flushFailures.increment();
+                if (++failedAttempts < settings.maxFlushAttempts()) {
+                    log.warn("Write-behind flush of {} todos failed, will retry: {}", latest.size(), e.getMessage());
+                    return;
+                }
+                failedAttempts = 0;
+                if (!isolate(latest.values())) {
+                    log.warn("Write-behind flush of {} todos failed and the delegate refuses them one by one too, will retry: {}",
+                            latest.size(), e.getMessage());
+                    return;
+                }
+            }
+            for (Entry entry : batch) {
+                queue.poll();
+                unflushed.remove(entry.todo().getId(), entry);
+            }
+            queued.addAndGet(-batch.size());
+            checkpoint(batch.get(batch.size() - 1));
+            if (batch.size() < settings.flushBatchSize()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes the todos one at a time and parks each one the delegate refuses, unless the first
+     * two are refused, in which case nothing is parked and {@code false} is returned.
+     */
+    private boolean isolate(Collection<Todo> todos) {
+        List<Todo> refused = new ArrayList<>();
+        boolean written = false;
+        for (Todo todo : todos) {
+            try {
+                delegate.saveAll(List.of(todo)).then().block(settings.flushTimeout());
+                written = true;
+            } catch (RuntimeException e) {
+                log.warn("Write-behind flush of todo {} failed: {}", todo.getId(), e.getMessage());
+                refused.add(todo);
+                if (!written && refused.size() == 2) {
+                    return false;
+                }
+            }
+        }
+        refused.forEach(this::park);
+        return true;
+    }
+
+    private void park(Todo todo) {
+        byte[] payload = TodoRecordCodec.encode(todo);
+        try {
+            if (parked == null || !parked.hasRoomFor(LogSegment.HEADER_SIZE + payload.length)) {
+                parked = nextParkedSegment();
+            }
+            parked.append(LogSegment.PUT, todo.getId(), payload);
+            parked.force();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        parkedTodos.increment();
+        log.error("Parked todo {} in {} after the delegate refused it", todo.getId(), settings.directory().resolve(PARKED_DIRECTORY));
+    }
+
+    private LogSegment nextParkedSegment() throws IOException {
+        Path directory = Files.createDirectories(settings.directory().resolve(PARKED_DIRECTORY));
+        long last;
+        try (Stream<Path> files = Files.list(directory)) {
+            last = files.map(LogSegment::idOf).filter(Objects::nonNull).mapToLong(Long::longValue).max().orElse(0);
+        }
+        return LogSegment.open(directory, last + 1, settings.segmentSize());
+    }
+
+    private void checkpoint(Entry last) {
+        checkpoint.putLong(0, last.segment().id());
+        checkpoint.putInt(8, last.end());
+        LogSegment oldest;
+        while ((oldest = segments.peekFirst()) != null && oldest.id() < last.segment().id()) {
+            segments.pollFirst();
+            try {
+                oldest.delete();
+            } catch (IOException e) {
+                log.warn("Could not delete flushed write-ahead log segment {}: {}", oldest.id(), e.getMessage());
+            }
+        }
+        flushedSequence = last.sequence();
+        flushes.tryEmitNext(last.sequence());
+    }
+
+    private static MappedByteBuffer mapCheckpoint(Path path) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            return file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES + Integer.BYTES);
+        }
+    }
+
+    private record Entry(long sequence, Todo todo, LogSegment segment, int end, long appendedAt) {
+    }
+
+    public record Settings(Path directory,
+                           int segmentSize,
+                           Duration fsyncInterval,
+                           int fsyncBatchSize,
+                           Duration flushInterval,
+                           int flushBatchSize,
+                           int maxPending,
+                           Duration flushTimeout,
+                           int maxFlushAttempts) {
+    }
+}
@@ -0,0 +1,18 @@
+package us.dtaylor.todoservice.infastructure.replica;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.UUID;
+
+/**
+ * A user change as published by user-service on the user events topic.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record UserEvent(Type type, UUID id, String name, String email) {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+}
@@ -0,0 +1,61 @@
+package us.dtaylor.todoservice.infastructure.replica;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.ConsumerSeekAware;
+import us.dtaylor.todoservice.infastructure.codec.JsonCodecs;
+
+import java.io.IOException;
+
+import java.util.Map;
+
+/**
+ * Feeds user events into the {@link UserReplica}. Every instance reads the whole topic under its
+ * own consumer group, and on assignment seeks each partition to just past the offset the replica
+ * last applied, so a restart from a snapshot only replays what it missed.
+ */
+@Slf4j
+public class UserEventListener implements ConsumerSeekAware {
+
+    private final UserReplica replica;
+    private final JsonCodecs jsonCodecs;
+
+    public UserEventListener(UserReplica replica, JsonCodecs jsonCodecs) {
+        this.replica = replica;
+        this.jsonCodecs = jsonCodecs;
+    }
+
+    @KafkaListener(topics = "${user.events.topic:user-events}",
+            groupId = "${user.replica.group-id}",
+            containerFactory = "userEventListenerContainerFactory")
+    public void listen(ConsumerRecord<String, byte[]> record) {
+        replica.apply(parse(record), record.partition(), record.offset());
+    }
+
+    @Override
+    public void onPartitionsAssigned(Map<TopicPartition, Long> assignments, ConsumerSeekCallback callback) {
+        assignments.keySet().forEach(partition -> {
+            Long applied = replica.offset(partition.partition());
+            if (applied == null) {
+                callback.seekToBeginning(partition.topic(), partition.partition());
+            } else {
+                callback.seek(partition.topic(), partition.partition(), applied + 1);
+            }
+        });
+    }
+
+    private UserEvent parse(ConsumerRecord<String, byte[]> record) {
+        if (record.value() == null) {
+            return null;
+        }
+        try {
+            return jsonCodecs.readUserEvent(record.value());
+        } catch (IOException e) {
+            log.warn("Skipping malformed user event at {}-{}@{}: {}",
+                    record.topic(), record.partition(), record.offset(), e.getMessage());
+            return null;
+        }
+    }
+}
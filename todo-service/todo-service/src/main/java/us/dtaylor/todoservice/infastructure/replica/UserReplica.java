@@ -0,0 +1,260 @@
+package us.dtaylor.todoservice.infastructure.replica;
+
+import lombok.extern.slf4j.Slf4j;
+import us.dtaylor.todoservice.domain.User;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Local copy of the user directory, built from user-service's change events. Users are held in
+ * a concurrent map alongside the offset of the last event applied from each partition.
+ *
+ * <p>Every {@code snapshotInterval}, and on {@link #close()}, the users and offsets are written
+ * together to a snapshot file (via a temporary file and an atomic rename). {@link #open()} loads
+ * it back so that a restart only replays the events after those offsets instead of the whole
+ * topic. A missing, unreadable or other-topic snapshot just means a full replay.
+ *
+ * <p>Each user also records when it was last confirmed, by an event or by user-service. An event
+ * that never arrives, say a deletion user-service failed to publish, would otherwise leave the
+ * copy wrong for good; once a user is older than {@code maxAge} it {@link #isStale(UUID) is
+ * stale} and callers check it with user-service again.
+ */
+@Slf4j
+public class UserReplica {
+
+    private static final int MAGIC = 0x55535232; // "USR2"
+
+    private final Settings settings;
+    private final LongSupplier clock;
+
+    private final Map<UUID, Entry> users = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> offsets = new HashMap<>();
+
+    private final Object applyLock = new Object();
+    private volatile boolean dirty;
+    private ScheduledExecutorService snapshotExecutor;
+
+    public UserReplica(Settings settings) {
+        this(settings, System::currentTimeMillis);
+    }
+
+    UserReplica(Settings settings, LongSupplier clock) {
+        this.settings = settings;
+        this.clock = clock;
+    }
+
+    public void open() {
+        try {
+            load();
+        } catch (NoSuchFileException e) {
+            log.info("No user replica snapshot at {}, replaying {} from the beginning", settings.snapshotFile(), settings.topic());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring unreadable user replica snapshot {}: {}", settings.snapshotFile(), e.getMessage());
+            users.clear();
+            offsets.clear();
+        }
+        snapshotExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-replica-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = settings.snapshotInterval().toMillis();
+        snapshotExecutor.scheduleWithFixedDelay(this::snapshotQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public void close() throws InterruptedException {
+        snapshotExecutor.shutdown();
+        snapshotExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        snapshotQuietly();
+    }
+
+    public User get(UUID id) {
+        Entry entry = users.get(id);
+        return entry == null ? null : entry.user();
+    }
+
+    /**
+     * Whether the user was last confirmed more than {@code maxAge} ago, or is not held at all.
+     */
+    public boolean isStale(UUID id) {
+        Entry entry = users.get(id);
+        return entry == null || clock.getAsLong() - entry.confirmedAt() > settings.maxAge().toMillis();
+    }
+
+    /**
+     * Records the user as user-service just returned it. A user deleted by an event meanwhile is
+     * not added back.
+     */
+    public void confirm(User user) {
+        synchronized (applyLock) {
+            if (users.computeIfPresent(user.getId(), (id, entry) -> new Entry(user, clock.getAsLong())) != null) {
+                dirty = true;
+            }
+        }
+    }
+
+    /**
+     * Drops a user that user-service no longer has.
+     */
+    public void evict(UUID id) {
+        synchronized (applyLock) {
+            if (users.remove(id) != null) {
+                dirty = true;
+            }
+        }
+    }
+
+    public int size() {
+        return users.size();
+    }
+
+    public String topic() {
+        return settings.topic();
+    }
+
+    /**
+     * Offset of the last event applied from {@code partition}, or {@code null} if none has been.
+     */
+    public Long offset(int partition) {
+        synchronized (applyLock) {
+            return offsets.get(partition);
+        }
+    }
+
+    /**
+     * Applies an event read at {@code offset} of {@code partition}. Events at or before the
+     * offset already applied are ignored, so a redelivery after a rebalance is harmless.
+     */
+    public void apply(UserEvent event, int partition, long offset) {
+        synchronized (applyLock) {
+            Long applied = offsets.get(partition);
+            if (applied != null && offset <= applied) {
+                return;
+            }
+            if (event != null && event.id() != null && event.type() != null) {
+                switch (event.type()) {
+                    case CREATED, UPDATED -> users.put(event.id(),
+                            new Entry(new User(event.id(), event.name(), event.email()), clock.getAsLong()));
+                    case DELETED -> users.remove(event.id());
+                }
+            }
+            offsets.put(partition, offset);
+            dirty = true;
+        }
+    }
+
+    /**
+     * Writes the current users and offsets to the snapshot file if anything changed since the
+     * last snapshot.
+     */
+    public void snapshot() throws IOException {
+        Map<Integer, Long> offsetsCopy;
+        Map<UUID, Entry> usersCopy;
+        synchronized (applyLock) {
+            if (!dirty) {
+                return;
+            }
+            offsetsCopy = new HashMap<>(offsets);
+            usersCopy = new HashMap<>(users);
+            dirty = false;
+        }
+        Path file = settings.snapshotFile();
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temporary = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeUTF(settings.topic());
+                out.writeInt(offsetsCopy.size());
+                for (Map.Entry<Integer, Long> entry : offsetsCopy.entrySet()) {
+                    out.writeInt(entry.getKey());
+                    out.writeLong(entry.getValue());
+                }
+                out.writeInt(usersCopy.size());
+                for (Entry entry : usersCopy.values()) {
+                    User user = entry.user();
+                    out.writeLong(user.getId().getMostSignificantBits());
+                    out.writeLong(user.getId().getLeastSignificantBits());
+                    writeNullable(out, user.getName());
+                    writeNullable(out, user.getEmail());
+                    out.writeLong(entry.confirmedAt());
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            dirty = true;
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        log.debug("Wrote user replica snapshot of {} users to {}", usersCopy.size(), file);
+    }
+
+    private void load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(settings.snapshotFile())))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a user replica snapshot");
+            }
+            String topic = in.readUTF();
+            if (!topic.equals(settings.topic())) {
+                log.info("User replica snapshot is of topic {}, replaying {} from the beginning", topic, settings.topic());
+                return;
+            }
+            synchronized (applyLock) {
+                int partitions = in.readInt();
+                for (int i = 0; i < partitions; i++) {
+                    offsets.put(in.readInt(), in.readLong());
+                }
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    UUID id = new UUID(in.readLong(), in.readLong());
+                    User user = new User(id, readNullable(in), readNullable(in));
+                    users.put(id, new Entry(user, in.readLong()));
+                }
+            }
+        }
+        log.info("Loaded {} users from the user replica snapshot {}", users.size(), settings.snapshotFile());
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (IOException | RuntimeException e) {
+            log.warn("User replica snapshot failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    public record Settings(String topic, Path snapshotFile, Duration snapshotInterval, Duration maxAge) {
+    }
+
+    private record Entry(User user, long confirmedAt) {
+    }
+}
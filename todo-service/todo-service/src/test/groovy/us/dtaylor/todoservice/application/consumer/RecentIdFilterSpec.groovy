@@ -0,0 +1,63 @@
+package us.dtaylor.todoservice.application.consumer
+
+import spock.lang.Specification
+
+class RecentIdFilterSpec extends Specification {
+
+    def "never misses an id added in the current or previous generation"() {
+        given:
+        def filter = new RecentIdFilter(1000, 0.01)
+        def ids = (1..1500).collect { UUID.randomUUID() }
+
+        when:
+        ids.each { filter.add(it) }
+
+        then:
+        ids.every { filter.mightContain(it) }
+    }
+
+    def "keeps false positives near the configured rate"() {
+        given:
+        def filter = new RecentIdFilter(10_000, 0.01)
+        10_000.times { filter.add(UUID.randomUUID()) }
+
+        when:
+        def falsePositives = (1..10_000).count { filter.mightContain(UUID.randomUUID()) }
+
+        then: "two generations are consulted, so allow up to twice the rate plus noise"
+        falsePositives < 300
+    }
+
+    def "forgets ids after two rotations"() {
+        given:
+        def filter = new RecentIdFilter(100, 0.001)
+        def old = UUID.randomUUID()
+        filter.add(old)
+
+        when:
+        149.times { filter.add(UUID.randomUUID()) }
+
+        then: "one rotation later the id is still in the previous generation"
+        filter.mightContain(old)
+
+        when:
+        50.times { filter.add(UUID.randomUUID()) }
+
+        then:
+        !filter.mightContain(old)
+    }
+
+    def "rejects unusable sizing"() {
+        when:
+        new RecentIdFilter(capacity, rate)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        capacity | rate
+        0        | 0.01
+        100      | 0
+        100      | 1
+    }
+}
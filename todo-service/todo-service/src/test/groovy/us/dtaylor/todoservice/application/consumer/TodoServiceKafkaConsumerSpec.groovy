@@ -0,0 +1,148 @@
+package us.dtaylor.todoservice.application.consumer
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.micrometer.observation.ObservationRegistry
+import reactor.core.publisher.Mono
+import spock.lang.Specification
+import spock.lang.Subject
+import us.dtaylor.todoservice.domain.Todo
+import us.dtaylor.todoservice.domain.exceptions.UserNotFoundException
+import us.dtaylor.todoservice.domain.service.TodoService
+import us.dtaylor.todoservice.infastructure.codec.JsonCodecs
+
+class TodoServiceKafkaConsumerSpec extends Specification {
+
+    static final UUID TODO_ID = UUID.randomUUID()
+    static final UUID USER_ID = UUID.randomUUID()
+    static final String JSON = """{"id":"$TODO_ID","title":"Test","description":"Test","completed":false,"userId":"$USER_ID"}"""
+    static final byte[] MESSAGE = JSON.bytes
+
+    TodoService todoService = Mock()
+    RecentIdFilter recentIds = new RecentIdFilter(1000, 0.01)
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+
+    @Subject
+    TodoServiceKafkaConsumer consumer = new TodoServiceKafkaConsumer(todoService, recentIds, new JsonCodecs(new ObjectMapper()),
+            meterRegistry, ObservationRegistry.NOOP)
+
+    def "ingests the todo under its source id and records processing time"() {
+        when:
+        consumer.listen(MESSAGE, null)
+
+        then:
+        1 * todoService.ingestTodo({ Todo todo -> todo.id == TODO_ID && todo.userId == USER_ID }) >> { Todo todo -> Mono.just(todo) }
+        meterRegistry.get("todo.consumer.processing").tag("outcome", "success").timer().count() == 1
+    }
+
+    def "unwraps a message sent as a JSON string holding the JSON"() {
+        given:
+        def wrapped = new ObjectMapper().writeValueAsBytes(JSON)
+
+        when:
+        consumer.listen(wrapped, null)
+
+        then:
+        1 * todoService.ingestTodo({ Todo todo -> todo.id == TODO_ID && todo.title == "Test" }) >> { Todo todo -> Mono.just(todo) }
+    }
+
+    def "records failed messages under the error outcome"() {
+        when:
+        consumer.listen(MESSAGE, null)
+
+        then:
+        1 * todoService.ingestTodo(_) >> Mono.error(new UserNotFoundException("User not found"))
+        meterRegistry.get("todo.consumer.processing").tag("outcome", "error").timer().count() == 1
+    }
+
+    def "records a malformed message under the error outcome instead of throwing"() {
+        when:
+        consumer.listen(message.bytes, null)
+
+        then:
+        noExceptionThrown()
+        0 * todoService.ingestTodo(_)
+        meterRegistry.get("todo.consumer.processing").tag("outcome", "error").timer().count() == 1
+
+        where:
+        message << ["{not json", """{"id":"not-a-uuid","title":"Test","userId":"$USER_ID"}"""]
+    }
+
+    def "registers both outcome timers up front and reuses them"() {
+        expect:
+        meterRegistry.find("todo.consumer.processing").timers().size() == 2
+
+        when:
+        2.times { consumer.listen(MESSAGE, null) }
+
+        then:
+        todoService.getTodoById(TODO_ID) >> Mono.empty()
+        2 * todoService.ingestTodo(_) >> { Todo todo -> Mono.just(todo) }
+        meterRegistry.find("todo.consumer.processing").timers().size() == 2
+        meterRegistry.get("todo.consumer.processing").tag("outcome", "success").timer().count() == 2
+    }
+
+    def "records end-to-end ingest latency from the filewatcher timestamp header"() {
+        given:
+        def ingestedAt = (System.currentTimeMillis() - 1500).toString().getBytes("US-ASCII")
+
+        when:
+        consumer.listen(MESSAGE, ingestedAt)
+
+        then:
+        1 * todoService.ingestTodo(_) >> { Todo todo -> Mono.just(todo) }
+        def latency = meterRegistry.get("todo.ingest.latency").timer()
+        latency.count() == 1
+        latency.totalTime(java.util.concurrent.TimeUnit.MILLISECONDS) >= 1500
+    }
+
+    def "drops a redelivered message when the stored todo is unchanged"() {
+        when:
+        consumer.listen(MESSAGE, null)
+
+        then:
+        1 * todoService.ingestTodo(_) >> { Todo todo -> Mono.just(todo) }
+
+        when:
+        consumer.listen(MESSAGE, null)
+
+        then:
+        1 * todoService.getTodoById(TODO_ID) >> Mono.just(new Todo(TODO_ID, "Test", "Test", false, USER_ID))
+        0 * todoService.ingestTodo(_)
+        meterRegistry.get("todo.consumer.duplicates").counter().count() == 1
+    }
+
+    def "re-ingests a seen id whose content changed"() {
+        given:
+        recentIds.add(TODO_ID)
+
+        when:
+        consumer.listen(MESSAGE, null)
+
+        then:
+        1 * todoService.getTodoById(TODO_ID) >> Mono.just(new Todo(TODO_ID, "Old title", "Test", false, USER_ID))
+        1 * todoService.ingestTodo({ Todo todo -> todo.title == "Test" }) >> { Todo todo -> Mono.just(todo) }
+        meterRegistry.get("todo.consumer.duplicates").counter().count() == 0
+    }
+
+    def "ingests a seen id that is not stored, such as a filter false positive"() {
+        given:
+        recentIds.add(TODO_ID)
+
+        when:
+        consumer.listen(MESSAGE, null)
+
+        then:
+        1 * todoService.getTodoById(TODO_ID) >> Mono.empty()
+        1 * todoService.ingestTodo(_) >> { Todo todo -> Mono.just(todo) }
+    }
+
+    def "does not remember ids whose ingestion failed"() {
+        when:
+        consumer.listen(MESSAGE, null)
+
+        then:
+        1 * todoService.ingestTodo(_) >> Mono.error(new UserNotFoundException("User not found"))
+        !recentIds.mightContain(TODO_ID)
+    }
+}
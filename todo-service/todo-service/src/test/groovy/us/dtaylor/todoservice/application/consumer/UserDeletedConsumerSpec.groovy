@@ -0,0 +1,52 @@
+package us.dtaylor.todoservice.application.consumer
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.kafka.annotation.KafkaListener
+import reactor.core.publisher.Mono
+import spock.lang.Specification
+import spock.lang.Subject
+import us.dtaylor.todoservice.domain.service.TodoService
+import us.dtaylor.todoservice.infastructure.codec.JsonCodecs
+
+import java.time.Duration
+
+class UserDeletedConsumerSpec extends Specification {
+
+    static final UUID USER_ID = UUID.randomUUID()
+
+    TodoService todoService = Mock()
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+
+    @Subject
+    UserDeletedConsumer consumer = new UserDeletedConsumer(todoService, new JsonCodecs(new ObjectMapper()), meterRegistry, 500, 20)
+
+    def "a deleted user's todos are removed in chunks"() {
+        when:
+        consumer.listen("""{"type":"DELETED","id":"$USER_ID"}""".bytes)
+
+        then:
+        1 * todoService.deleteAllTodosByUserId(USER_ID, 500, Duration.ofMillis(20)) >> Mono.just(1200L)
+        meterRegistry.get("todo.user-cleanup.deleted").counter().count() == 1200
+    }
+
+    def "other user events and malformed messages are ignored"() {
+        when:
+        consumer.listen(message)
+
+        then:
+        0 * todoService._
+
+        where:
+        message << ["""{"type":"UPDATED","id":"$USER_ID","name":"Test"}""".bytes, "not json".bytes, null]
+    }
+
+    def "records are polled one at a time with a poll interval long enough for a large cascade"() {
+        when:
+        def listener = UserDeletedConsumer.getMethod("listen", byte[]).getAnnotation(KafkaListener)
+
+        then:
+        listener.properties().contains("max.poll.records=1")
+        listener.properties().any { it.startsWith("max.poll.interval.ms=") }
+    }
+}
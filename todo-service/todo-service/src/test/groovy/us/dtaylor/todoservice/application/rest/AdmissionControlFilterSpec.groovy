@@ -0,0 +1,163 @@
+package us.dtaylor.todoservice.application.rest
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.http.HttpStatus
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest
+import org.springframework.mock.web.server.MockServerWebExchange
+import org.springframework.web.server.ServerWebExchange
+import org.springframework.web.server.WebFilterChain
+import reactor.core.publisher.Mono
+import reactor.core.publisher.Sinks
+import spock.lang.Specification
+
+import java.security.Principal
+import java.time.Duration
+
+class AdmissionControlFilterSpec extends Specification {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    long now = 0
+
+    AdmissionControlFilter filter(Map overrides = [:]) {
+        Map values = [maxInFlight: 4, scanAdmissionRatio: 0.5, ratePerSecond: 10d, burst: 10d, scanCost: 5d] + overrides
+        new AdmissionControlFilter(new AdmissionControlFilter.Settings(
+                values.maxInFlight as int, values.scanAdmissionRatio as double, values.ratePerSecond as double,
+                values.burst as double, values.scanCost as double,
+                ["/api/v1/todos", "/api/v1/todos/user/*"], ["/actuator/**"], 1000, Duration.ofMinutes(10)),
+                meterRegistry, { now })
+    }
+
+    static ServerWebExchange exchange(MockServerHttpRequest.BaseBuilder request, String subject = "alice") {
+        def exchange = MockServerWebExchange.from(request)
+        subject == null ? exchange : exchange.mutate().principal(Mono.just({ subject } as Principal)).build()
+    }
+
+    static ServerWebExchange read(String subject = "alice") {
+        exchange(MockServerHttpRequest.get("/api/v1/todos/${UUID.randomUUID()}"), subject)
+    }
+
+    static ServerWebExchange scan(String subject = "alice") {
+        exchange(MockServerHttpRequest.get("/api/v1/todos"), subject)
+    }
+
+    static WebFilterChain passing = { exchange -> Mono.empty() }
+
+    double rejected(String reason, String requestClass) {
+        meterRegistry.find("http.server.admission.rejected").tags("reason", reason, "class", requestClass).counter()?.count() ?: 0
+    }
+
+    def "classifies point reads, list scans and writes"() {
+        given:
+        def filter = filter()
+
+        expect:
+        filter.classify(request.method, request.path.pathWithinApplication()) == expected
+
+        where:
+        request                                                             || expected
+        MockServerHttpRequest.get("/api/v1/todos/${UUID.randomUUID()}").build()  || AdmissionControlFilter.RequestClass.READ
+        MockServerHttpRequest.get("/api/v1/todos").build()                       || AdmissionControlFilter.RequestClass.SCAN
+        MockServerHttpRequest.get("/api/v1/todos/user/${UUID.randomUUID()}").build() || AdmissionControlFilter.RequestClass.SCAN
+        MockServerHttpRequest.post("/api/v1/todos").build()                      || AdmissionControlFilter.RequestClass.WRITE
+        MockServerHttpRequest.delete("/api/v1/todos/${UUID.randomUUID()}").build() || AdmissionControlFilter.RequestClass.WRITE
+    }
+
+    def "a principal over its rate gets 429 until the bucket refills"() {
+        given:
+        def filter = filter(burst: 2d, ratePerSecond: 1d)
+
+        when:
+        2.times { filter.filter(read(), passing).block() }
+        def limited = read()
+        filter.filter(limited, passing).block()
+
+        then:
+        limited.response.statusCode == HttpStatus.TOO_MANY_REQUESTS
+        limited.response.headers.getFirst("Retry-After") == "1"
+        rejected("rate-limited", "read") == 1
+
+        when: "another principal is unaffected"
+        def other = read("bob")
+        filter.filter(other, passing).block()
+
+        then:
+        other.response.statusCode == null
+
+        when: "a second later the bucket has a token again"
+        now += 1_000_000_000L
+        def later = read()
+        filter.filter(later, passing).block()
+
+        then:
+        later.response.statusCode == null
+        filter.inFlight() == 0
+    }
+
+    def "list scans cost more tokens than point reads"() {
+        given:
+        def filter = filter(burst: 10d, scanCost: 5d)
+
+        when:
+        2.times { filter.filter(scan(), passing).block() }
+        def third = scan()
+        filter.filter(third, passing).block()
+        def pointRead = read()
+        filter.filter(pointRead, passing).block()
+
+        then:
+        third.response.statusCode == HttpStatus.TOO_MANY_REQUESTS
+        rejected("rate-limited", "scan") == 1
+        pointRead.response.statusCode == HttpStatus.TOO_MANY_REQUESTS
+    }
+
+    def "sheds with 503 past the in-flight cap, scans first"() {
+        given:
+        def filter = filter(maxInFlight: 4, scanAdmissionRatio: 0.5, burst: 100d)
+        def release = Sinks.empty()
+        WebFilterChain holding = { exchange -> release.asMono() }
+
+        when: "two requests are in flight"
+        2.times { filter.filter(read("user$it"), holding).subscribe() }
+        def scan = scan("carol")
+        filter.filter(scan, holding).subscribe()
+        def pointRead = read("carol")
+        filter.filter(pointRead, holding).subscribe()
+
+        then: "scans are refused at half the cap but point reads still get in"
+        scan.response.statusCode == HttpStatus.SERVICE_UNAVAILABLE
+        pointRead.response.statusCode == null
+        rejected("overloaded", "scan") == 1
+
+        when: "the cap is reached"
+        filter.filter(read("dave"), holding).subscribe()
+        def overflow = read("erin")
+        filter.filter(overflow, holding).subscribe()
+
+        then:
+        overflow.response.statusCode == HttpStatus.SERVICE_UNAVAILABLE
+        rejected("overloaded", "read") == 1
+        filter.inFlight() == 4
+
+        when: "the held requests finish"
+        release.tryEmitEmpty()
+
+        then:
+        filter.inFlight() == 0
+    }
+
+    def "anonymous callers are limited by client address and actuator is exempt"() {
+        given:
+        def filter = filter(burst: 1d)
+
+        when:
+        def first = exchange(MockServerHttpRequest.get("/api/v1/todos/1").remoteAddress(new InetSocketAddress("10.0.0.1", 1000)), null)
+        def second = exchange(MockServerHttpRequest.get("/api/v1/todos/1").remoteAddress(new InetSocketAddress("10.0.0.1", 1001)), null)
+        def actuator = exchange(MockServerHttpRequest.get("/actuator/prometheus").remoteAddress(new InetSocketAddress("10.0.0.1", 1002)), null)
+        [first, second, actuator].each { filter.filter(it, passing).block() }
+
+        then:
+        first.response.statusCode == null
+        second.response.statusCode == HttpStatus.TOO_MANY_REQUESTS
+        actuator.response.statusCode == null
+    }
+}
@@ -0,0 +1,175 @@
+package us.dtaylor.todoservice.application.rest
+
+import com.fasterxml.jackson.core.type.TypeReference
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory
+import com.fasterxml.jackson.dataformat.smile.SmileFactory
+import org.springframework.http.HttpStatus
+import org.springframework.http.MediaType
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder
+import org.springframework.test.web.reactive.server.WebTestClient
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
+import spock.lang.Specification
+import us.dtaylor.todoservice.domain.Todo
+import us.dtaylor.todoservice.domain.TodoField
+import us.dtaylor.todoservice.domain.exceptions.WriteBacklogException
+import us.dtaylor.todoservice.domain.service.TodoService
+import us.dtaylor.todoservice.infastructure.codec.BinaryJacksonEncoders
+import us.dtaylor.todoservice.infastructure.config.CodecConfiguration
+
+class TodoControllerSpec extends Specification {
+
+    static final UUID USER_ID = UUID.randomUUID()
+
+    TodoService todoService = Mock()
+
+    WebTestClient client = WebTestClient.bindToController(new TodoController(todoService))
+            .controllerAdvice(new GlobalExceptionHandler())
+            .httpMessageCodecs { new CodecConfiguration().binaryJacksonCodecs(Jackson2ObjectMapperBuilder.json(), Jackson2ObjectMapperBuilder.json().build()).customize(it) }
+            .build()
+
+    def "a todo is tagged with its version and a matching If-None-Match gets a 304 without a body"() {
+        given:
+        def todo = new Todo(UUID.randomUUID(), "Title", "Description", false, USER_ID, 0xabcL)
+        todoService.getTodoById(todo.id) >> Mono.just(todo)
+
+        expect:
+        client.get().uri("/api/v1/todos/${todo.id}").exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("ETag", '"abc-0"')
+                .expectBody().jsonPath('$.version').doesNotExist()
+        client.get().uri("/api/v1/todos/${todo.id}").header("If-None-Match", '"abc-0"').exchange()
+                .expectStatus().isEqualTo(HttpStatus.NOT_MODIFIED)
+                .expectBody().isEmpty()
+    }
+
+    def "a todo without a version is sent untagged"() {
+        given:
+        def todo = new Todo(UUID.randomUUID(), "Title", "Description", false, USER_ID)
+        todoService.getTodoById(todo.id) >> Mono.just(todo)
+
+        expect:
+        client.get().uri("/api/v1/todos/${todo.id}").exchange()
+                .expectStatus().isOk()
+                .expectHeader().doesNotExist("ETag")
+    }
+
+    def "a user's list is answered 304 from the marker alone"() {
+        when:
+        def response = client.get().uri("/api/v1/todos/user/$USER_ID").header("If-None-Match", '"2a-1f-0"').exchange()
+
+        then:
+        1 * todoService.getTodosVersion(USER_ID) >> Mono.just(42L)
+        1 * todoService.getAllTodosByUserId(USER_ID, TodoField.ALL) >> Flux.defer {
+            throw new AssertionError("the list must not be read")
+        }
+        response.expectStatus().isEqualTo(HttpStatus.NOT_MODIFIED)
+    }
+
+    def "a user's list tag changes with the marker and with the field selection"() {
+        given:
+        todoService.getAllTodosByUserId(USER_ID, _) >> Flux.empty()
+        todoService.getTodosVersion(USER_ID) >> Mono.just(42L)
+
+        expect:
+        client.get().uri("/api/v1/todos/user/$USER_ID").exchange()
+                .expectHeader().valueEquals("ETag", '"2a-1f-0"')
+        client.get().uri("/api/v1/todos/user/$USER_ID?fields=id,title").exchange()
+                .expectHeader().valueEquals("ETag", '"2a-3-0"')
+    }
+
+    def "a sparse list only carries the selected fields"() {
+        given:
+        def todo = new Todo(UUID.randomUUID(), "Title", "A very long description", true, USER_ID)
+        todoService.getAllTodosByUserId(USER_ID, EnumSet.of(TodoField.ID, TodoField.COMPLETED)) >> Flux.just(todo)
+        todoService.getTodosVersion(USER_ID) >> Mono.empty()
+
+        expect:
+        client.get().uri("/api/v1/todos/user/$USER_ID?fields=id,completed").exchange()
+                .expectStatus().isOk()
+                .expectHeader().doesNotExist("ETag")
+                .expectBody().json("""[{"id": "${todo.id}", "completed": true}]""", true)
+    }
+
+    def "an unknown field is a bad request"() {
+        expect:
+        client.get().uri("/api/v1/todos/user/$USER_ID?fields=id,secret").exchange()
+                .expectStatus().isBadRequest()
+    }
+
+    def "each representation of a list has its own tag"() {
+        given:
+        todoService.getAllTodosByUserId(USER_ID, _) >> Flux.empty()
+        todoService.getTodosVersion(USER_ID) >> Mono.just(42L)
+
+        when:
+        def tags = [MediaType.APPLICATION_JSON, MediaType.APPLICATION_CBOR, BinaryJacksonEncoders.APPLICATION_SMILE].collect { type ->
+            client.get().uri("/api/v1/todos/user/$USER_ID").accept(type).exchange()
+                    .expectHeader().valueEquals("Vary", "Accept")
+                    .returnResult(byte[]).responseHeaders.getETag()
+        }
+
+        then:
+        tags.toSet().size() == 3
+    }
+
+    def "a list is served as one #format array when the client asks for it"() {
+        given:
+        def todos = (1..3).collect { new Todo(UUID.randomUUID(), "Todo $it", "Description $it", it % 2 == 0, USER_ID) }
+        todoService.getAllTodosByUserId(USER_ID, TodoField.ALL) >> Flux.fromIterable(todos)
+        todoService.getTodosVersion(USER_ID) >> Mono.empty()
+
+        when:
+        byte[] body = client.get().uri("/api/v1/todos/user/$USER_ID").accept(mediaType).exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(mediaType)
+                .expectBody(byte[]).returnResult().responseBody
+
+        then:
+        new ObjectMapper(factory).readValue(body, new TypeReference<List<Todo>>() {}) == todos
+
+        where:
+        format  | mediaType                            | factory
+        "Smile" | BinaryJacksonEncoders.APPLICATION_SMILE | new SmileFactory()
+        "CBOR"  | MediaType.APPLICATION_CBOR           | new CBORFactory()
+    }
+
+    def "a write refused for the backlog is a 503 the client may retry"() {
+        given:
+        todoService.createTodo(_) >> Mono.error(new WriteBacklogException(50000))
+
+        expect:
+        client.post().uri("/api/v1/todos")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue([title: "Title", description: "Description", completed: false, userId: USER_ID.toString()])
+                .exchange()
+                .expectStatus().isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)
+                .expectHeader().valueEquals("Retry-After", "1")
+    }
+
+    def "a bulk update without the completed value is a bad request and updates nothing"() {
+        when:
+        def response = client.post().uri("/api/v1/todos/bulk-update")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue([filter: [userId: USER_ID.toString()]])
+                .exchange()
+
+        then:
+        0 * todoService.updateCompleted(*_)
+        response.expectStatus().isBadRequest()
+    }
+
+    def "a bulk update sets the given completed value on the filtered todos"() {
+        when:
+        def response = client.post().uri("/api/v1/todos/bulk-update")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue([filter: [userId: USER_ID.toString()], completed: false])
+                .exchange()
+
+        then:
+        1 * todoService.updateCompleted({ it.userId() == USER_ID }, false) >> Mono.just(3L)
+        response.expectStatus().isOk()
+                .expectBody().jsonPath('$.affected').isEqualTo(3)
+    }
+}
@@ -0,0 +1,48 @@
+package us.dtaylor.todoservice.benchmark
+
+import groovy.transform.CompileStatic
+
+import java.lang.management.ManagementFactory
+
+/**
+ * Minimal timing harness for the opt-in benchmark specs; there is no JMH in this build. Each
+ * measurement warms up first and reports the best of several timed rounds, which is enough to
+ * compare alternatives side by side on one machine.
+ */
+@CompileStatic
+class Benchmarks {
+
+    static final int WARMUP_ROUNDS = 5
+    static final int ROUNDS = 5
+
+    static double nanosPerOp(int operations, Closure<?> operation) {
+        WARMUP_ROUNDS.times { run(operations, operation) }
+        long best = Long.MAX_VALUE
+        ROUNDS.times { best = Math.min(best, run(operations, operation)) }
+        return best / (double) operations
+    }
+
+    /**
+     * Heap bytes the calling thread allocates per operation, after the same warm-up.
+     */
+    static double bytesPerOp(int operations, Closure<?> operation) {
+        def threads = (com.sun.management.ThreadMXBean) ManagementFactory.threadMXBean
+        WARMUP_ROUNDS.times { run(operations, operation) }
+        long before = threads.currentThreadAllocatedBytes
+        run(operations, operation)
+        return (threads.currentThreadAllocatedBytes - before) / (double) operations
+    }
+
+    static void report(String title, Map<String, Double> results, String unit = "ns/op") {
+        println "== $title"
+        results.each { name, value -> println String.format("  %-40s %10.1f %s", name, value, unit) }
+    }
+
+    private static long run(int operations, Closure<?> operation) {
+        long start = System.nanoTime()
+        for (int i = 0; i < operations; i++) {
+            operation.call(i)
+        }
+        return System.nanoTime() - start
+    }
+}
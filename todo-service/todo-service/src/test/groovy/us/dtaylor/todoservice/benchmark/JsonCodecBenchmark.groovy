@@ -0,0 +1,50 @@
+package us.dtaylor.todoservice.benchmark
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule
+import spock.lang.Requires
+import spock.lang.Specification
+import us.dtaylor.todoservice.application.consumer.TodoMessage
+import us.dtaylor.todoservice.infastructure.codec.JsonCodecs
+
+import java.nio.charset.StandardCharsets
+
+/**
+ * Compares decoding a todo message the way the consumer used to, through a String and a new
+ * ObjectMapper per message, with the shared reader fed the raw record bytes, with and without
+ * the Blackbird module.
+ */
+@Requires({ sys.benchmark == 'true' })
+class JsonCodecBenchmark extends Specification {
+
+    static final int OPERATIONS = 20_000
+
+    def "a shared reader on the record bytes is faster and allocates less than a mapper per message"() {
+        given:
+        String json = """{"id":"${UUID.randomUUID()}","title":"Todo 1","description":"Our life is frittered away by detail... simplify, simplify.","completed":false,"userId":"${UUID.randomUUID()}"}"""
+        byte[] raw = json.getBytes(StandardCharsets.UTF_8)
+        byte[] wrapped = new ObjectMapper().writeValueAsBytes(json)
+        def outer = new ObjectMapper()
+        def plain = new JsonCodecs(new ObjectMapper())
+        def blackbird = new JsonCodecs(new ObjectMapper().registerModule(new BlackbirdModule()))
+
+        def decoders = [
+                "mapper per message, via String (old)": { outer.readValue(wrapped, String).with { new ObjectMapper().readValue(it, TodoMessage) } },
+                "shared reader, via String"           : { plain.reader(TodoMessage).readValue(new String(raw, StandardCharsets.UTF_8)) },
+                "shared reader, byte[]"               : { plain.readTodoMessage(raw) },
+                "shared reader + Blackbird, byte[]"   : { blackbird.readTodoMessage(raw) },
+        ]
+
+        when:
+        def nanos = decoders.collectEntries { name, decode -> [name, Benchmarks.nanosPerOp(OPERATIONS, decode)] } as Map<String, Double>
+        def bytes = decoders.collectEntries { name, decode -> [name, Benchmarks.bytesPerOp(OPERATIONS, decode)] } as Map<String, Double>
+        Benchmarks.report("TodoMessage decoding, latency", nanos)
+        Benchmarks.report("TodoMessage decoding, allocation", bytes, "B/op")
+
+        then:
+        blackbird.readTodoMessage(raw).title() == "Todo 1"
+        blackbird.readTodoMessage(wrapped).title() == "Todo 1"
+        nanos["shared reader + Blackbird, byte[]"] < nanos["mapper per message, via String (old)"]
+        bytes["shared reader + Blackbird, byte[]"] < bytes["mapper per message, via String (old)"]
+    }
+}
@@ -0,0 +1,80 @@
+package us.dtaylor.todoservice.benchmark
+
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
+import spock.lang.Requires
+import spock.lang.Specification
+import spock.lang.TempDir
+import us.dtaylor.todoservice.domain.Todo
+import us.dtaylor.todoservice.infastructure.persistence.repository.LogStructuredTodoRepository
+
+import java.nio.file.Path
+import java.time.Duration
+
+/**
+ * Acknowledged write latency of the embedded log, with the default 5 ms fsync interval and a
+ * 1 ms one: one writer waiting for each save, and many writers sharing group commits. Every acknowledged save is on disk, the
+ * same guarantee as a Mongo write with {@code j: true}; a Mongo baseline needs a running server
+ * and is not measured here.
+ */
+@Requires({ sys.benchmark == 'true' })
+class LogStructuredWriteLatencyBenchmark extends Specification {
+
+    static final int WARMUP = 2_000
+    static final int WRITES = 20_000
+
+    @TempDir
+    Path directory
+
+    LogStructuredTodoRepository repository
+
+    def cleanup() {
+        repository?.close()
+    }
+
+    def "acknowledged saves with a #fsyncMs ms fsync interval, one writer and 64 concurrent writers"() {
+        given:
+        repository = new LogStructuredTodoRepository(new LogStructuredTodoRepository.Settings(
+                directory, 64 << 20, Duration.ofMillis(fsyncMs), 256, Duration.ofSeconds(30), 0.5))
+        repository.open()
+        def userIds = (0..<100).collect { UUID.randomUUID() }
+
+        when:
+        def results = [:]
+        [1, 64].each { writers ->
+            timedSaves(WARMUP / 4 as int, writers, userIds)
+            long start = System.nanoTime()
+            long[] latencies = timedSaves(writers == 1 ? WRITES / 10 as int : WRITES, writers, userIds)
+            double seconds = (System.nanoTime() - start) / 1e9
+            Arrays.sort(latencies)
+            results["$writers writer(s), p50 (us)".toString()] = percentile(latencies, 0.50) / 1000.0
+            results["$writers writer(s), p99 (us)".toString()] = percentile(latencies, 0.99) / 1000.0
+            results["$writers writer(s), writes/s".toString()] = latencies.length / seconds
+        }
+        Benchmarks.report("Log-structured repository, acknowledged saves, fsync every $fsyncMs ms", results as Map<String, Double>, "")
+
+        then:
+        repository.findAll().count().block() > 0
+
+        where:
+        fsyncMs << [5, 1]
+    }
+
+    private long[] timedSaves(int count, int writers, List<UUID> userIds) {
+        long[] latencies = new long[count]
+        Flux.range(0, count)
+                .flatMap({ int i ->
+                    Mono.defer {
+                        long start = System.nanoTime()
+                        repository.save(new Todo(null, "Todo $i", "Description $i", false, userIds[i % userIds.size()]))
+                                .doOnSuccess { latencies[i] = System.nanoTime() - start }
+                    }
+                }, writers)
+                .blockLast()
+        return latencies
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * quantile))]
+    }
+}
@@ -0,0 +1,81 @@
+package us.dtaylor.todoservice.benchmark
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory
+import com.fasterxml.jackson.dataformat.smile.SmileFactory
+import org.springframework.core.ResolvableType
+import org.springframework.core.codec.Encoder
+import org.springframework.core.io.buffer.DataBufferUtils
+import org.springframework.core.io.buffer.DefaultDataBufferFactory
+import org.springframework.http.MediaType
+import org.springframework.http.codec.json.Jackson2JsonEncoder
+import org.springframework.util.MimeType
+import reactor.core.publisher.Flux
+import spock.lang.Requires
+import spock.lang.Specification
+import us.dtaylor.todoservice.domain.Todo
+import us.dtaylor.todoservice.infastructure.codec.BinaryJacksonEncoders
+
+import java.util.zip.GZIPOutputStream
+
+/**
+ * Encodes a 10k todo list with the encoders the controllers negotiate between, and reports the
+ * CPU per list and the payload size of each format, plain and gzipped as response compression
+ * sends it.
+ */
+@Requires({ sys.benchmark == 'true' })
+class ResponseEncodingBenchmark extends Specification {
+
+    static final int TODOS = 10_000
+    static final int LISTS = 20
+
+    def "Smile and CBOR lists are smaller than JSON and compress further"() {
+        given:
+        def userId = UUID.randomUUID()
+        List<Todo> todos = (0..<TODOS).collect {
+            new Todo(UUID.randomUUID(), "Todo $it", "Our life is frittered away by detail... simplify, simplify.", it % 3 == 0, userId)
+        }
+        def formats = [
+                "JSON" : [new Jackson2JsonEncoder(new ObjectMapper()), MediaType.APPLICATION_JSON],
+                "Smile": [BinaryJacksonEncoders.smile(new ObjectMapper(new SmileFactory())), BinaryJacksonEncoders.APPLICATION_SMILE],
+                "CBOR" : [BinaryJacksonEncoders.cbor(new ObjectMapper(new CBORFactory())), MediaType.APPLICATION_CBOR],
+        ]
+        Map<String, Closure<byte[]>> encoders = formats.collectEntries { name, format ->
+            [name, { encode(todos, format[0] as Encoder<Object>, format[1] as MimeType) }]
+        }
+
+        when:
+        def nanos = encoders.collectEntries { name, encode -> [name, Benchmarks.nanosPerOp(LISTS, encode) / 1_000_000] } as Map<String, Double>
+        def gzipNanos = encoders.collectEntries { name, encode ->
+            byte[] body = encode()
+            [name, Benchmarks.nanosPerOp(LISTS, { gzip(body) }) / 1_000_000]
+        } as Map<String, Double>
+        def sizes = encoders.collectEntries { name, encode -> [name, encode().length / 1024d] } as Map<String, Double>
+        def gzipSizes = encoders.collectEntries { name, encode -> [name, gzip(encode()).length / 1024d] } as Map<String, Double>
+        Benchmarks.report("Encoding $TODOS todos, CPU per list", nanos, "ms")
+        Benchmarks.report("Gzipping the encoded list, CPU per list", gzipNanos, "ms")
+        Benchmarks.report("Payload", sizes, "KiB")
+        Benchmarks.report("Payload, gzipped", gzipSizes, "KiB")
+
+        then:
+        new ObjectMapper(new SmileFactory()).readValue(encoders["Smile"](), List).size() == TODOS
+        new ObjectMapper(new CBORFactory()).readValue(encoders["CBOR"](), List).size() == TODOS
+        sizes["Smile"] < sizes["JSON"]
+        sizes["CBOR"] < sizes["JSON"]
+    }
+
+    private static byte[] encode(List<Todo> todos, Encoder<Object> encoder, MimeType mimeType) {
+        def buffers = encoder.encode(Flux.fromIterable(todos), DefaultDataBufferFactory.sharedInstance,
+                ResolvableType.forClass(Todo), mimeType, [:])
+        def joined = DataBufferUtils.join(buffers).block()
+        byte[] bytes = new byte[joined.readableByteCount()]
+        joined.read(bytes)
+        return bytes
+    }
+
+    private static byte[] gzip(byte[] body) {
+        def out = new ByteArrayOutputStream(body.length)
+        new GZIPOutputStream(out).withCloseable { it.write(body) }
+        return out.toByteArray()
+    }
+}
@@ -0,0 +1,64 @@
+package us.dtaylor.todoservice.benchmark
+
+import com.mongodb.MongoClientSettings
+import org.bson.Document
+import org.bson.RawBsonDocument
+import org.bson.UuidRepresentation
+import org.bson.codecs.configuration.CodecRegistries
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext
+import spock.lang.Requires
+import spock.lang.Specification
+import us.dtaylor.todoservice.domain.Todo
+import us.dtaylor.todoservice.infastructure.persistence.TodoDocument
+
+/**
+ * Compares mapping todos stored with binary UUIDs against the old string ids, which a
+ * not-yet-migrated document still has and which the converter has to parse on every read.
+ */
+@Requires({ sys.benchmark == 'true' })
+class TodoDocumentMappingBenchmark extends Specification {
+
+    static final int OPERATIONS = 200_000
+
+    def codecs = CodecRegistries.withUuidRepresentation(MongoClientSettings.getDefaultCodecRegistry(), UuidRepresentation.STANDARD)
+    def converter = mappingConverter()
+
+    def "binary UUID documents are smaller and cheaper to read than string-id documents"() {
+        given:
+        def todo = new Todo(UUID.randomUUID(), "Buy milk", "Two litres, semi-skimmed", false, UUID.randomUUID())
+        def binary = new Document()
+        converter.write(TodoDocument.toDocument(todo), binary)
+        def legacy = new Document(binary)
+        legacy.put("_id", todo.id.toString())
+        legacy.put("userId", todo.userId.toString())
+
+        when:
+        def results = [
+                "write TodoDocument"              : Benchmarks.nanosPerOp(OPERATIONS) { converter.write(TodoDocument.toDocument(todo), new Document()) },
+                "read binary-id document"         : Benchmarks.nanosPerOp(OPERATIONS) { converter.read(TodoDocument, binary).toDomain() },
+                "read string-id document (legacy)": Benchmarks.nanosPerOp(OPERATIONS) { converter.read(TodoDocument, legacy).toDomain() },
+        ]
+        int binarySize = encodedSize(binary)
+        int legacySize = encodedSize(legacy)
+        Benchmarks.report("TodoDocument mapping", results)
+        println "  encoded size: binary ids $binarySize bytes, string ids $legacySize bytes"
+
+        then:
+        converter.read(TodoDocument, legacy).toDomain() == todo
+        binarySize < legacySize
+    }
+
+    private int encodedSize(Document document) {
+        return new RawBsonDocument(document, codecs.get(Document)).getByteBuffer().remaining()
+    }
+
+    private static MappingMongoConverter mappingConverter() {
+        def context = new MongoMappingContext()
+        context.afterPropertiesSet()
+        def converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, context)
+        converter.afterPropertiesSet()
+        return converter
+    }
+}
@@ -6,9 +6,11 @@ import reactor.core.publisher.Mono
 import reactor.test.StepVerifier
 import spock.lang.Specification
 import spock.lang.Subject
+import us.dtaylor.todoservice.domain.exceptions.InvalidFilterException
+import us.dtaylor.todoservice.domain.exceptions.TodoOwnershipException
 import us.dtaylor.todoservice.domain.repository.TodoRepository
 import us.dtaylor.todoservice.domain.service.DomainTodoService
-import us.dtaylor.todoservice.infastructure.client.ReactiveUserClient
+import us.dtaylor.todoservice.domain.service.UserService
 import us.dtaylor.todoservice.infastructure.persistence.repository.MongoDbTodoRepository
 
 class DomainTodoServiceSpec extends Specification {
@@ -20,7 +22,7 @@ class DomainTodoServiceSpec extends Specification {
 
     TodoRepository todoRepository = Mock()
 
-    ReactiveUserClient userClient = Mock()
+    UserService userClient = Mock()
 
     def setup() {
         todoService = new DomainTodoService(todoRepository, userClient)
@@ -48,6 +50,33 @@ class DomainTodoServiceSpec extends Specification {
 
     }
 
+    def "ingest keeps the source id and saves over any existing todo"() {
+        given:
+        def todo = getTodo()
+        def sourceId = todo.id
+        userClient.getUserById(USER_ID) >> Mono.just(new User(USER_ID, "Test", "Test"))
+
+        when:
+        def ingested = todoService.ingestTodo(todo).block()
+
+        then:
+        1 * todoRepository.saveForOwner({ it.id == sourceId }) >> { Todo saved -> Mono.just(saved) }
+        0 * todoRepository.save(_)
+        ingested.id == sourceId
+    }
+
+    def "ingest does not take over a todo another user owns"() {
+        given:
+        def todo = getTodo()
+        userClient.getUserById(USER_ID) >> Mono.just(new User(USER_ID, "Test", "Test"))
+        todoRepository.saveForOwner(_) >> Mono.error(new TodoOwnershipException(todo.id))
+
+        expect:
+        StepVerifier.create(todoService.ingestTodo(todo))
+                .expectError(TodoOwnershipException)
+                .verify()
+    }
+
     def "get all todo items"() {
         given:
         def todo = getTodo()
@@ -104,6 +133,37 @@ class DomainTodoServiceSpec extends Specification {
                 .verifyComplete()
     }
 
-}
+    def "delete all of a user's todos in chunks until none are left"() {
+        when:
+        def deleted = todoService.deleteAllTodosByUserId(USER_ID, 1000, java.time.Duration.ofMillis(1)).block()
+
+        then:
+        3 * todoRepository.deleteAllByUserId(USER_ID, 1000) >>> [Mono.just(1000L), Mono.just(200L), Mono.just(0L)]
+        deleted == 1200
+    }
+
+    def "bulk updates and deletes go to the repository as one operation"() {
+        given:
+        def filter = TodoFilter.byUser(USER_ID, false)
+
+        when:
+        def updated = todoService.updateCompleted(filter, true).block()
+        def deleted = todoService.deleteTodos(filter).block()
 
+        then:
+        1 * todoRepository.updateCompleted(filter, true) >> Mono.just(3L)
+        1 * todoRepository.deleteMatching(filter) >> Mono.just(2L)
+        updated == 3
+        deleted == 2
+    }
+
+    def "bulk operations need ids or a user"() {
+        when:
+        todoService.deleteTodos(new TodoFilter(null, null, true)).block()
 
+        then:
+        thrown(InvalidFilterException)
+        0 * todoRepository._
+    }
+
+}
@@ -0,0 +1,79 @@
+package us.dtaylor.todoservice.infrastructure.client
+
+import spock.lang.Specification
+import us.dtaylor.todoservice.infastructure.client.AdaptiveConcurrencyLimiter
+
+import java.util.concurrent.TimeUnit
+
+class AdaptiveConcurrencyLimiterSpec extends Specification {
+
+    long now = 0
+
+    def limiter(int initialLimit) {
+        return new AdaptiveConcurrencyLimiter(initialLimit, 1, 100, 2.0d, 0.5d, 1000, { now })
+    }
+
+    def complete(AdaptiveConcurrencyLimiter limiter, long rttMillis) {
+        def permit = limiter.tryAcquire()
+        now += TimeUnit.MILLISECONDS.toNanos(rttMillis)
+        permit.success()
+    }
+
+    def "rejects calls beyond the current limit"() {
+        given:
+        def limiter = limiter(2)
+
+        expect:
+        limiter.tryAcquire() != null
+        limiter.tryAcquire() != null
+        limiter.tryAcquire() == null
+        limiter.inFlight == 2
+    }
+
+    def "releasing a permit twice only frees one slot"() {
+        given:
+        def limiter = limiter(1)
+        def permit = limiter.tryAcquire()
+
+        when:
+        permit.success()
+        permit.ignore()
+
+        then:
+        limiter.inFlight == 0
+    }
+
+    def "grows only while the limit is in use and latency stays near the minimum"() {
+        given:
+        def limiter = limiter(1)
+
+        when: "sequential calls use one slot, so the limit stops growing once it is half idle"
+        5.times { complete(limiter, 10) }
+
+        then:
+        limiter.limit == 3
+    }
+
+    def "shrinks when latency rises past the tolerance"() {
+        given:
+        def limiter = limiter(8)
+        complete(limiter, 10)
+
+        when:
+        complete(limiter, 50)
+
+        then:
+        limiter.limit == 4
+    }
+
+    def "shrinks when a call is dropped"() {
+        given:
+        def limiter = limiter(8)
+
+        when:
+        limiter.tryAcquire().dropped()
+
+        then:
+        limiter.limit == 4
+    }
+}
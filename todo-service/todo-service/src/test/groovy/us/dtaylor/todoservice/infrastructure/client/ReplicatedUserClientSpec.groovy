@@ -0,0 +1,114 @@
+package us.dtaylor.todoservice.infrastructure.client
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import reactor.core.publisher.Mono
+import spock.lang.Specification
+import spock.lang.TempDir
+import us.dtaylor.todoservice.domain.User
+import us.dtaylor.todoservice.domain.exceptions.ClientTimeOutException
+import us.dtaylor.todoservice.domain.exceptions.UserNotFoundException
+import us.dtaylor.todoservice.domain.service.UserService
+import us.dtaylor.todoservice.infastructure.client.ReplicatedUserClient
+import us.dtaylor.todoservice.infastructure.replica.UserEvent
+import us.dtaylor.todoservice.infastructure.replica.UserReplica
+
+import java.nio.file.Path
+import java.time.Duration
+
+class ReplicatedUserClientSpec extends Specification {
+
+    @TempDir
+    Path directory
+
+    UserService delegate = Mock()
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    UserReplica replica
+    long now = 1_000_000
+    ReplicatedUserClient client
+
+    def setup() {
+        replica = new UserReplica(new UserReplica.Settings("user-events", directory.resolve("users.snapshot"), Duration.ofHours(1),
+                Duration.ofMinutes(10)), { now })
+        replica.open()
+        client = new ReplicatedUserClient(replica, delegate, meterRegistry)
+    }
+
+    def cleanup() {
+        replica.close()
+    }
+
+    def "replicated users are answered locally"() {
+        given:
+        def id = UUID.randomUUID()
+        replica.apply(new UserEvent(UserEvent.Type.CREATED, id, "Test", "test@email.com"), 0, 0)
+
+        when:
+        def user = client.getUserById(id).block()
+
+        then:
+        user == new User(id, "Test", "test@email.com")
+        0 * delegate.getUserById(_)
+        meterRegistry.get("user.replica.lookups").tag("result", "hit").counter().count() == 1
+    }
+
+    def "users the replica has not seen are fetched from user-service"() {
+        given:
+        def id = UUID.randomUUID()
+        def remote = new User(id, "Remote", "remote@email.com")
+
+        when:
+        def user = client.getUserById(id).block()
+
+        then:
+        user == remote
+        1 * delegate.getUserById(id) >> Mono.just(remote)
+        meterRegistry.get("user.replica.lookups").tag("result", "miss").counter().count() == 1
+    }
+
+    def "a user not confirmed for longer than the maximum age is checked with user-service again"() {
+        given:
+        def id = UUID.randomUUID()
+        replica.apply(new UserEvent(UserEvent.Type.CREATED, id, "Test", "test@email.com"), 0, 0)
+        now += Duration.ofMinutes(11).toMillis()
+        def renamed = new User(id, "Renamed", "renamed@email.com")
+
+        when:
+        def users = [client.getUserById(id).block(), client.getUserById(id).block()]
+
+        then: "the answer refreshes the copy, which is fresh again"
+        1 * delegate.getUserById(id) >> Mono.just(renamed)
+        users == [renamed, renamed]
+        meterRegistry.get("user.replica.revalidations").counter().count() == 1
+    }
+
+    def "a stale user that user-service no longer has is evicted"() {
+        given:
+        def id = UUID.randomUUID()
+        replica.apply(new UserEvent(UserEvent.Type.CREATED, id, "Test", "test@email.com"), 0, 0)
+        now += Duration.ofMinutes(11).toMillis()
+
+        when:
+        client.getUserById(id).block()
+
+        then:
+        1 * delegate.getUserById(id) >> Mono.error(new UserNotFoundException("User not found"))
+        thrown(UserNotFoundException)
+        replica.get(id) == null
+        meterRegistry.get("user.replica.evictions").counter().count() == 1
+    }
+
+    def "a stale user is still answered from the copy while user-service is unavailable"() {
+        given:
+        def id = UUID.randomUUID()
+        replica.apply(new UserEvent(UserEvent.Type.CREATED, id, "Test", "test@email.com"), 0, 0)
+        now += Duration.ofMinutes(11).toMillis()
+
+        when:
+        def user = client.getUserById(id).block()
+
+        then:
+        1 * delegate.getUserById(id) >> Mono.error(new ClientTimeOutException("User service unavailable: circuit open"))
+        user == new User(id, "Test", "test@email.com")
+        replica.get(id) != null
+    }
+}
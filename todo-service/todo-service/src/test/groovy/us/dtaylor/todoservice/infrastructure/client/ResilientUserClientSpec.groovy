@@ -0,0 +1,109 @@
+package us.dtaylor.todoservice.infrastructure.client
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import reactor.core.publisher.Mono
+import reactor.test.StepVerifier
+import spock.lang.Specification
+import us.dtaylor.todoservice.domain.User
+import us.dtaylor.todoservice.domain.exceptions.ClientException
+import us.dtaylor.todoservice.domain.exceptions.ClientTimeOutException
+import us.dtaylor.todoservice.domain.service.UserService
+import us.dtaylor.todoservice.infastructure.client.ResilientUserClient
+
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicInteger
+
+class ResilientUserClientSpec extends Specification {
+
+    static final UUID USER_ID = UUID.randomUUID()
+    static final User USER = new User(USER_ID, "John Doe", "john@example.com")
+
+    UserService delegate = Mock()
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+
+    def client(Map overrides = [:], CircuitBreaker circuitBreaker = CircuitBreaker.ofDefaults("test")) {
+        def settings = new ResilientUserClient.Settings(
+                overrides.attemptTimeout ?: Duration.ofMillis(200),
+                overrides.overallTimeout ?: Duration.ofSeconds(2),
+                overrides.maxRetries != null ? overrides.maxRetries : 2,
+                Duration.ofMillis(1),
+                overrides.hedgeEnabled ?: false,
+                overrides.hedgeDelay ?: Duration.ofMillis(20))
+        return new ResilientUserClient(delegate, circuitBreaker, settings, meterRegistry)
+    }
+
+    def "retries transient failures and returns the user"() {
+        given:
+        def calls = new AtomicInteger()
+        delegate.getUserById(USER_ID) >> {
+            calls.incrementAndGet() == 1 ? Mono.error(new ClientTimeOutException("Service unavailable")) : Mono.just(USER)
+        }
+
+        expect:
+        StepVerifier.create(client().getUserById(USER_ID))
+                .expectNext(USER)
+                .verifyComplete()
+        calls.get() == 2
+        meterRegistry.counter("user.client.retries").count() == 1
+    }
+
+    def "does not retry client errors"() {
+        given:
+        def calls = new AtomicInteger()
+        delegate.getUserById(USER_ID) >> {
+            calls.incrementAndGet()
+            Mono.error(new ClientException("Client error"))
+        }
+
+        expect:
+        StepVerifier.create(client().getUserById(USER_ID))
+                .expectError(ClientException)
+                .verify()
+        calls.get() == 1
+    }
+
+    def "maps an attempt timeout to a client timeout"() {
+        given:
+        delegate.getUserById(USER_ID) >> Mono.never()
+
+        expect:
+        StepVerifier.create(client(maxRetries: 0).getUserById(USER_ID))
+                .expectError(ClientTimeOutException)
+                .verify(Duration.ofSeconds(2))
+        meterRegistry.counter("user.client.timeouts").count() == 1
+    }
+
+    def "fails fast once the circuit is open"() {
+        given:
+        def circuitBreaker = CircuitBreaker.of("test", CircuitBreakerConfig.custom()
+                .minimumNumberOfCalls(1)
+                .slidingWindowSize(1)
+                .build())
+        circuitBreaker.transitionToOpenState()
+
+        when:
+        StepVerifier.create(client([:], circuitBreaker).getUserById(USER_ID))
+                .expectErrorMatches { it instanceof ClientTimeOutException && it.message.contains("circuit open") }
+                .verify()
+
+        then:
+        0 * delegate.getUserById(_)
+        meterRegistry.counter("user.client.rejected").count() == 1
+    }
+
+    def "hedges a slow primary call"() {
+        given:
+        def calls = new AtomicInteger()
+        delegate.getUserById(USER_ID) >> {
+            calls.incrementAndGet() == 1 ? Mono.never() : Mono.just(USER)
+        }
+
+        expect:
+        StepVerifier.create(client(hedgeEnabled: true).getUserById(USER_ID))
+                .expectNext(USER)
+                .verifyComplete()
+        meterRegistry.counter("user.client.hedges").count() == 1
+    }
+}
@@ -0,0 +1,123 @@
+package us.dtaylor.todoservice.infrastructure.config
+
+import org.springframework.security.oauth2.jose.jws.SignatureAlgorithm
+import org.springframework.security.oauth2.jwt.JwtValidators
+import org.springframework.security.oauth2.jwt.NimbusReactiveJwtDecoder
+import org.springframework.security.oauth2.jwt.ReactiveJwtDecoder
+import org.springframework.web.reactive.function.client.WebClient
+import spock.lang.AutoCleanup
+import spock.lang.Specification
+import us.dtaylor.todoservice.infastructure.config.CachingReactiveJwtDecoder
+import us.dtaylor.todoservice.infastructure.config.GrantedAuthoritiesExtractor
+import us.dtaylor.todoservice.infastructure.config.PrefetchingJwkSource
+
+import java.time.Duration
+import java.time.Instant
+import java.util.concurrent.atomic.AtomicInteger
+
+class CachingReactiveJwtDecoderSpec extends Specification {
+
+    @AutoCleanup
+    LocalJwksServer jwks = new LocalJwksServer()
+
+    long nanos = 0
+    PrefetchingJwkSource jwkSource
+    NimbusReactiveJwtDecoder nimbus
+    AtomicInteger verifications = new AtomicInteger()
+    CachingReactiveJwtDecoder decoder
+
+    def setup() {
+        jwkSource = new PrefetchingJwkSource(WebClient.create(), jwks.jwkSetUri, Duration.ofMinutes(5), Duration.ofSeconds(30), { nanos })
+        jwkSource.refresh().block()
+        nimbus = NimbusReactiveJwtDecoder.withJwkSource(jwkSource).jwsAlgorithm(SignatureAlgorithm.RS256).build()
+        nimbus.setJwtValidator(JwtValidators.createDefaultWithIssuer(LocalJwksServer.ISSUER))
+        def counting = { String token ->
+            verifications.incrementAndGet()
+            nimbus.decode(token)
+        } as ReactiveJwtDecoder
+        decoder = new CachingReactiveJwtDecoder(counting, 100, Duration.ofMinutes(15))
+    }
+
+    def "verifies a token once and serves repeats from the cache"() {
+        given:
+        def token = jwks.token()
+
+        when:
+        def first = decoder.decode(token).block()
+        def second = decoder.decode(token).block()
+
+        then:
+        verifications.get() == 1
+        first.is(second)
+        first.subject == "user"
+    }
+
+    def "does not cache tokens that are already expired"() {
+        given:
+        def token = jwks.token([:], Instant.now().minusSeconds(600))
+
+        when:
+        decoder.decode(token).block()
+
+        then:
+        thrown(Exception)
+        decoder.size() == 0
+    }
+
+    def "uses the prefetched key set without fetching per request"() {
+        when:
+        3.times { decoder.decode(jwks.token()).block() }
+
+        then:
+        jwks.requests.get() == 1
+    }
+
+    def "picks up a rotated key with a single refresh"() {
+        given:
+        jwks.rotate()
+        def token = jwks.token()
+
+        when:
+        def jwt = decoder.decode(token).block()
+
+        then:
+        jwt.subject == "user"
+        jwks.requests.get() == 2
+    }
+
+    def "fetches for unknown key ids at most once per interval"() {
+        given:
+        jwks.rotate()
+        decoder.decode(jwks.token()).block()
+
+        when: "another rotation is seen within the interval"
+        jwks.rotate()
+        decoder.decode(jwks.token()).block()
+
+        then: "the token is rejected without a fetch"
+        thrown(Exception)
+        jwks.requests.get() == 2
+
+        when: "the interval has passed"
+        nanos += Duration.ofSeconds(30).toNanos()
+        def jwt = decoder.decode(jwks.token()).block()
+
+        then:
+        jwt.subject == "user"
+        jwks.requests.get() == 3
+    }
+
+    def "memoizes authorities per decoded token"() {
+        given:
+        def extractor = new GrantedAuthoritiesExtractor()
+        def jwt = decoder.decode(jwks.token([realm_access: [roles: ["app-user"]], scope: "openid profile"])).block()
+
+        when:
+        def first = extractor.convert(jwt)
+        def second = extractor.convert(jwt)
+
+        then:
+        first.is(second)
+        first*.authority == ["ROLE_APP-USER", "openid", "profile"]
+    }
+}
@@ -0,0 +1,71 @@
+package us.dtaylor.todoservice.infrastructure.config
+
+import com.nimbusds.jose.JWSAlgorithm
+import com.nimbusds.jose.JWSHeader
+import com.nimbusds.jose.crypto.RSASSASigner
+import com.nimbusds.jose.jwk.JWKSet
+import com.nimbusds.jose.jwk.RSAKey
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator
+import com.nimbusds.jwt.JWTClaimsSet
+import com.nimbusds.jwt.SignedJWT
+import reactor.core.publisher.Mono
+import reactor.netty.DisposableServer
+import reactor.netty.http.server.HttpServer
+
+import java.time.Instant
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Stand-in for the Keycloak certs endpoint: serves the public half of a rotating RSA key as a JWK
+ * set on a random local port and signs tokens with the current key.
+ */
+class LocalJwksServer implements Closeable {
+
+    static final String ISSUER = "http://localhost/realms/todos"
+
+    final AtomicInteger requests = new AtomicInteger()
+    volatile RSAKey signingKey = newKey()
+    private final DisposableServer server
+
+    LocalJwksServer() {
+        server = HttpServer.create()
+                .port(0)
+                .route { routes ->
+                    routes.get("/certs") { request, response ->
+                        requests.incrementAndGet()
+                        response.header("Content-Type", "application/json")
+                                .sendString(Mono.just(new JWKSet(signingKey.toPublicJWK()).toString()))
+                    }
+                }
+                .bindNow()
+    }
+
+    String getJwkSetUri() {
+        return "http://localhost:${server.port()}/certs"
+    }
+
+    void rotate() {
+        signingKey = newKey()
+    }
+
+    String token(Map claims = [:], Instant expiresAt = Instant.now().plusSeconds(300)) {
+        def builder = new JWTClaimsSet.Builder()
+                .issuer(ISSUER)
+                .subject("user")
+                .issueTime(new Date())
+                .expirationTime(Date.from(expiresAt))
+        claims.each { name, value -> builder.claim(name as String, value) }
+        def jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(signingKey.keyID).build(), builder.build())
+        jwt.sign(new RSASSASigner(signingKey))
+        return jwt.serialize()
+    }
+
+    @Override
+    void close() {
+        server.disposeNow()
+    }
+
+    private static RSAKey newKey() {
+        return new RSAKeyGenerator(2048).keyID(UUID.randomUUID().toString()).generate()
+    }
+}
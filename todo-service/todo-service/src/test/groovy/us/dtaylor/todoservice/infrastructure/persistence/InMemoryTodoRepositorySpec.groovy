@@ -0,0 +1,51 @@
+package us.dtaylor.todoservice.infrastructure.persistence
+
+import us.dtaylor.todoservice.domain.repository.TodoRepository
+import us.dtaylor.todoservice.infastructure.persistence.repository.InMemoryTodoRepository
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class InMemoryTodoRepositorySpec extends TodoRepositoryContract {
+
+    @Override
+    TodoRepository createRepository() {
+        return new InMemoryTodoRepository()
+    }
+
+    def "concurrent saves and deletes of one todo never leave it stored but unindexed"() {
+        given:
+        def id = UUID.randomUUID()
+        def owners = [USER_ID, OTHER_USER_ID]
+        def pool = Executors.newFixedThreadPool(4)
+
+        when: "each round ends with four threads racing to move, rewrite or delete the same todo"
+        def lost = (0..<200).findAll { round ->
+            def start = new CountDownLatch(1)
+            def done = (0..<4).collect { thread ->
+                pool.submit {
+                    start.await()
+                    200.times { i ->
+                        if (thread == 3 && i % 3 == 0) {
+                            repository.deleteById(id).block()
+                        } else {
+                            repository.save(todo("todo", owners[(thread + i) % 2], id)).block()
+                        }
+                    }
+                }
+            }
+            start.countDown()
+            done*.get()
+            def stored = repository.findById(id).block()
+            stored != null && !repository.findAllByUserId(stored.userId).collectList().block()*.id.contains(id)
+        }
+
+        then:
+        lost.isEmpty()
+
+        cleanup:
+        pool.shutdownNow()
+        pool.awaitTermination(5, TimeUnit.SECONDS)
+    }
+}
@@ -0,0 +1,147 @@
+package us.dtaylor.todoservice.infrastructure.persistence
+
+import spock.lang.TempDir
+import us.dtaylor.todoservice.domain.repository.TodoRepository
+import us.dtaylor.todoservice.infastructure.persistence.repository.LogStructuredTodoRepository
+
+import java.nio.ByteBuffer
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.time.Duration
+
+class LogStructuredTodoRepositorySpec extends TodoRepositoryContract {
+
+    @TempDir
+    Path directory
+
+    List<LogStructuredTodoRepository> opened = []
+
+    @Override
+    TodoRepository createRepository() {
+        return openRepository()
+    }
+
+    def cleanup() {
+        opened.each { it.close() }
+    }
+
+    LogStructuredTodoRepository openRepository(int segmentSize = 1 << 20) {
+        def repository = new LogStructuredTodoRepository(new LogStructuredTodoRepository.Settings(
+                directory, segmentSize, Duration.ofMillis(2), 64, Duration.ofHours(1), 0.5))
+        repository.open()
+        opened << repository
+        return repository
+    }
+
+    LogStructuredTodoRepository reopen() {
+        closeAll()
+        return openRepository()
+    }
+
+    LogStructuredTodoRepository recreate(int segmentSize) {
+        closeAll()
+        Files.list(directory).withCloseable { files -> files.each { Files.delete(it) } }
+        return openRepository(segmentSize)
+    }
+
+    void closeAll() {
+        opened.each { it.close() }
+        opened.clear()
+    }
+
+    def "saved and deleted todos survive a restart"() {
+        given:
+        def kept = todo("kept")
+        def moved = todo("moved")
+        def deleted = todo("deleted")
+        [kept, moved, deleted].each { repository.save(it).block() }
+        repository.save(moved.setUserId(OTHER_USER_ID).setCompleted(true)).block()
+        repository.deleteById(deleted.id).block()
+
+        when:
+        def recovered = reopen()
+
+        then:
+        recovered.findAll().collectList().block() as Set == [kept, moved] as Set
+        recovered.findAllByUserId(USER_ID).collectList().block() == [kept]
+        recovered.findAllByUserId(OTHER_USER_ID).collectList().block() == [moved]
+    }
+
+    def "deleteAll survives a restart"() {
+        given:
+        repository.save(todo("gone")).block()
+        repository.deleteAll().block()
+
+        expect:
+        reopen().findAll().collectList().block().isEmpty()
+    }
+
+    def "a torn record at the tail is discarded on recovery and overwritten by the next write"() {
+        given:
+        def intact = todo("intact")
+        repository.save(intact).block()
+        closeAll()
+        def segment = Files.list(directory).findFirst().get()
+        def tail = firstFreeOffset(segment)
+
+        and: "half a record written just past the last intact one"
+        def channel = Files.newByteChannel(segment, StandardOpenOption.WRITE)
+        channel.position(tail)
+        channel.write(ByteBuffer.wrap([0, 0, 0, 40, 1, 2, 3, 4, 1, 9, 9, 9] as byte[]))
+        channel.close()
+
+        when:
+        def recovered = reopen()
+        def next = todo("next")
+        recovered.save(next).block()
+
+        then:
+        reopen().findAll().collectList().block() as Set == [intact, next] as Set
+    }
+
+    def "compaction rewrites live records and removes superseded segments"() {
+        given:
+        def repository = recreate(512)
+        def survivor = todo("survivor")
+        repository.save(survivor).block()
+        20.times { repository.save(survivor.setTitle("survivor $it")).block() }
+        def segmentsBefore = repository.segmentCount()
+
+        when:
+        repository.compact()
+
+        then:
+        segmentsBefore > 2
+        repository.segmentCount() < segmentsBefore
+        repository.garbageRatio() <= 0.5
+        repository.findById(survivor.id).block() == survivor
+
+        when:
+        closeAll()
+        def recovered = openRepository(512)
+
+        then:
+        recovered.findAll().collectList().block() == [survivor]
+    }
+
+    def "a todo larger than a segment is rejected"() {
+        given:
+        def repository = recreate(256)
+
+        when:
+        repository.save(todo("x" * 512)).block()
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    private static long firstFreeOffset(Path segment) {
+        def bytes = Files.readAllBytes(segment)
+        int offset = 0
+        while (bytes[offset + 8] != 0) {
+            offset += 25 + ByteBuffer.wrap(bytes, offset, 4).getInt()
+        }
+        return offset
+    }
+}
@@ -0,0 +1,71 @@
+package us.dtaylor.todoservice.infrastructure.persistence
+
+import com.mongodb.ConnectionString
+import com.mongodb.MongoClientSettings
+import com.mongodb.reactivestreams.client.MongoClient
+import com.mongodb.reactivestreams.client.MongoClients
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.micrometer.observation.ObservationRegistry
+import org.bson.UuidRepresentation
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate
+import org.springframework.data.mongodb.repository.support.ReactiveMongoRepositoryFactory
+import org.testcontainers.DockerClientFactory
+import org.testcontainers.containers.GenericContainer
+import org.testcontainers.utility.DockerImageName
+import spock.lang.Requires
+import spock.lang.Shared
+import us.dtaylor.todoservice.domain.Todo
+import us.dtaylor.todoservice.domain.repository.TodoRepository
+import us.dtaylor.todoservice.infastructure.persistence.RequestCoalescer
+import us.dtaylor.todoservice.infastructure.persistence.UuidMigration
+import us.dtaylor.todoservice.infastructure.persistence.repository.MongoDbTodoRepository
+import us.dtaylor.todoservice.infastructure.persistence.repository.SpringDataMongoTodoRepository
+
+import java.time.Duration
+
+/**
+ * Runs the repository contract against a real Mongo, so the in-process adapters are checked
+ * against the behaviour they imitate. The client is set up like {@code MongoDbConfiguration};
+ * skipped where Docker is not available.
+ */
+@Requires({ DockerClientFactory.instance().isDockerAvailable() })
+class MongoDbTodoRepositoryContainerSpec extends TodoRepositoryContract {
+
+    @Shared
+    GenericContainer mongoDBContainer = new GenericContainer<>(DockerImageName.parse("mongo:6.0"))
+            .withExposedPorts(27017)
+
+    @Shared
+    MongoClient mongoClient
+
+    @Shared
+    ReactiveMongoTemplate mongoTemplate
+
+    def setupSpec() {
+        mongoDBContainer.start()
+        mongoClient = MongoClients.create(MongoClientSettings.builder()
+                .uuidRepresentation(UuidRepresentation.STANDARD)
+                .applyConnectionString(new ConnectionString(
+                        "mongodb://${mongoDBContainer.host}:${mongoDBContainer.getMappedPort(27017)}"))
+                .build())
+        mongoTemplate = new ReactiveMongoTemplate(mongoClient, "todo-contract")
+    }
+
+    def cleanupSpec() {
+        mongoClient?.close()
+        mongoDBContainer.stop()
+    }
+
+    @Override
+    TodoRepository createRepository() {
+        def uuidMigration = Stub(UuidMigration) {
+            isComplete() >> true
+        }
+        return new MongoDbTodoRepository(
+                new ReactiveMongoRepositoryFactory(mongoTemplate).getRepository(SpringDataMongoTodoRepository),
+                mongoTemplate,
+                uuidMigration,
+                new RequestCoalescer<UUID, Todo>("todos", Duration.ZERO, { it }, new SimpleMeterRegistry()),
+                ObservationRegistry.NOOP)
+    }
+}
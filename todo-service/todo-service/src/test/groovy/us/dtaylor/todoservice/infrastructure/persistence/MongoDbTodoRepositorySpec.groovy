@@ -0,0 +1,230 @@
+package us.dtaylor.todoservice.infrastructure.persistence
+
+import com.mongodb.client.result.DeleteResult
+import com.mongodb.client.result.UpdateResult
+import com.mongodb.bulk.BulkWriteResult
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.micrometer.observation.ObservationRegistry
+import org.bson.Document
+import org.springframework.dao.DuplicateKeyException
+import org.springframework.data.mongodb.core.FindAndReplaceOptions
+import org.springframework.data.mongodb.core.ReactiveBulkOperations
+import org.springframework.data.mongodb.core.ReactiveMongoOperations
+import org.springframework.data.mongodb.core.query.Query
+import org.springframework.data.mongodb.core.query.Update
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
+import spock.lang.Specification
+import us.dtaylor.todoservice.domain.Todo
+import us.dtaylor.todoservice.domain.TodoField
+import us.dtaylor.todoservice.domain.TodoFilter
+import us.dtaylor.todoservice.domain.exceptions.TodoOwnershipException
+import us.dtaylor.todoservice.infastructure.persistence.RequestCoalescer
+import us.dtaylor.todoservice.infastructure.persistence.TodoDocument
+import us.dtaylor.todoservice.infastructure.persistence.UuidMigration
+import us.dtaylor.todoservice.infastructure.persistence.repository.MongoDbTodoRepository
+import us.dtaylor.todoservice.infastructure.persistence.repository.SpringDataMongoTodoRepository
+
+import java.time.Duration
+
+class MongoDbTodoRepositorySpec extends Specification {
+
+    static final UUID USER_ID = UUID.randomUUID()
+
+    ReactiveMongoOperations mongoOperations = Mock()
+    UuidMigration uuidMigration = Stub() {
+        isComplete() >> true
+    }
+    RequestCoalescer<UUID, Todo> reads = new RequestCoalescer<>("todos", Duration.ZERO, { it }, new SimpleMeterRegistry())
+
+    MongoDbTodoRepository repository = new MongoDbTodoRepository(Stub(SpringDataMongoTodoRepository), mongoOperations,
+            uuidMigration, reads, ObservationRegistry.NOOP)
+
+    def "a field selection is pushed down as a projection and only those fields are mapped"() {
+        given:
+        def id = UUID.randomUUID()
+        def fields = EnumSet.of(TodoField.ID, TodoField.TITLE, TodoField.COMPLETED)
+
+        when:
+        def todos = repository.findAllByUserId(USER_ID, fields).collectList().block()
+
+        then:
+        1 * mongoOperations.find(_ as Query, TodoDocument) >> { Query query, Class type ->
+            assert query.queryObject == new Document("userId", USER_ID)
+            assert query.fieldsObject == new Document("_id", 1).append("title", 1).append("completed", 1)
+            // what Mongo returns for that projection
+            Flux.just(new TodoDocument().setId(id).setTitle("Short").setCompleted(true))
+        }
+        todos == [new Todo(id, "Short", null, true, null)]
+    }
+
+    def "selecting every field reads whole documents"() {
+        given:
+        SpringDataMongoTodoRepository documents = Mock()
+        def whole = new MongoDbTodoRepository(documents, mongoOperations, uuidMigration, reads, ObservationRegistry.NOOP)
+
+        when:
+        whole.findAll(TodoField.ALL).collectList().block()
+
+        then:
+        1 * documents.findAll() >> Flux.empty()
+        0 * mongoOperations._
+    }
+
+    def "bulk completion is a single updateMany that skips todos already in that state"() {
+        when:
+        def modified = repository.updateCompleted(TodoFilter.byUser(USER_ID, null), true).block()
+
+        then:
+        1 * mongoOperations.updateMulti(_ as Query, _ as Update, TodoDocument.COLLECTION) >> { Query query, Update update, String collection ->
+            assert query.queryObject == new Document("userId", USER_ID).append("completed", new Document('$ne', true))
+            def set = update.updateObject.get('$set') as Document
+            assert set.get("completed") == true
+            assert set.get("version") instanceof Long
+            Mono.just(UpdateResult.acknowledged(4, 3, null))
+        }
+
+        then: "the user's marker moves after the write"
+        1 * mongoOperations.upsert({ Query query -> query.queryObject == new Document("_id", USER_ID) }, _ as Update,
+                MongoDbTodoRepository.USER_VERSIONS) >> Mono.just(UpdateResult.acknowledged(1, 1, null))
+        modified == 3
+    }
+
+    def "reopening todos that are filtered to completed=true still finds them"() {
+        given:
+        def ids = [UUID.randomUUID(), UUID.randomUUID()]
+
+        when:
+        def modified = repository.updateCompleted(new TodoFilter(ids, null, true), false).block()
+
+        then: "the owners are looked up before the write"
+        1 * mongoOperations.findDistinct({ Query query -> query.queryObject == new Document("_id", new Document('$in', ids)) },
+                "userId", TodoDocument.COLLECTION, Object) >> Flux.just(USER_ID)
+
+        then:
+        1 * mongoOperations.updateMulti({ Query query ->
+            query.queryObject == new Document("_id", new Document('$in', ids)).append("completed", new Document('$ne', false))
+        }, _ as Update, TodoDocument.COLLECTION) >> Mono.just(UpdateResult.acknowledged(2, 2, null))
+
+        then:
+        1 * mongoOperations.upsert(_ as Query, _ as Update, MongoDbTodoRepository.USER_VERSIONS) >> Mono.just(UpdateResult.acknowledged(1, 1, null))
+        modified == 2
+    }
+
+    def "asking for a state the filter already excludes changes nothing"() {
+        when:
+        def modified = repository.updateCompleted(TodoFilter.byUser(USER_ID, true), true).block()
+
+        then:
+        0 * mongoOperations._
+        modified == 0
+    }
+
+    def "bulk delete is a single deleteMany"() {
+        when:
+        def deleted = repository.deleteMatching(TodoFilter.byUser(USER_ID, true)).block()
+
+        then:
+        1 * mongoOperations.remove({ Query query ->
+            query.queryObject == new Document("userId", USER_ID).append("completed", true)
+        }, TodoDocument.COLLECTION) >> Mono.just(DeleteResult.acknowledged(5))
+        1 * mongoOperations.upsert(_ as Query, _ as Update, MongoDbTodoRepository.USER_VERSIONS) >> Mono.just(UpdateResult.acknowledged(1, 1, null))
+        deleted == 5
+    }
+
+    def "string-keyed todos are matched too while the UUID migration runs"() {
+        given:
+        def migrating = new MongoDbTodoRepository(Stub(SpringDataMongoTodoRepository), mongoOperations,
+                Stub(UuidMigration) { isComplete() >> false }, reads, ObservationRegistry.NOOP)
+
+        when:
+        migrating.deleteMatching(TodoFilter.byUser(USER_ID, null)).block()
+
+        then:
+        1 * mongoOperations.remove({ Query query ->
+            query.queryObject == new Document("userId", new Document('$in', [USER_ID, USER_ID.toString()]))
+        }, TodoDocument.COLLECTION) >> Mono.just(DeleteResult.acknowledged(1))
+        1 * mongoOperations.upsert(_ as Query, _ as Update, MongoDbTodoRepository.USER_VERSIONS) >> Mono.just(UpdateResult.acknowledged(1, 1, null))
+    }
+
+    def "the user version is read from the marker, and is zero for a user never written since markers began"() {
+        when:
+        def versions = [repository.userVersion(USER_ID).block(), repository.userVersion(USER_ID).block()]
+
+        then:
+        2 * mongoOperations.findById(USER_ID, Document, MongoDbTodoRepository.USER_VERSIONS) >>> [
+                Mono.just(new Document("_id", USER_ID).append("version", 42L)),
+                Mono.empty()]
+        versions == [42L, 0L]
+    }
+
+    def "there is no user version while the UUID migration runs"() {
+        given:
+        def migrating = new MongoDbTodoRepository(Stub(SpringDataMongoTodoRepository), mongoOperations,
+                Stub(UuidMigration) { isComplete() >> false }, reads, ObservationRegistry.NOOP)
+
+        expect:
+        migrating.userVersion(USER_ID).blockOptional().isEmpty()
+    }
+
+    def "deleting a todo by id moves its owner's marker"() {
+        given:
+        def id = UUID.randomUUID()
+
+        when:
+        repository.deleteById(id).block()
+
+        then:
+        1 * mongoOperations.findAndRemove({ Query query -> query.queryObject == new Document("_id", id) }, TodoDocument) >>
+                Mono.just(new TodoDocument().setId(id).setUserId(USER_ID))
+        1 * mongoOperations.upsert({ Query query -> query.queryObject == new Document("_id", USER_ID) }, _ as Update,
+                MongoDbTodoRepository.USER_VERSIONS) >> Mono.just(UpdateResult.acknowledged(0, 0, null))
+    }
+
+    def "moving a todo to another user moves both users' markers"() {
+        given:
+        def otherUser = UUID.randomUUID()
+        def todo = new Todo(UUID.randomUUID(), "Moving", null, false, otherUser)
+
+        when:
+        repository.save(todo).block()
+
+        then:
+        1 * mongoOperations.findAndReplace({ Query query -> query.queryObject == new Document("_id", todo.id) }, _ as TodoDocument,
+                _ as FindAndReplaceOptions) >> Mono.just(new TodoDocument().setId(todo.id).setUserId(USER_ID))
+        1 * mongoOperations.bulkOps(_, MongoDbTodoRepository.USER_VERSIONS) >> Mock(ReactiveBulkOperations) {
+            2 * upsert({ Query query -> query.queryObject.get("_id") in [USER_ID, otherUser] }, _ as Update) >> it
+            1 * execute() >> Mono.just(BulkWriteResult.unacknowledged())
+        }
+    }
+
+    def "saving for an owner only replaces a todo that user owns"() {
+        given:
+        def todo = new Todo(UUID.randomUUID(), "Mine", null, false, USER_ID)
+
+        when:
+        def saved = repository.saveForOwner(todo).block()
+
+        then:
+        1 * mongoOperations.findAndReplace({ Query query ->
+            query.queryObject == new Document("_id", todo.id).append("userId", USER_ID)
+        }, _ as TodoDocument, _ as FindAndReplaceOptions) >> Mono.empty()
+        1 * mongoOperations.upsert({ Query query -> query.queryObject == new Document("_id", USER_ID) }, _ as Update,
+                MongoDbTodoRepository.USER_VERSIONS) >> Mono.just(UpdateResult.acknowledged(0, 0, null))
+        saved.id == todo.id
+    }
+
+    def "saving for an owner over another user's todo is rejected and touches no marker"() {
+        given:
+        def todo = new Todo(UUID.randomUUID(), "Theirs", null, false, USER_ID)
+
+        when:
+        repository.saveForOwner(todo).block()
+
+        then:
+        1 * mongoOperations.findAndReplace(_ as Query, _ as TodoDocument, _ as FindAndReplaceOptions) >>
+                Mono.error(new DuplicateKeyException("E11000 duplicate key error"))
+        0 * mongoOperations.upsert(*_)
+        thrown(TodoOwnershipException)
+    }
+}
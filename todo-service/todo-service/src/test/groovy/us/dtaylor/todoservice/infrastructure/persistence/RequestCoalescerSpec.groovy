@@ -0,0 +1,121 @@
+package us.dtaylor.todoservice.infrastructure.persistence
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import reactor.core.publisher.Mono
+import reactor.core.publisher.Sinks
+import reactor.test.scheduler.VirtualTimeScheduler
+import spock.lang.Specification
+import us.dtaylor.todoservice.domain.Todo
+import us.dtaylor.todoservice.infastructure.persistence.RequestCoalescer
+
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicInteger
+
+class RequestCoalescerSpec extends Specification {
+
+    static final UUID ID = UUID.randomUUID()
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    VirtualTimeScheduler scheduler = VirtualTimeScheduler.create()
+    AtomicInteger loads = new AtomicInteger()
+    Sinks.One<Todo> result = Sinks.one()
+
+    RequestCoalescer<UUID, Todo> coalescer(Duration ttl = Duration.ZERO) {
+        new RequestCoalescer<UUID, Todo>("todos", ttl, { Todo todo -> new Todo(todo.id, todo.title, todo.description, todo.completed, todo.userId) },
+                meterRegistry, scheduler)
+    }
+
+    Mono<Todo> load(UUID id) {
+        Mono.defer {
+            loads.incrementAndGet()
+            result.asMono()
+        }
+    }
+
+    static Todo todo() {
+        new Todo(ID, "Test", "Test", false, UUID.randomUUID())
+    }
+
+    def "concurrent lookups of the same id share one query and get their own copies"() {
+        given:
+        def coalescer = coalescer()
+        def received = []
+
+        when:
+        3.times { coalescer.get(ID, this::load).subscribe { received << it } }
+        result.tryEmitValue(todo())
+
+        then:
+        loads.get() == 1
+        received.size() == 3
+        received.toSet().size() == 1
+        received.collect { System.identityHashCode(it) }.toSet().size() == 3
+        meterRegistry.get("repository.reads.coalesced").counter().count() == 2
+
+        and: "without a TTL the next lookup queries again"
+        coalescer.size() == 0
+    }
+
+    def "lookups of different ids are not coalesced"() {
+        given:
+        def coalescer = coalescer()
+
+        when:
+        coalescer.get(ID, this::load).subscribe()
+        coalescer.get(UUID.randomUUID(), this::load).subscribe()
+
+        then:
+        loads.get() == 2
+    }
+
+    def "with a TTL the result is reused until it expires"() {
+        given:
+        def coalescer = coalescer(Duration.ofMillis(50))
+        result.tryEmitValue(todo())
+
+        when:
+        coalescer.get(ID, this::load).block()
+        coalescer.get(ID, this::load).block()
+
+        then:
+        loads.get() == 1
+
+        when:
+        scheduler.advanceTimeBy(Duration.ofMillis(50))
+        coalescer.get(ID, this::load).block()
+
+        then:
+        loads.get() == 2
+    }
+
+    def "errors are not kept"() {
+        given:
+        def coalescer = coalescer(Duration.ofMillis(50))
+        def attempts = 0
+        def failingOnce = { UUID id ->
+            Mono.defer { ++attempts == 1 ? Mono.error(new IllegalStateException("boom")) : Mono.just(todo()) }
+        }
+
+        when:
+        coalescer.get(ID, failingOnce).onErrorResume { Mono.empty() }.block()
+        def retried = coalescer.get(ID, failingOnce).block()
+
+        then:
+        retried.id == ID
+        attempts == 2
+    }
+
+    def "invalidation makes the next lookup query again"() {
+        given:
+        def coalescer = coalescer(Duration.ofSeconds(10))
+        result.tryEmitValue(todo())
+        coalescer.get(ID, this::load).block()
+
+        when:
+        coalescer.invalidate(ID)
+        coalescer.get(ID, this::load).block()
+
+        then:
+        loads.get() == 2
+    }
+}
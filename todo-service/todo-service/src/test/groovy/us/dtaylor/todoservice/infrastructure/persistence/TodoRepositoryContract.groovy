@@ -0,0 +1,245 @@
+package us.dtaylor.todoservice.infrastructure.persistence
+
+import reactor.test.StepVerifier
+import spock.lang.Specification
+import us.dtaylor.todoservice.domain.Todo
+import us.dtaylor.todoservice.domain.TodoField
+import us.dtaylor.todoservice.domain.TodoFilter
+import us.dtaylor.todoservice.domain.exceptions.TodoOwnershipException
+import us.dtaylor.todoservice.domain.repository.TodoRepository
+
+/**
+ * Behaviour every {@link TodoRepository} adapter must share. Adapter specs extend this and
+ * supply a fresh, empty repository.
+ */
+abstract class TodoRepositoryContract extends Specification {
+
+    static final UUID USER_ID = UUID.randomUUID()
+    static final UUID OTHER_USER_ID = UUID.randomUUID()
+
+    TodoRepository repository
+
+    abstract TodoRepository createRepository()
+
+    def setup() {
+        repository = createRepository()
+        repository.deleteAll().block()
+    }
+
+    static Todo todo(String title, UUID userId = USER_ID, UUID id = UUID.randomUUID()) {
+        return new Todo(id, title, "Description for $title", false, userId)
+    }
+
+    def "save returns the stored todo and findById reads it back"() {
+        given:
+        def todo = todo("first")
+
+        expect:
+        StepVerifier.create(repository.save(todo))
+                .expectNext(todo)
+                .verifyComplete()
+        StepVerifier.create(repository.findById(todo.id))
+                .expectNext(todo)
+                .verifyComplete()
+    }
+
+    def "save assigns an id when none is given"() {
+        expect:
+        StepVerifier.create(repository.save(todo("no id", USER_ID, null)))
+                .expectNextMatches { it.id != null && it.title == "no id" }
+                .verifyComplete()
+    }
+
+    def "findById completes empty for an unknown id"() {
+        expect:
+        StepVerifier.create(repository.findById(UUID.randomUUID()))
+                .verifyComplete()
+    }
+
+    def "save overwrites an existing todo"() {
+        given:
+        def todo = todo("before")
+        repository.save(todo).block()
+
+        when:
+        repository.save(todo.setTitle("after").setCompleted(true)).block()
+
+        then:
+        with(repository.findById(todo.id).block()) {
+            title == "after"
+            completed
+        }
+        repository.findAll().collectList().block().size() == 1
+    }
+
+    def "reading with a field selection still returns the selected fields of the matching todos"() {
+        given:
+        def mine = todo("mine").setCompleted(true)
+        repository.saveAll([mine, todo("theirs", OTHER_USER_ID)]).blockLast()
+        def fields = EnumSet.of(TodoField.ID, TodoField.TITLE, TodoField.COMPLETED)
+
+        expect:
+        with(repository.findAllByUserId(USER_ID, fields).collectList().block()) {
+            size() == 1
+            first().id == mine.id
+            first().title == "mine"
+            first().completed
+        }
+        repository.findAll(fields).collectList().block()*.title as Set == ["mine", "theirs"] as Set
+    }
+
+    def "saveAll stores every todo and returns them in order"() {
+        given:
+        def todos = [todo("one"), todo("two"), todo("three", OTHER_USER_ID)]
+
+        expect:
+        repository.saveAll(todos).collectList().block() == todos
+        repository.findAll().collectList().block() as Set == todos as Set
+        repository.findAllByUserId(OTHER_USER_ID).collectList().block() == [todos[2]]
+    }
+
+    def "returned todos are detached from the store"() {
+        given:
+        def todo = todo("detached")
+        repository.save(todo).block()
+
+        when:
+        repository.findById(todo.id).block().setTitle("changed")
+        todo.setTitle("changed too")
+
+        then:
+        repository.findById(todo.id).block().title == "detached"
+    }
+
+    def "findAllByUserId returns only that user's todos"() {
+        given:
+        def mine = [todo("one"), todo("two")]
+        def theirs = todo("three", OTHER_USER_ID)
+        (mine + theirs).each { repository.save(it).block() }
+
+        expect:
+        repository.findAllByUserId(USER_ID).collectList().block() as Set == mine as Set
+        repository.findAllByUserId(OTHER_USER_ID).collectList().block() == [theirs]
+        repository.findAllByUserId(UUID.randomUUID()).collectList().block().isEmpty()
+    }
+
+    def "moving a todo to another user updates findAllByUserId"() {
+        given:
+        def todo = todo("moving")
+        repository.save(todo).block()
+
+        when:
+        repository.save(todo.setUserId(OTHER_USER_ID)).block()
+
+        then:
+        repository.findAllByUserId(USER_ID).collectList().block().isEmpty()
+        repository.findAllByUserId(OTHER_USER_ID).collectList().block()*.id == [todo.id]
+    }
+
+    def "saveForOwner overwrites the user's own todo"() {
+        given:
+        def todo = todo("before")
+        repository.saveForOwner(todo).block()
+
+        when:
+        repository.saveForOwner(todo.setTitle("after")).block()
+
+        then:
+        repository.findById(todo.id).block().title == "after"
+    }
+
+    def "saveForOwner rejects an id stored under another user and leaves that todo alone"() {
+        given:
+        def theirs = todo("theirs", OTHER_USER_ID)
+        repository.save(theirs).block()
+
+        expect:
+        StepVerifier.create(repository.saveForOwner(todo("mine", USER_ID, theirs.id)))
+                .expectError(TodoOwnershipException)
+                .verify()
+        repository.findById(theirs.id).block() == theirs
+        repository.findAllByUserId(USER_ID).collectList().block().isEmpty()
+    }
+
+    def "deleteById removes the todo from every lookup"() {
+        given:
+        def todo = todo("doomed")
+        repository.save(todo).block()
+
+        when:
+        repository.deleteById(todo.id).block()
+
+        then:
+        repository.findById(todo.id).block() == null
+        repository.findAllByUserId(USER_ID).collectList().block().isEmpty()
+        repository.findAll().collectList().block().isEmpty()
+    }
+
+    def "deleteAllByUserId deletes the user's todos a chunk at a time"() {
+        given:
+        def mine = (1..5).collect { todo("mine $it") }
+        def theirs = todo("theirs", OTHER_USER_ID)
+        (mine + theirs).each { repository.save(it).block() }
+
+        expect:
+        repository.deleteAllByUserId(USER_ID, 2).block() == 2
+        repository.findAllByUserId(USER_ID).collectList().block().size() == 3
+        repository.deleteAllByUserId(USER_ID, 2).block() == 2
+        repository.deleteAllByUserId(USER_ID, 2).block() == 1
+        repository.deleteAllByUserId(USER_ID, 2).block() == 0
+        repository.findAllByUserId(USER_ID).collectList().block().isEmpty()
+        mine.every { repository.findById(it.id).block() == null }
+        repository.findAll().collectList().block() == [theirs]
+    }
+
+    def "updateCompleted changes only the todos the filter selects and counts them"() {
+        given:
+        def open = [todo("open 1"), todo("open 2")]
+        def done = todo("done").setCompleted(true)
+        def theirs = todo("theirs", OTHER_USER_ID)
+        (open + done + theirs).each { repository.save(it).block() }
+
+        expect:
+        repository.updateCompleted(TodoFilter.byUser(USER_ID, null), true).block() == 2
+        repository.findAllByUserId(USER_ID).collectList().block().every { it.completed }
+        !repository.findById(theirs.id).block().completed
+
+        and: "reopening by id leaves the other todos alone"
+        repository.updateCompleted(TodoFilter.byIds([open[0].id, theirs.id]), false).block() == 1
+        !repository.findById(open[0].id).block().completed
+        repository.findById(open[1].id).block().completed
+    }
+
+    def "deleteMatching deletes what the filter selects and counts it"() {
+        given:
+        def open = todo("open")
+        def done = [todo("done 1").setCompleted(true), todo("done 2").setCompleted(true)]
+        def theirs = todo("theirs", OTHER_USER_ID).setCompleted(true)
+        ([open] + done + theirs).each { repository.save(it).block() }
+
+        expect:
+        repository.deleteMatching(TodoFilter.byUser(USER_ID, true)).block() == 2
+        repository.findAllByUserId(USER_ID).collectList().block()*.id == [open.id]
+        repository.deleteMatching(TodoFilter.byIds([open.id, UUID.randomUUID()])).block() == 1
+        repository.findAll().collectList().block()*.id == [theirs.id]
+    }
+
+    def "deleteAll empties the repository"() {
+        given:
+        [todo("a"), todo("b", OTHER_USER_ID)].each { repository.save(it).block() }
+
+        when:
+        repository.deleteAll().block()
+
+        then:
+        repository.findAll().collectList().block().isEmpty()
+    }
+
+    def "nothing happens until subscription"() {
+        when:
+        repository.save(todo("lazy"))
+
+        then:
+        repository.findAll().collectList().block().isEmpty()
+    }
+}
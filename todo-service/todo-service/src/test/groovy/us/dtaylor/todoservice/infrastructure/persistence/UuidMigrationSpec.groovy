@@ -0,0 +1,129 @@
+package us.dtaylor.todoservice.infrastructure.persistence
+
+import com.mongodb.client.result.DeleteResult
+import org.bson.Document
+import org.springframework.dao.DuplicateKeyException
+import org.springframework.data.mongodb.core.ReactiveMongoOperations
+import org.springframework.data.mongodb.core.query.Query
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
+import spock.lang.Specification
+import us.dtaylor.todoservice.infastructure.persistence.UuidMigration
+
+import java.time.Duration
+
+class UuidMigrationSpec extends Specification {
+
+    static final String COLLECTION = "todoDocument"
+
+    ReactiveMongoOperations mongoOperations = Mock()
+
+    UuidMigration migration = new UuidMigration(mongoOperations, COLLECTION, ["userId"], 2, Duration.ZERO)
+
+    static Document legacy(UUID id = UUID.randomUUID(), UUID userId = UUID.randomUUID()) {
+        return new Document("_id", id.toString()).append("title", "Test").append("userId", userId.toString())
+    }
+
+    def "rewrites string ids and references as UUIDs in batches, then completes"() {
+        given:
+        def first = [legacy(), legacy()].sort { it._id }
+        def last = legacy()
+        def inserted = []
+
+        when:
+        def count = migration.migrate().block()
+
+        then:
+        3 * mongoOperations.find(_ as Query, Document, COLLECTION) >>> [Flux.fromIterable(first), Flux.just(last), Flux.empty()]
+        3 * mongoOperations.insert(_ as Document, COLLECTION) >> { Document document, String collection ->
+            inserted << document
+            Mono.just(document)
+        }
+        3 * mongoOperations.remove(_ as Query, COLLECTION) >> Mono.just(DeleteResult.acknowledged(1))
+
+        and:
+        count == 3
+        migration.isComplete()
+        inserted*._id == (first + last).collect { UUID.fromString(it._id) }
+        inserted.every { it.userId instanceof UUID && it.title == "Test" }
+    }
+
+    def "resumes each batch after the last id it saw"() {
+        given:
+        def documents = [legacy(), legacy()].sort { it._id }
+        def queries = []
+
+        when:
+        migration.migrate().block()
+
+        then:
+        2 * mongoOperations.find(_ as Query, Document, COLLECTION) >> { Query query, Class type, String collection ->
+            queries << query
+            queries.size() == 1 ? Flux.fromIterable(documents) : Flux.empty()
+        }
+        _ * mongoOperations.insert(_, COLLECTION) >> { Document document, String collection -> Mono.just(document) }
+        _ * mongoOperations.remove(_, COLLECTION) >> Mono.just(DeleteResult.acknowledged(1))
+
+        and:
+        queries[0].queryObject.toJson().contains('"$gt": ""')
+        queries[1].queryObject.toJson().contains(documents[1]._id)
+    }
+
+    def "keeps a newer binary-id version and only drops the stale original"() {
+        given:
+        def document = legacy()
+
+        when:
+        migration.migrate().block()
+
+        then:
+        2 * mongoOperations.find(_ as Query, Document, COLLECTION) >>> [Flux.just(document), Flux.empty()]
+        1 * mongoOperations.insert(_ as Document, COLLECTION) >> Mono.error(new DuplicateKeyException("exists"))
+        1 * mongoOperations.remove({ Query query -> query.queryObject._id == document._id }, COLLECTION) >> Mono.just(DeleteResult.acknowledged(1))
+        migration.isComplete()
+    }
+
+    def "does not resurrect a document deleted after it was read"() {
+        given:
+        def document = legacy()
+        Document inserted = null
+
+        when:
+        migration.migrate().block()
+
+        then:
+        2 * mongoOperations.find(_ as Query, Document, COLLECTION) >>> [Flux.just(document), Flux.empty()]
+        1 * mongoOperations.insert(_ as Document, COLLECTION) >> { Document copy, String collection ->
+            inserted = copy
+            Mono.just(copy)
+        }
+
+        and: "the original is already gone, so the copy goes too, unless rewritten since"
+        1 * mongoOperations.remove({ Query query -> query.queryObject._id == document._id }, COLLECTION) >> Mono.just(DeleteResult.acknowledged(0))
+        1 * mongoOperations.remove({ Query query ->
+            query.queryObject == new Document("_id", inserted._id).append("version", inserted.version)
+        }, COLLECTION) >> Mono.just(DeleteResult.acknowledged(1))
+        inserted.version instanceof Long
+        migration.isComplete()
+    }
+
+    def "leaves documents whose id is not a UUID alone"() {
+        when:
+        migration.migrate().block()
+
+        then:
+        2 * mongoOperations.find(_ as Query, Document, COLLECTION) >>> [Flux.just(new Document("_id", "not-a-uuid")), Flux.empty()]
+        0 * mongoOperations.insert(*_)
+        0 * mongoOperations.remove(*_)
+        migration.isComplete()
+    }
+
+    def "is not complete while string-keyed documents remain"() {
+        when:
+        migration.migrate().subscribe()
+
+        then:
+        1 * mongoOperations.find(_ as Query, Document, COLLECTION) >> Flux.never()
+        !migration.isComplete()
+    }
+}
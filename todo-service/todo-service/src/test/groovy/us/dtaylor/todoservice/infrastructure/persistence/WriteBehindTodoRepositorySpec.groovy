@@ -0,0 +1,254 @@
+package us.dtaylor.todoservice.infrastructure.persistence
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
+import spock.lang.TempDir
+import spock.util.concurrent.PollingConditions
+import us.dtaylor.todoservice.domain.Todo
+import us.dtaylor.todoservice.domain.exceptions.WriteBacklogException
+import us.dtaylor.todoservice.domain.repository.TodoRepository
+import us.dtaylor.todoservice.infastructure.persistence.repository.InMemoryTodoRepository
+import us.dtaylor.todoservice.infastructure.persistence.repository.WriteBehindTodoRepository
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.time.Duration
+
+class WriteBehindTodoRepositorySpec extends TodoRepositoryContract {
+
+    @TempDir
+    Path directory
+
+    InMemoryTodoRepository store = new InMemoryTodoRepository()
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    List<WriteBehindTodoRepository> opened = []
+
+    @Override
+    TodoRepository createRepository() {
+        return openRepository(store)
+    }
+
+    def cleanup() {
+        closeAll()
+    }
+
+    WriteBehindTodoRepository openRepository(TodoRepository delegate, int flushBatchSize = 100, int maxPending = 1000,
+                                             Duration flushTimeout = Duration.ofSeconds(5), int maxFlushAttempts = 3) {
+        def repository = new WriteBehindTodoRepository(delegate, new WriteBehindTodoRepository.Settings(
+                directory, 1 << 16, Duration.ofMillis(1), 64, Duration.ofHours(1), flushBatchSize, maxPending,
+                flushTimeout, maxFlushAttempts), meterRegistry)
+        repository.open()
+        opened << repository
+        return repository
+    }
+
+    void closeAll() {
+        opened.each { it.close() }
+        opened.clear()
+    }
+
+    def "a save is acknowledged before it reaches the delegate and flushed later"() {
+        given:
+        def todo = todo("queued")
+
+        when:
+        repository.save(todo).block()
+
+        then:
+        store.findById(todo.id).block() == null
+        repository.findById(todo.id).block() == todo
+        repository.findAllByUserId(USER_ID).collectList().block() == [todo]
+        meterRegistry.get("todo.write-behind.pending").gauge().value() == 1
+        meterRegistry.get("todo.write-behind.lag").gauge().value() > 0
+
+        when:
+        repository.flush()
+
+        then:
+        store.findById(todo.id).block() == todo
+        meterRegistry.get("todo.write-behind.pending").gauge().value() == 0
+        meterRegistry.get("todo.write-behind.lag").gauge().value() == 0
+    }
+
+    def "a full batch is flushed without waiting for the interval"() {
+        given:
+        closeAll()
+        def repository = openRepository(store, 3)
+
+        when:
+        3.times { repository.save(todo("todo $it")).block() }
+
+        then:
+        new PollingConditions(timeout: 5).eventually {
+            assert store.findAll().collectList().block().size() == 3
+        }
+    }
+
+    def "queued saves of the same todo are flushed as its latest version"() {
+        given:
+        def delegate = Spy(InMemoryTodoRepository)
+        closeAll()
+        def repository = openRepository(delegate)
+        def todo = todo("first")
+        repository.save(todo).block()
+        repository.save(todo.setTitle("second")).block()
+
+        when:
+        repository.flush()
+
+        then:
+        1 * delegate.saveAll({ it*.title == ["second"] })
+        delegate.findById(todo.id).block().title == "second"
+    }
+
+    def "a delete waits for earlier saves so they cannot resurrect the todo"() {
+        given:
+        def todo = todo("short lived")
+        repository.save(todo).block()
+
+        when:
+        repository.deleteById(todo.id).block()
+        ((WriteBehindTodoRepository) repository).flush()
+
+        then:
+        store.findById(todo.id).block() == null
+        repository.findById(todo.id).block() == null
+    }
+
+    def "unflushed saves are replayed on the next start"() {
+        given:
+        def failing = Stub(TodoRepository) {
+            saveAll(_) >> Flux.error(new IllegalStateException("mongo down"))
+        }
+        closeAll()
+        def repository = openRepository(failing)
+        def todos = [todo("one"), todo("two")]
+        todos.each { repository.save(it).block() }
+        closeAll()
+
+        when:
+        openRepository(store)
+
+        then:
+        new PollingConditions(timeout: 5).eventually {
+            assert store.findAll().collectList().block() as Set == todos as Set
+        }
+        meterRegistry.get("todo.write-behind.flush.failures").counter().count() >= 1
+    }
+
+    def "flushed saves are not replayed and their segments are removed"() {
+        given:
+        def delegate = Spy(InMemoryTodoRepository)
+        closeAll()
+        def repository = openRepository(delegate)
+        200.times { repository.save(todo("todo $it")).block() }
+        repository.flush()
+        closeAll()
+
+        when:
+        openRepository(delegate)
+
+        then:
+        0 * delegate.saveAll(_)
+        Files.list(directory).withCloseable { files -> files.filter { it.fileName.toString().endsWith(".log") }.count() } == 1
+    }
+
+    def "a save waits for room once the delegate is too far behind"() {
+        given:
+        closeAll()
+        def repository = openRepository(store, 100, 1)
+        def first = todo("queued")
+        def second = todo("back-pressured")
+        repository.save(first).block()
+
+        when:
+        def saved = repository.save(second).toFuture()
+
+        then:
+        !saved.isDone()
+        Files.size(directory.resolve("00000000000000000001.log")) > 0
+
+        when:
+        repository.flush()
+
+        then:
+        saved.get() == second
+        store.findById(first.id).block() == first
+        repository.findById(second.id).block() == second
+    }
+
+    def "a save that finds no room within the flush timeout is rejected without being logged"() {
+        given:
+        def failing = Stub(TodoRepository) {
+            saveAll(_) >> Flux.error(new IllegalStateException("mongo down"))
+            findById(_) >> Mono.empty()
+        }
+        closeAll()
+        def repository = openRepository(failing, 100, 1, Duration.ofMillis(200))
+        repository.save(todo("queued")).block()
+        def rejected = todo("rejected")
+
+        when:
+        repository.save(rejected).block()
+
+        then:
+        thrown(WriteBacklogException)
+        repository.findById(rejected.id).block() == null
+
+        when: "the queue is replayed into a working delegate"
+        closeAll()
+        openRepository(store)
+
+        then:
+        new PollingConditions(timeout: 5).eventually {
+            assert store.findAll().collectList().block()*.title == ["queued"]
+        }
+    }
+
+    def "a todo the delegate keeps refusing is parked so the todos behind it are flushed"() {
+        given:
+        def poison = todo("poison")
+        def delegate = Spy(InMemoryTodoRepository) {
+            saveAll({ it*.id.contains(poison.id) }) >> Flux.error(new IllegalArgumentException("document too large"))
+        }
+        closeAll()
+        def repository = openRepository(delegate)
+        def others = [todo("one"), todo("two")]
+        ([poison] + others).each { repository.save(it).block() }
+
+        when:
+        3.times { repository.flush() }
+
+        then:
+        delegate.findAll().collectList().block() as Set == others as Set
+        repository.findById(poison.id).block() == null
+        meterRegistry.get("todo.write-behind.parked").counter().count() == 1
+        Files.list(directory.resolve("parked")).withCloseable { it.count() } == 1
+
+        when: "parked todos are not replayed"
+        closeAll()
+        openRepository(delegate)
+
+        then:
+        0 * delegate.saveAll(_)
+    }
+
+    def "nothing is parked while the delegate refuses every todo"() {
+        given:
+        def failing = Mock(TodoRepository)
+        closeAll()
+        def repository = openRepository(failing)
+        def todos = [todo("one"), todo("two"), todo("three")]
+        todos.each { repository.save(it).block() }
+
+        when:
+        3.times { repository.flush() }
+
+        then:
+        5 * failing.saveAll(_) >> Flux.error(new IllegalStateException("mongo down"))
+        todos.every { repository.findById(it.id).block() == it }
+        meterRegistry.find("todo.write-behind.parked").counter().count() == 0
+        !Files.exists(directory.resolve("parked"))
+    }
+}
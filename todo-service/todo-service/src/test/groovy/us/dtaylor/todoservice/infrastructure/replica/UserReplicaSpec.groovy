@@ -0,0 +1,192 @@
+package us.dtaylor.todoservice.infrastructure.replica
+
+import spock.lang.Specification
+import spock.lang.TempDir
+import us.dtaylor.todoservice.domain.User
+import us.dtaylor.todoservice.infastructure.replica.UserEvent
+import us.dtaylor.todoservice.infastructure.replica.UserReplica
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.time.Duration
+
+class UserReplicaSpec extends Specification {
+
+    @TempDir
+    Path directory
+
+    List<UserReplica> opened = []
+
+    def cleanup() {
+        opened.each { it.close() }
+    }
+
+    long now = 1_000_000
+
+    UserReplica openReplica(String topic = "user-events") {
+        def replica = new UserReplica(new UserReplica.Settings(topic, directory.resolve("users.snapshot"), Duration.ofHours(1),
+                Duration.ofMinutes(10)), { now })
+        replica.open()
+        opened << replica
+        return replica
+    }
+
+    static UserEvent event(UserEvent.Type type, UUID id, String name = "Test") {
+        new UserEvent(type, id, name, name == null ? null : "${name.toLowerCase()}@email.com")
+    }
+
+    def "applies created, updated and deleted events"() {
+        given:
+        def replica = openReplica()
+        def kept = UUID.randomUUID()
+        def deleted = UUID.randomUUID()
+
+        when:
+        replica.apply(event(UserEvent.Type.CREATED, kept), 0, 0)
+        replica.apply(event(UserEvent.Type.CREATED, deleted), 1, 0)
+        replica.apply(event(UserEvent.Type.UPDATED, kept, "Renamed"), 0, 1)
+        replica.apply(event(UserEvent.Type.DELETED, deleted, null), 1, 1)
+
+        then:
+        replica.get(kept).name == "Renamed"
+        replica.get(kept).email == "renamed@email.com"
+        replica.get(deleted) == null
+        replica.size() == 1
+        replica.offset(0) == 1
+        replica.offset(1) == 1
+        replica.offset(2) == null
+    }
+
+    def "ignores events at or before the applied offset"() {
+        given:
+        def replica = openReplica()
+        def id = UUID.randomUUID()
+        replica.apply(event(UserEvent.Type.CREATED, id, "Current"), 0, 5)
+
+        when:
+        replica.apply(event(UserEvent.Type.UPDATED, id, "Stale"), 0, 4)
+        replica.apply(event(UserEvent.Type.DELETED, id, null), 0, 5)
+
+        then:
+        replica.get(id).name == "Current"
+    }
+
+    def "a malformed event still advances the offset"() {
+        given:
+        def replica = openReplica()
+
+        when:
+        replica.apply(null, 0, 7)
+
+        then:
+        replica.size() == 0
+        replica.offset(0) == 7
+    }
+
+    def "restores users and offsets from the snapshot"() {
+        given:
+        def replica = openReplica()
+        def id = UUID.randomUUID()
+        def unnamed = UUID.randomUUID()
+        replica.apply(event(UserEvent.Type.CREATED, id), 0, 3)
+        replica.apply(new UserEvent(UserEvent.Type.CREATED, unnamed, null, null), 2, 9)
+
+        when:
+        replica.close()
+        opened.clear()
+        def restored = openReplica()
+
+        then:
+        restored.size() == 2
+        restored.get(id).name == "Test"
+        restored.get(id).email == "test@email.com"
+        restored.get(unnamed).name == null
+        restored.offset(0) == 3
+        restored.offset(2) == 9
+    }
+
+    def "a user goes stale when nothing has confirmed it for longer than the maximum age"() {
+        given:
+        def replica = openReplica()
+        def id = UUID.randomUUID()
+        replica.apply(event(UserEvent.Type.CREATED, id), 0, 0)
+
+        expect:
+        !replica.isStale(id)
+        replica.isStale(UUID.randomUUID())
+
+        when:
+        now += Duration.ofMinutes(11).toMillis()
+
+        then:
+        replica.isStale(id)
+
+        when:
+        replica.confirm(new User(id, "Confirmed", "confirmed@email.com"))
+
+        then:
+        !replica.isStale(id)
+        replica.get(id).name == "Confirmed"
+    }
+
+    def "confirming a user deleted meanwhile does not add it back, and evicting drops it"() {
+        given:
+        def replica = openReplica()
+        def deleted = UUID.randomUUID()
+        def evicted = UUID.randomUUID()
+        replica.apply(event(UserEvent.Type.CREATED, evicted), 0, 0)
+
+        when:
+        replica.confirm(new User(deleted, "Deleted", "deleted@email.com"))
+        replica.evict(evicted)
+
+        then:
+        replica.get(deleted) == null
+        replica.get(evicted) == null
+        replica.size() == 0
+    }
+
+    def "the snapshot keeps when each user was confirmed"() {
+        given:
+        def replica = openReplica()
+        def id = UUID.randomUUID()
+        replica.apply(event(UserEvent.Type.CREATED, id), 0, 0)
+
+        when:
+        replica.close()
+        opened.clear()
+        now += Duration.ofMinutes(11).toMillis()
+        def restored = openReplica()
+
+        then:
+        restored.get(id).name == "Test"
+        restored.isStale(id)
+    }
+
+    def "a snapshot of another topic is not restored"() {
+        given:
+        def replica = openReplica("old-user-events")
+        replica.apply(event(UserEvent.Type.CREATED, UUID.randomUUID()), 0, 3)
+        replica.close()
+        opened.clear()
+
+        when:
+        def restored = openReplica()
+
+        then:
+        restored.size() == 0
+        restored.offset(0) == null
+    }
+
+    def "a corrupt snapshot means a full replay"() {
+        given:
+        Files.write(directory.resolve("users.snapshot"), [1, 2, 3] as byte[])
+
+        when:
+        def replica = openReplica()
+
+        then:
+        replica.size() == 0
+        replica.offset(0) == null
+    }
+}
@@ -6,7 +6,7 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Profile;
 import us.dtaylor.userservice.domain.User;
-import us.dtaylor.userservice.infastructure.persistence.repository.MongoDbUserRepository;
+import us.dtaylor.userservice.domain.repository.UserRepository;
 
 import java.util.UUID;
 
@@ -19,12 +19,12 @@ public class UserApplication {
 
     @Bean
     @Profile("db-seed")
-    public CommandLineRunner databaseSeeder(MongoDbUserRepository mongoDbUserRepository) {
+    public CommandLineRunner databaseSeeder(UserRepository userRepository) {
         return args -> {
             // Check if the database is empty
-                mongoDbUserRepository.deleteAll().block();
+                userRepository.deleteAll().block();
                 // Seed the database
-                mongoDbUserRepository.save(new User(UUID.randomUUID(), "admin", "admin@todo-app.com")).block();
+                userRepository.save(new User(UUID.randomUUID(), "admin", "admin@todo-app.com")).block();
         };
     }
 }
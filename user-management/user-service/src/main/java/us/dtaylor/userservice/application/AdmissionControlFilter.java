@@ -0,0 +1,196 @@
+package us.dtaylor.userservice.application;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Sheds load before it reaches the handlers. Requests are classed as point reads, list scans or
+ * writes, then admitted in two steps:
+ * <ol>
+ *     <li>A global in-flight cap. Past {@code maxInFlight} everything is refused with 503; list
+ *     scans are refused once {@code scanAdmissionRatio} of the cap is in use, which keeps the
+ *     remaining headroom for cheap reads and writes.</li>
+ *     <li>A token bucket per client: the authenticated principal if there is one, otherwise
+ *     the client address. An empty bucket answers 429 with a {@code Retry-After}. A scan costs
+ *     {@code scanCost} tokens, anything else one.</li>
+ * </ol>
+ * Buckets of principals idle for {@code idleExpiry} are dropped.
+ *
+ * <p>Other services call without a principal, so by address every caller behind one service
+ * would share a bucket sized for a single client. A request naming one of the configured
+ * {@code serviceCallers} in the {@value #SERVICE_HEADER} header instead gets that service's own
+ * bucket, at {@code serviceRatePerSecond} and {@code serviceBurst}. Like the address, the header
+ * is trusted as the network delivers it; claiming a service only moves a caller into that
+ * service's bucket, and any other name is ignored, so it cannot be used to mint fresh buckets.
+ */
+public class AdmissionControlFilter implements WebFilter, Ordered {
+
+    /** Runs after any security filter chain, so an authenticated principal is known. */
+    public static final int ORDER = 0;
+
+    /** Names the calling service. */
+    public static final String SERVICE_HEADER = "X-Service-Name";
+
+    enum RequestClass {
+        READ, SCAN, WRITE
+    }
+
+    private final Settings settings;
+    private final LongSupplier nanoTime;
+    private final List<PathPattern> scanPaths;
+    private final List<PathPattern> exemptPaths;
+    private final Cache<String, TokenBucket> buckets;
+    private final Map<String, TokenBucket> serviceBuckets;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final int scanLimit;
+    private final MeterRegistry meterRegistry;
+
+    public AdmissionControlFilter(Settings settings, MeterRegistry meterRegistry) {
+        this(settings, meterRegistry, System::nanoTime);
+    }
+
+    AdmissionControlFilter(Settings settings, MeterRegistry meterRegistry, LongSupplier nanoTime) {
+        this.settings = settings;
+        this.nanoTime = nanoTime;
+        this.meterRegistry = meterRegistry;
+        this.scanPaths = settings.scanPaths().stream().map(PathPatternParser.defaultInstance::parse).toList();
+        this.exemptPaths = settings.exemptPaths().stream().map(PathPatternParser.defaultInstance::parse).toList();
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(settings.maxPrincipals())
+                .expireAfterAccess(settings.idleExpiry())
+                .build();
+        this.serviceBuckets = settings.serviceCallers().stream()
+                .collect(Collectors.toUnmodifiableMap(Function.identity(),
+                        service -> new TokenBucket(settings.serviceRatePerSecond(), settings.serviceBurst(), nanoTime.getAsLong()),
+                        (first, second) -> first));
+        this.scanLimit = Math.max(1, (int) (settings.maxInFlight() * settings.scanAdmissionRatio()));
+        Gauge.builder("http.server.admission.in-flight", inFlight, AtomicInteger::get).register(meterRegistry);
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        ServerHttpRequest request = exchange.getRequest();
+        PathContainer path = request.getPath().pathWithinApplication();
+        if (matches(exemptPaths, path)) {
+            return chain.filter(exchange);
+        }
+        RequestClass requestClass = classify(request.getMethod(), path);
+        int admitted = inFlight.incrementAndGet();
+        if (admitted > (requestClass == RequestClass.SCAN ? scanLimit : settings.maxInFlight())) {
+            inFlight.decrementAndGet();
+            return reject(exchange, HttpStatus.SERVICE_UNAVAILABLE, requestClass, 1);
+        }
+        return bucket(exchange)
+                .flatMap(bucket -> {
+                    long waitNanos = bucket.tryAcquire(cost(requestClass), nanoTime.getAsLong());
+                    if (waitNanos > 0) {
+                        inFlight.decrementAndGet();
+                        return reject(exchange, HttpStatus.TOO_MANY_REQUESTS, requestClass,
+                                Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999)));
+                    }
+                    return chain.filter(exchange).doFinally(signal -> inFlight.decrementAndGet());
+                });
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    RequestClass classify(HttpMethod method, PathContainer path) {
+        if (!HttpMethod.GET.equals(method) && !HttpMethod.HEAD.equals(method)) {
+            return RequestClass.WRITE;
+        }
+        return matches(scanPaths, path) ? RequestClass.SCAN : RequestClass.READ;
+    }
+
+    private Mono<TokenBucket> bucket(ServerWebExchange exchange) {
+        String service = exchange.getRequest().getHeaders().getFirst(SERVICE_HEADER);
+        TokenBucket serviceBucket = service == null ? null : serviceBuckets.get(service);
+        if (serviceBucket != null) {
+            return Mono.just(serviceBucket);
+        }
+        return exchange.getPrincipal()
+                .map(Principal::getName)
+                .defaultIfEmpty(clientAddress(exchange.getRequest()))
+                .map(this::bucket);
+    }
+
+    private TokenBucket bucket(String principal) {
+        return buckets.get(principal, key -> new TokenBucket(settings.ratePerSecond(), settings.burst(), nanoTime.getAsLong()));
+    }
+
+    private double cost(RequestClass requestClass) {
+        return requestClass == RequestClass.SCAN ? settings.scanCost() : 1;
+    }
+
+    private Mono<Void> reject(ServerWebExchange exchange, HttpStatus status, RequestClass requestClass, long retryAfterSeconds) {
+        Counter.builder("http.server.admission.rejected")
+                .description("Requests shed by admission control")
+                .tag("reason", status == HttpStatus.TOO_MANY_REQUESTS ? "rate-limited" : "overloaded")
+                .tag("class", requestClass.name().toLowerCase())
+                .register(meterRegistry)
+                .increment();
+        exchange.getResponse().setStatusCode(status);
+        exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        return exchange.getResponse().setComplete();
+    }
+
+    private static boolean matches(List<PathPattern> patterns, PathContainer path) {
+        for (PathPattern pattern : patterns) {
+            if (pattern.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String clientAddress(ServerHttpRequest request) {
+        InetSocketAddress address = request.getRemoteAddress();
+        return address == null || address.getAddress() == null ? "anonymous" : address.getAddress().getHostAddress();
+    }
+
+    public record Settings(int maxInFlight,
+                           double scanAdmissionRatio,
+                           double ratePerSecond,
+                           double burst,
+                           double scanCost,
+                           List<String> scanPaths,
+                           List<String> exemptPaths,
+                           long maxPrincipals,
+                           Duration idleExpiry,
+                           List<String> serviceCallers,
+                           double serviceRatePerSecond,
+                           double serviceBurst) {
+    }
+}
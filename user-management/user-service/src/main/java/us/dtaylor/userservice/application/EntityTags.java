@@ -0,0 +1,50 @@
+package us.dtaylor.userservice.application;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+
+import java.util.Set;
+
+/**
+ * Builds the tagged 200 responses of the read endpoints. Spring answers a GET whose
+ * {@code If-None-Match} matches the tag with a bodiless 304 instead.
+ */
+final class EntityTags {
+
+    private EntityTags() {
+    }
+
+    /**
+     * A 200 response tagged with {@code version}, or untagged when it is {@code null}. A strong
+     * ETag has to differ between the JSON, Smile and CBOR representations, so the tag also covers
+     * the {@code Accept} header that selects one. {@code no-cache} lets clients keep the response
+     * as long as they revalidate it.
+     */
+    static ResponseEntity.BodyBuilder ok(String version, ServerHttpRequest request) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (version != null) {
+            String accept = String.join(",", request.getHeaders().getOrEmpty(HttpHeaders.ACCEPT));
+            response.eTag(version + "-" + Integer.toHexString(accept.hashCode()))
+                    .varyBy(HttpHeaders.ACCEPT)
+                    .cacheControl(CacheControl.noCache());
+        }
+        return response;
+    }
+
+    static String of(Long version) {
+        return version == null ? null : Long.toHexString(version);
+    }
+
+    /**
+     * Distinguishes the representations of the same list with different field selections.
+     */
+    static String of(long version, Set<? extends Enum<?>> fields) {
+        int mask = 0;
+        for (Enum<?> field : fields) {
+            mask |= 1 << field.ordinal();
+        }
+        return Long.toHexString(version) + "-" + Integer.toHexString(mask);
+    }
+}
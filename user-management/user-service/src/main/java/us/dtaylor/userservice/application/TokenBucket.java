@@ -0,0 +1,35 @@
+package us.dtaylor.userservice.application;
+
+/**
+ * Token bucket refilled continuously at {@code ratePerSecond} up to {@code capacity}. Starts full,
+ * so a client's first burst of up to {@code capacity} tokens is admitted at once.
+ */
+class TokenBucket {
+
+    private final double ratePerNano;
+    private final double capacity;
+
+    private double tokens;
+    private long refilledAt;
+
+    TokenBucket(double ratePerSecond, double capacity, long nowNanos) {
+        this.ratePerNano = ratePerSecond / 1_000_000_000d;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.refilledAt = nowNanos;
+    }
+
+    /**
+     * Takes {@code cost} tokens if available and returns zero, otherwise takes nothing and returns
+     * the nanoseconds until enough will have accumulated.
+     */
+    synchronized long tryAcquire(double cost, long nowNanos) {
+        tokens = Math.min(capacity, tokens + (nowNanos - refilledAt) * ratePerNano);
+        refilledAt = nowNanos;
+        if (tokens >= cost) {
+            tokens -= cost;
+            return 0;
+        }
+        return (long) Math.ceil((cost - tokens) / ratePerNano);
+    }
+}
@@ -1,7 +1,13 @@
 package us.dtaylor.userservice.application;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -10,46 +16,157 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
 import us.dtaylor.userservice.domain.User;
+import us.dtaylor.userservice.domain.UserField;
+import us.dtaylor.userservice.domain.UserImportResult;
 import us.dtaylor.userservice.domain.service.UserService;
+import us.dtaylor.userservice.infastructure.codec.JsonCodecs;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 @CrossOrigin(origins = "http://localhost:4200")
 @RestController
 @RequestMapping("/api/v1/users")
 public class UserController {
+
+    /** Ids written per chunk of the {@code /ids} export. */
+    private static final int ID_EXPORT_CHUNK = 1024;
+
+    /** Most users a {@code /search} may return. */
+    private static final int MAX_SEARCH_LIMIT = 100;
+
+    /** Users per page of the listing when {@code after} is given without a {@code limit}. */
+    private static final int DEFAULT_PAGE_SIZE = 100;
+
+    /** Most users a page of the listing may hold. */
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    /** Lines of a {@code /bulk} import parsed, written and answered together. */
+    private static final int IMPORT_CHUNK = 1000;
+
+    /** Chunks of a {@code /bulk} import being written at once. */
+    private static final int IMPORT_CONCURRENCY = 4;
+
     private final UserService userService;
+    private final ObjectReader userReader;
 
     @Autowired
-    public UserController(UserService userService) {
+    public UserController(UserService userService, JsonCodecs jsonCodecs) {
         this.userService = userService;
+        this.userReader = jsonCodecs.reader(User.class);
     }
 
     @PostMapping
     public Mono<ResponseEntity<User>> createUser(@RequestBody User user) {
         return userService.createUser(user)
+                .onErrorMap(DuplicateKeyException.class, UserController::nameTaken)
                 .map(ResponseEntity::ok);
     }
 
+    /**
+     * Creates users from an NDJSON body, one user object per line, and answers with one NDJSON
+     * line per user as each chunk is written; see {@link UserImportResponse}. Blank lines are
+     * skipped, and a line that is not a user is reported as invalid without stopping the import.
+     * Chunks are written concurrently, but results come back in input order.
+     */
+    @PostMapping(value = "/bulk", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<UserImportResponse> importUsers(@RequestBody Flux<String> lines) {
+        return lines.index()
+                .filter(line -> !line.getT2().isBlank())
+                .buffer(IMPORT_CHUNK)
+                .flatMapSequential(this::importChunk, IMPORT_CONCURRENCY);
+    }
+
+    private Flux<UserImportResponse> importChunk(List<Tuple2<Long, String>> lines) {
+        UserImportResponse[] responses = new UserImportResponse[lines.size()];
+        List<User> users = new ArrayList<>(lines.size());
+        List<Integer> positions = new ArrayList<>(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            try {
+                users.add(userReader.readValue(lines.get(i).getT2()));
+                positions.add(i);
+            } catch (JsonProcessingException e) {
+                responses[i] = UserImportResponse.of(lines.get(i).getT1() + 1, UserImportResult.invalid("Not a user: " + e.getOriginalMessage()));
+            }
+        }
+        return userService.importUsers(users)
+                .index()
+                .doOnNext(result -> {
+                    int position = positions.get(result.getT1().intValue());
+                    responses[position] = UserImportResponse.of(lines.get(position).getT1() + 1, result.getT2());
+                })
+                .thenMany(Flux.defer(() -> Flux.fromArray(responses)));
+    }
+
+    /**
+     * Lists every user, or one page of them when {@code after} or {@code limit} is given. The
+     * list is streamed as it is read, as a JSON array or, when {@code application/x-ndjson} is
+     * accepted, one user per line.
+     *
+     * <p>Pages are ordered by id: to get the next page, pass the id of the last user received as
+     * {@code after}. A page shorter than {@code limit} is the last. Paged users always include
+     * their id, since it is the cursor.
+     *
+     * @param fields comma-separated user fields to return, such as {@code id,name}; all of them
+     *               when absent
+     * @param after  the id the page starts after; the first page when absent
+     * @param limit  the most users on the page, from 1 to 1000; 100 when absent
+     */
     @GetMapping()
-    public Mono<ResponseEntity<Flux<User>>> getAllUsers() {
-        var userFlux = userService.getAllUsers();
-        return Mono.just(ResponseEntity.ok().body(userFlux));
+    public Mono<ResponseEntity<Flux<?>>> getAllUsers(@RequestParam(required = false) String fields,
+                                                     @RequestParam(required = false) UUID after,
+                                                     @RequestParam(required = false) Integer limit,
+                                                     ServerHttpRequest request) {
+        boolean paged = after != null || limit != null;
+        Set<UserField> selected = paged ? withId(getFields(fields)) : getFields(fields);
+        Flux<?> userFlux = sparse(paged
+                ? userService.getUsersPage(after, getPageSize(limit), selected)
+                : userService.getAllUsers(selected), selected);
+        // the marker is read first; on a matching If-None-Match the list is never queried
+        return userService.getUsersVersion()
+                .map(version -> EntityTags.ok(EntityTags.of(version, selected), request).<Flux<?>>body(userFlux))
+                .defaultIfEmpty(ResponseEntity.ok().body(userFlux));
+    }
+
+    /**
+     * Every user id as 16 raw bytes (most significant long first, big-endian), back to back. At a
+     * fraction of the size of the JSON user list, this lets other services keep a local set of
+     * valid ids, such as the filewatcher's Bloom filter.
+     */
+    @GetMapping(value = "/ids", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public Flux<ByteBuffer> exportUserIds() {
+        return userService.getAllUserIds()
+                .buffer(ID_EXPORT_CHUNK)
+                .map(ids -> {
+                    ByteBuffer chunk = ByteBuffer.allocate(ids.size() * 16);
+                    ids.forEach(id -> chunk.putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits()));
+                    return chunk.flip();
+                });
     }
 
     @GetMapping("/{id}")
-    public Mono<ResponseEntity<User>> getUserById(@PathVariable String id) {
+    public Mono<ResponseEntity<User>> getUserById(@PathVariable String id, ServerHttpRequest request) {
         return userService.getUserById(getId(id))
-                .map(ResponseEntity::ok);
+                .map(user -> EntityTags.ok(EntityTags.of(user.getVersion()), request).body(user));
     }
 
     @PutMapping("/{id}")
     public Mono<ResponseEntity<User>> updateUser(@PathVariable String id, @RequestBody User user) {
         return userService.updateUser(getId(id), user)
+                .onErrorMap(DuplicateKeyException.class, UserController::nameTaken)
                 .map(ResponseEntity::ok)
                 .defaultIfEmpty(ResponseEntity.notFound().build());
     }
@@ -60,10 +177,71 @@ public class UserController {
                 .then(Mono.just(ResponseEntity.ok().build()));
     }
 
+    /**
+     * Autocomplete: users whose name starts with {@code prefix}, ignoring case, in name order.
+     */
+    @GetMapping("/search")
+    public Flux<User> searchUsers(@RequestParam String prefix, @RequestParam(defaultValue = "10") int limit) {
+        if (prefix.isBlank() || limit < 1 || limit > MAX_SEARCH_LIMIT) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Expected a non-blank prefix and a limit from 1 to " + MAX_SEARCH_LIMIT);
+        }
+        return userService.searchByUsername(prefix, limit);
+    }
+
+    /**
+     * Matches the name ignoring case.
+     */
     @GetMapping("/username/{username}")
-    public Mono<ResponseEntity<User>> findByUsername(@PathVariable String username) {
+    public Mono<ResponseEntity<User>> findByUsername(@PathVariable String username, ServerHttpRequest request) {
         return userService.findByUsername(username)
-                .map(ResponseEntity::ok);
+                .map(user -> EntityTags.ok(EntityTags.of(user.getVersion()), request).body(user));
+    }
+
+    /**
+     * Renders only the selected fields, in their usual order, so unselected ones are left out of
+     * the JSON rather than sent as null.
+     */
+    private static Flux<?> sparse(Flux<User> users, Set<UserField> fields) {
+        if (fields.containsAll(UserField.ALL)) {
+            return users;
+        }
+        return users.map(user -> {
+            Map<String, Object> values = new LinkedHashMap<>();
+            fields.forEach(field -> values.put(field.property(), field.get(user)));
+            return values;
+        });
+    }
+
+    private static Set<UserField> withId(Set<UserField> fields) {
+        Set<UserField> withId = EnumSet.copyOf(fields);
+        withId.add(UserField.ID);
+        return withId;
+    }
+
+    private static int getPageSize(Integer limit) {
+        if (limit == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Expected a limit from 1 to " + MAX_PAGE_SIZE);
+        }
+        return limit;
+    }
+
+    private static Set<UserField> getFields(String fields) {
+        try {
+            return UserField.parse(fields);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    /**
+     * User names are unique regardless of case, which Mongo's index enforces.
+     */
+    private static ResponseStatusException nameTaken(DuplicateKeyException e) {
+        return new ResponseStatusException(HttpStatus.CONFLICT, "User name is already taken");
     }
 
     private static UUID getId(String id) {
@@ -0,0 +1,19 @@
+package us.dtaylor.userservice.application;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import us.dtaylor.userservice.domain.UserImportResult;
+
+import java.util.UUID;
+
+/**
+ * One line of the NDJSON answer to a bulk import: the outcome for the user on input line
+ * {@code line}, counting from 1, with its {@code id} when it was created and an {@code error}
+ * otherwise.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record UserImportResponse(long line, UserImportResult.Status status, UUID id, String error) {
+
+    static UserImportResponse of(long line, UserImportResult result) {
+        return new UserImportResponse(line, result.status(), result.user() == null ? null : result.user().getId(), result.error());
+    }
+}
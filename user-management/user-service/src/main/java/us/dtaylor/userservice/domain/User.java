@@ -1,5 +1,6 @@
 package us.dtaylor.userservice.domain;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -19,6 +20,14 @@ public class User {
     private UUID id;
     private String name;
     private String email;
+    /**
+     * Changes on every write of the stored user; {@code null} if the store does not keep one.
+     * Sent as the ETag rather than in the body.
+     */
+    @JsonIgnore
+    private Long version;
 
-
+    public User(UUID id, String name, String email) {
+        this(id, name, email, null);
+    }
 }
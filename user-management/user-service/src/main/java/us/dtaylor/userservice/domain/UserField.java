@@ -0,0 +1,58 @@
+package us.dtaylor.userservice.domain;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * The fields of a {@link User} a reader can ask for, so that stores can leave the others on disk.
+ */
+public enum UserField {
+    ID("id", User::getId),
+    NAME("name", User::getName),
+    EMAIL("email", User::getEmail);
+
+    public static final Set<UserField> ALL = Collections.unmodifiableSet(EnumSet.allOf(UserField.class));
+
+    private final String property;
+    private final Function<User, Object> getter;
+
+    UserField(String property, Function<User, Object> getter) {
+        this.property = property;
+        this.getter = getter;
+    }
+
+    /**
+     * The name of the field on {@link User} and in its JSON.
+     */
+    public String property() {
+        return property;
+    }
+
+    public Object get(User user) {
+        return getter.apply(user);
+    }
+
+    /**
+     * Parses a comma-separated list of property names such as {@code id,name}; {@code null} or
+     * blank selects every field.
+     *
+     * @throws IllegalArgumentException if a name is not a field of a user
+     */
+    public static Set<UserField> parse(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return ALL;
+        }
+        Set<UserField> selected = EnumSet.noneOf(UserField.class);
+        for (String name : fields.split(",")) {
+            String trimmed = name.trim();
+            selected.add(Arrays.stream(values())
+                    .filter(field -> field.property.equals(trimmed))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown user field '" + trimmed + "'")));
+        }
+        return selected;
+    }
+}
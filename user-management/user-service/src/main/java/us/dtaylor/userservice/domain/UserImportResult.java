@@ -0,0 +1,38 @@
+package us.dtaylor.userservice.domain;
+
+/**
+ * The outcome of importing one user: the stored user when it was created, otherwise why it was
+ * not.
+ */
+public record UserImportResult(Status status, User user, String error) {
+
+    public enum Status {
+        CREATED,
+        /** The name, ignoring case, or the id belongs to another user. */
+        CONFLICT,
+        /** Rejected before anything was written. */
+        INVALID,
+        /** The write failed; the user may or may not have been stored. */
+        FAILED
+    }
+
+    public static UserImportResult created(User user) {
+        return new UserImportResult(Status.CREATED, user, null);
+    }
+
+    public static UserImportResult conflict(String error) {
+        return new UserImportResult(Status.CONFLICT, null, error);
+    }
+
+    public static UserImportResult invalid(String error) {
+        return new UserImportResult(Status.INVALID, null, error);
+    }
+
+    public static UserImportResult failed(String error) {
+        return new UserImportResult(Status.FAILED, null, error);
+    }
+
+    public boolean isCreated() {
+        return status == Status.CREATED;
+    }
+}
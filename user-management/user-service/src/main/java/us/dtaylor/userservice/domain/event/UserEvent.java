@@ -0,0 +1,30 @@
+package us.dtaylor.userservice.domain.event;
+
+import us.dtaylor.userservice.domain.User;
+
+import java.util.UUID;
+
+/**
+ * A change to a user, published so other services can keep their own copy of the directory.
+ * Deletions carry only the id.
+ */
+public record UserEvent(Type type, UUID id, String name, String email) {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+
+    public static UserEvent created(User user) {
+        return new UserEvent(Type.CREATED, user.getId(), user.getName(), user.getEmail());
+    }
+
+    public static UserEvent updated(User user) {
+        return new UserEvent(Type.UPDATED, user.getId(), user.getName(), user.getEmail());
+    }
+
+    public static UserEvent deleted(UUID id) {
+        return new UserEvent(Type.DELETED, id, null, null);
+    }
+}
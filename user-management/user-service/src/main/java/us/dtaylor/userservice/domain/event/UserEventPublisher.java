@@ -0,0 +1,10 @@
+package us.dtaylor.userservice.domain.event;
+
+import reactor.core.publisher.Mono;
+
+public interface UserEventPublisher {
+
+    UserEventPublisher NONE = event -> Mono.empty();
+
+    Mono<Void> publish(UserEvent event);
+}
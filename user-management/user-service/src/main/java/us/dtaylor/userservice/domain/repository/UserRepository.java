@@ -1,22 +1,87 @@
 package us.dtaylor.userservice.domain.repository;
 
 
+import org.springframework.dao.DuplicateKeyException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import us.dtaylor.userservice.domain.User;
+import us.dtaylor.userservice.domain.UserField;
+import us.dtaylor.userservice.domain.UserImportResult;
 
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 public interface UserRepository {
+
+    /**
+     * The order of {@link #findPage}: by the bytes of the id, unsigned, which is how Mongo orders
+     * ids stored as binary UUIDs.
+     */
+    Comparator<UUID> ID_ORDER = Comparator.comparing(UUID::getMostSignificantBits, Long::compareUnsigned)
+            .thenComparing(UUID::getLeastSignificantBits, Long::compareUnsigned);
+
     Mono<Void> deleteAll();
 
     Mono<User> save(User user);
 
+    /**
+     * Creates the users, giving one result per user in the same order. Unlike {@link #save}, a
+     * user whose id is taken is reported as a conflict rather than overwriting the stored one.
+     * This default writes them one at a time; stores that can batch override it.
+     */
+    default Flux<UserImportResult> insertAll(List<User> users) {
+        return Flux.fromIterable(users)
+                .concatMap(user -> (user.getId() == null ? Mono.<User>empty() : findById(user.getId()))
+                        .map(taken -> UserImportResult.conflict("User id already exists"))
+                        .switchIfEmpty(Mono.defer(() -> save(user).map(UserImportResult::created)))
+                        .onErrorResume(DuplicateKeyException.class, e -> Mono.just(UserImportResult.conflict("User name is already taken"))));
+    }
+
     Flux<User> findAll();
 
+    /**
+     * Reads every user for a caller that only needs {@code fields}; the others may be left unset.
+     * This default reads whole users; stores that can project override it.
+     */
+    default Flux<User> findAll(Set<UserField> fields) {
+        return findAll();
+    }
+
+    /**
+     * Every user id, without loading the users themselves.
+     */
+    Flux<UUID> findAllIds();
+
+    /**
+     * One page of users for a caller that only needs {@code fields}: up to {@code limit} users
+     * whose id comes after {@code after}, or from the first when it is {@code null}, in
+     * {@link #ID_ORDER}. The last id of a page is where the next one starts, so pages stay
+     * consistent while users are added or removed and no page skips rows to reach its start.
+     */
+    Flux<User> findPage(UUID after, int limit, Set<UserField> fields);
+
     Mono<User> findById(UUID id);
 
+    /**
+     * A value that changes whenever any user is written or deleted, read without touching the
+     * users themselves. Empty when this store does not keep one.
+     */
+    default Mono<Long> listVersion() {
+        return Mono.empty();
+    }
+
     Mono<Void> delete(User user);
 
+    /**
+     * The user whose name matches {@code username}, ignoring case.
+     */
     Mono<User> findByUserName(String username);
+
+    /**
+     * Up to {@code limit} users whose name starts with {@code prefix}, ignoring case, in name
+     * order.
+     */
+    Flux<User> findByNamePrefix(String prefix, int limit);
 }
@@ -6,23 +6,66 @@ import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import us.dtaylor.userservice.domain.User;
+import us.dtaylor.userservice.domain.UserField;
+import us.dtaylor.userservice.domain.UserImportResult;
+import us.dtaylor.userservice.domain.event.UserEvent;
+import us.dtaylor.userservice.domain.event.UserEventPublisher;
 import us.dtaylor.userservice.domain.repository.UserRepository;
 
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 @Service
 public class DomainUserService implements UserService {
 
+    /** Created events of an import sent at once, so the producer can batch them. */
+    private static final int IMPORT_EVENT_CONCURRENCY = 256;
+
     private final UserRepository userRepository;
+    private final UserEventPublisher userEventPublisher;
 
-    @Autowired
     public DomainUserService(UserRepository userRepository) {
+        this(userRepository, UserEventPublisher.NONE);
+    }
+
+    @Autowired
+    public DomainUserService(UserRepository userRepository, UserEventPublisher userEventPublisher) {
         this.userRepository = userRepository;
+        this.userEventPublisher = userEventPublisher;
     }
 
     @Override
     public Mono<User> createUser(User user) {
-        return userRepository.save(user);
+        return userRepository.save(user)
+                .flatMap(saved -> userEventPublisher.publish(UserEvent.created(saved)).thenReturn(saved));
+    }
+
+    /**
+     * Users without a name are rejected up front, since names are unique. The rest are written
+     * together; if that write fails as a whole, each of them is reported as failed rather than
+     * failing the batches that follow.
+     */
+    @Override
+    public Flux<UserImportResult> importUsers(List<User> users) {
+        List<User> valid = users.stream().filter(DomainUserService::hasName).toList();
+        return userRepository.insertAll(valid)
+                .collectList()
+                .onErrorResume(e -> Mono.just(valid.stream().map(user -> UserImportResult.failed(e.getMessage())).toList()))
+                .flatMapMany(inserted -> Flux.fromIterable(inserted)
+                        .filter(UserImportResult::isCreated)
+                        .flatMap(created -> userEventPublisher.publish(UserEvent.created(created.user())), IMPORT_EVENT_CONCURRENCY)
+                        .thenMany(Flux.defer(() -> {
+                            Iterator<UserImportResult> results = inserted.iterator();
+                            return Flux.fromIterable(users.stream()
+                                    .map(user -> hasName(user) ? results.next() : UserImportResult.invalid("A name is required"))
+                                    .toList());
+                        })));
+    }
+
+    private static boolean hasName(User user) {
+        return user != null && user.getName() != null && !user.getName().isBlank();
     }
 
     @Override
@@ -30,6 +73,26 @@ public class DomainUserService implements UserService {
         return userRepository.findAll();
     }
 
+    @Override
+    public Flux<User> getAllUsers(Set<UserField> fields) {
+        return userRepository.findAll(fields);
+    }
+
+    @Override
+    public Flux<User> getUsersPage(UUID after, int limit, Set<UserField> fields) {
+        return userRepository.findPage(after, limit, fields);
+    }
+
+    @Override
+    public Mono<Long> getUsersVersion() {
+        return userRepository.listVersion();
+    }
+
+    @Override
+    public Flux<UUID> getAllUserIds() {
+        return userRepository.findAllIds();
+    }
+
     @Override
     public Mono<User> getUserById(UUID id) {
         return userRepository.findById(id);
@@ -43,13 +106,15 @@ public class DomainUserService implements UserService {
                     existingTodo.setEmail(user.getEmail());
                     return userRepository.save(existingTodo);
                 })
+                .flatMap(saved -> userEventPublisher.publish(UserEvent.updated(saved)).thenReturn(saved))
                 .switchIfEmpty(Mono.error(new ChangeSetPersister.NotFoundException()));
     }
 
     @Override
     public Mono<Void> deleteUser(UUID id) {
         return userRepository.findById(id)
-                .flatMap(userRepository::delete);
+                .flatMap(user -> userRepository.delete(user)
+                        .then(userEventPublisher.publish(UserEvent.deleted(user.getId()))));
     }
 
     @Override
@@ -57,4 +122,9 @@ public class DomainUserService implements UserService {
         return userRepository.findByUserName(username)
                 .switchIfEmpty(Mono.error(new ChangeSetPersister.NotFoundException()));
     }
+
+    @Override
+    public Flux<User> searchByUsername(String prefix, int limit) {
+        return userRepository.findByNamePrefix(prefix, limit);
+    }
 }
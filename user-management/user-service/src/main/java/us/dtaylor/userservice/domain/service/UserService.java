@@ -3,14 +3,31 @@ package us.dtaylor.userservice.domain.service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import us.dtaylor.userservice.domain.User;
+import us.dtaylor.userservice.domain.UserField;
+import us.dtaylor.userservice.domain.UserImportResult;
 
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 public interface UserService {
     Mono<User> createUser(User user);
 
+    /**
+     * Creates a batch of users, giving one result per user in the same order.
+     */
+    Flux<UserImportResult> importUsers(List<User> users);
+
     Flux<User> getAllUsers();
 
+    Flux<User> getAllUsers(Set<UserField> fields);
+
+    Flux<User> getUsersPage(UUID after, int limit, Set<UserField> fields);
+
+    Mono<Long> getUsersVersion();
+
+    Flux<UUID> getAllUserIds();
+
     Mono<User> getUserById(UUID id);
 
     Mono<User> updateUser(UUID id, User user);
@@ -18,4 +35,6 @@ public interface UserService {
     Mono<Void> deleteUser(UUID id);
 
     Mono<User> findByUsername(String username);
+
+    Flux<User> searchByUsername(String prefix, int limit);
 }
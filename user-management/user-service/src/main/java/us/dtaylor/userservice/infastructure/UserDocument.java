@@ -4,41 +4,64 @@ package us.dtaylor.userservice.infastructure;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 import us.dtaylor.userservice.domain.User;
+import us.dtaylor.userservice.domain.UserField;
+import us.dtaylor.userservice.infastructure.persistence.DocumentVersions;
 
+import java.util.Set;
 import java.util.UUID;
 
-@Document
+/**
+ * Ids are stored as BSON binary subtype 4 ({@code spring.data.mongodb.uuid-representation=standard});
+ * {@code UuidMigration} rewrites documents still keyed by strings.
+ */
+@Document(collection = UserDocument.COLLECTION)
 public class UserDocument {
+    public static final String COLLECTION = "userDocument";
+
     @Id
-    private String id;
+    private UUID id;
 
     private String name;
     private String email;
 
+    /**
+     * Replaced on every write; absent on documents not written since versions were introduced.
+     */
+    private Long version;
+
     public static UserDocument toDocument(User user) {
         UserDocument userDocument = new UserDocument();
 
         if (user.getId() == null) {
-            userDocument.id = UUID.randomUUID().toString();
-        } else {
-            userDocument.id = user.getId().toString();
-        }
-
-        if (user.getId() == null) {
-            userDocument.id = UUID.randomUUID().toString();
+            userDocument.id = UUID.randomUUID();
         } else {
-            userDocument.id = user.getId().toString();
+            userDocument.id = user.getId();
         }
         userDocument.name = user.getName();
         userDocument.email = user.getEmail();
+        userDocument.version = DocumentVersions.next();
         return userDocument;
     }
 
     public User toDomain() {
         return new User(
-                UUID.fromString(id),
+                id,
                 name,
-                email
+                email,
+                version
+        );
+    }
+
+    /**
+     * For a document read with a projection on {@code fields}: copies only those, since Mongo
+     * returns {@code _id} whether it was asked for or not.
+     */
+    public User toDomain(Set<UserField> fields) {
+        return new User(
+                fields.contains(UserField.ID) ? id : null,
+                fields.contains(UserField.NAME) ? name : null,
+                fields.contains(UserField.EMAIL) ? email : null,
+                version
         );
     }
 }
@@ -0,0 +1,117 @@
+package us.dtaylor.userservice.infastructure.codec;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.EncodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.cbor.Jackson2CborEncoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Smile and CBOR encoders that write a {@code Flux} as one array of the format itself. Spring's
+ * Smile encoder joins list elements with JSON's {@code [ , ]} characters, which a Smile parser
+ * cannot read, and its CBOR encoder does not encode streams at all. Each element is flushed once
+ * written, so a large list goes out as it is read instead of being collected first.
+ *
+ * <p>The media types are given explicitly, as Spring's constructors that take a mapper otherwise
+ * advertise JSON.
+ */
+public final class BinaryJacksonEncoders {
+
+    public static final MediaType APPLICATION_SMILE = new MediaType("application", "x-jackson-smile");
+
+    private BinaryJacksonEncoders() {
+    }
+
+    public static Jackson2SmileEncoder smile(ObjectMapper objectMapper) {
+        return new Jackson2SmileEncoder(objectMapper, APPLICATION_SMILE) {
+            @Override
+            public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory,
+                                           ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+                return encodeArray(this::encodeValue, objectMapper, inputStream, bufferFactory, elementType, mimeType, hints);
+            }
+        };
+    }
+
+    public static Jackson2CborEncoder cbor(ObjectMapper objectMapper) {
+        return new Jackson2CborEncoder(objectMapper, MediaType.APPLICATION_CBOR) {
+            @Override
+            public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory,
+                                           ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+                return encodeArray(this::encodeValue, objectMapper, inputStream, bufferFactory, elementType, mimeType, hints);
+            }
+        };
+    }
+
+    private static Flux<DataBuffer> encodeArray(ValueEncoder single, ObjectMapper objectMapper, Publisher<?> inputStream,
+                                                DataBufferFactory bufferFactory, ResolvableType elementType,
+                                                MimeType mimeType, Map<String, Object> hints) {
+        if (inputStream instanceof Mono<?> value) {
+            return value.map(it -> single.encodeValue(it, bufferFactory, elementType, mimeType, hints)).flux();
+        }
+        return Flux.defer(() -> {
+            ArrayWriter array = new ArrayWriter(objectMapper);
+            return Flux.from(inputStream)
+                    .map(element -> array.write(element, bufferFactory))
+                    .concatWith(Mono.fromCallable(() -> array.close(bufferFactory)));
+        });
+    }
+
+    private interface ValueEncoder {
+        DataBuffer encodeValue(Object value, DataBufferFactory bufferFactory, ResolvableType valueType,
+                               MimeType mimeType, Map<String, Object> hints);
+    }
+
+    /**
+     * One array written through a single generator, drained into a buffer per element.
+     */
+    private static final class ArrayWriter {
+
+        private final ByteArrayBuilder bytes = new ByteArrayBuilder();
+        private final JsonGenerator generator;
+        private final SequenceWriter values;
+
+        private ArrayWriter(ObjectMapper objectMapper) {
+            try {
+                generator = objectMapper.getFactory().createGenerator(bytes);
+                values = objectMapper.writer().writeValuesAsArray(generator);
+            } catch (IOException e) {
+                throw new EncodingException("Could not start array: " + e.getMessage(), e);
+            }
+        }
+
+        DataBuffer write(Object value, DataBufferFactory bufferFactory) {
+            try {
+                values.write(value);
+                values.flush();
+            } catch (IOException e) {
+                throw new EncodingException("Could not write " + value.getClass().getSimpleName() + ": " + e.getMessage(), e);
+            }
+            return drain(bufferFactory);
+        }
+
+        DataBuffer close(DataBufferFactory bufferFactory) throws IOException {
+            values.close();
+            generator.flush();
+            return drain(bufferFactory);
+        }
+
+        private DataBuffer drain(DataBufferFactory bufferFactory) {
+            DataBuffer buffer = bufferFactory.wrap(bytes.toByteArray());
+            bytes.reset();
+            return buffer;
+        }
+    }
+}
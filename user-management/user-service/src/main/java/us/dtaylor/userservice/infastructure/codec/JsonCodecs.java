@@ -0,0 +1,53 @@
+package us.dtaylor.userservice.infastructure.codec;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import us.dtaylor.userservice.domain.User;
+import us.dtaylor.userservice.domain.event.UserEvent;
+
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The one place JSON is configured. Readers and writers for the types this service exchanges are
+ * created once from the application {@link ObjectMapper}, which the WebFlux codecs also use and
+ * which has the Blackbird module registered, so properties are accessed through generated
+ * lambdas instead of reflection and the (de)serializers are built at startup.
+ */
+public class JsonCodecs {
+
+    private final ObjectMapper objectMapper;
+    private final Map<Class<?>, ObjectReader> readers;
+    private final Map<Class<?>, ObjectWriter> writers;
+    private final ObjectWriter userEventWriter;
+
+    public JsonCodecs(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.readers = Stream.of(User.class, UserEvent.class)
+                .collect(Collectors.toUnmodifiableMap(Function.identity(), objectMapper::readerFor));
+        this.writers = Stream.of(User.class, UserEvent.class)
+                .collect(Collectors.toUnmodifiableMap(Function.identity(), objectMapper::writerFor));
+        this.userEventWriter = writers.get(UserEvent.class);
+    }
+
+    public ObjectReader reader(Class<?> type) {
+        ObjectReader reader = readers.get(type);
+        return reader != null ? reader : objectMapper.readerFor(type);
+    }
+
+    public ObjectWriter writer(Class<?> type) {
+        ObjectWriter writer = writers.get(type);
+        return writer != null ? writer : objectMapper.writerFor(type);
+    }
+
+    /**
+     * Encodes straight to the UTF-8 bytes sent to Kafka, without an intermediate String.
+     */
+    public byte[] writeUserEvent(UserEvent event) throws JsonProcessingException {
+        return userEventWriter.writeValueAsBytes(event);
+    }
+}
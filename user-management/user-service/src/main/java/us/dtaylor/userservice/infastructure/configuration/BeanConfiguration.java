@@ -1,19 +1,25 @@
 package us.dtaylor.userservice.infastructure.configuration;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import us.dtaylor.userservice.domain.event.UserEventPublisher;
 import us.dtaylor.userservice.domain.repository.UserRepository;
 import us.dtaylor.userservice.domain.service.DomainUserService;
 import us.dtaylor.userservice.domain.service.UserService;
+import us.dtaylor.userservice.infastructure.persistence.repository.DirectoryUserRepository;
 
 @Configuration
 @ComponentScan(basePackageClasses = UserService.class)
 public class BeanConfiguration {
 
     @Bean
-    UserService userService(final UserRepository userRepository) {
-        return new DomainUserService(userRepository);
+    UserService userService(final UserRepository userRepository,
+                            final ObjectProvider<DirectoryUserRepository> directoryUserRepository,
+                            final UserEventPublisher userEventPublisher) {
+        UserRepository directory = directoryUserRepository.getIfAvailable();
+        return new DomainUserService(directory != null ? directory : userRepository, userEventPublisher);
     }
 
 }
@@ -0,0 +1,53 @@
+package us.dtaylor.userservice.infastructure.configuration;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import us.dtaylor.userservice.infastructure.codec.BinaryJacksonEncoders;
+import us.dtaylor.userservice.infastructure.codec.JsonCodecs;
+
+@Configuration
+public class CodecConfiguration {
+
+    /**
+     * Registered by Spring Boot on the application {@link ObjectMapper}, which the WebFlux codecs
+     * already use.
+     */
+    @Bean
+    public Module blackbirdModule() {
+        return new BlackbirdModule();
+    }
+
+    @Bean
+    public JsonCodecs jsonCodecs(ObjectMapper objectMapper) {
+        return new JsonCodecs(objectMapper);
+    }
+
+    /**
+     * Adds Smile and CBOR for clients that ask for them, with mappers configured like the JSON
+     * one. The JSON encoder is registered again ahead of CBOR because Spring consults custom
+     * codecs first, and the first that fits answers {@code Accept: *}{@code /*}.
+     */
+    @Bean
+    public CodecCustomizer binaryJacksonCodecs(Jackson2ObjectMapperBuilder builder, ObjectMapper objectMapper) {
+        ObjectMapper smile = builder.factory(new SmileFactory()).build();
+        ObjectMapper cbor = builder.factory(new CBORFactory()).build();
+        return configurer -> {
+            configurer.defaultCodecs().jackson2SmileEncoder(BinaryJacksonEncoders.smile(smile));
+            configurer.defaultCodecs().jackson2SmileDecoder(new Jackson2SmileDecoder(smile, BinaryJacksonEncoders.APPLICATION_SMILE));
+            configurer.customCodecs().register(new Jackson2JsonEncoder(objectMapper));
+            configurer.customCodecs().register(BinaryJacksonEncoders.cbor(cbor));
+            configurer.customCodecs().register(new Jackson2CborDecoder(cbor, MediaType.APPLICATION_CBOR));
+        };
+    }
+}
@@ -0,0 +1,48 @@
+package us.dtaylor.userservice.infastructure.configuration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import us.dtaylor.userservice.domain.User;
+import us.dtaylor.userservice.infastructure.UserDocument;
+import us.dtaylor.userservice.infastructure.persistence.RequestCoalescer;
+import us.dtaylor.userservice.infastructure.persistence.UsernameIndex;
+import us.dtaylor.userservice.infastructure.persistence.UuidMigration;
+import us.dtaylor.userservice.infastructure.persistence.repository.InMemoryUserRepository;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+@Configuration
+@Profile("!" + InMemoryUserRepository.PROFILE)
+public class MongoDbConfiguration {
+
+    @Value("${mongo.uuid-migration.batch-size:500}")
+    private int batchSize;
+
+    @Value("${mongo.uuid-migration.pause-ms:50}")
+    private long pauseMs;
+
+    @Value("${mongo.find-by-id.coalescing-ttl-ms:0}")
+    private long findByIdCoalescingTtlMs;
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public UuidMigration userUuidMigration(ReactiveMongoOperations reactiveMongoTemplate) {
+        return new UuidMigration(reactiveMongoTemplate, UserDocument.COLLECTION, List.of(), batchSize, Duration.ofMillis(pauseMs));
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public UsernameIndex usernameIndex(ReactiveMongoOperations reactiveMongoTemplate, UuidMigration userUuidMigration) {
+        return new UsernameIndex(reactiveMongoTemplate, userUuidMigration);
+    }
+
+    @Bean
+    public RequestCoalescer<UUID, User> userReadCoalescer(MeterRegistry meterRegistry) {
+        return new RequestCoalescer<>(UserDocument.COLLECTION, Duration.ofMillis(findByIdCoalescingTtlMs),
+                user -> new User(user.getId(), user.getName(), user.getEmail(), user.getVersion()), meterRegistry);
+    }
+}
@@ -0,0 +1,52 @@
+package us.dtaylor.userservice.infastructure.configuration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import us.dtaylor.userservice.domain.repository.UserRepository;
+import us.dtaylor.userservice.infastructure.directory.UserDirectory;
+import us.dtaylor.userservice.infastructure.directory.UserDirectorySync;
+import us.dtaylor.userservice.infastructure.persistence.repository.DirectoryUserRepository;
+import us.dtaylor.userservice.infastructure.persistence.repository.InMemoryUserRepository;
+
+import java.time.Duration;
+
+@Configuration
+@Profile("!" + InMemoryUserRepository.PROFILE)
+@ConditionalOnProperty(name = "user.directory.enabled", havingValue = "true")
+public class UserDirectoryConfiguration {
+
+    @Value("${user.directory.min-backoff-ms:1000}")
+    private long minBackoffMs;
+
+    @Value("${user.directory.max-backoff-ms:60000}")
+    private long maxBackoffMs;
+
+    @Bean
+    public UserDirectory userDirectory(MeterRegistry meterRegistry) {
+        return new UserDirectory(meterRegistry);
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public UserDirectorySync userDirectorySync(UserDirectory userDirectory,
+                                               UserRepository userRepository,
+                                               ReactiveMongoOperations reactiveMongoTemplate,
+                                               MeterRegistry meterRegistry) {
+        return new UserDirectorySync(userDirectory, userRepository, reactiveMongoTemplate,
+                new UserDirectorySync.Settings(Duration.ofMillis(minBackoffMs), Duration.ofMillis(maxBackoffMs)), meterRegistry);
+    }
+
+    /**
+     * Wraps the primary repository; only the user service is handed the directory view.
+     */
+    @Bean
+    public DirectoryUserRepository directoryUserRepository(UserRepository userRepository,
+                                                           UserDirectory userDirectory,
+                                                           MeterRegistry meterRegistry) {
+        return new DirectoryUserRepository(userRepository, userDirectory, meterRegistry);
+    }
+}
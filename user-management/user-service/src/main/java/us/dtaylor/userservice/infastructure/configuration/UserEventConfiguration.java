@@ -0,0 +1,59 @@
+package us.dtaylor.userservice.infastructure.configuration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.common.config.TopicConfig;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.KafkaTemplate;
+import us.dtaylor.userservice.domain.event.UserEventPublisher;
+import us.dtaylor.userservice.infastructure.codec.JsonCodecs;
+import us.dtaylor.userservice.infastructure.messaging.KafkaUserEventPublisher;
+
+import java.time.Duration;
+
+@Configuration
+public class UserEventConfiguration {
+
+    @Value("${user.events.topic:user-events}")
+    private String topic;
+
+    @Value("${user.events.partitions:3}")
+    private int partitions;
+
+    @Value("${user.events.publish-retries:2}")
+    private int publishRetries;
+
+    @Value("${user.events.publish-retry-backoff-ms:200}")
+    private long publishRetryBackoffMs;
+
+    /**
+     * Compacted, so a consumer starting from the beginning only replays the latest event per user.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "user.events.enabled", havingValue = "true", matchIfMissing = true)
+    public NewTopic userEventsTopic() {
+        return TopicBuilder.name(topic)
+                .partitions(partitions)
+                .config(TopicConfig.CLEANUP_POLICY_CONFIG, TopicConfig.CLEANUP_POLICY_COMPACT)
+                .build();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "user.events.enabled", havingValue = "true", matchIfMissing = true)
+    public UserEventPublisher kafkaUserEventPublisher(KafkaTemplate<String, byte[]> kafkaTemplate,
+                                                      JsonCodecs jsonCodecs,
+                                                      MeterRegistry meterRegistry) {
+        return new KafkaUserEventPublisher(kafkaTemplate, jsonCodecs, topic, publishRetries,
+                Duration.ofMillis(publishRetryBackoffMs), meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "user.events.enabled", havingValue = "false")
+    public UserEventPublisher noUserEventPublisher() {
+        return UserEventPublisher.NONE;
+    }
+}
@@ -0,0 +1,212 @@
+package us.dtaylor.userservice.infastructure.directory;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import us.dtaylor.userservice.domain.User;
+import us.dtaylor.userservice.domain.repository.UserRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * Every user held in memory, indexed by id and by name, as loaded from Mongo and kept current by
+ * {@link UserDirectorySync}. Reads are lock-free; changes are serialized. Stored and returned
+ * users are copies, so callers may modify what they get.
+ *
+ * <p>The name index is a sorted skip list keyed by the lower-cased name followed by the id, so
+ * exact lookups ignore case like the Mongo collation does, and a prefix search is a walk from
+ * the prefix's position that stops at the first name not starting with it. Lower-casing matches
+ * the collation's case-insensitivity for ordinary names but does not reproduce every ICU rule.
+ * Ids are also kept in {@link UserRepository#ID_ORDER}, so a page of the listing starts at its
+ * cursor rather than sorting every user.
+ *
+ * <p>The directory is only {@link #isReady() ready} between a full load and the next gap in the
+ * change stream; while it is not, its contents may be missing changes and must not be served.
+ */
+public class UserDirectory {
+
+    private final Map<UUID, User> users = new ConcurrentHashMap<>();
+    private final NavigableMap<String, UUID> userIdsByName = new ConcurrentSkipListMap<>();
+    private final NavigableSet<UUID> orderedIds = new ConcurrentSkipListSet<>(UserRepository.ID_ORDER);
+    private final LongSupplier clock;
+
+    private volatile boolean ready;
+    private volatile long version;
+    private volatile long lastChangeMillis;
+
+    public UserDirectory(MeterRegistry meterRegistry) {
+        this(meterRegistry, System::currentTimeMillis);
+    }
+
+    UserDirectory(MeterRegistry meterRegistry, LongSupplier clock) {
+        this.clock = clock;
+        this.lastChangeMillis = clock.getAsLong();
+        Gauge.builder("user.directory.size", users, Map::size)
+                .description("Users held in the in-memory directory")
+                .register(meterRegistry);
+        Gauge.builder("user.directory.ready", this, directory -> directory.ready ? 1 : 0)
+                .description("1 while reads are served from the directory, 0 while they fall back to Mongo")
+                .register(meterRegistry);
+        Gauge.builder("user.directory.last-change.age", this, directory -> (directory.clock.getAsLong() - directory.lastChangeMillis) / 1000.0)
+                .description("Seconds since the directory was loaded or last applied a change")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Replaces the contents with a full load and marks the directory ready.
+     */
+    public synchronized void reset(Collection<User> loaded) {
+        users.clear();
+        userIdsByName.clear();
+        orderedIds.clear();
+        loaded.forEach(this::index);
+        version = ThreadLocalRandom.current().nextLong();
+        lastChangeMillis = clock.getAsLong();
+        ready = true;
+    }
+
+    /**
+     * Marks the directory as possibly missing changes until the next {@link #reset}.
+     */
+    public void markStale() {
+        ready = false;
+    }
+
+    public synchronized void put(User user) {
+        index(user);
+        changed();
+    }
+
+    public synchronized void remove(UUID id) {
+        User removed = users.remove(id);
+        if (removed != null) {
+            unindex(removed);
+            orderedIds.remove(id);
+        }
+        changed();
+    }
+
+    public User get(UUID id) {
+        User user = users.get(id);
+        return user == null ? null : copy(user);
+    }
+
+    /**
+     * The user with this name, ignoring case; any one of them if several match.
+     */
+    public User getByName(String name) {
+        String key = fold(name) + '\0';
+        Map.Entry<String, UUID> entry = userIdsByName.ceilingEntry(key);
+        User user = entry == null || !entry.getKey().startsWith(key) ? null : users.get(entry.getValue());
+        return user == null ? null : copy(user);
+    }
+
+    /**
+     * Up to {@code limit} users whose name starts with {@code prefix}, ignoring case, in name
+     * order.
+     */
+    public List<User> searchByName(String prefix, int limit) {
+        String folded = fold(prefix);
+        List<User> found = new ArrayList<>(Math.min(limit, 64));
+        for (Map.Entry<String, UUID> entry : userIdsByName.tailMap(folded, true).entrySet()) {
+            if (found.size() >= limit || !entry.getKey().startsWith(folded)) {
+                break;
+            }
+            User user = users.get(entry.getValue());
+            if (user != null) {
+                found.add(copy(user));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Up to {@code limit} users whose id comes after {@code after}, or from the first when it is
+     * {@code null}, in {@link UserRepository#ID_ORDER}.
+     */
+    public List<User> page(UUID after, int limit) {
+        List<User> found = new ArrayList<>(Math.min(limit, 1024));
+        for (UUID id : after == null ? orderedIds : orderedIds.tailSet(after, false)) {
+            if (found.size() >= limit) {
+                break;
+            }
+            User user = users.get(id);
+            if (user != null) {
+                found.add(copy(user));
+            }
+        }
+        return found;
+    }
+
+    public List<User> all() {
+        return users.values().stream().map(UserDirectory::copy).toList();
+    }
+
+    public List<UUID> ids() {
+        return List.copyOf(users.keySet());
+    }
+
+    public int size() {
+        return users.size();
+    }
+
+    /**
+     * Changes with every change applied, starting from a random value on each load so that two
+     * loads never share one.
+     */
+    public long version() {
+        return version;
+    }
+
+    private void index(User user) {
+        User stored = copy(user);
+        User previous = users.put(stored.getId(), stored);
+        orderedIds.add(stored.getId());
+        if (previous != null && !Objects.equals(previous.getName(), stored.getName())) {
+            unindex(previous);
+        }
+        if (stored.getName() != null) {
+            userIdsByName.put(nameKey(stored), stored.getId());
+        }
+    }
+
+    private void unindex(User user) {
+        if (user.getName() != null) {
+            userIdsByName.remove(nameKey(user));
+        }
+    }
+
+    private static String nameKey(User user) {
+        return fold(user.getName()) + '\0' + user.getId();
+    }
+
+    private static String fold(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private void changed() {
+        version++;
+        lastChangeMillis = clock.getAsLong();
+    }
+
+    private static User copy(User user) {
+        return new User(user.getId(), user.getName(), user.getEmail(), user.getVersion());
+    }
+}
@@ -0,0 +1,157 @@
+package us.dtaylor.userservice.infastructure.directory;
+
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonTimestamp;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+import us.dtaylor.userservice.domain.repository.UserRepository;
+import us.dtaylor.userservice.infastructure.UserDocument;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Loads the {@link UserDirectory} from Mongo and keeps it current from a change stream on the
+ * user collection.
+ *
+ * <p>The server's operation time is read before the load, and the change stream starts from it,
+ * so changes made while the users were being read are replayed over them; applying a change
+ * twice is harmless. On any error, or when the stream ends because the collection was dropped or
+ * renamed, the directory is marked stale, so reads go to Mongo, and the load and stream are
+ * retried with backoff. Change streams need a replica set: a server that reports no operation
+ * time is standalone and will stay that way, so the sync gives up after one error and the
+ * directory stays stale.
+ */
+@Slf4j
+public class UserDirectorySync {
+
+    private final UserDirectory directory;
+    private final UserRepository repository;
+    private final ReactiveMongoOperations mongoOperations;
+    private final Settings settings;
+    private final Timer lag;
+    private final Counter resyncs;
+
+    private Disposable syncing;
+
+    public UserDirectorySync(UserDirectory directory,
+                             UserRepository repository,
+                             ReactiveMongoOperations mongoOperations,
+                             Settings settings,
+                             MeterRegistry meterRegistry) {
+        this.directory = directory;
+        this.repository = repository;
+        this.mongoOperations = mongoOperations;
+        this.settings = settings;
+        this.lag = Timer.builder("user.directory.replication.lag")
+                .description("Time from a change committing in Mongo to the directory applying it")
+                .register(meterRegistry);
+        this.resyncs = Counter.builder("user.directory.resyncs")
+                .description("Full reloads after a gap in the change stream")
+                .register(meterRegistry);
+    }
+
+    public void start() {
+        syncing = Flux.defer(this::sync)
+                .concatWith(Mono.error(() -> new IllegalStateException("User change stream ended")))
+                .doOnError(e -> directory.markStale())
+                .doOnError(e -> !(e instanceof StandaloneServerException), e ->
+                        log.warn("User directory lost its change stream, reading users from Mongo until it reloads: {}", e.getMessage()))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, settings.minBackoff())
+                        .maxBackoff(settings.maxBackoff())
+                        .transientErrors(true)
+                        .filter(e -> !(e instanceof StandaloneServerException))
+                        .doBeforeRetry(signal -> resyncs.increment()))
+                .subscribe(null, e -> log.error("User directory disabled, reading every user from Mongo: {}", e.getMessage()));
+    }
+
+    public void stop() {
+        if (syncing != null) {
+            syncing.dispose();
+        }
+        directory.markStale();
+    }
+
+    private Flux<ChangeStreamEvent<Document>> sync() {
+        return mongoOperations.executeCommand(new Document("hello", 1))
+                .map(reply -> {
+                    if (!(reply.get("operationTime") instanceof BsonTimestamp operationTime)) {
+                        throw new StandaloneServerException();
+                    }
+                    return operationTime;
+                })
+                .flatMapMany(from -> repository.findAll().collectList()
+                        .doOnNext(users -> {
+                            directory.reset(users);
+                            log.info("Loaded {} users into the user directory", users.size());
+                        })
+                        .thenMany(mongoOperations.changeStream(UserDocument.COLLECTION, ChangeStreamOptions.builder()
+                                .fullDocumentLookup(FullDocument.UPDATE_LOOKUP)
+                                .resumeAt(from)
+                                .build(), Document.class)))
+                .doOnNext(this::apply);
+    }
+
+    /**
+     * Documents still keyed by a string id are skipped: the UUID migration rewrites each of them
+     * under its binary id, which arrives as a change of its own.
+     */
+    void apply(ChangeStreamEvent<Document> event) {
+        ChangeStreamDocument<Document> change = event.getRaw();
+        switch (event.getOperationType()) {
+            case INSERT, UPDATE, REPLACE -> {
+                Document document = change.getFullDocument();
+                // an update whose document is gone by the lookup is followed by its delete
+                if (document != null && document.get("_id") instanceof UUID) {
+                    directory.put(mongoOperations.getConverter().read(UserDocument.class, document).toDomain());
+                }
+            }
+            case DELETE -> {
+                BsonValue id = change.getDocumentKey() == null ? null : change.getDocumentKey().get("_id");
+                if (id != null && id.isBinary()) {
+                    directory.remove(id.asBinary().asUuid());
+                }
+            }
+            case DROP, RENAME, DROP_DATABASE, INVALIDATE ->
+                    throw new IllegalStateException("User collection " + event.getOperationType().getValue());
+            default -> {
+                return;
+            }
+        }
+        // the wall time has millisecond precision, the cluster time only seconds
+        Instant committed = change.getWallTime() != null
+                ? Instant.ofEpochMilli(change.getWallTime().getValue())
+                : event.getTimestamp();
+        if (committed != null) {
+            lag.record(Duration.between(committed, Instant.now()));
+        }
+    }
+
+    /**
+     * @param minBackoff first wait before reloading after a gap
+     * @param maxBackoff longest wait between reload attempts
+     */
+    public record Settings(Duration minBackoff, Duration maxBackoff) {
+    }
+
+    private static class StandaloneServerException extends IllegalStateException {
+
+        StandaloneServerException() {
+            super("Mongo reports no operation time; change streams need a replica set "
+                    + "(set user.directory.enabled=false against a standalone server)");
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package us.dtaylor.userservice.infastructure.messaging;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.kafka.core.KafkaTemplate;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+import us.dtaylor.userservice.domain.event.UserEvent;
+import us.dtaylor.userservice.domain.event.UserEventPublisher;
+import us.dtaylor.userservice.infastructure.codec.JsonCodecs;
+
+import java.time.Duration;
+
+/**
+ * Publishes user events as JSON, keyed by user id so every change to a user lands on the same
+ * partition in order and a compacted topic keeps the latest state of each user.
+ *
+ * <p>A failed send is retried a few times with backoff, still within the request so that events
+ * for one user keep their order. The user has already been written by then, so a send that still
+ * fails is logged and counted rather than failing the request. Consumers fall back to asking this
+ * service for users they have not seen and re-check users they have not had confirmed for a
+ * while, so a lost event leaves their copy wrong for a bounded time only.
+ */
+@Slf4j
+public class KafkaUserEventPublisher implements UserEventPublisher {
+
+    private final KafkaTemplate<String, byte[]> kafkaTemplate;
+    private final JsonCodecs jsonCodecs;
+    private final String topic;
+    private final int maxRetries;
+    private final Duration retryBackoff;
+    private final Counter retries;
+    private final Counter failures;
+
+    public KafkaUserEventPublisher(KafkaTemplate<String, byte[]> kafkaTemplate, JsonCodecs jsonCodecs,
+                                   String topic, int maxRetries, Duration retryBackoff, MeterRegistry meterRegistry) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.jsonCodecs = jsonCodecs;
+        this.topic = topic;
+        this.maxRetries = maxRetries;
+        this.retryBackoff = retryBackoff;
+        this.retries = meterRegistry.counter("user.events.publish.retries");
+        this.failures = meterRegistry.counter("user.events.publish.failures");
+    }
+
+    @Override
+    public Mono<Void> publish(UserEvent event) {
+        // send() blocks while it fetches topic metadata, so keep it off the event loop
+        return Mono.fromCallable(() -> jsonCodecs.writeUserEvent(event))
+                .flatMap(json -> Mono.fromFuture(() -> kafkaTemplate.send(topic, event.id().toString(), json)))
+                .subscribeOn(Schedulers.boundedElastic())
+                .retryWhen(Retry.backoff(maxRetries, retryBackoff)
+                        .doBeforeRetry(signal -> {
+                            retries.increment();
+                            log.debug("Retrying {} event for user {}: {}", event.type(), event.id(), signal.failure().getMessage());
+                        })
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()))
+                .doOnError(e -> {
+                    failures.increment();
+                    log.warn("Failed to publish {} event for user {}: {}", event.type(), event.id(), e.getMessage());
+                })
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+}
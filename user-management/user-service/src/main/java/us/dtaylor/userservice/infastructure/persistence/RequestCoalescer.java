@@ -0,0 +1,91 @@
+package us.dtaylor.userservice.infastructure.persistence;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Collapses concurrent lookups of the same key into one query. The first caller's load is
+ * cached and shared by everyone who asks for the key while it is in flight and, with a non-zero
+ * {@code ttl}, for that long after it completes. Errors are never kept. Each subscriber gets its
+ * own copy of the value, so a caller mutating its result cannot affect another's.
+ *
+ * <p>Writers {@link #invalidate(Object)} the key so a read that starts after a write does not
+ * pick up a value loaded before it.
+ */
+public class RequestCoalescer<K, V> {
+
+    private final Map<K, Mono<V>> shared = new ConcurrentHashMap<>();
+    private final Duration ttl;
+    private final UnaryOperator<V> copier;
+    private final Scheduler scheduler;
+    private final Counter coalesced;
+
+    public RequestCoalescer(String name, Duration ttl, UnaryOperator<V> copier, MeterRegistry meterRegistry) {
+        this(name, ttl, copier, meterRegistry, Schedulers.parallel());
+    }
+
+    RequestCoalescer(String name, Duration ttl, UnaryOperator<V> copier, MeterRegistry meterRegistry, Scheduler scheduler) {
+        this.ttl = ttl;
+        this.copier = copier;
+        this.scheduler = scheduler;
+        this.coalesced = Counter.builder("repository.reads.coalesced")
+                .description("Lookups answered by another caller's in-flight or just-completed query")
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    public Mono<V> get(K key, Function<K, Mono<V>> loader) {
+        return Mono.defer(() -> {
+            boolean[] loading = {false};
+            Mono<V> result = shared.computeIfAbsent(key, k -> {
+                loading[0] = true;
+                return share(k, loader);
+            });
+            if (!loading[0]) {
+                coalesced.increment();
+            }
+            return result.map(copier);
+        });
+    }
+
+    public void invalidate(K key) {
+        shared.remove(key);
+    }
+
+    public void invalidateAll() {
+        shared.clear();
+    }
+
+    int size() {
+        return shared.size();
+    }
+
+    private Mono<V> share(K key, Function<K, Mono<V>> loader) {
+        AtomicReference<Mono<V>> self = new AtomicReference<>();
+        Mono<V> mono = loader.apply(key)
+                .doFinally(signal -> expire(key, self.get(), signal))
+                .cache();
+        self.set(mono);
+        return mono;
+    }
+
+    private void expire(K key, Mono<V> mono, SignalType signal) {
+        if (signal != SignalType.ON_COMPLETE || ttl.isZero()) {
+            shared.remove(key, mono);
+        } else {
+            scheduler.schedule(() -> shared.remove(key, mono), ttl.toNanos(), TimeUnit.NANOSECONDS);
+        }
+    }
+}
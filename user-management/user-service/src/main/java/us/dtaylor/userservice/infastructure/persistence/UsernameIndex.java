@@ -0,0 +1,59 @@
+package us.dtaylor.userservice.infastructure.persistence;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Collation;
+import reactor.core.Disposable;
+import us.dtaylor.userservice.infastructure.UserDocument;
+
+import java.util.Locale;
+
+/**
+ * Unique, case-insensitive index on user names. Queries on {@code name} have to carry the same
+ * {@link #COLLATION} for Mongo to use it.
+ *
+ * <p>The index is created once the {@link UuidMigration} is complete: the migration inserts each
+ * user's binary-keyed copy before removing the original, and the index would reject that copy
+ * as a duplicate name. If stored names already clash, creation fails; that is logged, and
+ * lookups keep working without the index until the duplicates are resolved and the service is
+ * restarted.
+ */
+@Slf4j
+public class UsernameIndex {
+
+    /**
+     * English, comparing letters and accents but not case.
+     */
+    public static final Collation COLLATION = Collation.of(Locale.ENGLISH).strength(Collation.ComparisonLevel.secondary());
+
+    public static final String NAME = "name_ci_unique";
+
+    private final ReactiveMongoOperations mongoOperations;
+    private final UuidMigration uuidMigration;
+    private Disposable creating;
+
+    public UsernameIndex(ReactiveMongoOperations mongoOperations, UuidMigration uuidMigration) {
+        this.mongoOperations = mongoOperations;
+        this.uuidMigration = uuidMigration;
+    }
+
+    public void start() {
+        creating = uuidMigration.whenComplete()
+                .then(mongoOperations.indexOps(UserDocument.COLLECTION).ensureIndex(new Index("name", Sort.Direction.ASC)
+                        .named(NAME)
+                        .unique()
+                        .collation(COLLATION)))
+                .subscribe(
+                        name -> log.info("Ensured index {} on {}", name, UserDocument.COLLECTION),
+                        e -> log.error("Could not create the unique user name index, user names are not protected "
+                                + "against case-insensitive duplicates: {}", e.getMessage()));
+    }
+
+    public void stop() {
+        if (creating != null) {
+            creating.dispose();
+        }
+    }
+}
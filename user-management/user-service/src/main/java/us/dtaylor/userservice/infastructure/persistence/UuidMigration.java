@@ -0,0 +1,151 @@
+package us.dtaylor.userservice.infastructure.persistence;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Background migration of a collection from string ids to binary UUIDs. Documents whose
+ * {@code _id} is still a string are read in batches, in id order, and re-inserted under the
+ * binary id with the listed reference fields converted too; the string-keyed original is then
+ * removed. Because migrated documents leave the set being scanned, a migration stopped by a
+ * restart simply picks up where it left off.
+ *
+ * <p>If the application already saved a newer version under the binary id, the insert fails on
+ * the duplicate key and only the stale original is removed. If the application deleted the
+ * document after it was read, removing the original finds nothing, and the copy just inserted is
+ * removed again, matched by the fresh {@code version} it was given so a newer write under the
+ * binary id is kept. Until {@link #isComplete()} the repository also looks up and cleans up
+ * string-keyed documents itself.
+ */
+@Slf4j
+public class UuidMigration {
+
+    private static final String VERSION = "version";
+
+    private final ReactiveMongoOperations mongoOperations;
+    private final String collection;
+    private final List<String> uuidFields;
+    private final int batchSize;
+    private final Duration pause;
+
+    private final AtomicLong migrated = new AtomicLong();
+    private volatile boolean complete;
+    private final Sinks.Empty<Void> completed = Sinks.empty();
+    private Disposable running;
+
+    public UuidMigration(ReactiveMongoOperations mongoOperations, String collection, List<String> uuidFields,
+                         int batchSize, Duration pause) {
+        this.mongoOperations = mongoOperations;
+        this.collection = collection;
+        this.uuidFields = uuidFields;
+        this.batchSize = batchSize;
+        this.pause = pause;
+    }
+
+    public void start() {
+        running = migrate().subscribe(
+                count -> log.info("Migrated {} {} documents to binary UUIDs", count, collection),
+                e -> log.warn("UUID migration of {} stopped after {} documents, it resumes on the next start: {}",
+                        collection, migrated.get(), e.getMessage()));
+    }
+
+    public void stop() {
+        if (running != null) {
+            running.dispose();
+        }
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Completes once no string-keyed documents are left; never completes if the migration stops
+     * on an error, until it is run again.
+     */
+    public Mono<Void> whenComplete() {
+        return completed.asMono();
+    }
+
+    /**
+     * Migrates every string-keyed document and completes with the number rewritten.
+     */
+    public Mono<Long> migrate() {
+        return batch("")
+                .expand(lastId -> Mono.delay(pause).then(batch(lastId)))
+                .then(Mono.fromCallable(() -> {
+                    complete = true;
+                    completed.tryEmitEmpty();
+                    return migrated.get();
+                }));
+    }
+
+    /**
+     * Migrates the next batch after {@code afterId} and emits the last id it saw, or nothing
+     * once no string-keyed documents are left.
+     */
+    private Mono<String> batch(String afterId) {
+        Query next = query(where("_id").type(JsonSchemaObject.Type.STRING).gt(afterId))
+                .with(Sort.by("_id"))
+                .limit(batchSize);
+        return mongoOperations.find(next, Document.class, collection)
+                .collectList()
+                .flatMap(documents -> documents.isEmpty()
+                        ? Mono.empty()
+                        : Flux.fromIterable(documents)
+                                .concatMap(this::migrate)
+                                .then(Mono.just(documents.get(documents.size() - 1).getString("_id"))));
+    }
+
+    private Mono<Void> migrate(Document legacy) {
+        String legacyId = legacy.getString("_id");
+        Document converted = new Document(legacy);
+        try {
+            converted.put("_id", UUID.fromString(legacyId));
+            for (String field : uuidFields) {
+                if (converted.get(field) instanceof String value) {
+                    converted.put(field, UUID.fromString(value));
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            log.warn("Leaving {} document {} with a non-UUID id as it is", collection, legacyId);
+            return Mono.empty();
+        }
+        converted.put(VERSION, DocumentVersions.next());
+        return mongoOperations.insert(converted, collection)
+                .map(inserted -> true)
+                .onErrorResume(DuplicateKeyException.class, e -> Mono.just(false))
+                .flatMap(inserted -> mongoOperations.remove(query(where("_id").is(legacyId)), collection)
+                        .flatMap(removed -> inserted && removed.getDeletedCount() == 0 ? discard(converted) : Mono.empty()))
+                .doOnSuccess(result -> migrated.incrementAndGet())
+                .then();
+    }
+
+    /**
+     * Removes a copy whose original was deleted while it was being migrated, unless the
+     * application has written it since.
+     */
+    private Mono<Void> discard(Document converted) {
+        return mongoOperations.remove(query(where("_id").is(converted.get("_id")).and(VERSION).is(converted.get(VERSION))), collection)
+                .doOnNext(removed -> log.debug("Dropped migrated {} document {}, deleted during its migration",
+                        collection, converted.get("_id")))
+                .then();
+    }
+}
@@ -0,0 +1,142 @@
+package us.dtaylor.userservice.infastructure.persistence.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import us.dtaylor.userservice.domain.User;
+import us.dtaylor.userservice.domain.UserField;
+import us.dtaylor.userservice.domain.UserImportResult;
+import us.dtaylor.userservice.domain.repository.UserRepository;
+import us.dtaylor.userservice.infastructure.directory.UserDirectory;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Serves reads from the in-memory {@link UserDirectory} while it is ready, and from the Mongo
+ * repository it decorates while it is not. Mongo stays the source of truth: writes go to it and
+ * are then applied to the directory, so this instance reads its own writes before their change
+ * event arrives.
+ *
+ * <p>A lookup the directory misses also goes to Mongo, since the user may have been created
+ * through another instance moments ago. Listings are only answered when the directory is ready,
+ * and {@link #listVersion()} then follows the directory, so a list and its tag always come from
+ * the same source.
+ */
+public class DirectoryUserRepository implements UserRepository {
+
+    private final UserRepository delegate;
+    private final UserDirectory directory;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter fallbacks;
+
+    public DirectoryUserRepository(UserRepository delegate, UserDirectory directory, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.directory = directory;
+        this.hits = meterRegistry.counter("user.directory.lookups", "result", "hit");
+        this.misses = meterRegistry.counter("user.directory.lookups", "result", "miss");
+        this.fallbacks = meterRegistry.counter("user.directory.lookups", "result", "fallback");
+    }
+
+    @Override
+    public Mono<Void> deleteAll() {
+        return delegate.deleteAll()
+                .then(Mono.fromRunnable(() -> directory.ids().forEach(directory::remove)));
+    }
+
+    @Override
+    public Mono<User> save(User user) {
+        return delegate.save(user)
+                .doOnNext(directory::put);
+    }
+
+    @Override
+    public Flux<UserImportResult> insertAll(List<User> users) {
+        return delegate.insertAll(users)
+                .doOnNext(result -> {
+                    if (result.isCreated()) {
+                        directory.put(result.user());
+                    }
+                });
+    }
+
+    @Override
+    public Flux<User> findAll() {
+        return list(() -> Flux.fromIterable(directory.all()), delegate::findAll);
+    }
+
+    /**
+     * Users from the directory are already in memory, so they come back whole.
+     */
+    @Override
+    public Flux<User> findAll(Set<UserField> fields) {
+        return list(() -> Flux.fromIterable(directory.all()), () -> delegate.findAll(fields));
+    }
+
+    @Override
+    public Flux<User> findPage(UUID after, int limit, Set<UserField> fields) {
+        return list(() -> Flux.fromIterable(directory.page(after, limit)), () -> delegate.findPage(after, limit, fields));
+    }
+
+    @Override
+    public Flux<UUID> findAllIds() {
+        return list(() -> Flux.fromIterable(directory.ids()), delegate::findAllIds);
+    }
+
+    @Override
+    public Mono<User> findById(UUID id) {
+        return lookup(() -> directory.get(id), () -> delegate.findById(id));
+    }
+
+    @Override
+    public Mono<Long> listVersion() {
+        return Mono.defer(() -> directory.isReady() ? Mono.just(directory.version()) : delegate.listVersion());
+    }
+
+    @Override
+    public Mono<Void> delete(User user) {
+        return delegate.delete(user)
+                .then(Mono.fromRunnable(() -> directory.remove(user.getId())));
+    }
+
+    @Override
+    public Mono<User> findByUserName(String username) {
+        return lookup(() -> directory.getByName(username), () -> delegate.findByUserName(username));
+    }
+
+    @Override
+    public Flux<User> findByNamePrefix(String prefix, int limit) {
+        return list(() -> Flux.fromIterable(directory.searchByName(prefix, limit)), () -> delegate.findByNamePrefix(prefix, limit));
+    }
+
+    private <T> Flux<T> list(Supplier<Flux<T>> fromDirectory, Supplier<Flux<T>> fromMongo) {
+        return Flux.defer(() -> {
+            if (directory.isReady()) {
+                hits.increment();
+                return fromDirectory.get();
+            }
+            fallbacks.increment();
+            return fromMongo.get();
+        });
+    }
+
+    private Mono<User> lookup(Supplier<User> fromDirectory, Supplier<Mono<User>> fromMongo) {
+        return Mono.defer(() -> {
+            if (!directory.isReady()) {
+                fallbacks.increment();
+                return fromMongo.get();
+            }
+            User user = fromDirectory.get();
+            if (user != null) {
+                hits.increment();
+                return Mono.just(user);
+            }
+            misses.increment();
+            return fromMongo.get();
+        });
+    }
+}
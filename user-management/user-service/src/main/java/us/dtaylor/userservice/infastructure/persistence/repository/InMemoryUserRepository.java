@@ -0,0 +1,128 @@
+package us.dtaylor.userservice.infastructure.persistence.repository;
+
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import us.dtaylor.userservice.domain.User;
+import us.dtaylor.userservice.domain.UserField;
+import us.dtaylor.userservice.domain.repository.UserRepository;
+
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link UserRepository} held entirely in memory, for load tests and single-node deployments
+ * that do not run Mongo. Users are kept in a concurrent primary map with a name index for
+ * {@code findByUserName}, keyed by the lower-cased name to ignore case like the Mongo adapter.
+ * Prefix searches and pages scan every user. Stored and returned users are copies, matching the
+ * detached objects the Mongo adapter hands out.
+ */
+@Component
+@Primary
+@Profile(InMemoryUserRepository.PROFILE)
+public class InMemoryUserRepository implements UserRepository {
+
+    public static final String PROFILE = "in-memory";
+
+    private final Map<UUID, User> users = new ConcurrentHashMap<>();
+    private final Map<String, UUID> userIdsByName = new ConcurrentHashMap<>();
+
+    @Override
+    public Mono<Void> deleteAll() {
+        return Mono.fromRunnable(() -> {
+            users.clear();
+            userIdsByName.clear();
+        });
+    }
+
+    @Override
+    public Mono<User> save(User user) {
+        return Mono.fromSupplier(() -> {
+            User stored = copy(user);
+            if (stored.getId() == null) {
+                stored.setId(UUID.randomUUID());
+            }
+            User previous = users.put(stored.getId(), stored);
+            if (previous != null && !Objects.equals(previous.getName(), stored.getName())) {
+                unindex(previous);
+            }
+            if (stored.getName() != null) {
+                userIdsByName.put(fold(stored.getName()), stored.getId());
+            }
+            return copy(stored);
+        });
+    }
+
+    @Override
+    public Flux<User> findAll() {
+        return Flux.defer(() -> Flux.fromIterable(users.values()).map(InMemoryUserRepository::copy));
+    }
+
+    @Override
+    public Flux<User> findPage(UUID after, int limit, Set<UserField> fields) {
+        return Flux.defer(() -> Flux.fromStream(users.values().stream()
+                .filter(user -> after == null || ID_ORDER.compare(user.getId(), after) > 0)
+                .sorted(Comparator.comparing(User::getId, ID_ORDER))
+                .limit(limit)
+                .map(InMemoryUserRepository::copy)));
+    }
+
+    @Override
+    public Flux<UUID> findAllIds() {
+        return Flux.defer(() -> Flux.fromIterable(users.keySet()));
+    }
+
+    @Override
+    public Mono<User> findById(UUID id) {
+        return Mono.fromSupplier(() -> users.get(id)).map(InMemoryUserRepository::copy);
+    }
+
+    @Override
+    public Mono<Void> delete(User user) {
+        return Mono.fromRunnable(() -> {
+            User removed = users.remove(user.getId());
+            if (removed != null) {
+                unindex(removed);
+            }
+        });
+    }
+
+    @Override
+    public Mono<User> findByUserName(String username) {
+        return Mono.fromSupplier(() -> userIdsByName.get(fold(username)))
+                .mapNotNull(users::get)
+                .filter(user -> username.equalsIgnoreCase(user.getName()))
+                .map(InMemoryUserRepository::copy);
+    }
+
+    @Override
+    public Flux<User> findByNamePrefix(String prefix, int limit) {
+        String folded = fold(prefix);
+        return Flux.defer(() -> Flux.fromStream(users.values().stream()
+                .filter(user -> user.getName() != null && fold(user.getName()).startsWith(folded))
+                .sorted(Comparator.comparing(user -> fold(user.getName())))
+                .limit(limit)
+                .map(InMemoryUserRepository::copy)));
+    }
+
+    private void unindex(User user) {
+        if (user.getName() != null) {
+            userIdsByName.remove(fold(user.getName()), user.getId());
+        }
+    }
+
+    private static String fold(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    private static User copy(User user) {
+        return new User(user.getId(), user.getName(), user.getEmail());
+    }
+}
@@ -1,34 +1,135 @@
 package us.dtaylor.userservice.infastructure.persistence.repository;
 
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.InsertManyOptions;
+import org.bson.BsonType;
+import org.bson.Document;
 import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import us.dtaylor.userservice.domain.User;
+import us.dtaylor.userservice.domain.UserField;
+import us.dtaylor.userservice.domain.UserImportResult;
 import us.dtaylor.userservice.domain.repository.UserRepository;
 import us.dtaylor.userservice.infastructure.UserDocument;
+import us.dtaylor.userservice.infastructure.persistence.DocumentVersions;
+import us.dtaylor.userservice.infastructure.persistence.RequestCoalescer;
+import us.dtaylor.userservice.infastructure.persistence.UsernameIndex;
+import us.dtaylor.userservice.infastructure.persistence.UuidMigration;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.regex.Pattern;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
 
 @Component
 @Primary
+@Profile("!" + InMemoryUserRepository.PROFILE)
 public class MongoDbUserRepository implements UserRepository {
 
+    /**
+     * Holds the single marker document {@code {_id: "users", version}}, which gets a new version
+     * after every write or delete of a user.
+     */
+    public static final String LIST_VERSION = "userListVersion";
+    private static final String LIST_VERSION_ID = "users";
+
     private final SpringDataMongoUserRepository repository;
+    private final ReactiveMongoOperations mongoOperations;
+    private final UuidMigration uuidMigration;
+    private final RequestCoalescer<UUID, User> reads;
 
-    public MongoDbUserRepository(SpringDataMongoUserRepository repository) {
+    public MongoDbUserRepository(SpringDataMongoUserRepository repository,
+                                 ReactiveMongoOperations mongoOperations,
+                                 UuidMigration userUuidMigration,
+                                 RequestCoalescer<UUID, User> userReadCoalescer) {
         this.repository = repository;
+        this.mongoOperations = mongoOperations;
+        this.uuidMigration = userUuidMigration;
+        this.reads = userReadCoalescer;
     }
 
     @Override
     public Mono<Void> deleteAll() {
-        return repository.deleteAll();
+        return repository.deleteAll()
+                .then(touch())
+                .doOnSuccess(done -> reads.invalidateAll());
     }
 
     @Override
     public Mono<User> save(User user) {
         return repository.save(UserDocument.toDocument(user))
-                .map(UserDocument::toDomain);
+                .map(UserDocument::toDomain)
+                .flatMap(saved -> removeLegacy(saved.getId()).then(touch()).thenReturn(saved))
+                .doOnNext(saved -> reads.invalidate(saved.getId()));
+    }
+
+    /**
+     * Inserts all users with one unordered {@code insertMany}, so a taken name or id fails only
+     * its own document, and reads each user's outcome from the write errors, which carry its
+     * position in the batch.
+     */
+    @Override
+    public Flux<UserImportResult> insertAll(List<User> users) {
+        return Flux.defer(() -> {
+            if (users.isEmpty()) {
+                return Flux.empty();
+            }
+            List<UserDocument> documents = users.stream().map(UserDocument::toDocument).toList();
+            List<Document> inserts = documents.stream().map(this::toBson).toList();
+            return mongoOperations.getCollection(UserDocument.COLLECTION)
+                    .flatMap(collection -> Mono.from(collection.insertMany(inserts, new InsertManyOptions().ordered(false))))
+                    .thenReturn(Map.<Integer, BulkWriteError>of())
+                    .onErrorResume(MongoBulkWriteException.class, e -> Mono.just(e.getWriteErrors().stream()
+                            .collect(Collectors.toMap(BulkWriteError::getIndex, Function.identity()))))
+                    .flatMapMany(errors -> {
+                        List<UserImportResult> results = new ArrayList<>(documents.size());
+                        for (int i = 0; i < documents.size(); i++) {
+                            BulkWriteError error = errors.get(i);
+                            results.add(error == null ? UserImportResult.created(documents.get(i).toDomain()) : toResult(error));
+                        }
+                        List<UUID> created = results.stream().filter(UserImportResult::isCreated).map(result -> result.user().getId()).toList();
+                        if (created.isEmpty()) {
+                            return Flux.fromIterable(results);
+                        }
+                        return removeLegacy(created)
+                                .then(touch())
+                                .doOnSuccess(done -> created.forEach(reads::invalidate))
+                                .thenMany(Flux.fromIterable(results));
+                    });
+        });
+    }
+
+    private Document toBson(UserDocument document) {
+        Document bson = new Document();
+        mongoOperations.getConverter().write(document, bson);
+        return bson;
+    }
+
+    private static UserImportResult toResult(BulkWriteError error) {
+        if (ErrorCategory.fromErrorCode(error.getCode()) != ErrorCategory.DUPLICATE_KEY) {
+            return UserImportResult.failed(error.getMessage());
+        }
+        return UserImportResult.conflict(error.getMessage().contains(UsernameIndex.NAME)
+                ? "User name is already taken"
+                : "User id already exists");
     }
 
     @Override
@@ -37,19 +138,157 @@ public class MongoDbUserRepository implements UserRepository {
                 .map(UserDocument::toDomain);
     }
 
+    /**
+     * Pushes the field selection down as a projection, so unrequested fields are neither read
+     * from disk nor sent by the server.
+     */
+    @Override
+    public Flux<User> findAll(Set<UserField> fields) {
+        if (fields.containsAll(UserField.ALL)) {
+            return findAll();
+        }
+        return find(new Query(), fields);
+    }
+
+    /**
+     * A range on the {@code _id} index, read in index order. Users still under a string id, which
+     * only happens while the UUID migration runs, are not paged, since a range over binary ids
+     * never matches a string.
+     */
+    @Override
+    public Flux<User> findPage(UUID after, int limit, Set<UserField> fields) {
+        Query page = query(after == null ? where("_id").type(BsonType.BINARY.getValue()) : where("_id").gt(after))
+                .with(Sort.by("_id"))
+                .limit(limit);
+        return find(page, fields);
+    }
+
+    private Flux<User> find(Query query, Set<UserField> fields) {
+        if (fields.containsAll(UserField.ALL)) {
+            return mongoOperations.find(query, UserDocument.class)
+                    .map(UserDocument::toDomain);
+        }
+        fields.forEach(field -> query.fields().include(field == UserField.ID ? "_id" : field.property()));
+        return mongoOperations.find(query, UserDocument.class)
+                .map(document -> document.toDomain(fields));
+    }
+
+    /**
+     * Reads only {@code _id}, which the {@code _id} index covers. String ids left by an unfinished
+     * UUID migration are converted; any that are not UUIDs are skipped.
+     */
+    @Override
+    public Flux<UUID> findAllIds() {
+        Query ids = new Query();
+        ids.fields().include("_id");
+        return mongoOperations.find(ids, Document.class, UserDocument.COLLECTION)
+                .mapNotNull(document -> document.get("_id") instanceof String legacy
+                        ? parseLegacyId(legacy)
+                        : document.get("_id", UUID.class));
+    }
+
+    /**
+     * Concurrent lookups of the same id share one query; see {@link RequestCoalescer}.
+     */
     @Override
     public Mono<User> findById(UUID id) {
-        return repository.findById(id.toString())
-                .map(UserDocument::toDomain);
+        return reads.get(id, this::load);
+    }
+
+    private Mono<User> load(UUID id) {
+        return repository.findById(id)
+                .map(UserDocument::toDomain)
+                .switchIfEmpty(Mono.defer(() -> uuidMigration.isComplete()
+                        ? Mono.empty()
+                        : mongoOperations.findOne(query(where("_id").is(id.toString())), Document.class, UserDocument.COLLECTION)
+                                .map(MongoDbUserRepository::fromLegacy)));
     }
 
     @Override
     public Mono<Void> delete(User user) {
-        return repository.delete(UserDocument.toDocument(user));
+        return repository.delete(UserDocument.toDocument(user))
+                .then(removeLegacy(user.getId()))
+                .then(touch())
+                .doOnSuccess(done -> reads.invalidate(user.getId()));
     }
 
+    /**
+     * Ignores case, using the collation of the {@link UsernameIndex}.
+     */
     @Override
     public Mono<User> findByUserName(String username) {
-        return repository.findByName(username).map(UserDocument::toDomain);
+        return mongoOperations.findOne(query(where("name").is(username)).collation(UsernameIndex.COLLATION), UserDocument.class)
+                .map(UserDocument::toDomain);
+    }
+
+    /**
+     * Bounded by the {@link UsernameIndex}: under its collation every name starting with
+     * {@code prefix} sorts from {@code prefix} up to {@code prefix} followed by U+FFFF, which
+     * sorts after every other character. Names in that range that differ only by accents are
+     * left out by the case-insensitive regular expression, which Mongo checks on the index keys.
+     * The sort uses the same collation, so matches come back in index order, and in the same
+     * order as from {@code UserDirectory}.
+     */
+    @Override
+    public Flux<User> findByNamePrefix(String prefix, int limit) {
+        // a regex on the same criteria would replace the range rather than join it
+        Query matching = query(new Criteria().andOperator(
+                where("name").gte(prefix).lt(prefix + Character.MAX_VALUE),
+                where("name").regex("^" + Pattern.quote(prefix), "i")))
+                .with(Sort.by("name"))
+                .limit(limit)
+                .collation(UsernameIndex.COLLATION);
+        return mongoOperations.find(matching, UserDocument.class)
+                .map(UserDocument::toDomain);
+    }
+
+    /**
+     * Reads the marker; zero when no user has been written since markers were introduced.
+     */
+    @Override
+    public Mono<Long> listVersion() {
+        return mongoOperations.findById(LIST_VERSION_ID, Document.class, LIST_VERSION)
+                .map(marker -> marker.getLong("version"))
+                .defaultIfEmpty(0L);
+    }
+
+    /**
+     * Gives the list a new marker. Called after the write, so a reader can see the written users
+     * under the old marker, which costs it one more full read, but never the new marker with
+     * the old users.
+     */
+    private Mono<Void> touch() {
+        return mongoOperations.upsert(query(where("_id").is(LIST_VERSION_ID)),
+                Update.update("version", DocumentVersions.next()), LIST_VERSION).then();
+    }
+
+    /**
+     * Drops the string-keyed copy of a user while the UUID migration is still running, so a write
+     * under the binary id is not shadowed or later overwritten by its old version.
+     */
+    private Mono<Void> removeLegacy(UUID id) {
+        if (uuidMigration.isComplete() || id == null) {
+            return Mono.empty();
+        }
+        return mongoOperations.remove(query(where("_id").is(id.toString())), UserDocument.COLLECTION).then();
+    }
+
+    private Mono<Void> removeLegacy(Collection<UUID> ids) {
+        if (uuidMigration.isComplete()) {
+            return Mono.empty();
+        }
+        return mongoOperations.remove(query(where("_id").in(ids.stream().map(UUID::toString).toList())), UserDocument.COLLECTION).then();
+    }
+
+    private static UUID parseLegacyId(String id) {
+        try {
+            return UUID.fromString(id);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static User fromLegacy(Document document) {
+        return new User(UUID.fromString(document.getString("_id")), document.getString("name"), document.getString("email"));
     }
 }
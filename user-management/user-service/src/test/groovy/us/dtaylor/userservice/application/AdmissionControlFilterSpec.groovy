@@ -0,0 +1,93 @@
+package us.dtaylor.userservice.application
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.http.HttpStatus
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest
+import org.springframework.mock.web.server.MockServerWebExchange
+import org.springframework.web.server.WebFilterChain
+import reactor.core.publisher.Mono
+import reactor.core.publisher.Sinks
+import spock.lang.Specification
+
+import java.time.Duration
+
+class AdmissionControlFilterSpec extends Specification {
+
+    static final InetSocketAddress CLIENT = new InetSocketAddress("10.0.0.1", 40000)
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    long now = 0
+
+    AdmissionControlFilter filter(int maxInFlight, double burst) {
+        new AdmissionControlFilter(new AdmissionControlFilter.Settings(
+                maxInFlight, 0.5, 10, burst, 5, ["/api/v1/users"], ["/actuator/**"], 1000, Duration.ofMinutes(10),
+                ["todo-service"], 10, burst * 10),
+                meterRegistry, { now })
+    }
+
+    static MockServerWebExchange get(String path, InetSocketAddress client = CLIENT) {
+        MockServerWebExchange.from(MockServerHttpRequest.get(path).remoteAddress(client))
+    }
+
+    static WebFilterChain passing = { exchange -> Mono.empty() }
+
+    def "clients are rate limited by address, and listing users costs more than a lookup"() {
+        given:
+        def filter = filter(100, 6)
+
+        when:
+        def list = get("/api/v1/users")
+        def lookup = get("/api/v1/users/${UUID.randomUUID()}")
+        def limited = get("/api/v1/users/${UUID.randomUUID()}")
+        def otherClient = get("/api/v1/users/${UUID.randomUUID()}", new InetSocketAddress("10.0.0.2", 40000))
+        [list, lookup, limited, otherClient].each { filter.filter(it, passing).block() }
+
+        then:
+        list.response.statusCode == null
+        lookup.response.statusCode == null
+        limited.response.statusCode == HttpStatus.TOO_MANY_REQUESTS
+        limited.response.headers.getFirst("Retry-After") == "1"
+        otherClient.response.statusCode == null
+        meterRegistry.get("http.server.admission.rejected").tags("reason", "rate-limited", "class", "read").counter().count() == 1
+    }
+
+    def "a known service gets its own larger bucket, an unknown service name is ignored"() {
+        given:
+        def filter = filter(100, 2)
+        def fromService = {
+            MockServerWebExchange.from(MockServerHttpRequest.get("/api/v1/users/${UUID.randomUUID()}")
+                    .remoteAddress(CLIENT)
+                    .header(AdmissionControlFilter.SERVICE_HEADER, it))
+        }
+
+        when:
+        def service = (1..20).collect { fromService("todo-service") }
+        def claimed = (1..3).collect { fromService("someone-else") }
+        (service + claimed).each { filter.filter(it, passing).block() }
+
+        then: "the service's calls do not touch the bucket of its address"
+        service.every { it.response.statusCode == null }
+        claimed*.response*.statusCode == [null, null, HttpStatus.TOO_MANY_REQUESTS]
+    }
+
+    def "list scans are shed first as in-flight requests approach the cap"() {
+        given:
+        def filter = filter(2, 100)
+        def release = Sinks.empty()
+        WebFilterChain holding = { exchange -> release.asMono() }
+        filter.filter(get("/api/v1/users/${UUID.randomUUID()}"), holding).subscribe()
+
+        when:
+        def list = get("/api/v1/users")
+        def lookup = get("/api/v1/users/${UUID.randomUUID()}")
+        def overflow = get("/api/v1/users/${UUID.randomUUID()}")
+        [list, lookup, overflow].each { filter.filter(it, holding).subscribe() }
+        release.tryEmitEmpty()
+
+        then:
+        list.response.statusCode == HttpStatus.SERVICE_UNAVAILABLE
+        lookup.response.statusCode == null
+        overflow.response.statusCode == HttpStatus.SERVICE_UNAVAILABLE
+        filter.inFlight() == 0
+    }
+}
@@ -11,6 +11,7 @@ import reactor.core.publisher.Mono
 import spock.lang.Specification
 import us.dtaylor.userservice.IntegrationTestConfiguration
 import us.dtaylor.userservice.domain.User
+import us.dtaylor.userservice.domain.UserField
 import us.dtaylor.userservice.domain.service.UserService
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -32,7 +33,7 @@ class UserControllerSpec extends Specification {
         def user = new User(
                 name: NAME,
                 email: "test@spock.com")
-        userService.getAllUsers() >> Flux.just(user)
+        userService.getAllUsers(UserField.ALL) >> Flux.just(user)
 
         when: "getAll endpoint is called"
         def response = webTestClient.get().uri("/api/v1/users")
@@ -0,0 +1,262 @@
+package us.dtaylor.userservice.application
+
+import com.fasterxml.jackson.core.type.TypeReference
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory
+import com.fasterxml.jackson.dataformat.smile.SmileFactory
+import org.springframework.http.HttpStatus
+import org.springframework.http.MediaType
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder
+import org.springframework.test.web.reactive.server.WebTestClient
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
+import spock.lang.Specification
+import us.dtaylor.userservice.domain.User
+import us.dtaylor.userservice.domain.UserField
+import us.dtaylor.userservice.domain.UserImportResult
+import us.dtaylor.userservice.domain.service.UserService
+import us.dtaylor.userservice.infastructure.codec.BinaryJacksonEncoders
+import us.dtaylor.userservice.infastructure.codec.JsonCodecs
+import us.dtaylor.userservice.infastructure.configuration.CodecConfiguration
+
+/**
+ * The controller alone, bound without a Spring context, with the application's Smile and CBOR
+ * codecs.
+ */
+class UserControllerWebSpec extends Specification {
+
+    UserService userService = Mock()
+
+    WebTestClient client = WebTestClient.bindToController(new UserController(userService, new JsonCodecs(new ObjectMapper())))
+            .httpMessageCodecs { new CodecConfiguration().binaryJacksonCodecs(Jackson2ObjectMapperBuilder.json(), Jackson2ObjectMapperBuilder.json().build()).customize(it) }
+            .build()
+
+    def "a user is tagged with its version and a matching If-None-Match gets a 304 without a body"() {
+        given:
+        def user = new User(UUID.randomUUID(), "alice", "alice@test.com", 0xabcL)
+        userService.getUserById(user.id) >> Mono.just(user)
+
+        expect:
+        client.get().uri("/api/v1/users/${user.id}").exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("ETag", '"abc-0"')
+                .expectBody().jsonPath('$.version').doesNotExist()
+        client.get().uri("/api/v1/users/${user.id}").header("If-None-Match", '"abc-0"').exchange()
+                .expectStatus().isEqualTo(HttpStatus.NOT_MODIFIED)
+                .expectBody().isEmpty()
+    }
+
+    def "a user without a version is sent untagged"() {
+        given:
+        def user = new User(UUID.randomUUID(), "alice", "alice@test.com")
+        userService.findByUsername("alice") >> Mono.just(user)
+
+        expect:
+        client.get().uri("/api/v1/users/username/alice").exchange()
+                .expectStatus().isOk()
+                .expectHeader().doesNotExist("ETag")
+    }
+
+    def "the list is answered 304 from the marker alone"() {
+        when:
+        def response = client.get().uri("/api/v1/users").header("If-None-Match", '"2a-7-0"').exchange()
+
+        then:
+        1 * userService.getUsersVersion() >> Mono.just(42L)
+        1 * userService.getAllUsers(UserField.ALL) >> Flux.defer {
+            throw new AssertionError("the list must not be read")
+        }
+        response.expectStatus().isEqualTo(HttpStatus.NOT_MODIFIED)
+    }
+
+    def "the list tag changes with the marker and with the field selection"() {
+        given:
+        userService.getAllUsers(_) >> Flux.empty()
+        userService.getUsersVersion() >>> [Mono.just(42L), Mono.just(43L), Mono.just(42L)]
+
+        expect:
+        client.get().uri("/api/v1/users").exchange()
+                .expectHeader().valueEquals("ETag", '"2a-7-0"')
+        client.get().uri("/api/v1/users").exchange()
+                .expectHeader().valueEquals("ETag", '"2b-7-0"')
+        client.get().uri("/api/v1/users?fields=id,name").exchange()
+                .expectHeader().valueEquals("ETag", '"2a-3-0"')
+    }
+
+    def "a sparse list only carries the selected fields"() {
+        given:
+        def user = new User(UUID.randomUUID(), "alice", "alice@test.com")
+        userService.getAllUsers(EnumSet.of(UserField.NAME)) >> Flux.just(user)
+        userService.getUsersVersion() >> Mono.empty()
+
+        expect:
+        client.get().uri("/api/v1/users?fields=name").exchange()
+                .expectStatus().isOk()
+                .expectHeader().doesNotExist("ETag")
+                .expectBody().json('[{"name": "alice"}]', true)
+    }
+
+    def "an unknown field is a bad request"() {
+        expect:
+        client.get().uri("/api/v1/users?fields=id,password").exchange()
+                .expectStatus().isBadRequest()
+    }
+
+    def "each representation of the list has its own tag"() {
+        given:
+        userService.getAllUsers(_) >> Flux.empty()
+        userService.getUsersVersion() >> Mono.just(42L)
+
+        when:
+        def tags = [MediaType.APPLICATION_JSON, MediaType.APPLICATION_CBOR, BinaryJacksonEncoders.APPLICATION_SMILE].collect { type ->
+            client.get().uri("/api/v1/users").accept(type).exchange()
+                    .expectHeader().valueEquals("Vary", "Accept")
+                    .returnResult(byte[]).responseHeaders.getETag()
+        }
+
+        then:
+        tags.toSet().size() == 3
+    }
+
+    def "the list is served as one #format array when the client asks for it"() {
+        given:
+        def users = (1..3).collect { new User(UUID.randomUUID(), "user$it", "user$it@test.com") }
+        userService.getAllUsers(UserField.ALL) >> Flux.fromIterable(users)
+        userService.getUsersVersion() >> Mono.empty()
+
+        when:
+        byte[] body = client.get().uri("/api/v1/users").accept(mediaType).exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(mediaType)
+                .expectBody(byte[]).returnResult().responseBody
+        List<User> decoded = new ObjectMapper(factory).readValue(body, new TypeReference<List<User>>() {})
+
+        then:
+        decoded*.id == users*.id
+        decoded*.name == users*.name
+        decoded*.email == users*.email
+
+        where:
+        format  | mediaType                               | factory
+        "Smile" | BinaryJacksonEncoders.APPLICATION_SMILE | new SmileFactory()
+        "CBOR"  | MediaType.APPLICATION_CBOR              | new CBORFactory()
+    }
+
+    def "a page starts after the cursor, always carries ids and streams as NDJSON"() {
+        given:
+        def after = UUID.randomUUID()
+        def users = (1..2).collect { new User(UUID.randomUUID(), "user$it", "user$it@test.com") }
+        userService.getUsersVersion() >> Mono.empty()
+
+        when:
+        def lines = client.get().uri("/api/v1/users?after=$after&limit=2&fields=name")
+                .accept(MediaType.APPLICATION_NDJSON).exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentType(MediaType.APPLICATION_NDJSON)
+                .expectBody(String).returnResult().responseBody
+                .readLines()
+
+        then:
+        1 * userService.getUsersPage(after, 2, EnumSet.of(UserField.ID, UserField.NAME)) >> Flux.fromIterable(users)
+        lines.collect { new ObjectMapper().readValue(it, Map) } == users.collect { [id: it.id.toString(), name: it.name] }
+    }
+
+    def "a page without a limit holds 100 users"() {
+        given:
+        def after = UUID.randomUUID()
+        userService.getUsersVersion() >> Mono.empty()
+
+        when:
+        client.get().uri("/api/v1/users?after=$after").exchange()
+                .expectStatus().isOk()
+
+        then:
+        1 * userService.getUsersPage(after, 100, UserField.ALL) >> Flux.empty()
+    }
+
+    def "a page limit of #limit is a bad request"() {
+        expect:
+        client.get().uri("/api/v1/users?limit=$limit").exchange()
+                .expectStatus().isBadRequest()
+
+        where:
+        limit << [0, 1001]
+    }
+
+    def "search hands the prefix and limit to the service"() {
+        given:
+        def user = new User(UUID.randomUUID(), "Alice", "alice@test.com")
+
+        when:
+        def response = client.get().uri("/api/v1/users/search?prefix=al&limit=5").exchange()
+
+        then:
+        1 * userService.searchByUsername("al", 5) >> Flux.just(user)
+        response.expectStatus().isOk()
+                .expectBody().json("""[{"id": "${user.id}", "name": "Alice", "email": "alice@test.com"}]""", true)
+    }
+
+    def "search for prefix '#prefix' and limit #limit is a bad request"() {
+        expect:
+        client.get().uri("/api/v1/users/search?prefix={prefix}&limit={limit}", prefix, limit).exchange()
+                .expectStatus().isBadRequest()
+
+        where:
+        prefix | limit
+        " "    | 10
+        "al"   | 0
+        "al"   | 101
+    }
+
+    def "a bulk import answers every line in input order, mapping results past blank and invalid lines"() {
+        given:
+        def alice = new User(UUID.randomUUID(), "alice", "alice@test.com")
+        def carol = new User(UUID.randomUUID(), "carol", "carol@test.com")
+        def body = [
+                '{"name": "alice", "email": "alice@test.com"}',
+                '',
+                'not a user',
+                '{"name": "bob", "email": "bob@test.com"}',
+                '{"name": "carol", "email": "carol@test.com"}'
+        ].join("\n")
+
+        when:
+        def responses = client.post().uri("/api/v1/users/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(UserImportResponse).responseBody
+                .collectList().block()
+
+        then:
+        1 * userService.importUsers({ it*.name == ["alice", "bob", "carol"] }) >> Flux.just(
+                UserImportResult.created(alice),
+                UserImportResult.conflict("User name is already taken"),
+                UserImportResult.created(carol))
+        responses*.line() == [1L, 3L, 4L, 5L]
+        responses*.status() == [UserImportResult.Status.CREATED, UserImportResult.Status.INVALID,
+                                UserImportResult.Status.CONFLICT, UserImportResult.Status.CREATED]
+        responses*.id() == [alice.id, null, null, carol.id]
+        responses[1].error().startsWith("Not a user")
+        responses[2].error() == "User name is already taken"
+    }
+
+    def "a bulk import of only invalid lines writes nothing"() {
+        when:
+        def responses = client.post().uri("/api/v1/users/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue("[]\n{")
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(UserImportResponse).responseBody
+                .collectList().block()
+
+        then:
+        1 * userService.importUsers([]) >> Flux.empty()
+        responses*.line() == [1L, 2L]
+        responses*.status() == [UserImportResult.Status.INVALID, UserImportResult.Status.INVALID]
+    }
+}
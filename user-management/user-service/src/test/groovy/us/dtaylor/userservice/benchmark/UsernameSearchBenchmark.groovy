@@ -0,0 +1,48 @@
+package us.dtaylor.userservice.benchmark
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Requires
+import spock.lang.Specification
+import us.dtaylor.userservice.domain.User
+import us.dtaylor.userservice.infastructure.directory.UserDirectory
+
+/**
+ * Times autocomplete and name lookups on a directory of 1M users against scanning every user,
+ * which is what a case-insensitive regular expression costs Mongo when the directory is not
+ * ready.
+ */
+@Requires({ sys.benchmark == 'true' })
+class UsernameSearchBenchmark extends Specification {
+
+    static final int USERS = 1_000_000
+    static final int OPERATIONS = 10_000
+
+    def "a prefix search on the sorted name index is orders of magnitude faster than a scan"() {
+        given:
+        def random = new Random(42)
+        def names = (0..<USERS).collect { "user" + Long.toString(random.nextLong() & Long.MAX_VALUE, 36) }
+        def directory = new UserDirectory(new SimpleMeterRegistry())
+        directory.reset(names.collect { new User(UUID.randomUUID(), it, "$it@test.com") })
+        def all = directory.all()
+        String[] prefixes = (0..<1024).collect { names[random.nextInt(USERS)].substring(0, 6 + random.nextInt(3)) }
+        String[] exact = (0..<1024).collect { names[random.nextInt(USERS)].toUpperCase() }
+
+        def searches = [
+                "prefix, 10 results (index)": { int i -> directory.searchByName(prefixes[i & 1023], 10) },
+                "exact name (index)"        : { int i -> directory.getByName(exact[i & 1023]) },
+        ]
+
+        when:
+        def nanos = searches.collectEntries { name, search -> [name, Benchmarks.nanosPerOp(OPERATIONS, search)] } as Map<String, Double>
+        nanos["prefix, 10 results (scan)"] = Benchmarks.nanosPerOp(10, { int i ->
+            String prefix = prefixes[i & 1023]
+            all.findAll { it.name.toLowerCase().startsWith(prefix) }.sort { it.name.toLowerCase() }.take(10)
+        })
+        Benchmarks.report("Name search over $USERS users", nanos)
+
+        then:
+        directory.searchByName(prefixes[0], 10).every { it.name.startsWith(prefixes[0]) }
+        directory.getByName(exact[0]).name == exact[0].toLowerCase()
+        nanos["prefix, 10 results (index)"] * 100 < nanos["prefix, 10 results (scan)"]
+    }
+}
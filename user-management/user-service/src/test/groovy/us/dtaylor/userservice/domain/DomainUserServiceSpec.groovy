@@ -6,6 +6,8 @@ import reactor.core.publisher.Mono
 import reactor.test.StepVerifier
 import spock.lang.Specification
 import spock.lang.Subject
+import us.dtaylor.userservice.domain.event.UserEvent
+import us.dtaylor.userservice.domain.event.UserEventPublisher
 import us.dtaylor.userservice.domain.repository.UserRepository
 import us.dtaylor.userservice.domain.service.DomainUserService
 
@@ -17,9 +19,11 @@ class DomainUserServiceSpec extends Specification {
     DomainUserService userService
 
     UserRepository userRepository = Mock()
+    UserEventPublisher userEventPublisher = Mock()
 
     def setup() {
-        userService = new DomainUserService(userRepository)
+        userService = new DomainUserService(userRepository, userEventPublisher)
+        userEventPublisher.publish(_) >> Mono.empty()
     }
 
     def "get all users"() {
@@ -85,4 +89,85 @@ class DomainUserServiceSpec extends Specification {
                 .verifyComplete()
     }
 
+    def "create publishes a created event"() {
+        given:
+        def user = new User(name: "Test", email: EMAIL)
+        def saved = new User(id: UUID.randomUUID(), name: "Test", email: EMAIL)
+
+        when:
+        userService.createUser(user).block()
+
+        then:
+        1 * userRepository.save(user) >> Mono.just(saved)
+        1 * userEventPublisher.publish(new UserEvent(UserEvent.Type.CREATED, saved.id, "Test", EMAIL)) >> Mono.empty()
+    }
+
+    def "update publishes an updated event"() {
+        given:
+        def id = UUID.randomUUID()
+        userRepository.findById(id) >> Mono.just(new User(id: id, name: "Old", email: EMAIL))
+        userRepository.save(_) >> { User user -> Mono.just(user) }
+
+        when:
+        userService.updateUser(id, new User(name: "New", email: EMAIL)).block()
+
+        then:
+        1 * userEventPublisher.publish(new UserEvent(UserEvent.Type.UPDATED, id, "New", EMAIL)) >> Mono.empty()
+    }
+
+    def "delete publishes a deleted event once the user is gone"() {
+        given:
+        def user = new User(id: UUID.randomUUID(), name: "Test", email: EMAIL)
+        userRepository.findById(user.id) >> Mono.just(user)
+
+        when:
+        userService.deleteUser(user.id).block()
+
+        then:
+        1 * userRepository.delete(user) >> Mono.empty()
+
+        then:
+        1 * userEventPublisher.publish(UserEvent.deleted(user.id)) >> Mono.empty()
+    }
+
+    def "deleting an unknown user publishes nothing"() {
+        given:
+        def id = UUID.randomUUID()
+        userRepository.findById(id) >> Mono.empty()
+
+        when:
+        userService.deleteUser(id).block()
+
+        then:
+        0 * userEventPublisher.publish(_)
+    }
+
+    def "an import rejects users without a name, keeps the input order and announces only created users"() {
+        given:
+        def alice = new User(name: "alice", email: EMAIL)
+        def taken = new User(name: "bob", email: EMAIL)
+        def created = new User(id: UUID.randomUUID(), name: "alice", email: EMAIL)
+
+        when:
+        def results = userService.importUsers([alice, new User(name: " ", email: EMAIL), taken]).collectList().block()
+
+        then:
+        1 * userRepository.insertAll([alice, taken]) >> Flux.just(UserImportResult.created(created), UserImportResult.conflict("User name is already taken"))
+        1 * userEventPublisher.publish(UserEvent.created(created)) >> Mono.empty()
+        0 * userEventPublisher.publish(_)
+        results*.status == [UserImportResult.Status.CREATED, UserImportResult.Status.INVALID, UserImportResult.Status.CONFLICT]
+        results[0].user().id == created.id
+    }
+
+    def "a batch that cannot be written reports each of its users as failed"() {
+        given:
+        def users = [new User(name: "alice", email: EMAIL), new User(name: "bob", email: EMAIL)]
+        userRepository.insertAll(users) >> Flux.error(new IllegalStateException("Mongo is down"))
+
+        expect:
+        StepVerifier.create(userService.importUsers(users))
+                .expectNextMatches { it.status() == UserImportResult.Status.FAILED && it.error() == "Mongo is down" }
+                .expectNextMatches { it.status() == UserImportResult.Status.FAILED }
+                .verifyComplete()
+    }
 }
@@ -0,0 +1,145 @@
+package us.dtaylor.userservice.infrastructure.directory
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+import us.dtaylor.userservice.domain.User
+import us.dtaylor.userservice.infastructure.directory.UserDirectory
+
+class UserDirectorySpec extends Specification {
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    long now = 1_000_000
+    UserDirectory directory = new UserDirectory(meterRegistry, { now })
+
+    def "is not ready until loaded, and not after a gap"() {
+        expect:
+        !directory.ready
+        meterRegistry.get("user.directory.ready").gauge().value() == 0
+
+        when:
+        directory.reset([new User(UUID.randomUUID(), "admin", "admin@todo-app.com")])
+
+        then:
+        directory.ready
+        directory.size() == 1
+        meterRegistry.get("user.directory.ready").gauge().value() == 1
+
+        when:
+        directory.markStale()
+
+        then:
+        !directory.ready
+    }
+
+    def "a load replaces whatever was held before"() {
+        given:
+        def old = new User(UUID.randomUUID(), "old", "old@test.com")
+        directory.reset([old])
+
+        when:
+        def fresh = new User(UUID.randomUUID(), "fresh", "fresh@test.com")
+        directory.reset([fresh])
+
+        then:
+        directory.get(old.id) == null
+        directory.getByName("old") == null
+        directory.ids() == [fresh.id]
+    }
+
+    def "the name index follows renames and deletes"() {
+        given:
+        def id = UUID.randomUUID()
+        directory.reset([new User(id, "before", "user@test.com")])
+
+        when:
+        directory.put(new User(id, "after", "user@test.com"))
+
+        then:
+        directory.getByName("before") == null
+        directory.getByName("after").id == id
+
+        when:
+        directory.remove(id)
+
+        then:
+        directory.get(id) == null
+        directory.getByName("after") == null
+    }
+
+    def "names are matched ignoring case, and a prefix search walks them in order"() {
+        given:
+        def names = ["bob", "Alice", "alfred", "ALBERT", "al", "Bea"]
+        directory.reset(names.collect { new User(UUID.randomUUID(), it, "$it@test.com") })
+
+        expect:
+        directory.getByName("alice").name == "Alice"
+        directory.getByName("ALFRED").name == "alfred"
+        directory.getByName("ali") == null
+        directory.searchByName("AL", 10)*.name == ["al", "ALBERT", "alfred", "Alice"]
+        directory.searchByName("al", 2)*.name == ["al", "ALBERT"]
+        directory.searchByName("b", 10)*.name == ["Bea", "bob"]
+        directory.searchByName("z", 10).isEmpty()
+    }
+
+    def "a renamed user is found under the new prefix only"() {
+        given:
+        def id = UUID.randomUUID()
+        directory.reset([new User(id, "carol", "carol@test.com")])
+
+        when:
+        directory.put(new User(id, "Dave", "carol@test.com"))
+
+        then:
+        directory.searchByName("car", 10).isEmpty()
+        directory.searchByName("da", 10)*.id == [id]
+    }
+
+    def "pages walk the ids by their unsigned bytes, as Mongo sorts binary UUIDs"() {
+        given:
+        def ids = [new UUID(-1L, 0L), new UUID(1L, -1L), new UUID(Long.MAX_VALUE, 0L), new UUID(1L, 5L)]
+        directory.reset(ids.collect { new User(it, it.toString(), "user@test.com") })
+
+        when:
+        def first = directory.page(null, 2)
+        def second = directory.page(first.last().id, 2)
+        directory.remove(new UUID(Long.MAX_VALUE, 0L))
+
+        then:
+        first*.id == [new UUID(1L, 5L), new UUID(1L, -1L)]
+        second*.id == [new UUID(Long.MAX_VALUE, 0L), new UUID(-1L, 0L)]
+        directory.page(first.last().id, 2)*.id == [new UUID(-1L, 0L)]
+        directory.page(new UUID(-1L, 0L), 2).isEmpty()
+    }
+
+    def "every change moves the version and resets the age of the last change"() {
+        given:
+        directory.reset([])
+        def loaded = directory.version()
+        now += 5_000
+
+        expect:
+        meterRegistry.get("user.directory.last-change.age").gauge().value() == 5.0
+
+        when:
+        directory.put(new User(UUID.randomUUID(), "new", "new@test.com"))
+
+        then:
+        directory.version() != loaded
+        meterRegistry.get("user.directory.last-change.age").gauge().value() == 0.0
+    }
+
+    def "returned users are detached from the directory"() {
+        given:
+        def id = UUID.randomUUID()
+        directory.reset([new User(id, "original", "user@test.com", 7L)])
+
+        when:
+        def user = directory.get(id)
+        user.setName("changed")
+
+        then:
+        user.version == 7L
+        directory.get(id).name == "original"
+        directory.all()*.name == ["original"]
+    }
+}
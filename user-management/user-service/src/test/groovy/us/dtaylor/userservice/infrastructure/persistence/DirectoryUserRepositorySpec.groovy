@@ -0,0 +1,145 @@
+package us.dtaylor.userservice.infrastructure.persistence
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import reactor.core.publisher.Flux
+import reactor.core.publisher.Mono
+import spock.lang.Specification
+import us.dtaylor.userservice.domain.User
+import us.dtaylor.userservice.domain.UserField
+import us.dtaylor.userservice.domain.UserImportResult
+import us.dtaylor.userservice.domain.repository.UserRepository
+import us.dtaylor.userservice.infastructure.directory.UserDirectory
+import us.dtaylor.userservice.infastructure.persistence.repository.DirectoryUserRepository
+
+class DirectoryUserRepositorySpec extends Specification {
+
+    static final User ADMIN = new User(UUID.randomUUID(), "admin", "admin@todo-app.com", 3L)
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    UserRepository mongo = Mock()
+    UserDirectory directory = new UserDirectory(meterRegistry)
+    DirectoryUserRepository repository = new DirectoryUserRepository(mongo, directory, meterRegistry)
+
+    double lookups(String result) {
+        meterRegistry.get("user.directory.lookups").tag("result", result).counter().count()
+    }
+
+    def "reads are served from the directory once it is loaded"() {
+        given:
+        directory.reset([ADMIN])
+
+        when:
+        def byId = repository.findById(ADMIN.id).block()
+        def byName = repository.findByUserName("admin").block()
+        def all = repository.findAll().collectList().block()
+        def ids = repository.findAllIds().collectList().block()
+
+        then:
+        0 * mongo._
+        byId.email == ADMIN.email
+        byName.id == ADMIN.id
+        all*.id == [ADMIN.id]
+        ids == [ADMIN.id]
+        lookups("hit") == 4
+    }
+
+    def "reads go to Mongo until the directory is loaded and after a gap"() {
+        given:
+        directory.reset([ADMIN])
+        directory.markStale()
+
+        when:
+        def byId = repository.findById(ADMIN.id).block()
+        def all = repository.findAll().collectList().block()
+        def version = repository.listVersion().block()
+
+        then:
+        1 * mongo.findById(ADMIN.id) >> Mono.just(ADMIN)
+        1 * mongo.findAll() >> Flux.just(ADMIN)
+        1 * mongo.listVersion() >> Mono.just(42L)
+        byId.id == ADMIN.id
+        all*.id == [ADMIN.id]
+        version == 42L
+        lookups("fallback") == 2
+    }
+
+    def "a user the directory has not seen yet is looked up in Mongo"() {
+        given:
+        directory.reset([])
+        def created = new User(UUID.randomUUID(), "new", "new@test.com")
+
+        when:
+        def found = repository.findById(created.id).block()
+
+        then:
+        1 * mongo.findById(created.id) >> Mono.just(created)
+        found.id == created.id
+        lookups("miss") == 1
+    }
+
+    def "writes go to Mongo and are applied to the directory"() {
+        given:
+        directory.reset([ADMIN])
+        def renamed = new User(ADMIN.id, "root", ADMIN.email, 4L)
+
+        when:
+        repository.save(renamed).block()
+
+        then:
+        1 * mongo.save(renamed) >> Mono.just(renamed)
+        repository.findByUserName("root").block().version == 4L
+
+        when:
+        repository.delete(renamed).block()
+        def deleted = repository.findById(ADMIN.id).block()
+
+        then:
+        1 * mongo.delete(renamed) >> Mono.empty()
+        1 * mongo.findById(ADMIN.id) >> Mono.empty()
+        deleted == null
+    }
+
+    def "the list version follows the directory while it serves the list"() {
+        given:
+        directory.reset([])
+        def loaded = repository.listVersion().block()
+
+        when:
+        repository.save(ADMIN).block()
+
+        then:
+        1 * mongo.save(ADMIN) >> Mono.just(ADMIN)
+        0 * mongo.listVersion()
+        repository.listVersion().block() != loaded
+    }
+
+    def "pages come from the directory while it is ready and from Mongo otherwise"() {
+        given:
+        directory.reset([ADMIN])
+
+        when:
+        def ready = repository.findPage(null, 10, UserField.ALL).collectList().block()
+        directory.markStale()
+        def stale = repository.findPage(null, 10, UserField.ALL).collectList().block()
+
+        then:
+        1 * mongo.findPage(null, 10, UserField.ALL) >> Flux.just(ADMIN)
+        ready*.id == [ADMIN.id]
+        stale*.id == [ADMIN.id]
+    }
+
+    def "imported users are added to the directory once Mongo has created them"() {
+        given:
+        directory.reset([])
+        def created = new User(UUID.randomUUID(), "new", "new@test.com")
+        def users = [created, new User(null, "admin", "admin@test.com")]
+
+        when:
+        def results = repository.insertAll(users).collectList().block()
+
+        then:
+        1 * mongo.insertAll(users) >> Flux.just(UserImportResult.created(created), UserImportResult.conflict("User name is already taken"))
+        results*.status == [UserImportResult.Status.CREATED, UserImportResult.Status.CONFLICT]
+        directory.all()*.id == [created.id]
+    }
+}
@@ -0,0 +1,109 @@
+package us.dtaylor.userservice.infrastructure.persistence
+
+import reactor.test.StepVerifier
+import spock.lang.Specification
+import us.dtaylor.userservice.domain.User
+import us.dtaylor.userservice.domain.UserField
+import us.dtaylor.userservice.domain.UserImportResult
+import us.dtaylor.userservice.domain.repository.UserRepository
+import us.dtaylor.userservice.infastructure.persistence.repository.InMemoryUserRepository
+
+class InMemoryUserRepositorySpec extends Specification {
+
+    InMemoryUserRepository repository = new InMemoryUserRepository()
+
+    def "save assigns an id and findById reads the user back"() {
+        when:
+        def saved = repository.save(new User(null, "admin", "admin@todo-app.com")).block()
+
+        then:
+        saved.id != null
+        StepVerifier.create(repository.findById(saved.id))
+                .expectNextMatches { it.name == "admin" && it.email == "admin@todo-app.com" }
+                .verifyComplete()
+    }
+
+    def "findByUserName follows renames"() {
+        given:
+        def user = repository.save(new User(UUID.randomUUID(), "before", "user@test.com")).block()
+
+        when:
+        user.setName("after")
+        repository.save(user).block()
+
+        then:
+        repository.findByUserName("before").block() == null
+        repository.findByUserName("after").block().id == user.id
+    }
+
+    def "names are matched ignoring case, for lookups and prefix searches"() {
+        given:
+        ["Alice", "alfred", "bob"].each { repository.save(new User(UUID.randomUUID(), it, "$it@test.com")).block() }
+
+        expect:
+        repository.findByUserName("ALICE").block().name == "Alice"
+        repository.findByNamePrefix("AL", 10).collectList().block()*.name == ["alfred", "Alice"]
+        repository.findByNamePrefix("al", 1).collectList().block()*.name == ["alfred"]
+    }
+
+    def "pages list every user once, in id order"() {
+        given:
+        def ids = (1..5).collect { repository.save(new User(UUID.randomUUID(), "user$it", "user$it@test.com")).block().id }
+
+        when:
+        def first = repository.findPage(null, 3, UserField.ALL).collectList().block()
+        def second = repository.findPage(first.last().id, 3, UserField.ALL).collectList().block()
+
+        then:
+        first.size() == 3
+        (first + second)*.id == ids.toSorted(UserRepository.ID_ORDER)
+    }
+
+    def "an insert reports a taken id as a conflict and creates the rest"() {
+        given:
+        def existing = repository.save(new User(UUID.randomUUID(), "existing", "existing@test.com")).block()
+
+        when:
+        def results = repository.insertAll([
+                new User(null, "new", "new@test.com"),
+                new User(existing.id, "other", "other@test.com")]).collectList().block()
+
+        then:
+        results*.status == [UserImportResult.Status.CREATED, UserImportResult.Status.CONFLICT]
+        repository.findById(results[0].user().id).block().name == "new"
+        repository.findById(existing.id).block().name == "existing"
+    }
+
+    def "delete removes the user from every lookup"() {
+        given:
+        def user = repository.save(new User(UUID.randomUUID(), "doomed", "user@test.com")).block()
+
+        when:
+        repository.delete(user).block()
+
+        then:
+        repository.findById(user.id).block() == null
+        repository.findByUserName("doomed").block() == null
+        repository.findAll().collectList().block().isEmpty()
+    }
+
+    def "findAllIds lists the id of every stored user"() {
+        given:
+        def first = repository.save(new User(UUID.randomUUID(), "first", "first@test.com")).block()
+        def second = repository.save(new User(UUID.randomUUID(), "second", "second@test.com")).block()
+
+        expect:
+        repository.findAllIds().collectList().block() as Set == [first.id, second.id] as Set
+    }
+
+    def "returned users are detached from the store"() {
+        given:
+        def user = repository.save(new User(UUID.randomUUID(), "original", "user@test.com")).block()
+
+        when:
+        repository.findById(user.id).block().setName("changed")
+
+        then:
+        repository.findById(user.id).block().name == "original"
+    }
+}
@@ -0,0 +1,52 @@
+package us.dtaylor.userservice.infrastructure.persistence
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.bson.Document
+import org.springframework.data.mongodb.core.ReactiveMongoOperations
+import org.springframework.data.mongodb.core.query.Query
+import reactor.core.publisher.Flux
+import spock.lang.Specification
+import us.dtaylor.userservice.domain.User
+import us.dtaylor.userservice.infastructure.UserDocument
+import us.dtaylor.userservice.infastructure.persistence.RequestCoalescer
+import us.dtaylor.userservice.infastructure.persistence.UsernameIndex
+import us.dtaylor.userservice.infastructure.persistence.UuidMigration
+import us.dtaylor.userservice.infastructure.persistence.repository.MongoDbUserRepository
+import us.dtaylor.userservice.infastructure.persistence.repository.SpringDataMongoUserRepository
+
+import java.time.Duration
+import java.util.regex.Pattern
+
+class MongoDbUserRepositorySpec extends Specification {
+
+    ReactiveMongoOperations mongoOperations = Mock()
+    UuidMigration uuidMigration = Stub() {
+        isComplete() >> true
+    }
+    RequestCoalescer<UUID, User> reads = new RequestCoalescer<>("users", Duration.ZERO, { it }, new SimpleMeterRegistry())
+
+    MongoDbUserRepository repository = new MongoDbUserRepository(Stub(SpringDataMongoUserRepository), mongoOperations,
+            uuidMigration, reads)
+
+    def "a prefix search is a range on the collated name index, sorted and limited by it"() {
+        given:
+        def user = new User(UUID.randomUUID(), "Alice", "alice@test.com")
+
+        when:
+        def users = repository.findByNamePrefix("al", 5).collectList().block()
+
+        then:
+        1 * mongoOperations.find(_ as Query, UserDocument) >> { Query query, Class type ->
+            List<Document> and = query.queryObject.getList('$and', Document)
+            assert and[0] == new Document("name", new Document('$gte', "al").append('$lt', "al" + Character.MAX_VALUE))
+            Pattern regex = and[1].get("name", Pattern)
+            assert regex.pattern() == "^" + Pattern.quote("al")
+            assert regex.flags() == Pattern.CASE_INSENSITIVE
+            assert query.sortObject == new Document("name", 1)
+            assert query.limit == 5
+            assert query.collation.get() == UsernameIndex.COLLATION
+            Flux.just(UserDocument.toDocument(user))
+        }
+        users*.name == ["Alice"]
+    }
+}
@@ -0,0 +1,68 @@
+package us.dtaylor.userservice.infrastructure.persistence
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import reactor.core.publisher.Mono
+import reactor.core.publisher.Sinks
+import reactor.test.scheduler.VirtualTimeScheduler
+import spock.lang.Specification
+import us.dtaylor.userservice.domain.User
+import us.dtaylor.userservice.infastructure.persistence.RequestCoalescer
+
+import java.time.Duration
+import java.util.concurrent.atomic.AtomicInteger
+
+class RequestCoalescerSpec extends Specification {
+
+    static final UUID ID = UUID.randomUUID()
+
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry()
+    VirtualTimeScheduler scheduler = VirtualTimeScheduler.create()
+    AtomicInteger loads = new AtomicInteger()
+    Sinks.One<User> result = Sinks.one()
+
+    RequestCoalescer<UUID, User> coalescer = new RequestCoalescer<UUID, User>("users", Duration.ofMillis(50),
+            { User user -> new User(user.id, user.name, user.email) }, meterRegistry, scheduler)
+
+    Mono<User> load(UUID id) {
+        Mono.defer {
+            loads.incrementAndGet()
+            result.asMono()
+        }
+    }
+
+    def "a burst of lookups for one user costs one query until the TTL lapses"() {
+        given:
+        def received = []
+
+        when:
+        5.times { coalescer.get(ID, this::load).subscribe { received << it } }
+        result.tryEmitValue(new User(ID, "Test", "test@email.com"))
+        coalescer.get(ID, this::load).block()
+
+        then:
+        loads.get() == 1
+        received*.name == ["Test"] * 5
+        received.collect { System.identityHashCode(it) }.toSet().size() == 5
+        meterRegistry.get("repository.reads.coalesced").counter().count() == 5
+
+        when:
+        scheduler.advanceTimeBy(Duration.ofMillis(50))
+        coalescer.get(ID, this::load).block()
+
+        then:
+        loads.get() == 2
+    }
+
+    def "a write invalidates the shared result"() {
+        given:
+        result.tryEmitValue(new User(ID, "Test", "test@email.com"))
+        coalescer.get(ID, this::load).block()
+
+        when:
+        coalescer.invalidate(ID)
+        coalescer.get(ID, this::load).block()
+
+        then:
+        loads.get() == 2
+    }
+}